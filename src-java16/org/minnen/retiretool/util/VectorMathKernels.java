@@ -0,0 +1,129 @@
+package org.minnen.retiretool.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Vector API (jdk.incubator.vector) versions of the kernels in MathKernels.
+ *
+ * This class is compiled into META-INF/versions/N of a multi-release jar (N is the version of the build JDK, which must
+ * be at least 16) and loaded reflectively by MathKernels.get(), so the base code still runs on Java 8. Each kernel
+ * processes full vectors and then finishes the tail with the scalar loop.
+ */
+final class VectorMathKernels extends MathKernels
+{
+  private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+  VectorMathKernels()
+  {}
+
+  @Override
+  public String getName()
+  {
+    return "vector(" + SPECIES + ")";
+  }
+
+  @Override
+  public void add(double[] a, double[] b, int n)
+  {
+    int i = 0;
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+      va.add(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+    }
+    for (; i < n; ++i) {
+      a[i] += b[i];
+    }
+  }
+
+  @Override
+  public void mul(double[] a, double[] b, int n)
+  {
+    int i = 0;
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+      va.mul(DoubleVector.fromArray(SPECIES, b, i)).intoArray(a, i);
+    }
+    for (; i < n; ++i) {
+      a[i] *= b[i];
+    }
+  }
+
+  @Override
+  public double dot(double[] a, double[] b, int n)
+  {
+    int i = 0;
+    DoubleVector acc = DoubleVector.zero(SPECIES);
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      DoubleVector va = DoubleVector.fromArray(SPECIES, a, i);
+      acc = acc.add(va.mul(DoubleVector.fromArray(SPECIES, b, i)));
+    }
+    double sum = acc.reduceLanes(VectorOperators.ADD);
+    for (; i < n; ++i) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  @Override
+  public double dist2(double[] a, double[] b, int n)
+  {
+    int i = 0;
+    DoubleVector acc = DoubleVector.zero(SPECIES);
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      DoubleVector diff = DoubleVector.fromArray(SPECIES, a, i).sub(DoubleVector.fromArray(SPECIES, b, i));
+      acc = acc.add(diff.mul(diff));
+    }
+    double sum = acc.reduceLanes(VectorOperators.ADD);
+    for (; i < n; ++i) {
+      double diff = a[i] - b[i];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
+  @Override
+  public double centeredSumSq(double[] a, double mean)
+  {
+    final int n = a.length;
+    int i = 0;
+    DoubleVector vm = DoubleVector.broadcast(SPECIES, mean);
+    DoubleVector acc1 = DoubleVector.zero(SPECIES);
+    DoubleVector acc2 = DoubleVector.zero(SPECIES);
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      DoubleVector diff = DoubleVector.fromArray(SPECIES, a, i).sub(vm);
+      acc1 = acc1.add(diff.mul(diff));
+      acc2 = acc2.add(diff);
+    }
+    double s1 = acc1.reduceLanes(VectorOperators.ADD);
+    double s2 = acc2.reduceLanes(VectorOperators.ADD);
+    for (; i < n; ++i) {
+      double diff = a[i] - mean;
+      s1 += diff * diff;
+      s2 += diff;
+    }
+    return s1 - s2 * s2 / n;
+  }
+
+  @Override
+  public double centeredDot(double[] a, double ma, double[] b, double mb)
+  {
+    assert a.length == b.length;
+    final int n = a.length;
+    int i = 0;
+    DoubleVector vma = DoubleVector.broadcast(SPECIES, ma);
+    DoubleVector vmb = DoubleVector.broadcast(SPECIES, mb);
+    DoubleVector acc = DoubleVector.zero(SPECIES);
+    for (int bound = SPECIES.loopBound(n); i < bound; i += SPECIES.length()) {
+      DoubleVector da = DoubleVector.fromArray(SPECIES, a, i).sub(vma);
+      DoubleVector db = DoubleVector.fromArray(SPECIES, b, i).sub(vmb);
+      acc = acc.add(da.mul(db));
+    }
+    double sum = acc.reduceLanes(VectorOperators.ADD);
+    for (; i < n; ++i) {
+      sum += (a[i] - ma) * (b[i] - mb);
+    }
+    return sum;
+  }
+}
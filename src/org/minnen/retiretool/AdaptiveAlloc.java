@@ -5,6 +5,12 @@ import java.io.IOException;
 import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.minnen.retiretool.broker.Broker;
 import org.minnen.retiretool.broker.SimFactory;
@@ -19,6 +25,7 @@ import org.minnen.retiretool.data.Sequence.EndpointBehavior;
 import org.minnen.retiretool.data.fred.FredSeries;
 import org.minnen.retiretool.data.yahoo.YahooIO;
 import org.minnen.retiretool.ml.ClassificationModel;
+import org.minnen.retiretool.ml.Dataset;
 import org.minnen.retiretool.ml.RegressionModel;
 import org.minnen.retiretool.ml.Example;
 import org.minnen.retiretool.ml.Stump;
@@ -113,18 +120,45 @@ public class AdaptiveAlloc
     System.setProperty("org.apache.commons.logging.Log", "org.apache.commons.logging.impl.NoOpLog");
   }
 
+  /** Optimization and test periods for one step of a walk-forward optimization. */
+  private static class WalkForwardPeriod
+  {
+    public final long optStart, optEnd;
+    public final long testStart, testEnd;
+
+    public WalkForwardPeriod(long optStart, long optEnd, long testStart, long testEnd)
+    {
+      this.optStart = optStart;
+      this.optEnd = optEnd;
+      this.testStart = testStart;
+      this.testEnd = testEnd;
+    }
+  }
+
+  /** Walk-forward optimization using a grid search for each period. */
   public static Simulation walkForwardOptimizationOld(long timeSimStart, SimFactory simFactory)
+  {
+    return walkForwardOptimizationOld(timeSimStart, simFactory, false);
+  }
+
+  /**
+   * Walk-forward optimization using a grid search or successive halving for each period.
+   * 
+   * The optimization for each period only depends on data before the test period, so all optimizations run in parallel
+   * (each thread with its own view of the data). The test periods are replayed in order on a single simulation as soon
+   * as the corresponding optimization finishes.
+   * 
+   * @param useSuccessiveHalving if true, search with successive halving instead of a full grid search
+   */
+  public static Simulation walkForwardOptimizationOld(long timeSimStart, SimFactory simFactory,
+      boolean useSuccessiveHalving)
   {
     final int stepMonths = 3;
     final int maxOptMonths = 12 * 5;
+    final int nThreads = Runtime.getRuntime().availableProcessors();
 
-    // Simulator used for optimizing predictor parameters.
-    Simulation simOpt = simFactory.build();
-    AdaptiveScanner scanner = new AdaptiveScanner(FinLib.AdjClose);
-
-    // Simulator used for tracking walk-forward results.
+    // Simulator used for tracking walk-forward results (the run starts once the first config is known).
     Simulation wfSim = simFactory.build();
-    wfSim.setupRun(null, timeSimStart, TimeLib.TIME_END, "WalkForward");
 
     long testStart = timeSimStart;
     assert testStart >= wfSim.getStartMS();
@@ -135,6 +169,7 @@ public class AdaptiveAlloc
                                                                                                      // config/predictor
     System.out.printf("First Able to Predict: [%s]\n", TimeLib.formatDate(timeFirstAbleToPredict));
 
+    List<WalkForwardPeriod> periods = new ArrayList<>();
     while (testStart < wfSim.getEndMS()) {
       // New test period is extends N months beyond test start time.
       final long testEnd = Math.min(
@@ -146,27 +181,66 @@ public class AdaptiveAlloc
       final long optStart = Math.max(timeFirstAbleToPredict,
           TimeLib.toMs(TimeLib.ms2date(optEnd).minusMonths(maxOptMonths).with(TemporalAdjusters.firstDayOfMonth())));
       assert optStart < optEnd;
+      periods.add(new WalkForwardPeriod(optStart, optEnd, testStart, testEnd));
 
-      // System.out.printf("Optm: [%s] -> [%s]\n", TimeLib.formatDate(optStart), TimeLib.formatDate(optEnd));
-      // System.out.printf("Test: [%s] -> [%s]\n", TimeLib.formatDate(testStart), TimeLib.formatDate(testEnd));
+      // Advance test start time by N months.
+      testStart = TimeLib
+          .toMs(TimeLib.ms2date(testStart).plusMonths(stepMonths).with(TemporalAdjusters.firstDayOfMonth()));
+    }
 
-      // Find best predictor parameters.
-      scanner.reset();
-      PredictorConfig config = Optimizer.grid(scanner, simOpt, optStart, optEnd, assetSymbols);
-      Predictor predictor = config.build(wfSim.broker.accessObject, assetSymbols);
+    // Factories for the simulators used to optimize predictor parameters. Each thread uses a view of the store so that
+    // locks don't collide. Views are created before the walk-forward simulation starts so that its locks aren't copied.
+    BlockingQueue<SimFactory> optFactories = new ArrayBlockingQueue<>(nThreads);
+    for (int i = 0; i < nThreads; ++i) {
+      optFactories.add(simFactory.view());
+    }
 
-      // Run the predictor over the test period.
-      wfSim.setPredictor(predictor);
-      wfSim.runTo(testEnd);
+    // Find best predictor parameters for all periods in parallel.
+    ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+    try {
+      List<Future<PredictorConfig>> futures = new ArrayList<>();
+      for (WalkForwardPeriod period : periods) {
+        futures.add(executor.submit(() -> {
+          SimFactory optFactory = optFactories.take();
+          try {
+            AdaptiveScanner scanner = new AdaptiveScanner(FinLib.AdjClose);
+            if (useSuccessiveHalving) {
+              return Optimizer.successiveHalving(scanner, optFactory, 1, period.optStart, period.optEnd, assetSymbols);
+            } else {
+              return Optimizer.grid(scanner, optFactory.build(), period.optStart, period.optEnd, assetSymbols);
+            }
+          } finally {
+            optFactories.put(optFactory);
+          }
+        }));
+      }
 
-      // Report results for this test period.
-      CumulativeStats stats = CumulativeStats.calc(wfSim.returnsMonthly);
-      System.out.printf("Stats: [%s] -> [%s]: %.3f, %.2f  %s\n", TimeLib.formatDate(testStart),
-          TimeLib.formatDate(testEnd), stats.cagr, stats.drawdown, config);
+      for (int i = 0; i < periods.size(); ++i) {
+        WalkForwardPeriod period = periods.get(i);
+        // System.out.printf("Optm: [%s] -> [%s]\n", TimeLib.formatDate(period.optStart),
+        // TimeLib.formatDate(period.optEnd));
+        // System.out.printf("Test: [%s] -> [%s]\n", TimeLib.formatDate(period.testStart),
+        // TimeLib.formatDate(period.testEnd));
+        PredictorConfig config = futures.get(i).get();
+        Predictor predictor = config.build(wfSim.broker.accessObject, assetSymbols);
+
+        // Run the predictor over the test period.
+        if (i == 0) {
+          wfSim.setupRun(predictor, timeSimStart, TimeLib.TIME_END, "WalkForward");
+        } else {
+          wfSim.setPredictor(predictor);
+        }
+        wfSim.runTo(period.testEnd);
 
-      // Advance test start time by N months.
-      testStart = TimeLib
-          .toMs(TimeLib.ms2date(testStart).plusMonths(stepMonths).with(TemporalAdjusters.firstDayOfMonth()));
+        // Report results for this test period.
+        CumulativeStats stats = CumulativeStats.calc(wfSim.returnsMonthly);
+        System.out.printf("Stats: [%s] -> [%s]: %.3f, %.2f  %s\n", TimeLib.formatDate(period.testStart),
+            TimeLib.formatDate(period.testEnd), stats.cagr, stats.drawdown, config);
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new RuntimeException(e);
+    } finally {
+      executor.shutdownNow();
     }
     wfSim.finishRun();
     return wfSim;
@@ -174,15 +248,28 @@ public class AdaptiveAlloc
 
   public static void extendPredictionData(long timeStart, long timeEnd, FeatureExtractor featureExtractor,
       List<Example> pointExamples)
+  {
+    long lastTime = TimeLib.TIME_ERROR;
+    if (!pointExamples.isEmpty()) {
+      lastTime = pointExamples.get(pointExamples.size() - 1).getTime();
+    }
+    extendPredictionData(timeStart, timeEnd, featureExtractor, lastTime, pointExamples);
+  }
+
+  /**
+   * Generate examples for each week in [timeStart, timeEnd] that comes after `lastTime`.
+   * 
+   * @param lastTime time of the most recent existing example (TIME_ERROR if there are none)
+   * @param pointExamples new examples are appended to this list
+   */
+  public static void extendPredictionData(long timeStart, long timeEnd, FeatureExtractor featureExtractor,
+      long lastTime, List<Example> pointExamples)
   {
     final long key = Sequence.Lock.genKey();
     long today = TimeLib.toLastBusinessDayOfWeek(timeStart);
     assert today < timeEnd;
 
-    long lastTime = TimeLib.TIME_ERROR;
-    if (!pointExamples.isEmpty()) {
-      lastTime = pointExamples.get(pointExamples.size() - 1).getTime();
-      assert lastTime != TimeLib.TIME_ERROR;
+    if (lastTime != TimeLib.TIME_ERROR) {
       long time = TimeLib.toLastBusinessDayOfWeek(lastTime);
       if (time <= lastTime) {
         time = TimeLib.toMs(TimeLib.ms2date(lastTime).plusWeeks(1));
@@ -255,14 +342,20 @@ public class AdaptiveAlloc
       // double beta = 1.0 - alpha;
       // timeWeight = alpha * 0.5 + beta;
       // }
-      double absReturn = Math.abs(example.y);
-      // double returnWeight = 10.0 + Math.sqrt(1.0 + absReturn);
-      double returnWeight = 1.0;// 10.0 + absReturn;
-      double w = returnWeight; // * timeWeight;
+      double w = calcReturnWeight(example); // * timeWeight;
       example.x.setWeight(w);
     }
   }
 
+  /** @return weight for the given example based only on its return. */
+  public static double calcReturnWeight(Example example)
+  {
+    double absReturn = Math.abs(example.y);
+    // double returnWeight = 10.0 + Math.sqrt(1.0 + absReturn);
+    double returnWeight = 1.0;// 10.0 + absReturn;
+    return returnWeight;
+  }
+
   public static Simulation walkForwardOptimization(long timeSimStart, long timeSimEnd, SimFactory simFactory)
   {
     final int stepMonths = 1;
@@ -284,7 +377,11 @@ public class AdaptiveAlloc
     System.out.printf("First Able to Predict: [%s]\n", TimeLib.formatDate(timeFirstAbleToPredict));
 
     FeatureExtractor featureExtractor = getFeatureExtractor();
-    List<Example> pointExamples = new ArrayList<>();
+
+    // Examples are only appended, so the stump trainer can update its statistics incrementally at each step.
+    Dataset dataset = new Dataset(featureExtractor.size());
+    Stump.Incremental stumpTrainer = new Stump.Incremental(0.0, useWeights);
+    List<Example> newExamples = new ArrayList<>();
 
     // extendPredictionData(timeFirstAbleToPredict, timeSimEnd, featureExtractor, pointExamples);
     // System.out.printf("#Examples: %d\n", pointExamples.size());
@@ -312,12 +409,19 @@ public class AdaptiveAlloc
       assert optEnd < testStart;
 
       // Find best predictor parameters.
-      extendPredictionData(optStart, optEnd, featureExtractor, pointExamples);
-      reweightExamples(pointExamples);
-      // System.out.printf("#Examples: %d\n", pointExamples.size());
+      final int iFirstNew = dataset.size();
+      newExamples.clear();
+      extendPredictionData(optStart, optEnd, featureExtractor,
+          dataset.isEmpty() ? TimeLib.TIME_ERROR : dataset.getTime(iFirstNew - 1), newExamples);
+      for (Example example : newExamples) {
+        example.x.setWeight(calcReturnWeight(example));
+        dataset.add(example);
+      }
+      stumpTrainer.add(dataset, iFirstNew);
+      // System.out.printf("#Examples: %d\n", dataset.size());
+      // List<Example> pointExamples = dataset.toExamples();
       // ClassificationModel absoluteClassifier = ClassificationModel.learnRF(pointExamples, 100, -1, 32);
-      int nDims = pointExamples.get(0).x.getNumDims();
-      ClassificationModel absoluteClassifier = ClassificationModel.learnStump(pointExamples, -1, useWeights);
+      ClassificationModel absoluteClassifier = new ClassificationModel(null, stumpTrainer.train());
       // ClassificationModel absoluteClassifier = ClassificationModel.learnQuadrant(pointExamples, 2, -1, useWeights);
       // ClassificationModel absoluteClassifier = ClassificationModel.learnBaggedQuadrant(pointExamples, 20, 2, 10,
       // useWeights);
@@ -14,6 +14,7 @@ import org.minnen.retiretool.broker.transactions.TransactionDeposit;
 import org.minnen.retiretool.broker.transactions.TransactionOpen;
 import org.minnen.retiretool.broker.transactions.TransactionSell;
 import org.minnen.retiretool.broker.transactions.TransactionWithdraw;
+import org.minnen.retiretool.data.AssetUniverse;
 import org.minnen.retiretool.data.DiscreteDistribution;
 import org.minnen.retiretool.data.Sequence;
 import org.minnen.retiretool.data.SequenceStore;
@@ -343,6 +344,30 @@ public class Account
     return dist;
   }
 
+  /**
+   * Calculate the current distribution over the given universe.
+   * 
+   * @return distribution bound to the given universe, or null if the account holds an asset outside of the universe
+   */
+  public DiscreteDistribution getDistribution(AssetUniverse universe)
+  {
+    final long totalValue = getValue();
+    DiscreteDistribution dist = new DiscreteDistribution(universe);
+    for (Position position : positions.values()) {
+      long value = position.getValue();
+      int i = universe.indexOf(position.name);
+      if (i < 0) {
+        if (value == 0L) continue;
+        return null;
+      }
+      dist.weights[i] = Fixed.toFloat(Fixed.div(value, totalValue));
+    }
+    int iCash = universe.indexOf("cash");
+    if (iCash < 0) return getCash() == 0L ? dist : null;
+    dist.weights[iCash] = Fixed.toFloat(Fixed.div(getCash(), totalValue));
+    return dist;
+  }
+
   public void printTransactions()
   {
     for (Transaction transaction : transactions) {
@@ -410,9 +435,10 @@ public class Account
     }
 
     // Buy positions that are under target.
+    final int iCash = targetDistribution.find("cash");
     for (int i = 0; i < targetDistribution.size(); ++i) {
+      if (i == iCash) continue;
       String name = targetDistribution.names[i];
-      if (name.equals("cash")) continue;
 
       double targetFrac = targetDistribution.weights[i];
       long currentValue = getValue(name);
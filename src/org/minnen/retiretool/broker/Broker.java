@@ -108,6 +108,21 @@ public class Broker
     return null;
   }
 
+  public PriceModel getQuoteModel()
+  {
+    return quoteModel;
+  }
+
+  public PriceModel getValueModel()
+  {
+    return valueModel;
+  }
+
+  public Slippage getSlippage()
+  {
+    return slippage;
+  }
+
   public void setQuoteModel(PriceModel quoteModel)
   {
     this.quoteModel = quoteModel;
@@ -1,5 +1,6 @@
 package org.minnen.retiretool.broker;
 
+import org.minnen.retiretool.data.SMACube;
 import org.minnen.retiretool.data.Sequence;
 import org.minnen.retiretool.data.SequenceStore;
 
@@ -51,4 +52,11 @@ public class BrokerInfoAccess
     SequenceStore store = broker.store;
     return store.tryGet(id);
   }
+
+  /** @return precomputed moving averages for the sequence with the given ID (null if none). */
+  public SMACube getSMACube(int id, int iPrice)
+  {
+    SequenceStore store = broker.store;
+    return store.getSMACube(id, iPrice);
+  }
 }
@@ -33,6 +33,19 @@ public class SimFactory
   }
 
   public Simulation build()
+  {
+    return build(store);
+  }
+
+  /** @return factory with the same settings whose simulations use a view of the store (see SequenceStore.view()). */
+  public SimFactory view()
+  {
+    return new SimFactory(store.view(), guideSeq, slippage, maxDelay, startingBalance, monthlyDeposit, valueModel,
+        quoteModel);
+  }
+
+  /** @return new simulation that uses the given store (e.g. a duplicate for use in another thread). */
+  public Simulation build(SequenceStore store)
   {
     return new Simulation(store, guideSeq.dup(), slippage, maxDelay, startingBalance, monthlyDeposit, valueModel,
         quoteModel);
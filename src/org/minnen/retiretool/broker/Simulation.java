@@ -2,12 +2,12 @@ package org.minnen.retiretool.broker;
 
 import java.time.LocalDate;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
 import org.minnen.retiretool.broker.transactions.Transaction.Flow;
+import org.minnen.retiretool.data.AssetUniverse;
 import org.minnen.retiretool.data.DiscreteDistribution;
 import org.minnen.retiretool.data.IndexRange;
 import org.minnen.retiretool.data.Sequence;
@@ -20,6 +20,7 @@ import org.minnen.retiretool.util.PriceModel;
 import org.minnen.retiretool.util.Random;
 import org.minnen.retiretool.util.Slippage;
 import org.minnen.retiretool.util.TimeLib;
+import org.minnen.retiretool.util.TradingCalendar;
 
 public class Simulation
 {
@@ -27,7 +28,7 @@ public class Simulation
   public static final double                  TargetEPS              = 0.1;
   public static final int                     REBALANCE_AFTER_N_DAYS = 363;
 
-  public static final Random                  rng                    = new Random();
+  public static final long                    DEFAULT_SEED           = 1234L;
   public static final String                  AccountName            = "SimAccount";
 
   public final SequenceStore                  store;
@@ -52,8 +53,15 @@ public class Simulation
   private int                                 rebalanceDelay;
   private DiscreteDistribution                prevDist;
   private Predictor                           predictor;
+
+  /** Assets for the current run (the predictor's assets plus cash) so that daily distributions use index lookups. */
+  private AssetUniverse                       universe;
   private boolean                             bCheckBusinessDay      = true;
 
+  /** Random rebalance delays are drawn from this simulation's own RNG, which is reseeded at the start of each run. */
+  private final Random                        rng                    = new Random();
+  private long                                seed                   = DEFAULT_SEED;
+
   public Simulation(SequenceStore store, Sequence guideSeq)
   {
     this(store, guideSeq, Slippage.None, 0, 10000.0, 0.0, PriceModel.adjCloseModel, PriceModel.adjCloseModel);
@@ -108,6 +116,27 @@ public class Simulation
     bCheckBusinessDay = skip;
   }
 
+  /** Set the seed used for random rebalance delays so that each run is reproducible. */
+  public Simulation setSeed(long seed)
+  {
+    this.seed = seed;
+    return this;
+  }
+
+  /**
+   * @return string that captures all settings (other than the predictor and data) that affect simulation results.
+   */
+  public String getSettingsString()
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("slip=%.6f,%.6f delay=%d seed=%d start=%.2f deposit=%.2f biz=%b",
+        slippage.constSlip, slippage.percentSlip, maxDelay, seed, startingBalance, monthlyDeposit, bCheckBusinessDay));
+    for (PriceModel model : new PriceModel[] { broker.getValueModel(), broker.getQuoteModel() }) {
+      sb.append(String.format(" %s(%b,%d,%.6f)", model.type, model.bAdjustPrices, model.iFixed, model.slipFraction));
+    }
+    return sb.toString();
+  }
+
   /**
    * Calculate a distribution that minimizes transaction while coming close to the target.
    * 
@@ -294,8 +323,11 @@ public class Simulation
     lastRebalance = TimeLib.TIME_BEGIN;
     bNeedRebalance = false;
     rebalanceDelay = 0;
-    prevDist = new DiscreteDistribution("cash");
+    rng.setSeed(seed);
     this.predictor = predictor;
+    universe = predictor.getUniverse().extend("cash");
+    prevDist = new DiscreteDistribution(universe);
+    prevDist.set("cash", 1.0);
 
     returnsMonthly = new Sequence(name);
     returnsDaily = new Sequence(name);
@@ -312,58 +344,70 @@ public class Simulation
     // }
   }
 
+  /** @return current distribution of the account over the run's universe (if possible). */
+  private DiscreteDistribution getAccountDistribution(Account account)
+  {
+    DiscreteDistribution dist = account.getDistribution(universe);
+    return dist != null ? dist : account.getDistribution();
+  }
+
   private void buyTowardTargetAllocation(DiscreteDistribution targetDist, Account account)
   {
     if (targetDist == null) return;
 
-    Map<String, Long> cashToAdd = new HashMap<>();
+    // Weights of the target and current distributions line up if the run's universe extends the target's.
+    final boolean aligned = (targetDist.universe != null && targetDist.universe.isPrefixOf(universe));
+    final int n = targetDist.size();
+    final int iCash = targetDist.find("cash");
+    long[] cashToAdd = new long[n];
     long totalToAdd = Fixed.ZERO;
-    DiscreteDistribution currentDist = account.getDistribution();
+    DiscreteDistribution currentDist = getAccountDistribution(account);
     long currentValue = account.getValue();
-    for (int i = 0; i < targetDist.size(); ++i) {
-      String name = targetDist.names[i];
-      if (name.equals("cash")) continue;
+    for (int i = 0; i < n; ++i) {
+      if (i == iCash) continue;
       double targetWeight = targetDist.weights[i];
-      int j = currentDist.find(name);
+      int j = aligned && currentDist.universe == universe ? i : currentDist.find(targetDist.names[i]);
       double currentWeight = j < 0 ? 0.0 : currentDist.weights[j];
       double missingWeight = Math.max(targetWeight - currentWeight, 0.0);
 
       long valueNeeded = Math.round(currentValue * missingWeight);
       totalToAdd += valueNeeded;
-      cashToAdd.put(name, valueNeeded);
+      cashToAdd[i] = valueNeeded;
     }
 
     final long cash = account.getCash();
     if (totalToAdd > cash) {
       long remaining = cash;
-      for (Map.Entry<String, Long> entry : cashToAdd.entrySet()) {
-        double percent = (double) entry.getValue() / totalToAdd;
+      for (int i = 0; i < n; ++i) {
+        if (i == iCash) continue;
+        double percent = (double) cashToAdd[i] / totalToAdd;
         long adjustedValue = (long) Math.ceil(percent * cash);
         adjustedValue = Math.min(adjustedValue, remaining);
         assert adjustedValue >= 0;
         remaining -= adjustedValue;
         assert remaining >= 0;
-        entry.setValue(adjustedValue);
+        cashToAdd[i] = adjustedValue;
       }
     } else if (totalToAdd < cash) {
       long totalExcess = cash - totalToAdd;
       long remaining = totalExcess;
-      for (Map.Entry<String, Long> entry : cashToAdd.entrySet()) {
-        long add = (long) Math.round(totalExcess * targetDist.get(entry.getKey()));
+      for (int i = 0; i < n; ++i) {
+        if (i == iCash) continue;
+        long add = (long) Math.round(totalExcess * targetDist.weights[i]);
         add = Math.min(add, remaining);
-        entry.setValue(entry.getValue() + add);
+        cashToAdd[i] += add;
         remaining -= add;
       }
     }
 
     // Buy extra assets.
     long sum = 0;
-    for (Map.Entry<String, Long> entry : cashToAdd.entrySet()) {
-      long value = entry.getValue();
+    for (int i = 0; i < n; ++i) {
+      long value = cashToAdd[i];
       assert value >= 0;
       if (value > 0) {
         assert value <= cash;
-        account.buyValue(entry.getKey(), value, "Buy toward target allocation");
+        account.buyValue(targetDist.names[i], value, "Buy toward target allocation");
         sum += value;
       }
     }
@@ -445,7 +489,7 @@ public class Simulation
       // Note: we're comparing the current request to the previous one, not to the actual
       // distribution in the account, which could change due to price movement.
       boolean bPrevRebalance = bNeedRebalance;
-      DiscreteDistribution curDist = account.getDistribution();
+      DiscreteDistribution curDist = getAccountDistribution(account);
       bNeedRebalance = ((timeInfo.time - lastRebalance) / TimeLib.MS_IN_DAY > REBALANCE_AFTER_N_DAYS
           || !targetDist.isSimilar(prevDist, DistributionEPS) || !targetDist.isSimilar(curDist, TargetEPS));
       // if (bNeedRebalance) {
@@ -506,9 +550,23 @@ public class Simulation
   /** @return list of TimeInfo objects for the given Sequence. */
   public static List<TimeInfo> calcTimeInfo(Sequence seq)
   {
-    List<TimeInfo> cache = new ArrayList<>();
-    for (int i = 0; i < seq.length(); ++i) {
-      cache.add(new TimeInfo(i, seq));
+    final int n = seq.length();
+    List<TimeInfo> cache = new ArrayList<>(n);
+    if (n == 0) return cache;
+
+    // Convert each time to a date once and look up neighboring business days in the trading calendar.
+    long prevTime = TradingCalendar.plusBusinessDays(seq.getStartMS(), -1);
+    long time = seq.getStartMS();
+    LocalDate prevDate = TimeLib.ms2date(prevTime);
+    LocalDate date = TimeLib.ms2date(time);
+    for (int i = 0; i < n; ++i) {
+      long nextTime = (i + 1 < n ? seq.getTimeMS(i + 1) : TradingCalendar.plusBusinessDays(time, 1));
+      LocalDate nextDate = TimeLib.ms2date(nextTime);
+      cache.add(new TimeInfo(time, prevTime, nextTime, date, prevDate, nextDate));
+      prevTime = time;
+      prevDate = date;
+      time = nextTime;
+      date = nextDate;
     }
     return cache;
   }
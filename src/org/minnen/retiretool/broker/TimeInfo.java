@@ -4,6 +4,7 @@ import java.time.LocalDate;
 
 import org.minnen.retiretool.data.Sequence;
 import org.minnen.retiretool.util.TimeLib;
+import org.minnen.retiretool.util.TradingCalendar;
 
 public class TimeInfo
 {
@@ -34,6 +35,12 @@ public class TimeInfo
   }
 
   public TimeInfo(long time, long prevTime, long nextTime)
+  {
+    this(time, prevTime, nextTime, TimeLib.ms2date(time), TimeLib.ms2date(prevTime), TimeLib.ms2date(nextTime));
+  }
+
+  /** Constructor for callers that have already converted the times to dates (e.g. Simulation.calcTimeInfo()). */
+  TimeInfo(long time, long prevTime, long nextTime, LocalDate date, LocalDate prevDate, LocalDate nextDate)
   {
     assert time != prevTime;
     assert time != nextTime;
@@ -43,9 +50,9 @@ public class TimeInfo
     this.prevTime = prevTime;
     this.nextTime = nextTime;
 
-    this.date = TimeLib.ms2date(time);
-    this.prevDate = TimeLib.ms2date(prevTime);
-    this.nextDate = TimeLib.ms2date(nextTime);
+    this.date = date;
+    this.prevDate = prevDate;
+    this.nextDate = nextDate;
 
     // Month values are in [1, 12].
     int month = date.getMonthValue();
@@ -71,7 +78,7 @@ public class TimeInfo
     isFirstDayOfWeek = !TimeLib.isSameWeek(prevDate, date);
     isLastDayOfWeek = !TimeLib.isSameWeek(date, nextDate);
 
-    isBusinessDay = TimeLib.isBusinessDay(date);
+    isBusinessDay = TradingCalendar.isBusinessDay(date);
   }
 
   public String toString()
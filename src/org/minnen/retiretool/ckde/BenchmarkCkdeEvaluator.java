@@ -0,0 +1,78 @@
+package org.minnen.retiretool.ckde;
+
+import java.time.Duration;
+import java.time.Month;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.ml.distance.WeightedL2;
+import org.minnen.retiretool.ml.kernel.EpanechnikovKernel;
+import org.minnen.retiretool.ml.kernel.Kernel;
+import org.minnen.retiretool.predictor.features.FeatureSet;
+import org.minnen.retiretool.predictor.features.Momentum;
+import org.minnen.retiretool.predictor.features.Momentum.CompoundPeriod;
+import org.minnen.retiretool.predictor.features.Momentum.ReturnOrMul;
+import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.TimeLib;
+
+/** Compare serial CalcLogProb() calls with CkdeEvaluator for a range of bandwidths and thread counts. */
+public class BenchmarkCkdeEvaluator
+{
+  public static void main(String[] args)
+  {
+    final String assetName = "synthetic";
+    Random rng = new Random(1234);
+    Sequence seq = new Sequence(assetName);
+    long time = TimeLib.toMs(1990, Month.JANUARY, 2);
+    double price = 100.0;
+    for (int i = 0; i < 6000; ++i) {
+      FeatureVec v = new FeatureVec(FinLib.AdjClose + 1);
+      v.fill(price);
+      seq.addData(v, time);
+      price *= 1.0 + 0.0003 + rng.nextGaussian() * 0.01;
+      time = TimeLib.plusBusinessDays(time, 1);
+    }
+    ExploreCKDE.store.add(seq);
+
+    long timeStart = TimeLib.toNextBusinessDay(seq.getTimeMS(300));
+    long timeEnd = seq.getEndMS();
+    FeatureSet features = new FeatureSet(
+        new Momentum(20, 1, 270, 210, ReturnOrMul.Return, CompoundPeriod.Weekly, FinLib.AdjClose),
+        new Momentum(20, 1, 90, 70, ReturnOrMul.Return, CompoundPeriod.Weekly, FinLib.AdjClose),
+        new Momentum(60, 1, 270, 240, ReturnOrMul.Return, CompoundPeriod.Weekly, FinLib.AdjClose));
+    WeightedL2 metric = new WeightedL2(new double[] { 0.55, 0.27, 0.18 });
+    Kernel kernel = new EpanechnikovKernel();
+    double fraction = 0.3;
+    long delay = Duration.ofDays(730).toMillis();
+    double[] bandwidths = new double[] { 0.1, 0.2, 0.3, 0.5, 0.7, 1.0, 1.5, 2.0 };
+
+    long t0 = TimeLib.getTime();
+    double[] expected = new double[bandwidths.length];
+    for (int i = 0; i < bandwidths.length; ++i) {
+      expected[i] = ExploreCKDE.CalcLogProb(assetName, features, metric, kernel, bandwidths[i], fraction, delay,
+          timeStart, timeEnd);
+    }
+    long serialTime = TimeLib.getTime() - t0;
+    System.out.printf("Serial CalcLogProb (%d bandwidths): %dms\n", bandwidths.length, serialTime);
+
+    // Generate the cached examples once so that all thread counts do the same work.
+    CkdeEvaluator.getExamples(assetName, features, timeStart, timeEnd);
+    final int nMaxThreads = Runtime.getRuntime().availableProcessors();
+    for (int nThreads = 1; nThreads <= nMaxThreads; nThreads *= 2) {
+      ForkJoinPool pool = new ForkJoinPool(nThreads);
+      long t1 = TimeLib.getTime();
+      CkdeEvaluator evaluator = new CkdeEvaluator(assetName, features, metric, kernel, fraction, delay, timeStart,
+          timeEnd, pool);
+      double[] logProbs = evaluator.logProb(bandwidths);
+      long t2 = TimeLib.getTime();
+      pool.shutdown();
+      for (int i = 0; i < bandwidths.length; ++i) {
+        assert logProbs[i] == expected[i];
+      }
+      double speedup = (double) serialTime / Math.max(t2 - t1, 1);
+      System.out.printf("Threads: %2d  %5dms  (%.1fx)\n", nThreads, t2 - t1, speedup);
+    }
+  }
+}
@@ -0,0 +1,53 @@
+package org.minnen.retiretool.ckde;
+
+import java.util.Random;
+
+/** Time CDF and quantile evaluation for KDEs of different sizes. */
+public class BenchmarkKDE
+{
+  public static void main(String[] args)
+  {
+    final int nReps = 5;
+    Random rng = new Random(1234);
+    double[] pcts = new double[99];
+    for (int i = 0; i < pcts.length; ++i) {
+      pcts[i] = i + 1;
+    }
+
+    System.out.printf("%7s | %10s %12s %12s\n", "N", "1000 CDFs", "99x single", "99 batch");
+    for (int n : new int[] { 1000, 10000, 100000 }) {
+      double[] values = new double[n];
+      double[] weights = new double[n];
+      for (int i = 0; i < n; ++i) {
+        values[i] = rng.nextGaussian() * 5.0;
+        weights[i] = rng.nextDouble();
+      }
+      KDE kde = new KDE(values, weights, Double.NaN);
+
+      long cdfTime = 0, singleTime = 0, batchTime = 0;
+      double sum = 0.0;
+      for (int rep = 0; rep < nReps; ++rep) {
+        long t0 = System.nanoTime();
+        for (int i = 0; i < 1000; ++i) {
+          sum += kde.cdf(rng.nextGaussian() * 5.0);
+        }
+        long t1 = System.nanoTime();
+        for (double pct : pcts) {
+          sum += kde.percentile(pct);
+        }
+        long t2 = System.nanoTime();
+        double[] curve = kde.percentiles(pcts);
+        long t3 = System.nanoTime();
+        sum += curve[49];
+        if (rep > 0) { // first round is warm-up
+          cdfTime += t1 - t0;
+          singleTime += t2 - t1;
+          batchTime += t3 - t2;
+        }
+      }
+      final double ms = 1e6 * (nReps - 1);
+      System.out.printf("%7d | %8.2fms %10.2fms %10.2fms   (%.1f)\n", n, cdfTime / ms, singleTime / ms,
+          batchTime / ms, sum);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package org.minnen.retiretool.ckde;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.ml.Example;
+import org.minnen.retiretool.ml.distance.DistanceMetric;
+import org.minnen.retiretool.ml.distance.L2;
+import org.minnen.retiretool.ml.distance.NeighborIndex;
+import org.minnen.retiretool.ml.distance.WeightedL2;
+import org.minnen.retiretool.util.TimeLib;
+
+/** Compare brute-force and indexed neighbor searches (ExploreCKDE.findNeighbors) on random data. */
+public class BenchmarkNeighbors
+{
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+
+  private static List<Example> genExamples(Random rng, int n, int D)
+  {
+    List<Example> examples = new ArrayList<>();
+    for (int i = 0; i < n; ++i) {
+      FeatureVec x = new FeatureVec(D);
+      for (int d = 0; d < D; ++d) {
+        x.set(d, rng.nextGaussian());
+      }
+      x.setTime(i * DAY);
+      examples.add(Example.forRegression(x, rng.nextGaussian()));
+    }
+    return examples;
+  }
+
+  public static void main(String[] args)
+  {
+    final int nQueries = 100;
+    final long delay = 730 * DAY;
+    final double fraction = 0.01;
+    Random rng = new Random(1234);
+
+    System.out.printf("%7s %3s %10s | %9s %9s %9s | %7s\n", "N", "D", "Metric", "Build", "Brute", "Index", "Speedup");
+    for (int N : new int[] { 10000, 50000, 200000 }) {
+      for (int D : new int[] { 2, 5, 10, 20 }) {
+        List<Example> examples = genExamples(rng, N, D);
+        for (DistanceMetric metric : new DistanceMetric[] { new L2(), new WeightedL2(D) }) {
+          long t0 = TimeLib.getTime();
+          NeighborIndex index = NeighborIndex.build(examples, metric);
+          long t1 = TimeLib.getTime();
+
+          long brute = 0, indexed = 0;
+          for (int i = 0; i < nQueries; ++i) {
+            FeatureVec q = examples.get(rng.nextInt(N)).x;
+            long a = TimeLib.getTime();
+            List<Neighbor> expected = ExploreCKDE.findNeighbors(q, examples, metric, null, fraction, delay);
+            long b = TimeLib.getTime();
+            List<Neighbor> nbs = ExploreCKDE.findNeighbors(q, index, null, fraction, delay);
+            long c = TimeLib.getTime();
+            assert nbs.size() == expected.size();
+            brute += b - a;
+            indexed += c - b;
+          }
+          System.out.printf("%7d %3d %10s | %7dms %7dms %7dms | %6.1fx\n", N, D, metric.getClass().getSimpleName(),
+              t1 - t0, brute, indexed, (double) brute / Math.max(indexed, 1));
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,265 @@
+package org.minnen.retiretool.ckde;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import org.minnen.retiretool.ml.Example;
+import org.minnen.retiretool.ml.distance.DistanceMetric;
+import org.minnen.retiretool.ml.distance.NeighborIndex;
+import org.minnen.retiretool.ml.kernel.Kernel;
+import org.minnen.retiretool.predictor.features.FeatureExtractor;
+import org.minnen.retiretool.util.Library;
+
+/**
+ * Scores a CKDE model by the log-likelihood of its examples (same result as ExploreCKDE.CalcLogProb).
+ *
+ * Examples are generated once per asset, feature configuration (see FeatureExtractor.getKey()), and time range, and
+ * the most recently used lists are cached across evaluators (see setMaxCachedExamples()). The neighbors of each
+ * example (and their kernel weights) don't depend on the bandwidth so they're found once and any number of bandwidths
+ * can be scored in a single pass. Per-example work runs on a fork/join pool and the log-densities are summed
+ * in example order so results are identical for any number of threads.
+ */
+public class CkdeEvaluator
+{
+  /** Examples are generated every STEP business days and predict the return over RETURN_DAYS. */
+  public static final int           STEP              = 2;
+  public static final int           RETURN_DAYS       = 10;
+
+  /** Weight of the uniform "black swan" component mixed with each KDE. */
+  public static final double        PROB_BLACK_SWAN   = 0.001;
+
+  /** Maximum number of examples handled by a single fork/join task. */
+  private static final int          GRAIN             = 16;
+
+  /** Pending or finished example lists (see setMaxCachedExamples()). */
+  private static final ExampleCache exampleCache      = new ExampleCache();
+
+  /** Maximum number of example lists in the cache. */
+  private static int                maxCachedExamples = 8;
+
+  private static final Uniform      uniform           = new Uniform(-100.0, 200.0);
+
+  public final List<Example>        examples;
+  private final ForkJoinPool        pool;
+
+  /** KDE for each example (the bandwidth is replaced for each query). */
+  private final KDE[]               kdes;
+
+  /** Fork/join task that runs `body` for every index in [from, to). */
+  private static class RangeTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    private final IntConsumer body;
+    private final int         from;
+    private final int         to;
+
+    public RangeTask(IntConsumer body, int from, int to)
+    {
+      this.body = body;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (to - from <= GRAIN) {
+        for (int i = from; i < to; ++i) {
+          body.accept(i);
+        }
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new RangeTask(body, from, mid), new RangeTask(body, mid, to));
+      }
+    }
+  }
+
+  public CkdeEvaluator(String assetName, FeatureExtractor features, DistanceMetric metric, Kernel kernel,
+      double fraction, long delay, long timeStart, long timeEnd)
+  {
+    this(assetName, features, metric, kernel, fraction, delay, timeStart, timeEnd, ForkJoinPool.commonPool());
+  }
+
+  public CkdeEvaluator(String assetName, FeatureExtractor features, DistanceMetric metric, Kernel kernel,
+      double fraction, long delay, long timeStart, long timeEnd, ForkJoinPool pool)
+  {
+    this.pool = pool;
+    examples = getExamples(assetName, features, timeStart, timeEnd);
+    kdes = new KDE[examples.size()];
+
+    // Find neighbors once; the bandwidth given here is a placeholder.
+    NeighborIndex index = NeighborIndex.build(examples, metric);
+    pool.invoke(new RangeTask(i -> {
+      List<Neighbor> nbs = ExploreCKDE.findNeighbors(examples.get(i).x, index, kernel, fraction, delay);
+      kdes[i] = new KDE(nbs, 1.0);
+    }, 0, kdes.length));
+  }
+
+  /** LRU map from cache key to the task that generates (or generated) the examples. */
+  private static class ExampleCache extends LinkedHashMap<CacheKey, FutureTask<List<Example>>>
+  {
+    private static final long serialVersionUID = 1L;
+
+    public ExampleCache()
+    {
+      super(16, 0.75f, true);
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<CacheKey, FutureTask<List<Example>>> eldest)
+    {
+      return size() > maxCachedExamples;
+    }
+  }
+
+  /** Key for the example cache; features are compared by configuration if possible, otherwise by identity. */
+  private static class CacheKey
+  {
+    private final String assetName;
+    private final Object features;
+    private final long   timeStart;
+    private final long   timeEnd;
+
+    public CacheKey(String assetName, FeatureExtractor features, long timeStart, long timeEnd)
+    {
+      this.assetName = assetName;
+      String key = features.getKey();
+      this.features = (key == null ? features : key);
+      this.timeStart = timeStart;
+      this.timeEnd = timeEnd;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (this == obj) return true;
+      if (!(obj instanceof CacheKey)) return false;
+      CacheKey other = (CacheKey) obj;
+      return assetName.equals(other.assetName) && features.equals(other.features) && timeStart == other.timeStart
+          && timeEnd == other.timeEnd;
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return Objects.hash(assetName, features, timeStart, timeEnd);
+    }
+  }
+
+  /**
+   * Set the maximum number of example lists kept in the cache (least recently used lists are dropped first).
+   * 
+   * A list holds one example every STEP business days, so each entry is small for a single asset, but a search over
+   * feature configurations would otherwise keep every list it ever generated.
+   */
+  public static void setMaxCachedExamples(int maxLists)
+  {
+    synchronized (exampleCache) {
+      maxCachedExamples = maxLists;
+      Iterator<CacheKey> it = exampleCache.keySet().iterator();
+      while (exampleCache.size() > maxCachedExamples) {
+        it.next();
+        it.remove();
+      }
+    }
+  }
+
+  /**
+   * @return examples for the given asset, features, and time range (generated on the first request).
+   * 
+   * Only the cache lookup holds the lock; examples are generated by the first caller and concurrent requests for the
+   * same key wait for that result.
+   */
+  public static List<Example> getExamples(String assetName, FeatureExtractor features, long timeStart, long timeEnd)
+  {
+    CacheKey key = new CacheKey(assetName, features, timeStart, timeEnd);
+    FutureTask<List<Example>> task;
+    boolean isNew = false;
+    synchronized (exampleCache) {
+      task = exampleCache.get(key);
+      if (task == null) {
+        task = new FutureTask<>(() -> Collections
+            .unmodifiableList(ExploreCKDE.genExamples(assetName, features, STEP, RETURN_DAYS, timeStart, timeEnd)));
+        exampleCache.put(key, task);
+        isNew = true;
+      }
+    }
+    if (isNew) {
+      task.run();
+    }
+
+    try {
+      return task.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e.getMessage(), e);
+    } catch (ExecutionException e) {
+      // Don't cache failures.
+      synchronized (exampleCache) {
+        exampleCache.remove(key, task);
+      }
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+      if (cause instanceof Error) throw (Error) cause;
+      throw new RuntimeException(cause.getMessage(), cause);
+    }
+  }
+
+  /** Remove all cached examples (e.g. after the underlying data changes). */
+  public static void clearCache()
+  {
+    synchronized (exampleCache) {
+      exampleCache.clear();
+    }
+  }
+
+  public int size()
+  {
+    return examples.size();
+  }
+
+  /** @return log-likelihood of the examples for a single bandwidth. */
+  public double logProb(double bandwidth)
+  {
+    return logProb(new double[] { bandwidth })[0];
+  }
+
+  /** @return log-likelihood of the examples for each bandwidth. */
+  public double[] logProb(double[] bandwidths)
+  {
+    final int n = kdes.length;
+    final int m = bandwidths.length;
+    final double[][] logs = new double[m][n];
+    pool.invoke(new RangeTask(i -> {
+      final double y = examples.get(i).y;
+      Mixture mixture = new Mixture();
+      for (int j = 0; j < m; ++j) {
+        mixture.clear();
+        mixture.add(kdes[i].withBandwidth(bandwidths[j]), 1.0 - PROB_BLACK_SWAN);
+        mixture.add(uniform, PROB_BLACK_SWAN);
+        logs[j][i] = Math.log(mixture.density(y));
+      }
+    }, 0, n));
+
+    // Sum serially in example order so that the result doesn't depend on how the work was split.
+    double[] logProbs = new double[m];
+    for (int j = 0; j < m; ++j) {
+      double logProb = Library.LOG_ONE;
+      for (int i = 0; i < n; ++i) {
+        logProb += logs[j][i];
+      }
+      logProbs[j] = logProb;
+    }
+    return logProbs;
+  }
+}
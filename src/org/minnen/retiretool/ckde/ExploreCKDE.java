@@ -6,8 +6,9 @@ import java.time.Duration;
 import java.time.Month;
 import java.time.temporal.TemporalAdjusters;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.minnen.retiretool.broker.Broker;
 import org.minnen.retiretool.broker.SimFactory;
@@ -17,8 +18,8 @@ import org.minnen.retiretool.data.DataIO;
 import org.minnen.retiretool.data.DiscreteDistribution;
 import org.minnen.retiretool.data.FeatureVec;
 import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.data.SequenceSource;
 import org.minnen.retiretool.data.SequenceStore;
-import org.minnen.retiretool.data.Sequence.EndpointBehavior;
 import org.minnen.retiretool.data.yahoo.YahooIO;
 import org.minnen.retiretool.ml.Example;
 import org.minnen.retiretool.predictor.config.ConfigConst;
@@ -26,8 +27,10 @@ import org.minnen.retiretool.predictor.config.ConfigMixed;
 import org.minnen.retiretool.predictor.config.PredictorConfig;
 import org.minnen.retiretool.predictor.daily.Predictor;
 import org.minnen.retiretool.ml.distance.DistanceMetric;
+import org.minnen.retiretool.ml.distance.KnnHeap;
 import org.minnen.retiretool.ml.distance.L1;
 import org.minnen.retiretool.ml.distance.L2;
+import org.minnen.retiretool.ml.distance.NeighborIndex;
 import org.minnen.retiretool.ml.distance.WeightedL2;
 import org.minnen.retiretool.ml.kernel.EpanechnikovKernel;
 import org.minnen.retiretool.ml.kernel.Kernel;
@@ -80,8 +83,10 @@ public class ExploreCKDE
     if (!TimeLib.isBusinessDay(TimeLib.ms2date(today))) {
       today = TimeLib.toNextBusinessDay(today);
     }
-    Broker broker = new Broker(store, Slippage.None, today);
-    Sequence seq = store.get(assetName);
+    // Lock a view so that examples can be generated in several threads (see CkdeEvaluator.getExamples()).
+    SequenceStore view = store.view();
+    Broker broker = new Broker(view, Slippage.None, today);
+    Sequence seq = view.get(assetName);
     int lastIndex = seq.getClosestIndex(timeEnd);
 
     while (true) {
@@ -113,25 +118,55 @@ public class ExploreCKDE
   {
     assert q.hasTime();
 
-    // Calculate distance to all potential neighbors.
-    List<Neighbor> all = new ArrayList<Neighbor>();
+    // Count potential neighbors.
+    int nEligible = 0;
     for (Example example : examples) {
       long dtime = example.getTime() - q.getTime();
       if (dtime >= 0 && dtime < delay) continue;
-      double dist = metric.distance(example.x, q);
-      all.add(new Neighbor(example.y, dist, 1.0, example.getTime()));
+      ++nEligible;
     }
-    int nNeighbors = (int) Math.round(all.size() * fraction);
-    // System.out.printf("All: %d Neighbors: %d\n", all.size(), nNeighbors);
+    int nNeighbors = (int) Math.round(nEligible * fraction);
+    // System.out.printf("All: %d Neighbors: %d\n", nEligible, nNeighbors);
 
-    // Grab the closest N neighbors.
-    Collections.sort(all);
+    // Keep the closest N neighbors.
+    KnnHeap heap = new KnnHeap(nNeighbors);
+    for (int i = 0; i < examples.size(); ++i) {
+      Example example = examples.get(i);
+      long dtime = example.getTime() - q.getTime();
+      if (dtime >= 0 && dtime < delay) continue;
+      heap.offer(i, metric.distance(example.x, q));
+    }
+    int[] indices = new int[heap.size()];
+    double[] dists = new double[heap.size()];
+    heap.drain(indices, dists);
+    List<Neighbor> neighbors = new ArrayList<Neighbor>();
+    for (int i = 0; i < indices.length; ++i) {
+      Example example = examples.get(indices[i]);
+      neighbors.add(new Neighbor(example.y, dists[i], 1.0, example.getTime()));
+    }
+    calcWeights(neighbors, kernel);
+    return neighbors;
+  }
+
+  /** Same as findNeighbors() above but the search uses a prebuilt index. */
+  public static List<Neighbor> findNeighbors(FeatureVec q, NeighborIndex index, Kernel kernel, double fraction,
+      long delay)
+  {
+    assert q.hasTime();
+    int nNeighbors = (int) Math.round(index.countEligible(q.getTime(), delay) * fraction);
     List<Neighbor> neighbors = new ArrayList<Neighbor>();
-    for (int i = 0; i < nNeighbors; ++i) {
-      neighbors.add(all.get(i));
+    for (NeighborIndex.Match match : index.nearest(q, nNeighbors, delay)) {
+      Example example = index.get(match.index);
+      neighbors.add(new Neighbor(example.y, match.distance, 1.0, example.getTime()));
     }
+    calcWeights(neighbors, kernel);
+    return neighbors;
+  }
 
-    // Calculate weight for each neighbor.
+  /** Calculate weight for each neighbor (neighbors must be sorted by increasing distance). */
+  private static void calcWeights(List<Neighbor> neighbors, Kernel kernel)
+  {
+    final int nNeighbors = neighbors.size();
     if (kernel != null && nNeighbors > 0) {
       double maxDist = neighbors.get(nNeighbors - 1).distance * 1.01;
       // System.out.printf("Max Dist: %.3f\n", maxDist);
@@ -139,8 +174,6 @@ public class ExploreCKDE
         neighbor.weight = kernel.weight(neighbor.distance / maxDist);
       }
     }
-
-    return neighbors;
   }
 
   public static double CalcLogProb(String assetName, FeatureExtractor features, DistanceMetric metric, Kernel kernel,
@@ -151,8 +184,9 @@ public class ExploreCKDE
     Mixture mixture = new Mixture();
     double probBlackSwan = 0.001;
     double logProb = Library.LOG_ONE;
+    NeighborIndex index = NeighborIndex.build(examples, metric);
     for (Example example : examples) {
-      List<Neighbor> nbs = findNeighbors(example.x, examples, metric, kernel, fraction, delay);
+      List<Neighbor> nbs = findNeighbors(example.x, index, kernel, fraction, delay);
       KDE kde = new KDE(nbs, bandwidth);
       mixture.clear();
       mixture.add(kde, 1.0 - probBlackSwan);
@@ -190,20 +224,17 @@ public class ExploreCKDE
       YahooIO.updateDailyData(symbol, 8 * TimeLib.MS_IN_HOUR);
     }
 
-    // Load data and trim to same time period.
-    List<Sequence> seqs = new ArrayList<>();
+    // Load data in parallel and trim to same time period.
+    Map<String, SequenceSource> sources = new LinkedHashMap<>();
     for (String symbol : fundSymbols) {
-      File file = YahooIO.getFileEOD(symbol);
-      Sequence seq = YahooIO.loadData(file);
-      // System.out.printf("%s: [%s]\n", seq.getName(), TimeLib.formatDate(seq.getStartMS()));
-      seqs.add(seq);
+      sources.put(symbol, SequenceSource.yahoo(YahooIO.getFileEOD(symbol)));
     }
-
-    long commonStart = TimeLib.calcCommonStart(seqs);
-    long commonEnd = TimeLib.calcCommonEnd(seqs);
+    long[] common = store.addAll(sources);
+    long commonStart = common[0];
+    long commonEnd = common[1];
     commonEnd = TimeLib.toMs(2012, Month.DECEMBER, 31); // TODO
     store.setCommonTimes(commonStart, commonEnd);
-    System.out.printf("Common[%d]: [%s] -> [%s]\n", seqs.size(), TimeLib.formatDate(commonStart),
+    System.out.printf("Common[%d]: [%s] -> [%s]\n", sources.size(), TimeLib.formatDate(commonStart),
         TimeLib.formatDate(commonEnd));
 
     long timeSimStart = TimeLib
@@ -214,14 +245,6 @@ public class ExploreCKDE
     double nSimMonths = TimeLib.monthsBetween(timeSimStart, timeSimEnd);
     System.out.printf("Simulation Start: [%s] (%.1f months total)\n", TimeLib.formatDate(timeSimStart), nSimMonths);
 
-    // Extract common subsequence from each data sequence and add to the sequence store.
-    for (int i = 0; i < seqs.size(); ++i) {
-      Sequence seq = seqs.get(i);
-      seq = seq.subseq(commonStart, commonEnd, EndpointBehavior.Closest);
-      seqs.set(i, seq);
-      store.add(seq);
-    }
-
     // Setup simulation.
     Sequence guideSeq = store.get(fundSymbols[0]).dup();
     PriceModel valueModel = PriceModel.adjCloseModel;
@@ -271,11 +294,20 @@ public class ExploreCKDE
     // WeightedL2 metric = new WeightedL2(new double[] { 0.64, 0.27, 0.09 });
     WeightedL2 metric = new WeightedL2(new double[] { 0.55, 0.27, 0.18 });
     Kernel kernel = new EpanechnikovKernel();
-    double bandwidth = 0.3;
     long delay = Duration.ofDays(730).toMillis();
     double fraction = 0.3;
 
     String assetName = "VTSMX";
+
+    // Pick the bandwidth with the highest log-likelihood (neighbors are found once for all candidates).
+    double[] bandwidths = new double[] { 0.1, 0.2, 0.3, 0.5, 0.8, 1.2, 2.0 };
+    CkdeEvaluator evaluator = new CkdeEvaluator(assetName, features, metric, kernel, fraction, delay, timeSimStart,
+        timeSimEnd);
+    double[] logProbs = evaluator.logProb(bandwidths);
+    for (int i = 0; i < bandwidths.length; ++i) {
+      System.out.printf("Bandwidth=%.2f  Log(prob): %f\n", bandwidths[i], logProbs[i]);
+    }
+    double bandwidth = bandwidths[Library.argmax(logProbs)];
     // Random rng = new Random();
     // double best = Double.NEGATIVE_INFINITY;
     // FeatureVec weights = new FeatureVec(3);
@@ -319,10 +351,11 @@ public class ExploreCKDE
     Sequence actualReturn = new Sequence("Actual");
 
     long t0 = TimeLib.getTime();
+    NeighborIndex index = NeighborIndex.build(examples, metric);
     for (int i = 0; i < asset.length() - returnDays - 1; ++i) {
       long time = asset.getTimeMS(i);
       int j = helper.getClosestIndex(time);
-      List<Neighbor> nbs = findNeighbors(examples.get(j).x, examples, metric, kernel, fraction, delay);
+      List<Neighbor> nbs = findNeighbors(examples.get(j).x, index, kernel, fraction, delay);
       KDE kd = new KDE(nbs, bandwidth);
       median.addData(kd.percentile(50.0), time);
       percentile20.addData(kd.percentile(20.0), time);
@@ -1,9 +1,6 @@
 package org.minnen.retiretool.ckde;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.List;
 
 import org.minnen.retiretool.util.Library;
@@ -14,8 +11,15 @@ import smile.stat.distribution.GaussianDistribution;
 /** Implements a 1D kernel density estimate. */
 public class KDE extends Distribution
 {
-  private final List<Neighbor> neighbors;
+  /** Sorted values (total returns) of the neighbors. */
   private final double[]       values;
+
+  /** Normalized weight for each value. */
+  private final double[]       weights;
+
+  /** cumWeights[i] = sum of weights[0..i-1] so the mass below any index is available in constant time. */
+  private final double[]       cumWeights;
+
   private GaussianDistribution gauss;
 
   public final static double[] cdflut;
@@ -36,29 +40,39 @@ public class KDE extends Distribution
 
   public KDE(List<Neighbor> neighbors, double bandwidth)
   {
-    // Keep a local copy of the neighbors.
-    this.neighbors = new ArrayList<Neighbor>(neighbors);
+    this(Neighbor.extractReturns(neighbors), extractWeights(neighbors), bandwidth);
+  }
+
+  /**
+   * Create a KDE from parallel arrays of values and weights.
+   *
+   * @param values value (total return) for each neighbor (in any order)
+   * @param weights weight for each neighbor (need not be normalized)
+   * @param bandwidth standard deviation of the Gaussian kernel, or NaN to estimate it from the values
+   */
+  public KDE(double[] values, double[] weights, double bandwidth)
+  {
+    assert values.length == weights.length;
+    final int n = values.length;
 
     // Sort neighbors by total return.
-    Collections.sort(this.neighbors, new Comparator<Neighbor>()
-    {
-      @Override
-      public int compare(Neighbor a, Neighbor b)
-      {
-        if (a == b) return 0;
-        if (a.tr < b.tr) return -1;
-        if (a.tr > b.tr) return 1;
-        return 0;
-      }
-    });
-    values = Neighbor.extractReturns(this.neighbors);
+    Integer[] order = new Integer[n];
+    for (int i = 0; i < n; ++i) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+    this.values = new double[n];
+    this.weights = new double[n];
+    for (int i = 0; i < n; ++i) {
+      this.values[i] = values[order[i]];
+      this.weights[i] = weights[order[i]];
+    }
 
     if (Double.isNaN(bandwidth)) {
       // Estimate bandwidth since none was given.
-      int n = values.length;
-      double iqr = values[n * 3 / 4] - values[n / 4];
+      double iqr = this.values[n * 3 / 4] - this.values[n / 4];
       assert iqr > 0.0;
-      double sdev = Library.stdev(values);
+      double sdev = Library.stdev(this.values);
       assert sdev > 0.0;
       bandwidth = 1.06 * Math.min(sdev, iqr / 1.34) / Math.pow(n, 0.2);
     }
@@ -66,13 +80,33 @@ public class KDE extends Distribution
 
     // Ensure weights sum to 1.0.
     double wsum = 0.0;
-    for (Neighbor neighbor : this.neighbors) {
-      wsum += neighbor.weight;
+    for (double w : this.weights) {
+      wsum += w;
     }
     assert wsum > 0.0;
-    for (Neighbor neighbor : this.neighbors) {
-      neighbor.weight /= wsum;
+    cumWeights = new double[n + 1];
+    for (int i = 0; i < n; ++i) {
+      this.weights[i] /= wsum;
+      cumWeights[i + 1] = cumWeights[i] + this.weights[i];
+    }
+  }
+
+  /** Create a KDE that shares the neighbors of `kde` but uses a different bandwidth. */
+  private KDE(KDE kde, double bandwidth)
+  {
+    values = kde.values;
+    weights = kde.weights;
+    cumWeights = kde.cumWeights;
+    gauss = new GaussianDistribution(0.0, bandwidth);
+  }
+
+  private static double[] extractWeights(List<Neighbor> neighbors)
+  {
+    double[] w = new double[neighbors.size()];
+    for (int i = 0; i < w.length; ++i) {
+      w[i] = neighbors.get(i).weight;
     }
+    return w;
   }
 
   public double bandwidth()
@@ -80,24 +114,33 @@ public class KDE extends Distribution
     return gauss.sd();
   }
 
+  /** @return KDE over the same neighbors with the given bandwidth (the neighbor data is shared, not copied). */
+  public KDE withBandwidth(double bandwidth)
+  {
+    return new KDE(this, bandwidth);
+  }
+
+  /** @return index of the first value >= x. */
+  private int lowerBound(double x)
+  {
+    int i = Arrays.binarySearch(values, x);
+    if (i < 0) {
+      i = -i - 1;
+    }
+    return i;
+  }
+
   /** Returns probability density at x. */
   @Override
   public double density(double x)
   {
-    int start = Arrays.binarySearch(values, x - 5 * gauss.sd());
-    if (start < 0) {
-      start = -start - 1;
-    }
-
-    int end = Arrays.binarySearch(values, x + 5 * gauss.sd());
-    if (end < 0) {
-      end = -end - 1;
-    }
+    final double sd = gauss.sd();
+    int start = lowerBound(x - 5 * sd);
+    int end = lowerBound(x + 5 * sd);
 
     double p = 0.0;
     for (int i = start; i < end; ++i) {
-      Neighbor neighbor = neighbors.get(i);
-      p += gauss.p(x - neighbor.tr) * neighbor.weight;
+      p += gauss.p(x - values[i]) * weights[i];
     }
     return p;
   }
@@ -106,72 +149,99 @@ public class KDE extends Distribution
   @Override
   public double cdf(double x)
   {
-    int start = Arrays.binarySearch(values, x - 5 * gauss.sd());
-    if (start < 0) {
-      start = -start - 1;
-    }
-
-    double cdf = 0.0;
-    for (int i = 0; i < start; ++i) {
-      cdf += neighbors.get(i).weight;
-    }
-
-    int end = Arrays.binarySearch(values, x + 5 * gauss.sd());
-    if (end < 0) {
-      end = -end - 1;
-    }
+    return cdf(x, null);
+  }
 
+  /**
+   * Calculate the CDF and (optionally) an approximate density in a single pass.
+   *
+   * @param density if not null, density[0] receives the slope of the interpolated CDF at x
+   * @return CDF at x
+   */
+  private double cdf(double x, double[] density)
+  {
+    final double sd = gauss.sd();
+    final double scale = (cdflut.length - 1) / 10.0;
+    int start = lowerBound(x - 5 * sd);
+    int end = lowerBound(x + 5 * sd);
+
+    // Neighbors below the window contribute their full weight.
+    double cdf = cumWeights[start];
+    double slope = 0.0;
     for (int i = start; i < end; ++i) {
-      Neighbor neighbor = neighbors.get(i);
-      double diff = x - neighbor.tr;
-      // double c = gauss.cdf(diff);
-      double u = diff / gauss.sd();
-      double c = 0.0;
+      double u = (x - values[i]) / sd;
       if (u >= 5.0) {
-        c = 1.0;
+        cdf += weights[i];
       } else if (u > -5.0) {
-        int j = (int) Math.round((u + 5.0) / 10.0 * cdflut.length);
-        c = j < cdflut.length ? cdflut[j] : 1.0;
-        // double cc = gauss.cdf(diff);
-        // System.out.printf("%f, %f (%f)\n", cc, c, Math.abs(c - cc));
+        // Linear interpolation in the lookup table.
+        double f = (u + 5.0) * scale;
+        int j = Math.min((int) f, cdflut.length - 2);
+        double step = cdflut[j + 1] - cdflut[j];
+        cdf += (cdflut[j] + (f - j) * step) * weights[i];
+        slope += step * weights[i];
       }
-      cdf += c * neighbor.weight;
     }
+    if (density != null) density[0] = slope * scale / sd;
     return cdf;
   }
 
   /** Returns the value for the given percentile (e.g. 50 => median). */
   public double percentile(double pct)
   {
-    assert pct >= 0.0 && pct <= 100.0;
-    pct /= 100.0;
-
-    // Binary search for the requested percentile.
-    int n = values.length;
-    double range = values[n - 1] - values[0];
-    double a = values[0] - range;
-    double b = values[n - 1] + range;
-    assert b > a;
-
-    double va = cdf(a);
-    double vb = cdf(b);
-
-    while (b - a > 0.0005) {
-      // System.out.printf("[%.3f -> %.3f] = [%.3f, %.3f]\n", a, b, va, vb);
-      assert va <= pct;
-      assert vb >= pct;
-
-      double m = (a + b) / 2.0;
-      double vm = cdf(m);
-      if (vm < pct) {
-        a = m;
-        va = vm;
-      } else if (vm > pct) {
-        b = m;
-        vb = vm;
+    return percentiles(new double[] { pct })[0];
+  }
+
+  /**
+   * Calculate several percentiles at once.
+   *
+   * Percentiles are solved in increasing order so each search starts from the previous solution and the weighted
+   * empirical quantile of the neighbors (found by a single pass over the sorted values). Each root is finished with
+   * safeguarded Newton steps (bisection whenever a step would leave the current bracket). The derivative comes from the
+   * same pass over the neighbors as the CDF.
+   *
+   * @param pcts percentiles in [0, 100] (any order)
+   * @return value for each percentile (same order as `pcts`)
+   */
+  public double[] percentiles(double[] pcts)
+  {
+    final int n = values.length;
+    final int m = pcts.length;
+    final double sd = gauss.sd();
+    final double xMin = values[0] - 5 * sd;
+    final double xMax = values[n - 1] + 5 * sd;
+
+    Integer[] order = new Integer[m];
+    for (int i = 0; i < m; ++i) {
+      assert pcts[i] >= 0.0 && pcts[i] <= 100.0;
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> Double.compare(pcts[a], pcts[b]));
+
+    double[] results = new double[m];
+    double[] density = new double[1];
+    double a = xMin; // everything below the previous solution has a smaller CDF
+    int k = 0; // walks the sorted values once
+    for (int iOrder = 0; iOrder < m; ++iOrder) {
+      final double p = pcts[order[iOrder]] / 100.0;
+      while (k < n - 1 && cumWeights[k + 1] < p) {
+        ++k;
       }
+      double b = xMax;
+      double x = Math.max(a, Math.min(values[k], b));
+      for (int iter = 0; iter < 100; ++iter) {
+        double f = cdf(x, density) - p;
+        if (Math.abs(f) < 1e-12) break;
+        if (f < 0.0) a = Math.max(a, x);
+        else b = Math.min(b, x);
+        if (b - a <= 1e-10 * Math.max(1.0, Math.abs(x))) break;
+
+        // Newton step, or bisection if the step would leave the bracket (also catches zero density).
+        double next = x - f / density[0];
+        if (!(next > a && next < b)) next = (a + b) / 2.0;
+        x = next;
+      }
+      results[order[iOrder]] = x;
     }
-
-    return (a + b) / 2.0;
+    return results;
   }
 }
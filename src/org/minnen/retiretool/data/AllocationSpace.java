@@ -0,0 +1,296 @@
+package org.minnen.retiretool.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Set of fixed allocations (integer percentages that sum to 100) that satisfy constraints on the number of assets,
+ * the weight of each asset, and which assets are used.
+ *
+ * Allocations are numbered (ranked) in the order produced by the recursive scans in SummaryTools and SimbaPortfolios:
+ * the first symbol gets its largest weight first, then smaller weights, and finally zero. Since an allocation is
+ * identified by its rank, a long is a complete encoding. Counts of completions for each partial allocation are stored
+ * in a table so the number of allocations and the conversions between ranks and weights take O(symbols * weights)
+ * time, and allocations can be visited by splitting the range of ranks instead of building a list.
+ */
+public class AllocationSpace
+{
+  private static final int  TOTAL_WEIGHT = 100;
+
+  private final int         nSymbols;
+  private final int         minAssets;
+  private final int         maxAssets;
+  private final int         minWeight;
+  private final int         maxWeight;
+  private final int         weightStep;
+  private final int[]       caps;
+  private final boolean[]   avoid;
+  private final List<int[]> requiredSets = new ArrayList<>();
+
+  /** Bitmask of the required sets that contain each symbol. */
+  private int[]             requiredMask;
+
+  /** Number of ways to finish each partial allocation (see index()); null until needed. */
+  private long[]            counts;
+
+  /**
+   * Create an allocation space without per-symbol caps, avoided symbols, or required sets.
+   *
+   * @param nSymbols number of symbols
+   * @param minAssets minimum number of assets with a positive weight
+   * @param maxAssets maximum number of assets with a positive weight
+   * @param minWeight minimum weight (percent) for assets that are used; must be positive
+   * @param maxWeight maximum weight (percent) for any asset
+   * @param weightStep difference between successive weights tried for an asset
+   */
+  public AllocationSpace(int nSymbols, int minAssets, int maxAssets, int minWeight, int maxWeight, int weightStep)
+  {
+    assert minWeight > 0 && weightStep > 0;
+    this.nSymbols = nSymbols;
+    this.minAssets = minAssets;
+    this.maxAssets = maxAssets;
+    this.minWeight = minWeight;
+    this.maxWeight = maxWeight;
+    this.weightStep = weightStep;
+    this.caps = new int[nSymbols];
+    this.avoid = new boolean[nSymbols];
+    Arrays.fill(caps, TOTAL_WEIGHT);
+  }
+
+  /** Set the maximum weight for the given symbol. */
+  public synchronized AllocationSpace setCap(int iSymbol, int cap)
+  {
+    caps[iSymbol] = cap;
+    counts = null;
+    return this;
+  }
+
+  /** Never use the symbols where avoid[i] is true. */
+  public synchronized AllocationSpace setAvoid(boolean[] avoid)
+  {
+    assert avoid.length == nSymbols;
+    System.arraycopy(avoid, 0, this.avoid, 0, nSymbols);
+    counts = null;
+    return this;
+  }
+
+  /** Require that at least one of the given symbols is used (an empty set can't be satisfied). */
+  public synchronized AllocationSpace addRequiredSet(int... symbols)
+  {
+    assert requiredSets.size() < 16;
+    requiredSets.add(symbols.clone());
+    counts = null;
+    return this;
+  }
+
+  public int getNumSymbols()
+  {
+    return nSymbols;
+  }
+
+  /** @return number of valid allocations. */
+  public long size()
+  {
+    return getCounts()[index(0, TOTAL_WEIGHT, 0, 0)];
+  }
+
+  /** @return index into `counts` for the given partial allocation. */
+  private int index(int iSymbol, int weightLeft, int nAssets, int mask)
+  {
+    return ((iSymbol * (TOTAL_WEIGHT + 1) + weightLeft) * (maxAssets + 1) + nAssets) * (1 << requiredSets.size())
+        + mask;
+  }
+
+  /** @return largest weight tried for the given symbol (smaller than minWeight if the symbol can't be used). */
+  private int getMaxWeight(int iSymbol, int weightLeft)
+  {
+    if (avoid[iSymbol]) return 0;
+    return Math.min(Math.min(maxWeight, weightLeft), caps[iSymbol]);
+  }
+
+  /**
+   * Fill the table of counts from the last symbol to the first.
+   *
+   * counts[index(i, left, n, mask)] is the number of ways to assign weights to symbols [i, nSymbols) given that `left`
+   * weight remains, `n` assets are already used, and `mask` marks the required sets that are already satisfied.
+   */
+  private synchronized long[] getCounts()
+  {
+    if (counts != null) return counts;
+
+    final int nMasks = 1 << requiredSets.size();
+    final int fullMask = nMasks - 1;
+    requiredMask = new int[nSymbols];
+    for (int iSet = 0; iSet < requiredSets.size(); ++iSet) {
+      for (int iSymbol : requiredSets.get(iSet)) {
+        requiredMask[iSymbol] |= 1 << iSet;
+      }
+    }
+
+    long[] table = new long[index(nSymbols + 1, 0, 0, 0)];
+    for (int i = nSymbols; i >= 0; --i) {
+      for (int left = 0; left <= TOTAL_WEIGHT; ++left) {
+        for (int n = 0; n <= maxAssets; ++n) {
+          for (int mask = 0; mask < nMasks; ++mask) {
+            long count = 0;
+            if (left == 0) {
+              // All weight is assigned so the remaining symbols are zero.
+              count = (n >= minAssets && mask == fullMask ? 1 : 0);
+            } else if (i < nSymbols && left >= minWeight && n < maxAssets) {
+              final int childMask = mask | requiredMask[i];
+              for (int w = getMaxWeight(i, left); w >= minWeight; w -= weightStep) {
+                count = Math.addExact(count, table[index(i + 1, left - w, n + 1, childMask)]);
+              }
+              count = Math.addExact(count, table[index(i + 1, left, n, mask)]);
+            }
+            table[index(i, left, n, mask)] = count;
+          }
+        }
+      }
+    }
+    counts = table;
+    return counts;
+  }
+
+  /**
+   * Find the allocation with the given rank.
+   *
+   * @param rank rank of the allocation in [0, size())
+   * @param weights filled with the weight (percent) of each symbol
+   * @return weights array (for convenience)
+   */
+  public int[] unrank(long rank, int[] weights)
+  {
+    final long[] counts = getCounts();
+    assert rank >= 0 && rank < size();
+    Arrays.fill(weights, 0);
+    int left = TOTAL_WEIGHT, n = 0, mask = 0;
+    for (int i = 0; left > 0; ++i) {
+      assert i < nSymbols;
+      final int childMask = mask | requiredMask[i];
+      for (int w = getMaxWeight(i, left); w >= minWeight; w -= weightStep) {
+        long count = counts[index(i + 1, left - w, n + 1, childMask)];
+        if (rank < count) {
+          weights[i] = w;
+          break;
+        }
+        rank -= count;
+      }
+      if (weights[i] > 0) {
+        left -= weights[i];
+        ++n;
+        mask = childMask;
+      }
+    }
+    assert rank == 0;
+    return weights;
+  }
+
+  /** @return rank of the given allocation or -1 if it's not in this space. */
+  public long rank(int[] weights)
+  {
+    final long[] counts = getCounts();
+    assert weights.length == nSymbols;
+    long rank = 0;
+    int left = TOTAL_WEIGHT, n = 0, mask = 0;
+    for (int i = 0; i < nSymbols; ++i) {
+      if (left == 0 || left < minWeight || n >= maxAssets) {
+        if (weights[i] != 0) return -1;
+        continue;
+      }
+      final int childMask = mask | requiredMask[i];
+      // Allocations that give this symbol a larger weight (or any weight if it's skipped) come first.
+      boolean found = false;
+      for (int w = getMaxWeight(i, left); w >= minWeight; w -= weightStep) {
+        if (w == weights[i]) {
+          found = true;
+          break;
+        }
+        rank += counts[index(i + 1, left - w, n + 1, childMask)];
+      }
+      if (!found && weights[i] != 0) return -1;
+      if (weights[i] > 0) {
+        left -= weights[i];
+        ++n;
+        mask = childMask;
+      }
+    }
+    if (counts[index(nSymbols, left, n, mask)] != 1) return -1;
+    return rank;
+  }
+
+  /** @return spliterator over all allocations in rank order. */
+  public Spliterator<int[]> spliterator()
+  {
+    return spliterator(0, size());
+  }
+
+  /**
+   * Create a spliterator over a range of ranks.
+   *
+   * Each allocation is a new weights array. Splits divide the range of ranks in half, so every split knows its exact
+   * size and parallel streams can start right away.
+   *
+   * @param from first rank (inclusive)
+   * @param to last rank (exclusive)
+   * @return spliterator over allocations with rank in [from, to)
+   */
+  public Spliterator<int[]> spliterator(long from, long to)
+  {
+    assert from >= 0 && from <= to && to <= size();
+    return new RankSpliterator(from, to);
+  }
+
+  /** @return stream over all allocations in rank order. */
+  public Stream<int[]> stream(boolean parallel)
+  {
+    return StreamSupport.stream(spliterator(), parallel);
+  }
+
+  private class RankSpliterator implements Spliterator<int[]>
+  {
+    private long       from;
+    private final long to;
+
+    public RankSpliterator(long from, long to)
+    {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super int[]> action)
+    {
+      if (from >= to) return false;
+      action.accept(unrank(from++, new int[nSymbols]));
+      return true;
+    }
+
+    @Override
+    public Spliterator<int[]> trySplit()
+    {
+      if (to - from < 2) return null;
+      long mid = (from + to) >>> 1;
+      Spliterator<int[]> prefix = new RankSpliterator(from, mid);
+      from = mid;
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize()
+    {
+      return to - from;
+    }
+
+    @Override
+    public int characteristics()
+    {
+      return ORDERED | SIZED | SUBSIZED | IMMUTABLE | NONNULL;
+    }
+  }
+}
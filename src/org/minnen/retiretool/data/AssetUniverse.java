@@ -0,0 +1,116 @@
+package org.minnen.retiretool.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable list of asset names with a fast name-to-index lookup.
+ *
+ * Distributions bound to a universe (see DiscreteDistribution(AssetUniverse)) store weights aligned with the universe
+ * so that copies and comparisons are array operations and looking up a name doesn't require scanning the names.
+ * Universes are meant to be created once (e.g. per predictor or simulation) and shared.
+ */
+public class AssetUniverse
+{
+  /** Interned universes (see of()); there are only a few distinct lists of assets in practice. */
+  private static final Map<List<String>, AssetUniverse> interned = new ConcurrentHashMap<>();
+
+  private final String[]                                names;
+  private final Map<String, Integer>                    nameToIndex;
+
+  /** Universe that this universe extends (its names are a prefix of our names); null if none. */
+  private final AssetUniverse                           parent;
+
+  public AssetUniverse(String... names)
+  {
+    this(null, names.clone());
+  }
+
+  /**
+   * Get the shared universe for the given names.
+   *
+   * Predictors that use the same asset names get the same universe so their distributions can be combined with array
+   * operations.
+   */
+  public static AssetUniverse of(String... names)
+  {
+    List<String> key = Arrays.asList(names.clone());
+    return interned.computeIfAbsent(key, k -> new AssetUniverse(null, k.toArray(new String[k.size()])));
+  }
+
+  private AssetUniverse(AssetUniverse parent, String[] names)
+  {
+    this.parent = parent;
+    this.names = names;
+    this.nameToIndex = new HashMap<>(names.length * 2);
+    for (int i = 0; i < names.length; ++i) {
+      if (names[i] == null) throw new IllegalArgumentException("Asset names can't be null");
+      nameToIndex.putIfAbsent(names[i], i); // first match, same as a linear search
+    }
+  }
+
+  /**
+   * Create a universe that adds new names to the end of this one.
+   *
+   * Indices of existing names don't change, so distributions over this universe line up with distributions over the
+   * extended universe (see isPrefixOf()).
+   *
+   * @return extended universe, or this universe if all of the names are already present
+   */
+  public AssetUniverse extend(String... more)
+  {
+    List<String> added = new ArrayList<>();
+    for (String name : more) {
+      if (indexOf(name) < 0 && !added.contains(name)) added.add(name);
+    }
+    if (added.isEmpty()) return this;
+    String[] extended = Arrays.copyOf(names, names.length + added.size());
+    for (int i = 0; i < added.size(); ++i) {
+      extended[names.length + i] = added.get(i);
+    }
+    return new AssetUniverse(this, extended);
+  }
+
+  /** @return true if `other` is this universe or was extended from it (possibly several times). */
+  public boolean isPrefixOf(AssetUniverse other)
+  {
+    for (AssetUniverse u = other; u != null; u = u.parent) {
+      if (u == this) return true;
+    }
+    return false;
+  }
+
+  public int size()
+  {
+    return names.length;
+  }
+
+  public String getName(int index)
+  {
+    return names[index];
+  }
+
+  /** @return index of the given name or -1 if it's not in this universe. */
+  public int indexOf(String name)
+  {
+    if (name == null) return -1;
+    Integer index = nameToIndex.get(name);
+    return index == null ? -1 : index;
+  }
+
+  /** @return shared array of names (must not be modified). */
+  String[] getNames()
+  {
+    return names;
+  }
+
+  @Override
+  public String toString()
+  {
+    return Arrays.toString(names);
+  }
+}
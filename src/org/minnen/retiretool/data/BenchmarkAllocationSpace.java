@@ -0,0 +1,63 @@
+package org.minnen.retiretool.data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.minnen.retiretool.util.TimeLib;
+import org.minnen.retiretool.vanguard.SummaryTools;
+
+/** Compare building a list of allocations (recursive scan) with streaming them from an AllocationSpace. */
+public class BenchmarkAllocationSpace
+{
+  /** @return heap used (in MB) by live objects after a GC. */
+  private static double getLiveHeapMB()
+  {
+    System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return (runtime.totalMemory() - runtime.freeMemory()) / (1024.0 * 1024.0);
+  }
+
+  public static void main(String[] args)
+  {
+    final int nSymbols = 30;
+    String[] symbols = new String[nSymbols];
+    for (int i = 0; i < nSymbols; ++i) {
+      symbols[i] = String.format("F%02d", i);
+    }
+    SummaryTools.fundSymbols = symbols;
+
+    // { minAssets, maxAssets, minWeight, maxWeight, weightStep }
+    int[] config = new int[] { 3, 4, 10, 40, 10 };
+    System.out.printf("Symbols=%d Assets=[%d, %d] Weight=[%d, %d] Step=%d\n", nSymbols, config[0], config[1],
+        config[2], config[3], config[4]);
+
+    final double baseMB = getLiveHeapMB();
+    long t0 = TimeLib.getTime();
+    List<DiscreteDistribution> portfolios = new ArrayList<>();
+    SummaryTools.scanDistributions(config[0], config[1], config[2], config[3], config[4], portfolios);
+    long t1 = TimeLib.getTime();
+    System.out.printf(" Scan to list:  %8d allocations  %6dms  %.1fM/s  live heap=%.1fMB\n", portfolios.size(),
+        t1 - t0, portfolios.size() / (1000.0 * (t1 - t0)), getLiveHeapMB() - baseMB);
+    portfolios = null;
+
+    getLiveHeapMB();
+    long t2 = TimeLib.getTime();
+    AllocationSpace space = new AllocationSpace(nSymbols, config[0], config[1], config[2], config[3], config[4]);
+    long n = space.size();
+    long t3 = TimeLib.getTime();
+    System.out.printf(" Count (DP):    %8d allocations  %6dms  live heap=%.1fMB\n", n, t3 - t2,
+        getLiveHeapMB() - baseMB);
+    t3 = TimeLib.getTime();
+
+    long sum = space.stream(false).mapToLong(w -> w[0]).sum();
+    long t4 = TimeLib.getTime();
+    System.out.printf(" Stream:        %8d allocations  %6dms  %.1fM/s  (%d)\n", n, t4 - t3, n / (1000.0 * (t4 - t3)),
+        sum);
+
+    long sum2 = space.stream(true).mapToLong(w -> w[0]).sum();
+    long t5 = TimeLib.getTime();
+    assert sum == sum2;
+    System.out.printf(" Parallel (%d):  %8d allocations  %6dms  %.1fM/s\n",
+        Runtime.getRuntime().availableProcessors(), n, t5 - t4, n / (1000.0 * (t5 - t4)));
+  }
+}
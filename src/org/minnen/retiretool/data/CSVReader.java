@@ -0,0 +1,502 @@
+package org.minnen.retiretool.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import org.minnen.retiretool.util.TimeLib;
+
+/**
+ * Fast CSV tokenizer that works directly on bytes.
+ *
+ * The input is read in large blocks into a reusable byte buffer. Each call to next() finds the fields in the next
+ * non-empty line and records their offsets; no String is created unless getString() or getLine() is called. Numbers
+ * and ISO dates are parsed directly from the buffer.
+ *
+ * Fields are trimmed and surrounding quotes are removed (commas inside quotes don't split fields and a doubled quote is
+ * an escaped quote). Empty fields and "none", "n/a", "nd", or "." (case insensitive) are treated as missing values.
+ * Lines with no content, or only a comment (if a comment character is set), are skipped.
+ *
+ * The input is assumed to be ASCII or UTF-8.
+ */
+public class CSVReader implements Closeable
+{
+  private static final int      DEFAULT_BUFFER_SIZE = 1 << 16;
+
+  /** Largest integer that is exactly representable as a double. */
+  private static final long     MAX_EXACT_LONG      = 1L << 53;
+
+  /** Powers of ten that are exactly representable as doubles. */
+  private static final double[] POW10               = new double[23];
+
+  static {
+    POW10[0] = 1.0;
+    for (int i = 1; i < POW10.length; ++i) {
+      POW10[i] = POW10[i - 1] * 10.0;
+    }
+  }
+
+  private final InputStream     in;
+  private byte[]                buf;
+  private int                   pos;
+  private int                   limit;
+  private boolean               eof;
+
+  private int                   lineStart;
+  private int                   lineEnd;
+  private int                   lineNumber;
+
+  private int                   nFields;
+  private int[]                 starts              = new int[16];
+  private int[]                 ends                = new int[16];
+  private boolean[]             escaped             = new boolean[16];
+  private int                   scanPos;
+
+  private int                   commentChar         = -1;
+  private boolean               splitOnWhitespace;
+
+  public CSVReader(File file) throws IOException
+  {
+    this(new FileInputStream(file));
+  }
+
+  public CSVReader(InputStream in)
+  {
+    this.in = in;
+    this.buf = new byte[DEFAULT_BUFFER_SIZE];
+  }
+
+  /** Read CSV data from the given bytes. */
+  public CSVReader(byte[] bytes)
+  {
+    this.in = null;
+    this.buf = bytes;
+    this.limit = bytes.length;
+    this.eof = true;
+  }
+
+  /** Ignore everything (outside of quotes) after the given character on each line. */
+  public CSVReader setCommentChar(char c)
+  {
+    commentChar = c;
+    return this;
+  }
+
+  /** If true, fields are separated by any sequence of commas, spaces, and tabs. */
+  public CSVReader setSplitOnWhitespace(boolean split)
+  {
+    splitOnWhitespace = split;
+    return this;
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    if (in != null) in.close();
+  }
+
+  /**
+   * Advance to the next line that has at least one field.
+   *
+   * @return true if a line was found, false at the end of the input.
+   */
+  public boolean next() throws IOException
+  {
+    while (true) {
+      int iNewline = findNewline();
+      if (iNewline < 0) return false;
+      lineStart = pos;
+      lineEnd = (iNewline < limit ? iNewline : limit);
+      pos = Math.min(iNewline + 1, limit);
+      ++lineNumber;
+
+      // Skip the UTF-8 byte order mark.
+      if (lineNumber == 1 && lineEnd - lineStart >= 3 && buf[lineStart] == (byte) 0xEF
+          && buf[lineStart + 1] == (byte) 0xBB && buf[lineStart + 2] == (byte) 0xBF) {
+        lineStart += 3;
+      }
+
+      tokenize(lineStart, lineEnd);
+      if (nFields > 0) return true;
+    }
+  }
+
+  /** @return index of the next newline, `limit` if the last line has no newline, or -1 at the end of the input. */
+  private int findNewline() throws IOException
+  {
+    int i = pos;
+    while (true) {
+      while (i < limit) {
+        if (buf[i] == '\n') return i;
+        ++i;
+      }
+      if (eof) return (pos < limit ? limit : -1);
+
+      // Need more data: move the partial line to the front of the buffer (or grow it) and read more.
+      int n = limit - pos;
+      if (pos > 0) {
+        System.arraycopy(buf, pos, buf, 0, n);
+      } else if (n == buf.length) {
+        buf = Arrays.copyOf(buf, buf.length * 2);
+      }
+      i -= pos;
+      pos = 0;
+      limit = n;
+      int nRead = in.read(buf, limit, buf.length - limit);
+      if (nRead < 0) eof = true;
+      else limit += nRead;
+    }
+  }
+
+  private static boolean isBlank(byte b)
+  {
+    return b == ' ' || b == '\t' || b == '\r';
+  }
+
+  private boolean isDelimiter(byte b)
+  {
+    return b == ',' || (splitOnWhitespace && (b == ' ' || b == '\t'));
+  }
+
+  private void tokenize(int start, int end)
+  {
+    nFields = 0;
+    int i = start;
+    while (true) {
+      while (i < end && isBlank(buf[i])) {
+        ++i;
+      }
+      int fieldStart = i;
+      int fieldEnd;
+      boolean hasEscapes = false;
+      boolean quoted = (i < end && buf[i] == '"');
+      if (quoted) {
+        fieldStart = ++i;
+        while (i < end) {
+          if (buf[i] == '"') {
+            if (i + 1 < end && buf[i + 1] == '"') {
+              hasEscapes = true;
+              i += 2;
+              continue;
+            }
+            break;
+          }
+          ++i;
+        }
+        fieldEnd = i;
+        while (i < end && !isDelimiter(buf[i]) && buf[i] != commentChar) {
+          ++i; // skip closing quote (and anything else before the delimiter)
+        }
+      } else {
+        while (i < end && !isDelimiter(buf[i]) && buf[i] != commentChar) {
+          ++i;
+        }
+        fieldEnd = i;
+        while (fieldEnd > fieldStart && isBlank(buf[fieldEnd - 1])) {
+          --fieldEnd;
+        }
+      }
+
+      // A line with a single empty (unquoted) field is a blank line.
+      boolean atEnd = (i >= end || buf[i] == commentChar);
+      if (atEnd && nFields == 0 && fieldStart == fieldEnd && !quoted) break;
+      addField(fieldStart, fieldEnd, hasEscapes);
+      if (atEnd) break;
+
+      ++i; // skip delimiter
+      if (splitOnWhitespace) {
+        while (i < end && (isDelimiter(buf[i]) || isBlank(buf[i]))) {
+          ++i;
+        }
+        if (i >= end || buf[i] == commentChar) break;
+      }
+    }
+  }
+
+  private void addField(int start, int end, boolean hasEscapes)
+  {
+    if (nFields == starts.length) {
+      starts = Arrays.copyOf(starts, nFields * 2);
+      ends = Arrays.copyOf(ends, nFields * 2);
+      escaped = Arrays.copyOf(escaped, nFields * 2);
+    }
+    starts[nFields] = start;
+    ends[nFields] = end;
+    escaped[nFields] = hasEscapes;
+    ++nFields;
+  }
+
+  /** @return number of fields in the current line. */
+  public int getNumFields()
+  {
+    return nFields;
+  }
+
+  /** @return line number (starting at one) of the current line. */
+  public int getLineNumber()
+  {
+    return lineNumber;
+  }
+
+  /** @return current line as a string (useful for error messages). */
+  public String getLine()
+  {
+    return new String(buf, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8).trim();
+  }
+
+  private void checkIndex(int i)
+  {
+    if (i < 0 || i >= nFields) {
+      throw new IndexOutOfBoundsException(String.format("Field %d (line %d has %d fields)", i, lineNumber, nFields));
+    }
+  }
+
+  /** @return String holding the i^th field. */
+  public String getString(int i)
+  {
+    checkIndex(i);
+    String s = new String(buf, starts[i], ends[i] - starts[i], StandardCharsets.UTF_8);
+    return escaped[i] ? s.replace("\"\"", "\"") : s;
+  }
+
+  /** @return true if the i^th field is empty. */
+  public boolean isEmpty(int i)
+  {
+    checkIndex(i);
+    return starts[i] == ends[i];
+  }
+
+  /** @return true if the i^th field equals `s` (ignoring ASCII case). */
+  public boolean equalsIgnoreCase(int i, String s)
+  {
+    checkIndex(i);
+    return ends[i] - starts[i] == s.length() && regionMatches(starts[i], s);
+  }
+
+  /** @return true if the i^th field starts with `prefix` (ignoring ASCII case). */
+  public boolean startsWithIgnoreCase(int i, String prefix)
+  {
+    checkIndex(i);
+    return ends[i] - starts[i] >= prefix.length() && regionMatches(starts[i], prefix);
+  }
+
+  private boolean regionMatches(int start, String s)
+  {
+    for (int j = 0; j < s.length(); ++j) {
+      int a = buf[start + j];
+      int b = s.charAt(j);
+      if (a != b && toLower(a) != toLower(b)) return false;
+    }
+    return true;
+  }
+
+  private static int toLower(int c)
+  {
+    return (c >= 'A' && c <= 'Z') ? c + ('a' - 'A') : c;
+  }
+
+  /** @return true if the i^th field is empty or a missing-value marker ("none", "n/a", "nd", "."). */
+  public boolean isMissing(int i)
+  {
+    checkIndex(i);
+    int n = ends[i] - starts[i];
+    if (n == 0) return true;
+    if (n > 4) return false;
+    return equalsIgnoreCase(i, ".") || equalsIgnoreCase(i, "nd") || equalsIgnoreCase(i, "n/a")
+        || equalsIgnoreCase(i, "none");
+  }
+
+  /**
+   * Parse the i^th field as a double.
+   *
+   * @return value of the i^th field or NaN if the value is missing.
+   * @throws NumberFormatException if the field is not a number.
+   */
+  public double getDouble(int i)
+  {
+    if (isMissing(i)) return Double.NaN;
+    return parseDouble(starts[i], ends[i]);
+  }
+
+  /**
+   * Parse the i^th field as a double that must be present.
+   *
+   * @return value of the i^th field.
+   * @throws NumberFormatException if the value is missing or the field is not a number.
+   */
+  public double getRequiredDouble(int i)
+  {
+    if (isMissing(i)) {
+      throw new NumberFormatException(String.format("Missing value for field %d (line %d)", i, lineNumber));
+    }
+    return parseDouble(starts[i], ends[i]);
+  }
+
+  /** @return value of the i^th field or `defaultValue` if the value is missing or not a number. */
+  public double getDouble(int i, double defaultValue)
+  {
+    if (isMissing(i)) return defaultValue;
+    try {
+      return parseDouble(starts[i], ends[i]);
+    } catch (NumberFormatException e) {
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Parse the i^th field as an int.
+   *
+   * @throws NumberFormatException if the field is not an integer.
+   */
+  public int getInt(int i)
+  {
+    checkIndex(i);
+    int start = starts[i];
+    int end = ends[i];
+    int j = start;
+    boolean negative = false;
+    if (j < end && (buf[j] == '-' || buf[j] == '+')) negative = (buf[j++] == '-');
+    long x = 0;
+    if (j == end || end - j > 10) return Integer.parseInt(slowString(start, end));
+    for (; j < end; ++j) {
+      int d = buf[j] - '0';
+      if (d < 0 || d > 9) return Integer.parseInt(slowString(start, end));
+      x = x * 10 + d;
+    }
+    if (negative) x = -x;
+    if (x < Integer.MIN_VALUE || x > Integer.MAX_VALUE) return Integer.parseInt(slowString(start, end));
+    return (int) x;
+  }
+
+  /**
+   * Parse the i^th field as a date (yyyy-mm-dd, yyyy/mm/dd, or yyyy-mm for the first day of the month).
+   *
+   * @return time in ms for noon on the given date (matches TimeLib.toMs(LocalDate)).
+   * @throws NumberFormatException if the field is not a valid date.
+   */
+  public long getTime(int i)
+  {
+    return parseEpochDay(i) * TimeLib.MS_IN_DAY + TimeLib.MS_IN_DAY / 2;
+  }
+
+  /**
+   * Parse the i^th field as a date (yyyy-mm-dd, yyyy/mm/dd, or yyyy-mm for the first day of the month).
+   *
+   * @throws NumberFormatException if the field is not a valid date.
+   */
+  public LocalDate getDate(int i)
+  {
+    return LocalDate.ofEpochDay(parseEpochDay(i));
+  }
+
+  private long parseEpochDay(int i)
+  {
+    checkIndex(i);
+    scanPos = starts[i];
+    int year = parseDateField(i);
+    int month = parseDateField(i);
+    int day = (scanPos < ends[i] ? parseDateField(i) : 1);
+    if (scanPos < ends[i]) throw new NumberFormatException("Invalid date: " + getString(i));
+    try {
+      return LocalDate.of(year, month, day).toEpochDay();
+    } catch (DateTimeException e) {
+      throw new NumberFormatException("Invalid date: " + getString(i));
+    }
+  }
+
+  /** Parse digits starting at `scanPos` in the i^th field and skip the following separator ('-' or '/'), if any. */
+  private int parseDateField(int i)
+  {
+    final int end = ends[i];
+    int k = scanPos;
+    int x = 0;
+    int nDigits = 0;
+    for (; k < end && nDigits < 9; ++k, ++nDigits) {
+      int d = buf[k] - '0';
+      if (d < 0 || d > 9) break;
+      x = x * 10 + d;
+    }
+    if (nDigits == 0) throw new NumberFormatException("Invalid date: " + getString(i));
+    if (k < end) {
+      if (buf[k] != '-' && buf[k] != '/') throw new NumberFormatException("Invalid date: " + getString(i));
+      ++k;
+    }
+    scanPos = k;
+    return x;
+  }
+
+  private String slowString(int start, int end)
+  {
+    return new String(buf, start, end - start, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   * Parse a double from the given range of the buffer.
+   *
+   * Decimal numbers with at most 15 significant digits and a small exponent are computed exactly with a single
+   * multiplication or division (so the result matches Double.parseDouble()). Anything else falls back to
+   * Double.parseDouble().
+   */
+  private double parseDouble(int start, int end)
+  {
+    int j = start;
+    boolean negative = false;
+    if (j < end && (buf[j] == '-' || buf[j] == '+')) negative = (buf[j++] == '-');
+
+    long mantissa = 0;
+    int exponent = 0;
+    int nSigDigits = 0;
+    int nDigits = 0;
+    for (; j < end; ++j) {
+      int d = buf[j] - '0';
+      if (d < 0 || d > 9) break;
+      if (mantissa > 0 || d > 0) ++nSigDigits;
+      mantissa = mantissa * 10 + d;
+      ++nDigits;
+      if (nSigDigits > 15) return Double.parseDouble(slowString(start, end));
+    }
+    if (j < end && buf[j] == '.') {
+      for (++j; j < end; ++j) {
+        int d = buf[j] - '0';
+        if (d < 0 || d > 9) break;
+        if (mantissa > 0 || d > 0) ++nSigDigits;
+        mantissa = mantissa * 10 + d;
+        --exponent;
+        ++nDigits;
+        if (nSigDigits > 15) return Double.parseDouble(slowString(start, end));
+      }
+    }
+    if (nDigits == 0) return Double.parseDouble(slowString(start, end)); // e.g. "NaN" or invalid
+    if (j < end && (buf[j] == 'e' || buf[j] == 'E')) {
+      ++j;
+      boolean negativeExp = false;
+      if (j < end && (buf[j] == '-' || buf[j] == '+')) negativeExp = (buf[j++] == '-');
+      int e = 0;
+      int nExpDigits = 0;
+      for (; j < end && nExpDigits < 4; ++j, ++nExpDigits) {
+        int d = buf[j] - '0';
+        if (d < 0 || d > 9) break;
+        e = e * 10 + d;
+      }
+      if (nExpDigits == 0) return Double.parseDouble(slowString(start, end));
+      exponent += (negativeExp ? -e : e);
+    }
+    if (j < end) return Double.parseDouble(slowString(start, end));
+
+    double x;
+    if (mantissa == 0) {
+      x = 0.0;
+    } else if (mantissa < MAX_EXACT_LONG && exponent >= -22 && exponent <= 22) {
+      x = (exponent < 0 ? mantissa / POW10[-exponent] : mantissa * POW10[exponent]);
+    } else {
+      return Double.parseDouble(slowString(start, end));
+    }
+    return negative ? -x : x;
+  }
+}
@@ -1,11 +1,9 @@
 package org.minnen.retiretool.data;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
@@ -103,44 +101,22 @@ public class DataIO
     }
     // System.out.printf("Loading CSV data file: [%s]\n", file.getPath());
 
-    BufferedReader in = new BufferedReader(new FileReader(file));
-
     String name = FilenameUtils.getBaseName(file.getName());
     Sequence data = new Sequence(name);
-    String line;
-    while ((line = in.readLine()) != null) {
-      line = line.trim();
-      if (line.isEmpty() || line.startsWith("\"") || line.toLowerCase().startsWith("date")) {
-        continue;
-      }
-      String[] toks = line.trim().split("[,\\s]+");
-      if (toks == null || toks.length != 2) {
-        // System.err.printf("Error parsing CSV data: [%s]\n", line);
-        continue;
-      }
-
-      // Skip missing data.
-      if (toks[1].equals(".") || toks[1].equals("ND")) {
-        continue;
-      }
-
-      String[] dateFields = toks[0].split("-");
-      try {
-        int year = Integer.parseInt(dateFields[0]);
-        int month = Integer.parseInt(dateFields[1]);
-        int day = 1;
-        if (dateFields.length > 2) {
-          day = Integer.parseInt(dateFields[2]);
+    try (CSVReader in = new CSVReader(file).setSplitOnWhitespace(true)) {
+      while (in.next()) {
+        // Skip headers, malformed lines, and missing data.
+        if (in.getNumFields() != 2 || in.isMissing(1)) continue;
+        try {
+          long time = in.getTime(0);
+          double rate = in.getDouble(1);
+          data.addData(rate, time);
+        } catch (NumberFormatException e) {
+          // System.err.printf("Error parsing CSV data: [%s]\n", in.getLine());
+          continue;
         }
-        double rate = Double.parseDouble(toks[1]);
-
-        data.addData(rate, TimeLib.toMs(year, month, day));
-      } catch (NumberFormatException e) {
-        // System.err.printf("Error parsing CSV data: [%s]\n", line);
-        continue;
       }
     }
-    in.close();
     if (data.getStartMS() > data.getEndMS()) {
       data.reverse();
     }
@@ -171,46 +147,33 @@ public class DataIO
     }
     // System.out.printf("Loading CSV file: [%s]\n", file.getPath());
 
-    try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+    try (CSVReader in = new CSVReader(file).setCommentChar('#')) {
       String name = file.getName().replaceFirst("[\\.][^\\\\/\\.]+$", "");
       Sequence data = new Sequence(name);
-      String line;
       int nLinesRead = 0;
-      while ((line = in.readLine()) != null) {
-        line = line.trim();
-        if (line.isEmpty() || line.startsWith("#")) continue;
+      while (in.next()) {
         ++nLinesRead;
 
-        String[] fields = line.trim().split(",");
-        for (int i = 0; i < fields.length; ++i) {
-          // TODO better handling of quotes in CSV.
-          fields[i] = fields[i].trim().replaceAll("(^\"|\"$)", "");
-        }
-
         // Parse header if this is the first line.
         if (nLinesRead == 1) {
           List<String> dimNames = new ArrayList<>();
-          for (int i = 1; i < fields.length; ++i) {
-            dimNames.add(fields[i]);
+          for (int i = 1; i < in.getNumFields(); ++i) {
+            dimNames.add(in.getString(i));
           }
           data.setDimNames(dimNames);
 
           if (dims == null) {
-            dims = Library.genIdentityArray(fields.length - 1); // load all fields (other than date)
+            dims = Library.genIdentityArray(in.getNumFields() - 1); // load all fields (other than date)
           }
         } else {
-          long time = TimeLib.parseDate(fields[0]);
+          long time = in.getTime(0);
           FeatureVec v = new FeatureVec(dims.length);
           for (int d = 0; d < dims.length; ++d) {
             try {
-              String s = fields[dims[d] + 1].toLowerCase();
-              double value = Double.NaN;
-              if (!s.equals("none") && !s.equals("n/a")) {
-                value = Double.parseDouble(s);
-              }
-              v.set(d, value);
+              v.set(d, in.getDouble(dims[d] + 1));
             } catch (NumberFormatException e) {
-              System.err.printf("Error parsing CSV data: d=%d  dim=%d  field=%s\n", d, dims[d], fields[dims[d] + 1]);
+              System.err.printf("Error parsing CSV data: d=%d  dim=%d  field=%s\n", d, dims[d],
+                  in.getString(dims[d] + 1));
               return null;
             }
           }
@@ -240,41 +203,31 @@ public class DataIO
     }
     System.out.printf("Loading CSV file: [%s]\n", file.getPath());
 
-    try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+    try (CSVReader in = new CSVReader(file).setCommentChar('#')) {
       List<Sequence> seqs = new ArrayList<>();
-
-      String line;
-      while ((line = in.readLine()) != null) {
-        line = line.trim();
-        if (line.isEmpty() || line.startsWith("#")) {
-          continue;
-        }
-        String[] toks = line.trim().split(",");
-        for (int i = 0; i < toks.length; ++i) {
-          toks[i] = toks[i].trim();
-        }
-
+      while (in.next()) {
         // Check for header.
-        if (toks[0].toLowerCase().startsWith("date")) {
+        if (in.startsWithIgnoreCase(0, "date")) {
           if (!seqs.isEmpty()) {
             throw new IOException("Found second header line.");
           }
-          for (int i = 1; i < toks.length; ++i) {
-            seqs.add(new Sequence(toks[i]));
+          for (int i = 1; i < in.getNumFields(); ++i) {
+            seqs.add(new Sequence(in.getString(i)));
           }
           continue;
         }
 
         try {
-          long time = TimeLib.parseDate(toks[0]);
-          if (toks.length != seqs.size() + 1) {
-            throw new IOException(String.format("Expected %d fields, but only found %d", seqs.size() + 1, toks.length));
+          long time = in.getTime(0);
+          if (in.getNumFields() != seqs.size() + 1) {
+            throw new IOException(
+                String.format("Expected %d fields, but only found %d", seqs.size() + 1, in.getNumFields()));
           }
-          for (int i = 1; i < toks.length; ++i) {
-            seqs.get(i - 1).addData(new FeatureVec(1, Double.parseDouble(toks[i])).setTime(time));
+          for (int i = 1; i < in.getNumFields(); ++i) {
+            seqs.get(i - 1).addData(new FeatureVec(1, in.getRequiredDouble(i)).setTime(time));
           }
         } catch (NumberFormatException e) {
-          throw new IOException(String.format("Error parsing CSV data: [%s]\n", line));
+          throw new IOException(String.format("Error parsing CSV data: [%s]\n", in.getLine()));
         }
       }
       return seqs;
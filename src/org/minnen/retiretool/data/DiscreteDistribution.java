@@ -9,18 +9,35 @@ import org.minnen.retiretool.util.Library;
 /**
  * Represents a discrete distribution (i.e. a multinomial).
  *
- * Each element in the distribution has an associated name.
+ * Each element in the distribution has an associated name. A distribution can be bound to an AssetUniverse, in which
+ * case its names are the (shared) names of the universe, lookups by name use the universe's index, and copies or
+ * comparisons with distributions over the same universe only touch the weights.
  */
 public class DiscreteDistribution
 {
   // TODO allow iterating over name/weight pairs.
-  public final double[] weights;
-  public final String[] names;
+  public final double[]      weights;
+  public final String[]      names;
+
+  /** Universe that defines the names of this distribution (null if the distribution has its own names). */
+  public final AssetUniverse universe;
+
+  private DiscreteDistribution(AssetUniverse universe, String[] names, double[] weights)
+  {
+    this.universe = universe;
+    this.names = names;
+    this.weights = weights;
+  }
 
   public DiscreteDistribution(int n)
   {
-    weights = new double[n];
-    names = new String[n];
+    this(null, new String[n], new double[n]);
+  }
+
+  /** Create a distribution (with all weights equal to zero) bound to the given universe. */
+  public DiscreteDistribution(AssetUniverse universe)
+  {
+    this(universe, universe.getNames(), new double[universe.size()]);
   }
 
   public DiscreteDistribution(String... names)
@@ -53,19 +70,31 @@ public class DiscreteDistribution
 
   public DiscreteDistribution(DiscreteDistribution distribution)
   {
-    this(distribution.names, distribution.weights);
+    this(distribution.universe, distribution.universe == null ? distribution.names.clone() : distribution.names,
+        distribution.weights.clone());
   }
 
   public DiscreteDistribution copyFrom(DiscreteDistribution distribution)
   {
     assert distribution.size() == size();
-    System.arraycopy(distribution.names, 0, names, 0, names.length);
+    if (universe == null) {
+      System.arraycopy(distribution.names, 0, names, 0, names.length);
+    } else if (distribution.universe != universe) {
+      // Names are fixed by the universe so they must match.
+      for (int i = 0; i < names.length; ++i) {
+        if (!names[i].equals(distribution.names[i])) {
+          throw new IllegalArgumentException(
+              String.format("Name mismatch: %s vs. %s", names[i], distribution.names[i]));
+        }
+      }
+    }
     System.arraycopy(distribution.weights, 0, weights, 0, weights.length);
     return this;
   }
 
   public boolean hasNames()
   {
+    if (universe != null) return true;
     if (names == null || names.length != weights.length) return false;
     for (int i = 0; i < names.length; ++i) {
       if (names[i] == null || names[i].isEmpty()) return false;
@@ -76,7 +105,11 @@ public class DiscreteDistribution
   /** Update the name and weight of the i^th entry. */
   public void set(int i, String name, double weight)
   {
-    names[i] = name;
+    if (universe == null) {
+      names[i] = name;
+    } else if (!names[i].equals(name)) {
+      throw new IllegalArgumentException(String.format("Can't rename %s to %s in a universe", names[i], name));
+    }
     weights[i] = weight;
   }
 
@@ -103,6 +136,7 @@ public class DiscreteDistribution
 
   public int find(String name)
   {
+    if (universe != null) return universe.indexOf(name);
     if (name == null) return -1;
     for (int i = 0; i < names.length; ++i) {
       if (names[i] != null && names[i].equals(name)) return i;
@@ -145,6 +179,7 @@ public class DiscreteDistribution
 
   public void sortByName()
   {
+    if (universe != null) throw new IllegalStateException("Can't reorder a distribution bound to a universe");
     int[] ii = Library.sort(names, true);
     Library.reorder(weights, ii);
   }
@@ -246,10 +281,29 @@ public class DiscreteDistribution
     return names;
   }
 
+  /** @return true if a[i] and b[i] are within eps (b may be longer, in which case extra entries must be near zero). */
+  private static boolean isSimilarAligned(double[] a, double[] b, double eps)
+  {
+    assert a.length <= b.length;
+    for (int i = 0; i < a.length; ++i) {
+      if (Math.abs(a[i] - b[i]) > eps) return false;
+    }
+    for (int i = a.length; i < b.length; ++i) {
+      if (Math.abs(b[i]) > eps) return false;
+    }
+    return true;
+  }
+
   public boolean isSimilar(DiscreteDistribution distribution, double eps)
   {
     if (distribution == null) return false;
 
+    // Weights line up if the universes match (or one extends the other).
+    if (universe != null && distribution.universe != null) {
+      if (universe.isPrefixOf(distribution.universe)) return isSimilarAligned(weights, distribution.weights, eps);
+      if (distribution.universe.isPrefixOf(universe)) return isSimilarAligned(distribution.weights, weights, eps);
+    }
+
     Set<String> names = DiscreteDistribution.getAllNames(this, distribution);
     for (String name : names) {
       double w1 = this.get(name);
@@ -3,16 +3,20 @@ package org.minnen.retiretool.data;
 import java.util.*;
 
 import org.minnen.retiretool.util.Library;
+import org.minnen.retiretool.util.MathKernels;
 import org.minnen.retiretool.util.TimeLib;
 
 /** represents a vector in R^n */
 public class FeatureVec extends MetaStore
 {
+  /** Kernels for the inner loops of element-wise operations and distances. */
+  private static final MathKernels kernels   = MathKernels.get();
+
   /** actual data */
-  private double[] vec;
-  private double   weight    = 1.0;
-  private long     timestamp = TimeLib.TIME_ERROR;
-  private String   name;
+  private double[]                 vec;
+  private double                   weight    = 1.0;
+  private long                     timestamp = TimeLib.TIME_ERROR;
+  private String                   name;
 
   /**
    * Create a feature vec from the double array
@@ -254,12 +258,7 @@ public class FeatureVec extends MetaStore
    */
   public double dist2(FeatureVec fv)
   {
-    double ret = 0.0;
-    for (int d = 0; d < vec.length; d++) {
-      double diff = vec[d] - fv.vec[d];
-      ret += diff * diff;
-    }
-    return ret;
+    return kernels.dist2(vec, fv.vec, vec.length);
   }
 
   /**
@@ -328,8 +327,7 @@ public class FeatureVec extends MetaStore
   {
     int n = getNumDims();
     assert n == fv.getNumDims() : String.format("this.nDims=%d  fv.nDims=%d\n", n, fv.getNumDims());
-    for (int i = 0; i < n; i++)
-      vec[i] += fv.get(i);
+    kernels.add(vec, fv.vec, n);
     return this;
   }
 
@@ -381,8 +379,7 @@ public class FeatureVec extends MetaStore
   {
     int n = getNumDims();
     assert n == fv.getNumDims();
-    for (int i = 0; i < n; i++)
-      vec[i] *= fv.get(i);
+    kernels.mul(vec, fv.vec, n);
     return this;
   }
 
@@ -577,10 +574,7 @@ public class FeatureVec extends MetaStore
   {
     int n = getNumDims();
     assert n == fv.getNumDims();
-    double ret = 0.0;
-    for (int i = 0; i < n; i++)
-      ret += vec[i] * fv.vec[i];
-    return ret;
+    return kernels.dot(vec, fv.vec, n);
   }
 
   /**
@@ -625,11 +619,7 @@ public class FeatureVec extends MetaStore
   /** @return squared L2 norm of this vector */
   public double norm2()
   {
-    int n = getNumDims();
-    double ret = 0.0;
-    for (int i = 0; i < n; i++)
-      ret += vec[i] * vec[i];
-    return ret;
+    return kernels.norm2(vec, getNumDims());
   }
 
   /** @return L2 norm of this vector */
@@ -0,0 +1,363 @@
+package org.minnen.retiretool.data;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Supplier;
+
+import org.minnen.retiretool.util.LinearFunc;
+
+/**
+ * Sequence that replaces one dimension of a base sequence and shares everything else.
+ *
+ * Only the replacement column is stored (and it's only generated when first needed) so many variants of a sequence
+ * can exist at the same time, e.g. noisy prices for parallel jitter tests. Reading values with get(i, d) never
+ * allocates. The first call to get(i) creates a feature vector for element i that is owned by this sequence, so it can
+ * be changed like any other feature vector; only requested elements are created. Views share the column and owned
+ * vectors, while subseq() and dup() return normal sequences with their own copies. Any change to the length (or any
+ * in-place operation on the whole sequence) copies the data first, after which this is a normal sequence.
+ */
+public class OverlaySequence extends Sequence
+{
+  /** List view of the base data with one dimension replaced by a lazily generated column. */
+  private static class OverlayList extends AbstractList<FeatureVec> implements RandomAccess
+  {
+    private final List<FeatureVec>                 base;
+    private final int                              iDim;
+    private final int                              n;
+    private Supplier<double[]>                     generator;
+    private volatile double[]                      column;
+    private final AtomicReferenceArray<FeatureVec> owned;
+    private List<FeatureVec>                       copy;
+
+    public OverlayList(List<FeatureVec> base, int iDim, Supplier<double[]> generator)
+    {
+      this.base = base;
+      this.iDim = iDim;
+      this.n = base.size();
+      this.generator = generator;
+      this.owned = new AtomicReferenceArray<>(n);
+    }
+
+    public double[] column()
+    {
+      double[] x = column;
+      if (x == null) {
+        synchronized (this) {
+          x = column;
+          if (x == null) {
+            x = generator.get();
+            assert x.length == n;
+            column = x;
+            generator = null;
+          }
+        }
+      }
+      return x;
+    }
+
+    public boolean isCopy()
+    {
+      return copy != null;
+    }
+
+    /** Copy all data into a private list (done before the first change to the length or to every element). */
+    public void materialize()
+    {
+      if (copy != null) return;
+      List<FeatureVec> list = new ArrayList<>(n);
+      for (int i = 0; i < n; ++i) {
+        FeatureVec fv = owned.get(i);
+        list.add(fv != null ? fv : copy(i));
+      }
+      copy = list;
+    }
+
+    /** @return new feature vector equal to the i^th element (not stored in this list). */
+    public FeatureVec copy(int i)
+    {
+      if (copy != null) return new FeatureVec(copy.get(i));
+      FeatureVec fv = owned.get(i);
+      if (fv != null) return new FeatureVec(fv);
+      fv = new FeatureVec(base.get(i));
+      fv.set(iDim, column()[i]);
+      return fv;
+    }
+
+    public double get(int i, int d)
+    {
+      if (copy != null) return copy.get(i).get(d);
+      FeatureVec fv = owned.get(i);
+      if (fv != null) return fv.get(d);
+      return d == iDim ? column()[i] : base.get(i).get(d);
+    }
+
+    public long getTime(int i)
+    {
+      if (copy != null) return copy.get(i).getTime();
+      FeatureVec fv = owned.get(i);
+      return fv != null ? fv.getTime() : base.get(i).getTime();
+    }
+
+    /** Set the i^th value of the replacement column (and the owned vector, if it exists). */
+    public void setColumn(int i, double x)
+    {
+      column()[i] = x;
+      FeatureVec fv = owned.get(i);
+      if (fv != null) fv.set(iDim, x);
+    }
+
+    @Override
+    public FeatureVec get(int i)
+    {
+      if (copy != null) return copy.get(i);
+      FeatureVec fv = owned.get(i);
+      if (fv == null) {
+        fv = copy(i);
+        if (!owned.compareAndSet(i, null, fv)) {
+          fv = owned.get(i); // another thread created it first
+        }
+      }
+      return fv;
+    }
+
+    @Override
+    public int size()
+    {
+      return copy != null ? copy.size() : n;
+    }
+
+    @Override
+    public FeatureVec set(int i, FeatureVec fv)
+    {
+      if (copy != null) return copy.set(i, fv);
+      FeatureVec prev = get(i);
+      owned.set(i, fv);
+      return prev;
+    }
+
+    @Override
+    public void add(int i, FeatureVec fv)
+    {
+      materialize();
+      copy.add(i, fv);
+      ++modCount;
+    }
+
+    @Override
+    public FeatureVec remove(int i)
+    {
+      materialize();
+      ++modCount;
+      return copy.remove(i);
+    }
+  }
+
+  private final OverlayList overlay;
+
+  /**
+   * Create an overlay sequence.
+   *
+   * @param name name of the new sequence
+   * @param base sequence that provides timestamps and all other dimensions (ignoring its locks)
+   * @param iDim dimension to replace
+   * @param generator provides the replacement column (one value per element of the base sequence); it's called at
+   *          most once, when the column is first needed
+   */
+  public OverlaySequence(String name, Sequence base, int iDim, Supplier<double[]> generator)
+  {
+    this(name, new OverlayList(base.getData(), iDim, generator));
+  }
+
+  /** Create an overlay sequence that shares the given list (used for views). */
+  private OverlaySequence(String name, OverlayList overlay)
+  {
+    super(name, overlay);
+    this.overlay = overlay;
+  }
+
+  /**
+   * Create an overlay with Gaussian noise added to one dimension.
+   *
+   * Noise is generated from the seed when first needed, so the same seed always produces the same sequence. Noisy
+   * values are always positive and rounded to a whole number of pennies.
+   *
+   * @param name name of the new sequence
+   * @param base sequence holding original prices
+   * @param iDim dimension holding the prices
+   * @param priceSDev maps a price to the standard deviation of its noise
+   * @param seed seed for the random number generator
+   * @return noisy overlay of the base sequence
+   */
+  public static OverlaySequence noisy(String name, Sequence base, int iDim, LinearFunc priceSDev, long seed)
+  {
+    List<FeatureVec> data = base.getData();
+    return new OverlaySequence(name, base, iDim, () -> {
+      Random rng = new Random(seed);
+      double[] column = new double[data.size()];
+      for (int i = 0; i < column.length; ++i) {
+        double price = data.get(i).get(iDim);
+        double sdev = priceSDev.calc(price);
+        double noisy = price + rng.nextGaussian() * sdev;
+        if (noisy <= 0.0) {
+          noisy = price * (0.01 + rng.nextDouble() * 0.2);
+        }
+
+        // Price should always be a whole number of pennies.
+        column[i] = Math.round(noisy * 100.0) / 100.0;
+      }
+      return column;
+    });
+  }
+
+  /** @return true if the data has been copied and is no longer shared with the base sequence. */
+  public boolean isCopy()
+  {
+    return overlay.isCopy();
+  }
+
+  @Override
+  public double get(int i, int d)
+  {
+    if (i < 0) {
+      i += length();
+    }
+    return overlay.get(getRealIndex(i), d);
+  }
+
+  @Override
+  public long getTimeMS(int i)
+  {
+    if (i < 0) {
+      i += length();
+    }
+    return overlay.getTime(getRealIndex(i));
+  }
+
+  @Override
+  public void set(int i, int d, double x)
+  {
+    if (d == overlay.iDim && !overlay.isCopy()) {
+      if (i < 0) {
+        i += length();
+      }
+      overlay.setColumn(getRealIndex(i), x);
+    } else {
+      super.set(i, d, x);
+    }
+  }
+
+  /** @return subsequence with its own copy of each feature vector (nothing is added to this sequence). */
+  @Override
+  public Sequence subseq(int iStart, int numElements)
+  {
+    final int N = length();
+    if (iStart < 0) {
+      iStart += N;
+    }
+    if (numElements < 0) {
+      numElements += (N - iStart) + 1;
+    }
+    assert iStart >= 0 && numElements > 0;
+    Sequence seq = new Sequence(getName());
+    for (int i = 0; i < numElements; ++i) {
+      seq.addData(overlay.copy(getRealIndex(iStart + i)));
+    }
+    assert seq.length() == numElements;
+    return seq;
+  }
+
+  /** @return deep copy of this sequence as a normal sequence. */
+  @Override
+  public Sequence dup()
+  {
+    Sequence seq = new Sequence(getName());
+    for (int i = 0; i < overlay.size(); ++i) {
+      seq.addData(overlay.copy(i));
+    }
+    copyLocksTo(seq);
+    return seq;
+  }
+
+  /** @return overlay that shares the column and owned vectors of this sequence but has its own locks. */
+  @Override
+  public Sequence view()
+  {
+    OverlaySequence seq = new OverlaySequence(getName(), overlay);
+    copyLocksTo(seq);
+    return seq;
+  }
+
+  @Override
+  public Sequence _appendDims(Sequence seq)
+  {
+    overlay.materialize();
+    return super._appendDims(seq);
+  }
+
+  @Override
+  public Sequence _add(double x)
+  {
+    overlay.materialize();
+    return super._add(x);
+  }
+
+  @Override
+  public Sequence _sub(double x)
+  {
+    overlay.materialize();
+    return super._sub(x);
+  }
+
+  @Override
+  public Sequence _mul(double x)
+  {
+    overlay.materialize();
+    return super._mul(x);
+  }
+
+  @Override
+  public Sequence _mul(FeatureVec v)
+  {
+    overlay.materialize();
+    return super._mul(v);
+  }
+
+  @Override
+  public Sequence _div(double x)
+  {
+    overlay.materialize();
+    return super._div(x);
+  }
+
+  @Override
+  public Sequence _log()
+  {
+    overlay.materialize();
+    return super._log();
+  }
+
+  @Override
+  public Sequence _max(Sequence seq)
+  {
+    overlay.materialize();
+    return super._max(seq);
+  }
+
+  @Override
+  public Sequence adjustDatesToEndOfMonth(LastDay lastDay)
+  {
+    overlay.materialize();
+    return super.adjustDatesToEndOfMonth(lastDay);
+  }
+
+  @Override
+  public void adjustDatesToEndOfQuarter(LastDay lastDay)
+  {
+    overlay.materialize();
+    super.adjustDatesToEndOfQuarter(lastDay);
+  }
+}
@@ -0,0 +1,226 @@
+package org.minnen.retiretool.data;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.minnen.retiretool.broker.BrokerInfoAccess;
+import org.minnen.retiretool.util.FinLib;
+
+/**
+ * Covariance of daily returns over a rolling window for a fixed list of assets.
+ *
+ * The window for each asset holds the `nReturns` daily returns ending at the last (locked) index of its sequence, which
+ * matches FinLib.getDailyReturns(seq, -(nReturns + 1), -1, iPrice). Daily returns are computed once per sequence and
+ * the window sums and cross-products are updated incrementally as the simulation advances, so covariance matrices for
+ * any subset of the assets are available without recomputation. Sums are rebuilt from scratch periodically to limit
+ * the accumulation of rounding error.
+ */
+public class RollingCovariance
+{
+  /** Rebuild sums from scratch after shifting the window by this many days. */
+  private static final int RECOMPUTE_DAYS = 1000;
+
+  public final int         nReturns;
+  public final int         iPrice;
+  private final String[]   names;
+
+  /** Sequence used to compute the returns for each asset (returns are recomputed if the broker's sequence changes). */
+  private final Sequence[] seqs;
+
+  /** returns[i][k] = daily return of asset i from real index k-1 to k (NaN for k = 0). */
+  private final double[][] returns;
+
+  /** Real index of the last return in the current window for each asset. */
+  private final int[]      ends;
+
+  /** Sum of returns in the window for each asset. */
+  private final double[]   sums;
+
+  /** Sum of products of returns in the window; only the upper triangle (j >= i) is used. */
+  private final double[][] cross;
+
+  private boolean          valid;
+  private int              daysSinceRecompute;
+  private int              generation;
+
+  public RollingCovariance(int nReturns, int iPrice, String... names)
+  {
+    assert nReturns > 1;
+    this.nReturns = nReturns;
+    this.iPrice = iPrice;
+    this.names = names.clone();
+    final int n = names.length;
+    seqs = new Sequence[n];
+    returns = new double[n][];
+    ends = new int[n];
+    sums = new double[n];
+    cross = new double[n][n];
+  }
+
+  /** @return number of assets. */
+  public int size()
+  {
+    return names.length;
+  }
+
+  /** @return index of the given asset or -1 if it's not tracked. */
+  public int indexOf(String name)
+  {
+    for (int i = 0; i < names.length; ++i) {
+      if (names[i].equals(name)) return i;
+    }
+    return -1;
+  }
+
+  /**
+   * Generation number that changes whenever the underlying sequences change.
+   *
+   * Results computed from the covariance (e.g. optimized weights) for the same generation and window ends are still
+   * valid.
+   */
+  public int getGeneration()
+  {
+    return generation;
+  }
+
+  /** @return real index of the last return in the window for the given asset. */
+  public int getWindowEnd(int i)
+  {
+    return ends[i];
+  }
+
+  /** Move the window for each asset to the end of its current (locked) sequence in the broker. */
+  public void advance(BrokerInfoAccess brokerAccess)
+  {
+    Sequence[] current = new Sequence[names.length];
+    for (int i = 0; i < current.length; ++i) {
+      current[i] = brokerAccess.getSeq(names[i]);
+      assert current[i] != null : names[i];
+    }
+    advance(current);
+  }
+
+  /**
+   * Move the window for each asset to the end of the given (locked) sequence.
+   *
+   * @param current sequence for each asset, in the same order as the names passed to the constructor
+   */
+  public void advance(Sequence... current)
+  {
+    final int n = names.length;
+    assert current.length == n;
+    boolean rebound = false;
+    for (int i = 0; i < n; ++i) {
+      Sequence seq = current[i];
+      if (seq != seqs[i] || returns[i].length != seq.getData().size()) {
+        seqs[i] = seq;
+        returns[i] = calcReturns(seq, iPrice);
+        rebound = true;
+      }
+    }
+    if (rebound) {
+      ++generation;
+      valid = false;
+    }
+
+    // Incremental update is possible if all windows shift by the same amount.
+    int[] newEnds = new int[n];
+    int shift = Integer.MIN_VALUE;
+    for (int i = 0; i < n; ++i) {
+      Sequence seq = seqs[i];
+      newEnds[i] = seq.getRealIndex(seq.length() - 1);
+      assert newEnds[i] >= nReturns : String.format("%s: not enough data (%d)", names[i], newEnds[i]);
+      int d = newEnds[i] - ends[i];
+      if (i == 0) shift = d;
+      else if (d != shift) shift = Integer.MIN_VALUE;
+    }
+
+    if (valid && shift == 0) return;
+    if (valid && shift > 0 && shift < nReturns && daysSinceRecompute + shift < RECOMPUTE_DAYS) {
+      for (int t = 1; t <= shift; ++t) {
+        for (int i = 0; i < n; ++i) {
+          double[] ri = returns[i];
+          double rOld = ri[ends[i] - nReturns + t];
+          double rNew = ri[ends[i] + t];
+          sums[i] += rNew - rOld;
+          for (int j = i; j < n; ++j) {
+            double[] rj = returns[j];
+            cross[i][j] += rNew * rj[ends[j] + t] - rOld * rj[ends[j] - nReturns + t];
+          }
+        }
+      }
+      daysSinceRecompute += shift;
+      System.arraycopy(newEnds, 0, ends, 0, n);
+    } else {
+      System.arraycopy(newEnds, 0, ends, 0, n);
+      recompute();
+    }
+  }
+
+  private void recompute()
+  {
+    final int n = names.length;
+    for (int i = 0; i < n; ++i) {
+      sums[i] = 0.0;
+      Arrays.fill(cross[i], 0.0);
+    }
+    for (int t = 1 - nReturns; t <= 0; ++t) {
+      for (int i = 0; i < n; ++i) {
+        double r = returns[i][ends[i] + t];
+        sums[i] += r;
+        for (int j = i; j < n; ++j) {
+          cross[i][j] += r * returns[j][ends[j] + t];
+        }
+      }
+    }
+    daysSinceRecompute = 0;
+    valid = true;
+  }
+
+  private static double[] calcReturns(Sequence seq, int iPrice)
+  {
+    // Use raw data so that returns cover the full sequence regardless of locks.
+    List<FeatureVec> data = seq.getData();
+    final int n = data.size();
+    double[] r = new double[n];
+    if (n == 0) return r;
+    r[0] = Double.NaN;
+    double prev = data.get(0).get(iPrice);
+    for (int k = 1; k < n; ++k) {
+      double price = data.get(k).get(iPrice);
+      r[k] = FinLib.mul2ret(price / prev);
+      prev = price;
+    }
+    return r;
+  }
+
+  /** @return sample covariance between assets i and j for the current windows. */
+  public double covariance(int i, int j)
+  {
+    assert valid;
+    if (j < i) {
+      int t = i;
+      i = j;
+      j = t;
+    }
+    return (cross[i][j] - sums[i] * sums[j] / nReturns) / (nReturns - 1);
+  }
+
+  /**
+   * Get the covariance matrix for a subset of the assets.
+   *
+   * @param ids indices of the assets (see indexOf())
+   * @return covariance matrix with rows and columns in the same order as `ids`
+   */
+  public double[][] getCovariance(int... ids)
+  {
+    final int n = ids.length;
+    double[][] cov = new double[n][n];
+    for (int i = 0; i < n; ++i) {
+      for (int j = i; j < n; ++j) {
+        cov[i][j] = cov[j][i] = covariance(ids[i], ids[j]);
+      }
+    }
+    return cov;
+  }
+}
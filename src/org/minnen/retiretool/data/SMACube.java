@@ -0,0 +1,182 @@
+package org.minnen.retiretool.data;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import org.minnen.retiretool.util.IntPair;
+
+/**
+ * Dense table of precomputed simple moving averages for a single sequence.
+ *
+ * Each row corresponds to a window (nLookbackA, nLookbackB) and holds, for every (real) index i of the sequence, the
+ * average of one dimension over [i - nLookbackA, i - nLookbackB]. Entries without enough history hold NaN. Searches
+ * register the union of windows used by their configs so that each average is computed once per search instead of
+ * once per config per day.
+ *
+ * A cube can be shared by simulations in several threads (see SequenceStore.view()). Windows can be added at any time:
+ * the rows are replaced as a whole so readers always see a consistent table.
+ */
+public class SMACube
+{
+  /** Sequence from which the averages are computed. */
+  public final Sequence  seq;
+
+  /** Dimension over which the averages are computed. */
+  public final int       iPrice;
+
+  /** Number of data points in the sequence when the cube was built. */
+  private final int      nDays;
+
+  /** prefix[i] = sum of values in [0, i). */
+  private final double[] prefix;
+
+  /** Current windows and averages. */
+  private volatile Rows  rows = new Rows(new long[0], new int[0], new double[0][]);
+
+  /** Immutable set of windows and their averages. */
+  private static class Rows
+  {
+    /** Packed (nLookbackA, nLookbackB) keys in sorted order. */
+    public final long[]     keys;
+
+    /** Row index for the corresponding entry in `keys`. */
+    public final int[]      keyRows;
+
+    /** Average values indexed by [row][day]. */
+    public final double[][] table;
+
+    public Rows(long[] keys, int[] keyRows, double[][] table)
+    {
+      this.keys = keys;
+      this.keyRows = keyRows;
+      this.table = table;
+    }
+  }
+
+  public SMACube(Sequence seq, int iPrice)
+  {
+    this.seq = seq;
+    this.iPrice = iPrice;
+
+    // Use raw data so that the cube covers the full sequence regardless of locks.
+    List<FeatureVec> data = seq.getData();
+    nDays = data.size();
+    prefix = new double[nDays + 1];
+    for (int i = 0; i < nDays; ++i) {
+      prefix[i + 1] = prefix[i] + data.get(i).get(iPrice);
+    }
+  }
+
+  /** @return number of data points covered by this cube. */
+  public int length()
+  {
+    return nDays;
+  }
+
+  /** @return number of windows (rows) in this cube. */
+  public int getNumWindows()
+  {
+    return rows.table.length;
+  }
+
+  /** @return true if this cube holds averages for the given sequence (or a view of it) and dimension. */
+  public boolean covers(Sequence seq, int iPrice)
+  {
+    return this.seq.getData() == seq.getData() && this.iPrice == iPrice;
+  }
+
+  private static long pack(int nLookbackA, int nLookbackB)
+  {
+    return ((long) nLookbackA << 32) | (nLookbackB & 0xffffffffL);
+  }
+
+  /**
+   * Compute averages for all windows that are not already in this cube.
+   *
+   * @param windows (nLookbackA, nLookbackB) pairs with nLookbackA >= nLookbackB >= 0
+   * @return number of new rows
+   */
+  public int addWindows(Collection<IntPair> windows)
+  {
+    int nAdded = 0;
+    for (IntPair window : windows) {
+      if (addWindow(window.first, window.second) >= 0) ++nAdded;
+    }
+    return nAdded;
+  }
+
+  /**
+   * Compute averages for the given window if it's not already in this cube.
+   *
+   * @return index of the new row or -1 if the window already exists.
+   */
+  public synchronized int addWindow(int nLookbackA, int nLookbackB)
+  {
+    assert nLookbackA >= nLookbackB && nLookbackB >= 0;
+    final Rows rows = this.rows;
+    final long[] keys = rows.keys;
+    final int[] keyRows = rows.keyRows;
+    long key = pack(nLookbackA, nLookbackB);
+    int k = Arrays.binarySearch(keys, key);
+    if (k >= 0) return -1;
+
+    // Single pass over the prefix sums fills the new row.
+    final int row = rows.table.length;
+    final int n = nLookbackA - nLookbackB + 1;
+    double[] averages = new double[nDays];
+    for (int i = 0; i < nDays; ++i) {
+      int iStart = i - nLookbackA;
+      if (iStart < 0) {
+        averages[i] = Double.NaN;
+      } else {
+        int iEnd = i - nLookbackB;
+        averages[i] = (prefix[iEnd + 1] - prefix[iStart]) / n;
+      }
+    }
+    double[][] table = Arrays.copyOf(rows.table, row + 1);
+    table[row] = averages;
+
+    // Insert the key so that `keys` remains sorted.
+    k = -(k + 1);
+    long[] newKeys = new long[keys.length + 1];
+    int[] newKeyRows = new int[keys.length + 1];
+    System.arraycopy(keys, 0, newKeys, 0, k);
+    System.arraycopy(keyRows, 0, newKeyRows, 0, k);
+    newKeys[k] = key;
+    newKeyRows[k] = row;
+    System.arraycopy(keys, k, newKeys, k + 1, keys.length - k);
+    System.arraycopy(keyRows, k, newKeyRows, k + 1, keys.length - k);
+    this.rows = new Rows(newKeys, newKeyRows, table);
+    return row;
+  }
+
+  /** @return row index for the given window or -1 if it's not in this cube. */
+  public int getRow(int nLookbackA, int nLookbackB)
+  {
+    final Rows rows = this.rows;
+    int k = Arrays.binarySearch(rows.keys, pack(nLookbackA, nLookbackB));
+    return k < 0 ? -1 : rows.keyRows[k];
+  }
+
+  /**
+   * @param row row index from getRow()
+   * @param index real index in the sequence (see Sequence.getRealIndex())
+   * @return precomputed average or NaN if there isn't enough data.
+   */
+  public double get(int row, int index)
+  {
+    if (index < 0 || index >= nDays) return Double.NaN;
+    return rows.table[row][index];
+  }
+
+  /**
+   * @param index real index in the sequence (see Sequence.getRealIndex())
+   * @return precomputed average over [index - nLookbackA, index - nLookbackB] or NaN if unavailable.
+   */
+  public double average(int nLookbackA, int nLookbackB, int index)
+  {
+    int row = getRow(nLookbackA, nLookbackB);
+    return row < 0 ? Double.NaN : get(row, index);
+  }
+}
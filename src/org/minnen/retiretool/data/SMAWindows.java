@@ -0,0 +1,63 @@
+package org.minnen.retiretool.data;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.minnen.retiretool.util.IntPair;
+
+/**
+ * Collects the moving-average windows that a search will request so that they can be precomputed in one pass.
+ * 
+ * Windows are grouped by sequence name and price dimension. Call precompute() to build (or extend) the corresponding
+ * SMACube objects in a SequenceStore.
+ */
+public class SMAWindows
+{
+  private final Map<String, Map<Integer, Set<IntPair>>> windows = new HashMap<>();
+
+  /**
+   * Register a window.
+   * 
+   * @param name name of the sequence
+   * @param iPrice dimension over which to calculate the average
+   * @param nLookbackA first index of window relative to current index (i.e. average starts at i - nLookbackA)
+   * @param nLookbackB last index of window relative to current index (i.e. average ends at i - nLookbackB)
+   */
+  public void add(String name, int iPrice, int nLookbackA, int nLookbackB)
+  {
+    assert nLookbackA >= nLookbackB && nLookbackB >= 0;
+    Map<Integer, Set<IntPair>> map = windows.computeIfAbsent(name, k -> new HashMap<>());
+    map.computeIfAbsent(iPrice, k -> new HashSet<>()).add(new IntPair(nLookbackA, nLookbackB));
+  }
+
+  public boolean isEmpty()
+  {
+    return windows.isEmpty();
+  }
+
+  /** @return total number of windows across all sequences. */
+  public int size()
+  {
+    int n = 0;
+    for (Map<Integer, Set<IntPair>> map : windows.values()) {
+      for (Set<IntPair> set : map.values()) {
+        n += set.size();
+      }
+    }
+    return n;
+  }
+
+  /** Compute averages for all registered windows of sequences that exist in the given store. */
+  public void precompute(SequenceStore store)
+  {
+    for (Map.Entry<String, Map<Integer, Set<IntPair>>> entry : windows.entrySet()) {
+      String name = entry.getKey();
+      if (!store.hasName(name)) continue;
+      for (Map.Entry<Integer, Set<IntPair>> pair : entry.getValue().entrySet()) {
+        store.addSMAWindows(name, pair.getKey(), pair.getValue());
+      }
+    }
+  }
+}
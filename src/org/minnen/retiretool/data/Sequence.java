@@ -12,6 +12,7 @@ import java.util.Map;
 import java.util.Stack;
 
 import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.util.Library;
 import org.minnen.retiretool.util.Random;
 import org.minnen.retiretool.util.TimeLib;
 
@@ -63,7 +64,7 @@ public class Sequence extends MetaStore implements Iterable<FeatureVec>
   }
 
   /** Data stored in this data set. */
-  private final List<FeatureVec> data  = new ArrayList<>();
+  private final List<FeatureVec> data;
 
   /** Name of this sequence. */
   private String                 name;
@@ -93,7 +94,9 @@ public class Sequence extends MetaStore implements Iterable<FeatureVec>
    * Create an empty, unnamed sequence.
    */
   public Sequence()
-  {}
+  {
+    data = new ArrayList<>();
+  }
 
   /**
    * Create a named sequence.
@@ -102,6 +105,7 @@ public class Sequence extends MetaStore implements Iterable<FeatureVec>
    */
   public Sequence(String name)
   {
+    this();
     setName(name);
   }
 
@@ -130,9 +134,24 @@ public class Sequence extends MetaStore implements Iterable<FeatureVec>
 
   public Sequence(List<FeatureVec> data)
   {
+    this();
     this.data.addAll(data);
   }
 
+  /**
+   * Create a sequence backed by the given list, which is used directly instead of being copied.
+   * 
+   * This allows subclasses to provide a view of other data (see OverlaySequence).
+   * 
+   * @param name name of this sequence
+   * @param view list that holds the data for this sequence
+   */
+  protected Sequence(String name, List<FeatureVec> view)
+  {
+    data = view;
+    setName(name);
+  }
+
   public String getName()
   {
     return name;
@@ -350,6 +369,16 @@ public class Sequence extends MetaStore implements Iterable<FeatureVec>
     return iStart + i;
   }
 
+  /**
+   * Convert a (locked) index to a real index that ignores locks.
+   * 
+   * @return real index corresponding to the given index.
+   */
+  public int getRealIndex(int i)
+  {
+    return adjustIndex(i);
+  }
+
   /** @return length of this sequence */
   public int size()
   {
@@ -388,7 +417,13 @@ public class Sequence extends MetaStore implements Iterable<FeatureVec>
   /** set the d^th dimension in the i^th feature vector */
   public void set(int i, int d, double x)
   {
-    get(i).set(d, x);
+    if (i < 0) {
+      i += length();
+    }
+    i = adjustIndex(i);
+    FeatureVec fv = data.get(i);
+    fv.set(d, x);
+    data.set(i, fv); // write back in case the list is a view
   }
 
   /** @return first feature vector in this sequence. */
@@ -1109,10 +1144,31 @@ public class Sequence extends MetaStore implements Iterable<FeatureVec>
     for (FeatureVec v : data) {
       seq.addData(new FeatureVec(v));
     }
-    seq.locks.addAll(locks);
+    copyLocksTo(seq);
     return seq;
   }
 
+  /**
+   * Create a sequence that shares the data of this sequence but has its own locks.
+   * 
+   * Views let several threads lock the same data independently (e.g. simulations running in parallel). Nothing is
+   * copied, so the data must not be changed while views are in use.
+   * 
+   * @return view of this sequence
+   */
+  public Sequence view()
+  {
+    Sequence seq = new Sequence(getName(), data);
+    copyLocksTo(seq);
+    return seq;
+  }
+
+  /** Add the locks of this sequence to the given sequence (for copies and views). */
+  protected void copyLocksTo(Sequence seq)
+  {
+    seq.locks.addAll(locks);
+  }
+
   /**
    * @return true if the length and time bounds match.
    */
@@ -1122,6 +1178,27 @@ public class Sequence extends MetaStore implements Iterable<FeatureVec>
         && other.getEndMS() == getEndMS());
   }
 
+  /**
+   * Calculate a fingerprint of the data in this sequence.
+   * 
+   * The fingerprint covers all timestamps and values (ignoring locks) but not the name, so identical data stored under
+   * a different name (e.g. an alias) has the same fingerprint.
+   * 
+   * @return 64-bit hash of all data in this sequence.
+   */
+  public long fingerprint()
+  {
+    long hash = Library.hash64(Library.HASH64_INIT, data.size());
+    for (FeatureVec v : data) {
+      hash = Library.hash64(hash, v.getTime());
+      final int nDims = v.getNumDims();
+      for (int d = 0; d < nDims; ++d) {
+        hash = Library.hash64(hash, Double.doubleToLongBits(v.get(d)));
+      }
+    }
+    return hash;
+  }
+
   /** @return true if length and individual timestamps match. */
   public boolean sameTimestamps(Sequence other)
   {
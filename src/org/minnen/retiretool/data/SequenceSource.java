@@ -0,0 +1,69 @@
+package org.minnen.retiretool.data;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.minnen.retiretool.data.fred.FredSeries;
+import org.minnen.retiretool.data.tiingo.TiingoFund;
+import org.minnen.retiretool.data.yahoo.YahooIO;
+
+/**
+ * Source of data that a SequenceStore can load on demand.
+ *
+ * Sources may be loaded on a background thread (see SequenceStore.prefetch()) so implementations must not modify
+ * shared state that isn't thread-safe.
+ */
+@FunctionalInterface
+public interface SequenceSource
+{
+  /** @return newly loaded sequence (never null). */
+  public Sequence load() throws IOException;
+
+  /**
+   * Source for a Tiingo symbol (EOD and metadata are downloaded if necessary).
+   *
+   * The fund does not keep a reference to the loaded data so that the store controls how long it stays in memory.
+   */
+  public static SequenceSource tiingo(String symbol)
+  {
+    return () -> {
+      TiingoFund fund = TiingoFund.fromSymbol(symbol, true);
+      if (fund == null) throw new IOException("Failed to load Tiingo data: " + symbol);
+      Sequence seq = fund.data;
+      fund.data = null;
+      return seq;
+    };
+  }
+
+  /** Source for a Yahoo CSV file. */
+  public static SequenceSource yahoo(File file)
+  {
+    return () -> YahooIO.loadData(file);
+  }
+
+  /** Source for a FRED series (name or series ID). */
+  public static SequenceSource fred(String name)
+  {
+    return () -> {
+      FredSeries fred = FredSeries.fromName(name);
+      if (fred.data == null) throw new IOException("Failed to load FRED data: " + name);
+      return fred.data;
+    };
+  }
+
+  /** Source for a CSV file of <date>,<value> (see DataIO.loadDateValueCSV()). */
+  public static SequenceSource dateValueCSV(File file)
+  {
+    return () -> DataIO.loadDateValueCSV(file);
+  }
+
+  /** Source for a CSV file with a header and a date column (see DataIO.loadCSV()). */
+  public static SequenceSource csv(File file, int[] dims)
+  {
+    return () -> {
+      Sequence seq = DataIO.loadCSV(file, dims);
+      if (seq == null) throw new IOException("Failed to parse CSV file: " + file.getPath());
+      return seq;
+    };
+  }
+}
@@ -1,16 +1,30 @@
 package org.minnen.retiretool.data;
 
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Pattern;
 
 import org.minnen.retiretool.data.Sequence.EndpointBehavior;
 import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.IntPair;
+import org.minnen.retiretool.util.Library;
 import org.minnen.retiretool.util.LinearFunc;
 import org.minnen.retiretool.util.Random;
 import org.minnen.retiretool.util.TimeLib;
@@ -22,19 +36,55 @@ import org.minnen.retiretool.util.TimeLib;
  * 
  * Each cumulative returns sequence in the store can be accessed by index or by name.
  * 
+ * Sequences can also be registered with a SequenceSource, in which case they are only loaded when first accessed (or
+ * prefetched on a background thread). If a memory budget is set, the least recently used sequences that have a source
+ * are evicted and will be reloaded if they're needed again.
+ * 
  * @author David Minnen
  */
 public class SequenceStore implements Iterable<Sequence>
 {
-  public static final Random         rng         = new Random();
+  public static final Random                 rng          = new Random();
+
+  /** Thread pool shared by all stores for prefetching sequences. */
+  private static ExecutorService             prefetchPool;
+
+  private final List<Sequence>               seqs         = new ArrayList<>();
+  private final Map<String, Integer>         nameToIndex  = new HashMap<>();
+  private final Map<String, String>          aliasMap     = new HashMap<>();
+  private final Map<String, String>          nameToOrig   = new HashMap<>();
+
+  /** Source for each sequence (null if the sequence was added directly); aligned with `seqs`. */
+  private final List<Source>                 sources      = new ArrayList<>();
+
+  /** Loaded sequences that have a source in least-recently-used order, mapped to their estimated size in bytes. */
+  private final LinkedHashMap<Source, Long>  loaded       = new LinkedHashMap<>(16, 0.75f, true);
+
+  /** Active locks (start, end, key) that are applied to sequences when they are loaded. */
+  private final List<long[]>                 locks        = new ArrayList<>();
+
+  /** Precomputed moving averages keyed by the sequence from which they were computed. */
+  private final Map<Sequence, List<SMACube>> cubes        = new IdentityHashMap<>();
 
-  private final List<Sequence>       seqs        = new ArrayList<>();
-  private final Map<String, Integer> nameToIndex = new HashMap<>();
-  private final Map<String, String>  aliasMap    = new HashMap<>();
-  private final Map<String, String>  nameToOrig  = new HashMap<>();
+  private long                               commonStart  = TimeLib.TIME_ERROR;
+  private long                               commonEnd    = TimeLib.TIME_ERROR;
 
-  private long                       commonStart = TimeLib.TIME_ERROR;
-  private long                       commonEnd   = TimeLib.TIME_ERROR;
+  private long                               memoryBudget = Long.MAX_VALUE;
+  private long                               memoryUsed;
+
+  /** Information about a sequence that can be loaded on demand. */
+  private static class Source
+  {
+    public final String         name;
+    public final SequenceSource source;
+    public Future<Sequence>     pending;
+
+    public Source(String name, SequenceSource source)
+    {
+      this.name = name;
+      this.source = source;
+    }
+  }
 
   public long getCommonStartTime()
   {
@@ -51,11 +101,17 @@ public class SequenceStore implements Iterable<Sequence>
    */
   public void clipToCommonTimeRange()
   {
+    List<Sequence> seqs = getSeqs();
     long commonStart = TimeLib.calcCommonStart(seqs);
     long commonEnd = TimeLib.calcCommonEnd(seqs);
     setCommonTimes(commonStart, commonEnd);
   }
 
+  /**
+   * Set the common start and end times and clip all sequences to this range.
+   * 
+   * Sequences that haven't been loaded yet are clipped when they're loaded.
+   */
   public void setCommonTimes(long commonStart, long commonEnd)
   {
     this.commonStart = commonStart;
@@ -64,21 +120,390 @@ public class SequenceStore implements Iterable<Sequence>
     // Update sequences in this store with the new start/end times.
     for (int i = 0; i < seqs.size(); ++i) {
       Sequence seq = seqs.get(i);
-      assert commonStart >= seq.getStartMS();
-      assert commonEnd <= seq.getEndMS();
-      if (commonStart != seq.getStartMS() || commonEnd != seq.getEndMS()) {
-        seq = seq.subseq(commonStart, commonEnd, EndpointBehavior.Closest);
-        seqs.set(i, seq);
+      if (seq == null) continue;
+      Sequence clipped = clip(seq);
+      if (clipped != seq) {
+        seqs.set(i, clipped);
+        Source source = sources.get(i);
+        if (source != null) {
+          long nBytes = estimateMemory(clipped);
+          memoryUsed += nBytes - loaded.put(source, nBytes);
+        }
       }
     }
   }
 
+  /**
+   * @return the given sequence clipped to the common time range (or `seq` if no clipping is needed)
+   * @throws IllegalStateException if the sequence doesn't cover the common time range (e.g. stale data)
+   */
+  private Sequence clip(Sequence seq)
+  {
+    if (commonStart == TimeLib.TIME_ERROR || commonEnd == TimeLib.TIME_ERROR) return seq;
+    if (commonStart < seq.getStartMS() || commonEnd > seq.getEndMS()) {
+      throw new IllegalStateException(String.format("Sequence doesn't cover common time range (%s): [%s] -> [%s] vs. "
+          + "[%s] -> [%s]", seq.getName(), TimeLib.formatDate(seq.getStartMS()), TimeLib.formatDate(seq.getEndMS()),
+          TimeLib.formatDate(commonStart), TimeLib.formatDate(commonEnd)));
+    }
+    if (commonStart == seq.getStartMS() && commonEnd == seq.getEndMS()) return seq;
+    return seq.subseq(commonStart, commonEnd, EndpointBehavior.Closest);
+  }
+
   public void clear()
   {
+    for (Source source : sources) {
+      if (source != null && source.pending != null) source.pending.cancel(false);
+    }
     seqs.clear();
+    sources.clear();
+    loaded.clear();
+    locks.clear();
+    memoryUsed = 0;
     nameToIndex.clear();
     aliasMap.clear();
     nameToOrig.clear();
+    cubes.clear();
+  }
+
+  /** @return estimated number of bytes used by the given sequence. */
+  private static long estimateMemory(Sequence seq)
+  {
+    if (seq.isEmpty()) return 64L;
+    // FeatureVec + double[] + list slot: about 64 bytes of overhead per element plus the data.
+    return 64L + seq.length() * (64L + 8L * seq.getNumDims());
+  }
+
+  /**
+   * Limit the memory used by sequences with a source.
+   * 
+   * When the estimated memory used by loaded sequences exceeds the budget, the least recently used sequences are
+   * evicted (unless they're locked). Sequences that were added directly are never evicted and don't count against the
+   * budget.
+   * 
+   * @param nBytes memory budget in bytes
+   */
+  public void setMemoryBudget(long nBytes)
+  {
+    memoryBudget = nBytes;
+    evict(null);
+  }
+
+  public long getMemoryBudget()
+  {
+    return memoryBudget;
+  }
+
+  /** @return estimated number of bytes used by loaded sequences that have a source. */
+  public long getMemoryUsed()
+  {
+    return memoryUsed;
+  }
+
+  /** Evict least recently used sequences until memory usage is within the budget. */
+  private void evict(Source keep)
+  {
+    Iterator<Map.Entry<Source, Long>> it = loaded.entrySet().iterator();
+    while (memoryUsed > memoryBudget && it.hasNext()) {
+      Map.Entry<Source, Long> entry = it.next();
+      Source source = entry.getKey();
+      if (source == keep) continue;
+      int index = nameToIndex.get(source.name);
+      Sequence seq = seqs.get(index);
+      if (seq.isLocked()) continue;
+      cubes.remove(seq);
+      seqs.set(index, null);
+      memoryUsed -= entry.getValue();
+      it.remove();
+    }
+  }
+
+  /** Forget the loaded sequence and source (if any) for the given index. */
+  private void drop(int index)
+  {
+    Source source = sources.get(index);
+    if (source == null) return;
+    if (source.pending != null) source.pending.cancel(false);
+    Long nBytes = loaded.remove(source);
+    if (nBytes != null) memoryUsed -= nBytes;
+    sources.set(index, null);
+  }
+
+  /**
+   * @return sequence at the given index, which is loaded from its source if necessary.
+   * @throws RuntimeException if the sequence fails to load.
+   */
+  private Sequence load(int index)
+  {
+    try {
+      return loadChecked(index);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e.getMessage(), e);
+    }
+  }
+
+  /** Same as load() but failures are reported via IOException. */
+  private Sequence loadChecked(int index) throws IOException
+  {
+    Sequence seq = seqs.get(index);
+    Source source = sources.get(index);
+    if (source == null) return seq;
+    if (seq != null) {
+      loaded.get(source); // mark as recently used
+      return seq;
+    }
+
+    try {
+      seq = (source.pending != null ? source.pending.get() : source.source.load());
+    } catch (IOException | ExecutionException e) {
+      throw new IOException(String.format("Failed to load sequence (%s)", source.name), e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(String.format("Interrupted while loading sequence (%s)", source.name));
+    } finally {
+      source.pending = null;
+    }
+    return install(index, seq);
+  }
+
+  /** Add a sequence loaded from the source at the given index to the store. */
+  private Sequence install(int index, Sequence seq)
+  {
+    Source source = sources.get(index);
+    seq.setName(source.name);
+    seq = clip(seq);
+    for (long[] lock : locks) {
+      IndexRange range = seq.getIndices(lock[0], lock[1], EndpointBehavior.Inside);
+      seq.lock(range.first, range.second, lock[2]);
+    }
+    seqs.set(index, seq);
+    long nBytes = estimateMemory(seq);
+    loaded.put(source, nBytes);
+    memoryUsed += nBytes;
+    evict(source);
+    return seq;
+  }
+
+  /**
+   * Fork/join task that loads a range of sources in parallel.
+   * 
+   * The result is the time range covered by all of the loaded sequences (last start and first end), which is computed
+   * as the results are joined.
+   */
+  private static class LoadTask extends RecursiveTask<long[]>
+  {
+    private static final long      serialVersionUID = 1L;
+
+    private final String[]         names;
+    private final SequenceSource[] sources;
+    private final Sequence[]       results;
+    private final int              from;
+    private final int              to;
+
+    public LoadTask(String[] names, SequenceSource[] sources, Sequence[] results, int from, int to)
+    {
+      this.names = names;
+      this.sources = sources;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected long[] compute()
+    {
+      if (to - from == 1) {
+        try {
+          Sequence seq = sources[from].load();
+          seq.setName(names[from]);
+          results[from] = seq;
+          return new long[] { seq.getStartMS(), seq.getEndMS() };
+        } catch (IOException e) {
+          throw new UncheckedIOException(String.format("Failed to load sequence (%s)", names[from]), e);
+        }
+      }
+
+      int mid = (from + to) >>> 1;
+      LoadTask left = new LoadTask(names, sources, results, from, mid);
+      left.fork();
+      long[] b = new LoadTask(names, sources, results, mid, to).compute();
+      long[] a = left.join();
+      return new long[] { Math.max(a[0], b[0]), Math.min(a[1], b[1]) };
+    }
+  }
+
+  /**
+   * Load the given sources in parallel.
+   * 
+   * @return time range {start, end} covered by all of the loaded sequences (TIME_ERROR if there are no sources).
+   * @throws IOException if any source fails to load.
+   */
+  private static long[] loadParallel(String[] names, SequenceSource[] sources, Sequence[] results) throws IOException
+  {
+    if (names.length == 0) return new long[] { TimeLib.TIME_ERROR, TimeLib.TIME_ERROR };
+    try {
+      return ForkJoinPool.commonPool().invoke(new LoadTask(names, sources, results, 0, names.length));
+    } catch (UncheckedIOException e) {
+      throw new IOException(e.getMessage(), e.getCause());
+    }
+  }
+
+  /**
+   * Load sequences in parallel and add them to the store.
+   * 
+   * Each source is loaded and parsed on the common fork/join pool. The time range common to all of the new sequences
+   * is computed while the results are combined so the caller doesn't need another pass over the data, e.g.:
+   * 
+   * <pre>
+   * long[] common = store.addAll(sources);
+   * store.setCommonTimes(common[0], common[1]);
+   * </pre>
+   * 
+   * @param sources map from name to source; sequences are added in iteration order
+   * @return time range {start, end} covered by all of the new sequences (last start and first end)
+   * @throws IOException if any source fails to load (in which case nothing is added)
+   */
+  public long[] addAll(Map<String, ? extends SequenceSource> sources) throws IOException
+  {
+    String[] names = sources.keySet().toArray(new String[sources.size()]);
+    SequenceSource[] array = sources.values().toArray(new SequenceSource[sources.size()]);
+    Sequence[] results = new Sequence[names.length];
+    long[] common = loadParallel(names, array, results);
+    for (int i = 0; i < names.length; ++i) {
+      add(results[i], names[i]);
+    }
+    return common;
+  }
+
+  /**
+   * Load all registered sequences that haven't been loaded yet.
+   * 
+   * Sources are loaded in parallel on the common fork/join pool (sequences that are being prefetched are not loaded
+   * again).
+   * 
+   * @throws IOException if any source fails to load
+   */
+  public void loadAll() throws IOException
+  {
+    List<Integer> indices = new ArrayList<>();
+    for (int i = 0; i < seqs.size(); ++i) {
+      Source source = sources.get(i);
+      if (source != null && source.pending == null && seqs.get(i) == null) indices.add(i);
+    }
+
+    final int n = indices.size();
+    String[] names = new String[n];
+    SequenceSource[] array = new SequenceSource[n];
+    Sequence[] results = new Sequence[n];
+    for (int i = 0; i < n; ++i) {
+      Source source = sources.get(indices.get(i));
+      names[i] = source.name;
+      array[i] = source.source;
+    }
+    loadParallel(names, array, results);
+    for (int i = 0; i < n; ++i) {
+      install(indices.get(i), results[i]);
+    }
+
+    // Wait for prefetched sequences.
+    for (int i = 0; i < seqs.size(); ++i) {
+      loadChecked(i);
+    }
+  }
+
+  /** @return true if the named sequence is in memory (i.e. it was added directly or has already been loaded). */
+  public boolean isLoaded(String name)
+  {
+    int index = getIndex(name);
+    return index >= 0 && seqs.get(index) != null;
+  }
+
+  private static synchronized ExecutorService getPrefetchPool()
+  {
+    if (prefetchPool == null) {
+      prefetchPool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+        Thread thread = new Thread(runnable, "SequenceStore-prefetch");
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return prefetchPool;
+  }
+
+  /**
+   * Start loading the named sequences on a background thread.
+   * 
+   * Sequences that are already loaded (or don't have a source) are ignored. A prefetched sequence is added to the
+   * store when it's first accessed.
+   */
+  public void prefetch(String... names)
+  {
+    for (String name : names) {
+      int index = getIndex(name);
+      if (index < 0) continue;
+      Source source = sources.get(index);
+      if (source == null || source.pending != null || seqs.get(index) != null) continue;
+      source.pending = getPrefetchPool().submit(source.source::load);
+    }
+  }
+
+  /**
+   * Create a copy of this store with duplicates of all sequences.
+   * 
+   * The copy can be locked independently of this store, e.g. by a simulation running in another thread. Precomputed
+   * moving averages are not copied. Sequences that haven't been loaded are shared as sources and loaded independently.
+   * 
+   * @return new store with the same names, aliases, and common time range
+   */
+  public SequenceStore dup()
+  {
+    return copy(false);
+  }
+
+  /**
+   * Create a store that shares all data with this store but can be locked independently.
+   * 
+   * Each sequence in the new store is a view (see Sequence.view()) so nothing is copied, and precomputed moving
+   * averages are shared. This is much cheaper than dup() for running simulations in several threads, but the data
+   * must not be changed while views are in use.
+   * 
+   * @return new store with views of the same sequences, names, aliases, and common time range
+   */
+  public SequenceStore view()
+  {
+    return copy(true);
+  }
+
+  private SequenceStore copy(boolean bView)
+  {
+    SequenceStore store = new SequenceStore();
+    for (int i = 0; i < seqs.size(); ++i) {
+      Sequence seq = seqs.get(i);
+      Source source = sources.get(i);
+      Sequence seqCopy = null;
+      if (seq != null) {
+        seqCopy = (bView ? seq.view() : seq.dup());
+        List<SMACube> list = cubes.get(seq);
+        if (bView && list != null) store.cubes.put(seqCopy, new ArrayList<>(list));
+      }
+      store.seqs.add(seqCopy);
+      if (source == null) {
+        store.sources.add(null);
+      } else {
+        Source copy = new Source(source.name, source.source);
+        copy.pending = source.pending; // Future.get() is safe to call from multiple threads
+        store.sources.add(copy);
+        if (seq != null) store.loaded.put(copy, loaded.get(source));
+      }
+    }
+    store.locks.addAll(locks);
+    store.memoryBudget = memoryBudget;
+    store.memoryUsed = memoryUsed;
+    store.nameToIndex.putAll(nameToIndex);
+    store.aliasMap.putAll(aliasMap);
+    store.nameToOrig.putAll(nameToOrig);
+    store.commonStart = commonStart;
+    store.commonEnd = commonEnd;
+    return store;
   }
 
   public int alias(String from, String to)
@@ -150,12 +575,14 @@ public class SequenceStore implements Iterable<Sequence>
       // Add the new sequence to the store.
       index = seqs.size();
       seqs.add(seq);
+      sources.add(null);
       nameToIndex.put(name, index);
       nameToOrig.put(name, name);
     } else {
       assert nameToIndex.containsKey(name) : name;
 
       // Update sequence.
+      drop(index);
       seqs.set(index, seq);
     }
 
@@ -163,10 +590,40 @@ public class SequenceStore implements Iterable<Sequence>
     return index;
   }
 
+  /**
+   * Register a sequence that will be loaded from the given source when it's first accessed.
+   *
+   * @param name name of the sequence
+   * @param source source that loads the sequence
+   * @return index in the store
+   */
+  public int register(String name, SequenceSource source)
+  {
+    int index = getIndex(name);
+    if (index < 0) {
+      index = seqs.size();
+      seqs.add(null);
+      sources.add(new Source(name, source));
+      nameToIndex.put(name, index);
+      nameToOrig.put(name, name);
+    } else {
+      Sequence seq = seqs.get(index);
+      if (seq != null) cubes.remove(seq);
+      drop(index);
+      seqs.set(index, null);
+      sources.set(index, new Source(name, source));
+    }
+    return index;
+  }
+
   public boolean remove(String name)
   {
     int index = getIndex(name);
     if (index < 0) return false;
+    Sequence seq = seqs.get(index);
+    if (seq != null) cubes.remove(seq);
+    drop(index);
+    sources.remove(index);
     seqs.remove(index);
     nameToIndex.remove(name);
     nameToOrig.remove(name);
@@ -201,23 +658,33 @@ public class SequenceStore implements Iterable<Sequence>
   {
     int index = getIndex(name);
     assert index >= 0 : "Can't find sequence: " + name;
-    return seqs.get(index);
+    return load(index);
   }
 
   public Sequence tryGet(String name)
   {
     int index = getIndex(name);
-    return (index < 0 ? null : seqs.get(index));
+    return (index < 0 ? null : load(index));
   }
 
   public Sequence tryGet(int id)
   {
-    return (id < 0 ? null : seqs.get(id));
+    return (id < 0 ? null : load(id));
   }
 
+  /**
+   * @return list of all sequences in the store (registered sequences are loaded if necessary).
+   * 
+   *         The list is a copy so it still holds every sequence even if some are evicted due to the memory budget.
+   */
   public List<Sequence> getSeqs()
   {
-    return seqs;
+    prefetch(getNames().toArray(new String[0]));
+    List<Sequence> list = new ArrayList<>();
+    for (int i = 0; i < seqs.size(); ++i) {
+      list.add(load(i));
+    }
+    return list;
   }
 
   public List<Sequence> getSeqs(String... names)
@@ -247,9 +714,27 @@ public class SequenceStore implements Iterable<Sequence>
     return names;
   }
 
+  /**
+   * Calculate a fingerprint of all data in this store.
+   * 
+   * @return 64-bit hash over the name and data of each sequence (in store order) and the common time range.
+   */
+  public long fingerprint()
+  {
+    long hash = Library.hash64(Library.HASH64_INIT, seqs.size());
+    for (Sequence seq : getSeqs()) {
+      hash = Library.hash64(hash, seq.getName() == null ? "" : seq.getName());
+      hash = Library.hash64(hash, seq.fingerprint());
+    }
+    hash = Library.hash64(hash, commonStart);
+    return Library.hash64(hash, commonEnd);
+  }
+
   /**
    * Lock all sequences currently in the store.
    * 
+   * Sequences that are loaded while the lock is active are locked when they're loaded.
+   * 
    * @param startMs first accessible ms (inclusive).
    * @param endMs last accessible ms (inclusive).
    * @param key key to use for locking / unlocking sequences.
@@ -257,19 +742,101 @@ public class SequenceStore implements Iterable<Sequence>
   public void lock(long startMs, long endMs, long key)
   {
     for (Sequence seq : seqs) {
+      if (seq == null) continue;
       IndexRange range = seq.getIndices(startMs, endMs, EndpointBehavior.Inside);
       seq.lock(range.first, range.second, key);
     }
+    locks.add(new long[] { startMs, endMs, key });
   }
 
   /** Unlock all sequences currently in this store. */
   public void unlock(long key)
   {
     for (Sequence seq : seqs) {
+      if (seq == null) continue;
       seq.unlock(key);
     }
+    for (int i = locks.size() - 1; i >= 0; --i) {
+      if (locks.get(i)[2] == key) {
+        locks.remove(i);
+        break;
+      }
+    }
+  }
+
+  /**
+   * Precompute moving averages for the named sequence.
+   * 
+   * Only windows that have not already been computed are added. Cubes are tied to a specific sequence object so
+   * replacing a sequence (e.g. via genNoisy) means predictors will not see stale averages.
+   * 
+   * @param name name of the sequence
+   * @param iPrice dimension over which to calculate averages
+   * @param windows (nLookbackA, nLookbackB) pairs relative to the current index
+   * @return cube holding the averages for the given sequence and dimension
+   */
+  public SMACube addSMAWindows(String name, int iPrice, Collection<IntPair> windows)
+  {
+    Sequence seq = get(name);
+    SMACube cube = getSMACube(seq, iPrice);
+    if (cube == null || cube.length() != seq.getData().size()) {
+      List<SMACube> list = cubes.computeIfAbsent(seq, k -> new ArrayList<>());
+      list.remove(cube);
+      cube = new SMACube(seq, iPrice);
+      list.add(cube);
+    }
+    cube.addWindows(windows);
+    return cube;
+  }
+
+  /** @return precomputed moving averages for the given sequence and dimension (null if none). */
+  public SMACube getSMACube(Sequence seq, int iPrice)
+  {
+    List<SMACube> list = cubes.get(seq);
+    if (list == null) return null;
+    for (SMACube cube : list) {
+      if (cube.covers(seq, iPrice)) return cube;
+    }
+    return null;
+  }
+
+  /** @return precomputed moving averages for the sequence with the given index (null if none). */
+  public SMACube getSMACube(int index, int iPrice)
+  {
+    if (index < 0 || cubes.isEmpty()) return null;
+    Sequence seq = seqs.get(index);
+    return (seq == null ? null : getSMACube(seq, iPrice));
+  }
+
+  /** @return total number of precomputed moving averages across all sequences and dimensions. */
+  public int getNumSMAWindows()
+  {
+    int n = 0;
+    for (List<SMACube> list : cubes.values()) {
+      for (SMACube cube : list) {
+        n += cube.getNumWindows();
+      }
+    }
+    return n;
+  }
+
+  /** Remove all precomputed moving averages. */
+  public void clearSMACubes()
+  {
+    cubes.clear();
   }
 
+  /**
+   * Replace the named sequence with a noisy version.
+   * 
+   * The original sequence is kept (as name + "-orig") and the name is aliased to a new OverlaySequence that only
+   * stores the noisy version of the given dimension.
+   * 
+   * @param name name of the sequence
+   * @param priceSDev maps a price to the standard deviation of its noise
+   * @param iDim dimension holding the prices
+   * @return noisy sequence
+   */
   public Sequence genNoisy(String name, LinearFunc priceSDev, int iDim)
   {
     Sequence seq = null;
@@ -281,23 +848,8 @@ public class SequenceStore implements Iterable<Sequence>
       add(seq, nameOrig);
     }
 
-    Sequence noisySeq = new Sequence(seq.getName() + "-noisy");
-    for (FeatureVec x : seq) {
-      x = new FeatureVec(x);
-      double price = x.get(iDim);
-      double sdev = priceSDev.calc(price);
-      double noisy = price + rng.nextGaussian() * sdev;
-      if (noisy <= 0.0) {
-        noisy = price * (0.01 + rng.nextDouble() * 0.2);
-      }
-
-      // Price should always be a whole number of pennies.
-      noisy = Math.round(noisy * 100.0) / 100.0;
-
-      x.set(iDim, noisy);
-      noisySeq.addData(x);
-    }
-
+    // Only the noisy prices are stored; everything else is shared with the original sequence.
+    Sequence noisySeq = OverlaySequence.noisy(seq.getName() + "-noisy", seq, iDim, priceSDev, rng.nextLong());
     add(noisySeq);
     alias(name, noisySeq.getName());
 
@@ -311,9 +863,26 @@ public class SequenceStore implements Iterable<Sequence>
     removeAlias(name);
   }
 
+  /** @return iterator over all sequences that loads registered sequences as they are reached. */
   @Override
   public Iterator<Sequence> iterator()
   {
-    return seqs.iterator();
+    return new Iterator<Sequence>()
+    {
+      private int index = 0;
+
+      @Override
+      public boolean hasNext()
+      {
+        return index < seqs.size();
+      }
+
+      @Override
+      public Sequence next()
+      {
+        if (!hasNext()) throw new NoSuchElementException();
+        return load(index++);
+      }
+    };
   }
 }
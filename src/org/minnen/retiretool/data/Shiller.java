@@ -1,10 +1,7 @@
 package org.minnen.retiretool.data;
 
-import java.io.BufferedReader;
-
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.HashMap;
@@ -18,7 +15,6 @@ import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
 import org.minnen.retiretool.util.FinLib;
 import org.minnen.retiretool.util.FinLib.DividendMethod;
-import org.minnen.retiretool.util.Library;
 import org.minnen.retiretool.util.TimeLib;
 
 /**
@@ -82,46 +78,47 @@ public class Shiller
     }
     System.out.printf("Loading Shiller data: [%s]\n", file.getPath());
     seq = new Sequence("Shiller Financial Data");
-    try (BufferedReader in = new BufferedReader(new FileReader(file))) {
-      String line;
-      while ((line = in.readLine()) != null) {
+    try (CSVReader in = new CSVReader(file)) {
+      while (in.next()) {
         try {
-          String[] toks = line.trim().split(",");
-          if (toks == null || toks.length < 5) {
+          if (in.getNumFields() < 5) {
             continue; // want at least: date, p, d, e, cpi
           }
+          if (in.isMissing(0) || in.isMissing(1) || in.isMissing(4) || in.isMissing(6) || in.isMissing(9)) {
+            throw new NumberFormatException("Missing required field");
+          }
 
           // date - odd parsing because 2017.1 = October 2017.
-          double date = Double.parseDouble(toks[0]);
+          double date = in.getRequiredDouble(0);
           int year = (int) Math.floor(date);
           int month = (int) Math.round((date - year) * 100);
 
           // snp price -- average of closing prices for the month
-          double price = Double.parseDouble(toks[1]);
+          double price = in.getRequiredDouble(1);
 
           // snp dividend -- data is annual dollar value, we want monthly
           // note: dividend data is quarterly and linearly interpolated to get monthly data
-          double div = Library.tryParse(toks[2], Double.NaN) / 12.0;
+          double div = in.getDouble(2, Double.NaN) / 12.0;
           if (!allowMissingData && Double.isNaN((div))) break;
 
           // cpi
-          double cpi = Double.parseDouble(toks[4]);
+          double cpi = in.getRequiredDouble(4);
 
           // GS10 rate
-          double gs10 = Double.parseDouble(toks[6]);
+          double gs10 = in.getRequiredDouble(6);
 
           // real total return price
-          double rtrp = Double.parseDouble(toks[9]);
+          double rtrp = in.getRequiredDouble(9);
 
           // CAPE
-          double cape = Library.tryParse(toks[12], 0.0);
+          double cape = in.getDouble(12, 0.0);
 
           long timeMS = TimeLib.toMs(year, month, 1);
           seq.addData(new FeatureVec(6, price, div, cpi, gs10, rtrp, cape), timeMS);
 
           // System.out.printf("%d/%d: $%.2f $%.2f $%.2f\n", year, month, price, div, cpi);
         } catch (NumberFormatException nfe) {
-          // System.err.println("Bad Line: " + line);
+          // System.err.println("Bad Line: " + in.getLine());
           if (seq.isEmpty()) continue;
           else break;
         }
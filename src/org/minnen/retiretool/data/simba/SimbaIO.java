@@ -1,14 +1,13 @@
 package org.minnen.retiretool.data.simba;
 
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.Map;
 import java.util.TreeMap;
 
+import org.minnen.retiretool.data.CSVReader;
 import org.minnen.retiretool.data.DataIO;
 import org.minnen.retiretool.data.Sequence;
 import org.minnen.retiretool.util.FinLib;
@@ -36,52 +35,46 @@ public class SimbaIO
       throw new IOException(String.format("Can't read Simba CSV file (%s)", file.getPath()));
     }
     System.out.printf("Loading Simba CSV data file: [%s]\n", file.getPath());
-    try (BufferedReader in = new BufferedReader(new FileReader(file))) {
-      String line;
+    try (CSVReader in = new CSVReader(file).setCommentChar('#')) {
       int nLines = 0;
       int nCols = 0;
       int prevYear = -1;
-      while ((line = in.readLine()) != null) {
-        // Remove line comment.
-        int iComment = line.indexOf('#');
-        if (iComment >= 0) line = line.substring(0, iComment);
-
-        line = line.trim();
-        if (line.isEmpty()) continue;
+      while (in.next()) {
         ++nLines;
-        String[] toks = line.trim().split(",");
+        final int nFields = in.getNumFields();
         if (nCols == 0) {
-          nCols = toks.length;
-        } else if (toks.length != nCols) {
+          nCols = nFields;
+        } else if (nFields != nCols) {
           throw new IOException(
-              String.format("Inconsistent number of columns: %d vs. %d (line=%d)\n", toks.length, nCols, nLines));
+              String.format("Inconsistent number of columns: %d vs. %d (line=%d)\n", nFields, nCols, nLines));
         }
-        // System.out.printf("%d: %d |%s\n", nLines, toks.length, line);
 
         if (nLines == 1) {
-          assert toks[0].equals("Name") || toks[0].isEmpty();
-          descriptions = new String[toks.length - 1];
-          System.arraycopy(toks, 1, descriptions, 0, descriptions.length);
+          assert in.getString(0).equals("Name") || in.isEmpty(0);
+          descriptions = new String[nFields - 1];
+          for (int i = 1; i < nFields; ++i) {
+            descriptions[i - 1] = in.getString(i);
+          }
         } else if (nLines == 2) {
-          assert toks[0].equals("Symbol") || toks[0].isEmpty();
-          symbols = new String[toks.length - 1];
-          System.arraycopy(toks, 1, symbols, 0, descriptions.length);
+          assert in.getString(0).equals("Symbol") || in.isEmpty(0);
+          symbols = new String[nFields - 1];
           returnSeqs = new Sequence[symbols.length];
           for (int i = 0; i < symbols.length; ++i) {
+            symbols[i] = in.getString(i + 1);
             returnSeqs[i] = new Sequence(descriptions[i]); // TODO use name or symbol?
           }
         } else {
           try {
-            int year = Integer.parseInt(toks[0]);
+            int year = in.getInt(0);
             if (prevYear > 0 && year != prevYear + 1) {
               throw new IOException(
                   String.format("Non-consecutive year: %d after %d (line=%d)\n", year, prevYear, nLines));
             }
-            for (int i = 1; i < toks.length; ++i) {
-              if (toks[i].isEmpty()) continue;
-              double r = Double.parseDouble(toks[i]);
+            long ms = TimeLib.toMs(year, Month.JANUARY, 1);
+            for (int i = 1; i < nFields; ++i) {
+              if (in.isMissing(i)) continue;
+              double r = in.getDouble(i);
               double m = FinLib.ret2mul(r); // easier to work with multipliers (1.4 = 40% growth)
-              long ms = TimeLib.toMs(year, Month.JANUARY, 1);
               if (!returnSeqs[i - 1].isEmpty()) {
                 long prevMs = returnSeqs[i - 1].getEndMS();
                 LocalDate prevDate = TimeLib.ms2date(prevMs);
@@ -90,7 +83,7 @@ public class SimbaIO
               returnSeqs[i - 1].addData(m, ms);
             }
           } catch (NumberFormatException e) {
-            System.err.printf("Error parsing CSV data: [%s]\n", line);
+            System.err.printf("Error parsing CSV data: [%s]\n", in.getLine());
             break;
           }
         }
@@ -36,27 +36,30 @@ public class DownloadFilteredFunds
       System.exit(1);
     }
 
-    List<TiingoFund> funds = TiingoIO.loadTickers();
-    System.out.printf("Funds: %d\n", funds.size());
+    TiingoUniverse universe = TiingoIO.loadUniverse();
+    System.out.printf("Funds: %d\n", universe.size());
 
     // Only funds that trade in USD.
-    funds.removeIf(p -> !p.currency.equalsIgnoreCase("usd"));
-    System.out.printf("Funds (USD): %d\n", funds.size());
+    TiingoUniverse.Filter filter = universe.filter().currency("usd");
+    System.out.printf("Funds (USD): %d\n", filter.count());
 
     // Only mutual funds (or ETFs).
-    funds.removeIf(p -> !p.assetType.equalsIgnoreCase("mutual fund") && !p.assetType.equalsIgnoreCase("etf"));
-    System.out.printf("Funds (etf / mutual funds): %d\n", funds.size());
+    filter.assetType("mutual fund", "etf");
+    System.out.printf("Funds (etf / mutual funds): %d\n", filter.count());
 
     // Only funds with recent date.
     LocalDate today = TimeLib.ms2date(TimeLib.getTime());
     LocalDate endAfter = today.minusDays(5);
-    funds.removeIf(p -> !p.end.isAfter(endAfter));
-    System.out.printf("Funds (recent): %d\n", funds.size());
+    filter.endRange(endAfter.plusDays(1), null);
+    System.out.printf("Funds (recent): %d\n", filter.count());
 
     // Only funds with significant history.
     LocalDate startBefore = LocalDate.of(1980, 1, 1);
-    funds.removeIf(p -> p.start.isAfter(startBefore));
-    System.out.printf("Funds (old): %d\n", funds.size());
+    filter.startRange(null, startBefore);
+    System.out.printf("Funds (old): %d\n", filter.count());
+
+    // Only create fund objects for the funds that pass the filters.
+    List<TiingoFund> funds = filter.funds();
 
     // Only "V" funds.
     // funds.removeIf(p -> !p.ticker.startsWith("V"));
@@ -7,6 +7,7 @@ import java.util.List;
 import org.minnen.retiretool.broker.SimFactory;
 import org.minnen.retiretool.broker.Simulation;
 import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.data.SequenceSource;
 import org.minnen.retiretool.data.SequenceStore;
 import org.minnen.retiretool.util.PriceModel;
 import org.minnen.retiretool.util.Slippage;
@@ -23,49 +24,55 @@ public class Tiingo
   public static Simulation setupSimulation(String[] symbols, double startingBalance, double monthlyDeposit,
       Slippage slippage, TiingoFundFilter filter, SequenceStore store, Sequence... otherSeqs) throws IOException
   {
-    // Load all supported symbols.
-    TiingoIO.loadTickers();
+    // Load index of all supported symbols.
+    TiingoUniverse universe = TiingoIO.loadUniverse();
 
-    // Load EOD data and metadata for all Tiingo symbols.
-    List<Sequence> seqs = new ArrayList<>();
+    // Register Tiingo symbols with the store; EOD data is loaded when a sequence is first used.
+    List<TiingoFund> funds = new ArrayList<>();
     for (String symbol : symbols) {
-      TiingoFund fund = TiingoFund.get(symbol);
+      TiingoFund fund = universe.getFund(symbol);
       if (fund == null) {
         System.out.printf("Unavailable: %s\n", symbol);
         continue;
       }
 
       if (filter != null && !filter.accept(fund)) continue;
+      funds.add(fund);
+    }
 
-      if (!fund.loadData()) {
-        System.err.printf("Failed to load data for %s.", fund.ticker);
-        continue;
-      }
-      seqs.add(fund.data);
+    // Sort by start time and report fund metadata.
+    funds.sort((a, b) -> a.start.compareTo(b.start));
+    for (TiingoFund fund : funds) {
+      TiingoMetadata meta = TiingoMetadata.get(fund.ticker);
+      System.out.printf("%5s  [%s] -> [%s]  %s\n", fund.ticker, TimeLib.formatDate2(TimeLib.toMs(fund.start)),
+          TimeLib.formatDate2(TimeLib.toMs(fund.end)), meta == null ? "" : meta.name);
     }
 
-    // Add non-Tiingo sequences to the list.
+    // Find common start/end times (last start and first end). The supported tickers file gives the time range of each
+    // fund so we don't need to load the data. TiingoFund.loadData() fails if the EOD data doesn't cover this range and
+    // the store checks the range again when each sequence is loaded.
+    long commonStart = TimeLib.TIME_BEGIN;
+    long commonEnd = TimeLib.TIME_END;
+    for (TiingoFund fund : funds) {
+      commonStart = Math.max(commonStart, TimeLib.toMs(fund.start));
+      commonEnd = Math.min(commonEnd, TimeLib.toMs(fund.end));
+    }
     for (Sequence seq : otherSeqs) {
-      seqs.add(seq);
+      commonStart = Math.max(commonStart, seq.getStartMS());
+      commonEnd = Math.min(commonEnd, seq.getEndMS());
     }
 
-    // Sort by start time and report fund metadata.
-    seqs.sort(Sequence.getStartDateComparator());
-    for (Sequence seq : seqs) {
-      TiingoMetadata meta = TiingoMetadata.get(seq.getName());
-      System.out.printf("%5s  [%s] -> [%s]  %s\n", seq.getName(), TimeLib.formatDate2(seq.getStartMS()),
-          TimeLib.formatDate2(seq.getEndMS()), meta == null ? "" : meta.name);
+    for (TiingoFund fund : funds) {
+      store.register(fund.ticker, SequenceSource.tiingo(fund.ticker));
     }
-
-    // Find common start/end times (last start and first end).
-    long commonStart = TimeLib.calcCommonStart(seqs);
-    long commonEnd = TimeLib.calcCommonEnd(seqs);
-
-    store.addAll(seqs);
+    store.addAll(otherSeqs);
     store.setCommonTimes(commonStart, commonEnd);
-    System.out.printf("Common[%d]: [%s] -> [%s]\n", seqs.size(), TimeLib.formatDate(commonStart),
+    System.out.printf("Common[%d]: [%s] -> [%s]\n", funds.size() + otherSeqs.length, TimeLib.formatDate(commonStart),
         TimeLib.formatDate(commonEnd));
 
+    // Start loading all funds in the background.
+    store.prefetch(symbols);
+
     // Setup simulation.
     // TODO verify that adjClose/close * open = adjOpen for Tiingo data.
     Sequence guideSeq = store.get(symbols[0]).dup();
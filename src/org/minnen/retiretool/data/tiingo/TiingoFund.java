@@ -6,15 +6,17 @@ import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.minnen.retiretool.data.CSVReader;
 import org.minnen.retiretool.data.DataIO;
 import org.minnen.retiretool.data.Sequence;
 import org.minnen.retiretool.util.TimeLib;
 
 public class TiingoFund
 {
-  public final static HashMap<String, TiingoFund> fundMap = new HashMap<>();
+  public final static Map<String, TiingoFund>     fundMap = new ConcurrentHashMap<>();
 
   public final String                             ticker;
   public final String                             exchange;
@@ -46,8 +48,8 @@ public class TiingoFund
   public static TiingoFund fromSymbol(String symbol, boolean loadData)
   {
     try {
-      TiingoIO.loadTickers();
-      TiingoFund fund = TiingoFund.get(symbol);
+      TiingoFund fund = TiingoIO.loadUniverse().getFund(symbol);
+      if (fund == null) return null;
       if (loadData && !fund.loadData()) return null;
       return fund;
     } catch (IOException e) {
@@ -71,6 +73,21 @@ public class TiingoFund
     return new TiingoFund(toks[0], toks[1], toks[2], toks[3], start, end);
   }
 
+  /**
+   * Create a fund from the current line of a supported tickers CSV file.
+   *
+   * @return new fund or null if any field is missing.
+   */
+  public static TiingoFund fromCSV(CSVReader in)
+  {
+    if (in.getNumFields() != 6) return null;
+    for (int i = 0; i < 6; ++i) {
+      if (in.isEmpty(i)) return null;
+    }
+    return new TiingoFund(in.getString(0), in.getString(1), in.getString(2), in.getString(3), in.getDate(4),
+        in.getDate(5));
+  }
+
   /** Load metadata; download updated data if necessary. */
   public boolean loadMetadata()
   {
@@ -141,9 +158,17 @@ public class TiingoFund
             return false;
           }
           data = TiingoIO.loadEodData(ticker); // Load newly acquired data
+          dataEnd = TimeLib.ms2date(data.getEndMS());
         }
       }
 
+      // The supported tickers file is used for the common time range so the data must cover it.
+      if (dataStart.isAfter(start) || dataEnd.isBefore(end)) {
+        System.err.printf("EOD data doesn't cover expected range (%s): [%s] -> [%s] vs. [%s] -> [%s]\n", ticker,
+            dataStart, dataEnd, start, end);
+        data = null;
+        return false;
+      }
       return true;
     } catch (IOException e) {
       return false;
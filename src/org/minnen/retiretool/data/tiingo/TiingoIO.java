@@ -1,17 +1,17 @@
 package org.minnen.retiretool.data.tiingo;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.time.Month;
 import java.util.ArrayList;
@@ -19,7 +19,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
-import org.apache.commons.io.IOUtils;
+import org.minnen.retiretool.data.CSVReader;
 import org.minnen.retiretool.data.DataIO;
 import org.minnen.retiretool.data.FeatureVec;
 import org.minnen.retiretool.data.Sequence;
@@ -30,10 +30,15 @@ public class TiingoIO
 {
   private static String                      auth                = System.getenv("tiingo.auth");
 
+  /** Base URL for the Tiingo daily API (can be changed to use a proxy or a local test server). */
+  private static String                      apiUrl              = "https://api.tiingo.com/tiingo/daily/";
+
   public static final String                 supportedTickersUrl = "https://apimedia.tiingo.com/docs/tiingo/daily/supported_tickers.zip";
 
   private static Map<File, List<TiingoFund>> cacheFunds          = new HashMap<File, List<TiingoFund>>();
 
+  private static TiingoUniverse              cacheUniverse;
+
   public static String getAuth()
   {
     return auth;
@@ -44,6 +49,16 @@ public class TiingoIO
     auth = newAuth;
   }
 
+  public static String getApiUrl()
+  {
+    return apiUrl;
+  }
+
+  public static void setApiUrl(String newApiUrl)
+  {
+    apiUrl = newApiUrl.endsWith("/") ? newApiUrl : newApiUrl + "/";
+  }
+
   /** @return path to base directory for storing Tiingo data. */
   private static File getPath()
   {
@@ -65,9 +80,16 @@ public class TiingoIO
     return new File(getPath(), "tiingo_supported_tickers.csv");
   }
 
-  public static void clearMetadataCache()
+  /** @return path to the binary index of the supported tickers file (see TiingoUniverse). */
+  public static File getPathSupportedTickersIndex()
+  {
+    return new File(getPath(), "tiingo_supported_tickers.idx");
+  }
+
+  public static synchronized void clearMetadataCache()
   {
     cacheFunds.clear();
+    cacheUniverse = null;
   }
 
   public static URL buildDataURL(String symbol)
@@ -84,9 +106,8 @@ public class TiingoIO
       LocalDate endDate = TimeLib.ms2date(TimeLib.getTime());
       String endDateString = String.format("%04d-%02d-%02d", endDate.getYear(), endDate.getMonthValue(),
           endDate.getDayOfMonth());
-      String address = String.format(
-          "https://api.tiingo.com/tiingo/daily/%s/prices?token=%s&format=csv&resampleFreq=daily&startDate=%s&endDate=%s",
-          symbol, TiingoIO.auth, startDateString, endDateString);
+      String address = String.format("%s%s/prices?token=%s&format=csv&resampleFreq=daily&startDate=%s&endDate=%s",
+          apiUrl, symbol, TiingoIO.auth, startDateString, endDateString);
       // System.out.printf("URL: %s\n", address);
       return new URL(address);
     } catch (MalformedURLException e) {
@@ -99,7 +120,7 @@ public class TiingoIO
   {
     try {
       // https://api.tiingo.com/docs/tiingo/daily
-      String address = "https://api.tiingo.com/tiingo/daily/" + symbol;
+      String address = apiUrl + symbol;
       // System.out.printf("URL: %s\n", address);
       return new URL(address);
     } catch (MalformedURLException e) {
@@ -126,7 +147,7 @@ public class TiingoIO
    * @return List of Tiingo funds
    * @throws IOException if there is a problem reading the file.
    */
-  private static List<TiingoFund> loadTickers(File file) throws IOException
+  private static synchronized List<TiingoFund> loadTickers(File file) throws IOException
   {
     if (cacheFunds.containsKey(file)) {
       return cacheFunds.get(file);
@@ -140,11 +161,10 @@ public class TiingoIO
     }
     // System.out.printf("Loading tiingo file: [%s]\n", file.getPath());
     List<TiingoFund> funds = new ArrayList<TiingoFund>();
-    try (BufferedReader in = new BufferedReader(new FileReader(file))) {
-      String line;
-      while ((line = in.readLine()) != null) {
-        if (line.startsWith("ticker")) continue; // skip header
-        TiingoFund fund = TiingoFund.fromString(line);
+    try (CSVReader in = new CSVReader(file)) {
+      while (in.next()) {
+        if (in.equalsIgnoreCase(0, "ticker")) continue; // skip header
+        TiingoFund fund = TiingoFund.fromCSV(in);
         if (fund == null) continue;
         funds.add(fund);
       }
@@ -154,6 +174,38 @@ public class TiingoIO
     return funds;
   }
 
+  /**
+   * Load the universe of supported tickers.
+   * 
+   * The universe is built from the supported tickers file and saved as a binary index, which is used until the CSV
+   * changes. Unlike loadTickers(), no TiingoFund objects are created.
+   * 
+   * @return index of all supported tickers
+   * @throws IOException if there is a problem reading the file.
+   */
+  public static synchronized TiingoUniverse loadUniverse() throws IOException
+  {
+    if (cacheUniverse != null) return cacheUniverse;
+
+    if (!downloadLatestSupportedTickerCSV()) {
+      throw new IOException("Failed to download latest supported tickers CSV");
+    }
+    File file = getPathSupportedTickers();
+    if (!file.canRead()) {
+      throw new IOException(String.format("Can't read tiingo file (%s)", file.getPath()));
+    }
+
+    // The CSV is replaced (not modified) when it's updated, so size and timestamp identify its contents.
+    File indexFile = getPathSupportedTickersIndex();
+    TiingoUniverse universe = TiingoUniverse.read(indexFile, file.lastModified(), file.length());
+    if (universe == null) {
+      universe = TiingoUniverse.fromCSV(file);
+      universe.write(indexFile, file.lastModified(), file.length());
+    }
+    cacheUniverse = universe;
+    return universe;
+  }
+
   public static File getMetadataFile(String symbol)
   {
     return new File(getPathMeta(), symbol + "-meta.json");
@@ -200,71 +252,51 @@ public class TiingoIO
     int iSplitFactor = -1;
 
     Sequence seq = new Sequence(symbol);
-    try (BufferedReader in = new BufferedReader(new FileReader(file))) {
-      String line;
-      while ((line = in.readLine()) != null) {
-        line = line.trim();
-        if (line.isEmpty()) {
-          continue;
-        }
-        String[] toks = DataIO.splitCSV(line, ",");
-        if (toks == null || toks.length != 13) {
-          System.err.printf("Error parsing Tiingo data: [%s]\n", line);
+    try (CSVReader in = new CSVReader(file)) {
+      while (in.next()) {
+        if (in.getNumFields() != 13) {
+          System.err.printf("Error parsing Tiingo data: [%s]\n", in.getLine());
           continue;
         }
 
         // Parse the header.
         if (iDate < 0) {
-          for (int i = 0; i < toks.length; ++i) {
-            String field = toks[i].toLowerCase();
-            if (field.equals("date")) iDate = i;
-            else if (field.equals("close")) iClose = i;
-            else if (field.equals("high")) iHigh = i;
-            else if (field.equals("low")) iLow = i;
-            else if (field.equals("open")) iOpen = i;
-            else if (field.equals("volume")) iVolume = i;
-            else if (field.equals("adjclose")) iAdjClose = i;
-            else if (field.equals("adjhigh")) iAdjHigh = i;
-            else if (field.equals("adjlow")) iAdjLow = i;
-            else if (field.equals("adjopen")) iAdjOpen = i;
-            else if (field.equals("adjvolume")) iAdjVolume = i;
-            else if (field.equals("divcash")) iDivCash = i;
-            else if (field.equals("splitfactor")) iSplitFactor = i;
+          for (int i = 0; i < in.getNumFields(); ++i) {
+            if (in.equalsIgnoreCase(i, "date")) iDate = i;
+            else if (in.equalsIgnoreCase(i, "close")) iClose = i;
+            else if (in.equalsIgnoreCase(i, "high")) iHigh = i;
+            else if (in.equalsIgnoreCase(i, "low")) iLow = i;
+            else if (in.equalsIgnoreCase(i, "open")) iOpen = i;
+            else if (in.equalsIgnoreCase(i, "volume")) iVolume = i;
+            else if (in.equalsIgnoreCase(i, "adjclose")) iAdjClose = i;
+            else if (in.equalsIgnoreCase(i, "adjhigh")) iAdjHigh = i;
+            else if (in.equalsIgnoreCase(i, "adjlow")) iAdjLow = i;
+            else if (in.equalsIgnoreCase(i, "adjopen")) iAdjOpen = i;
+            else if (in.equalsIgnoreCase(i, "adjvolume")) iAdjVolume = i;
+            else if (in.equalsIgnoreCase(i, "divcash")) iDivCash = i;
+            else if (in.equalsIgnoreCase(i, "splitfactor")) iSplitFactor = i;
           }
           continue;
         }
 
         try {
-          long time = TimeLib.toMs(LocalDate.parse(toks[iDate]));
-          double close = Double.parseDouble(toks[iClose]);
-          double high = Double.parseDouble(toks[iHigh]);
-          double low = Double.parseDouble(toks[iLow]);
-          double open = Double.parseDouble(toks[iOpen]);
-          double volume = Double.parseDouble(toks[iVolume]);
-          double adjClose = Double.parseDouble(toks[iAdjClose]);
-          double adjHigh = Double.parseDouble(toks[iAdjHigh]);
-          double adjLow = Double.parseDouble(toks[iAdjLow]);
-          double adjOpen = Double.parseDouble(toks[iAdjOpen]);
-          double adjVolume = Double.parseDouble(toks[iAdjVolume]);
-          double divCash = Double.parseDouble(toks[iDivCash]);
-          double splitFactor = Double.parseDouble(toks[iSplitFactor]);
-
+          long time = in.getTime(iDate);
           FeatureVec fv = new FeatureVec(12);
-          fv.set(FinLib.Open, open);
-          fv.set(FinLib.High, high);
-          fv.set(FinLib.Low, low);
-          fv.set(FinLib.Close, close);
-          fv.set(FinLib.Volume, volume);
-          fv.set(FinLib.AdjClose, adjClose);
-          fv.set(FinLib.AdjHigh, adjHigh);
-          fv.set(FinLib.AdjLow, adjLow);
-          fv.set(FinLib.AdjOpen, adjOpen);
-          fv.set(FinLib.AdjVolume, adjVolume);
-          fv.set(FinLib.DivCash, divCash);
-          fv.set(FinLib.SplitFactor, splitFactor);
+          fv.set(FinLib.Open, in.getRequiredDouble(iOpen));
+          fv.set(FinLib.High, in.getRequiredDouble(iHigh));
+          fv.set(FinLib.Low, in.getRequiredDouble(iLow));
+          fv.set(FinLib.Close, in.getRequiredDouble(iClose));
+          fv.set(FinLib.Volume, in.getRequiredDouble(iVolume));
+          fv.set(FinLib.AdjClose, in.getRequiredDouble(iAdjClose));
+          fv.set(FinLib.AdjHigh, in.getRequiredDouble(iAdjHigh));
+          fv.set(FinLib.AdjLow, in.getRequiredDouble(iAdjLow));
+          fv.set(FinLib.AdjOpen, in.getRequiredDouble(iAdjOpen));
+          fv.set(FinLib.AdjVolume, in.getRequiredDouble(iAdjVolume));
+          fv.set(FinLib.DivCash, in.getRequiredDouble(iDivCash));
+          fv.set(FinLib.SplitFactor, in.getRequiredDouble(iSplitFactor));
           seq.addData(fv, time);
         } catch (NumberFormatException e) {
-          System.err.printf("Error parsing Tiingo CSV data (%s): [%s]\n", symbol, line);
+          System.err.printf("Error parsing Tiingo CSV data (%s): [%s]\n", symbol, in.getLine());
           throw e;
         }
       }
@@ -275,36 +307,81 @@ public class TiingoIO
     return seq;
   }
 
-  private static String httpGetToString(URL url) throws IOException
+  /**
+   * Download the contents of the given URL directly to a file without buffering the response in memory.
+   * 
+   * @param url address to download
+   * @param file destination file, only written if the request succeeds
+   * @return HTTP status code (200 = success)
+   * @throws IOException if the request fails (e.g. network error or timeout)
+   */
+  public static int download(URL url, File file) throws IOException
   {
     // https://api.tiingo.com/docs/tiingo/daily
     HttpURLConnection con = (HttpURLConnection) url.openConnection();
-    con.setRequestMethod("GET");
-    con.setRequestProperty("Content-Type", "application/json");
-    con.setRequestProperty("Authorization", "Token " + TiingoIO.auth);
-    if (con.getResponseCode() != 200) {
-      System.out.printf("Response: %d - %s\n", con.getResponseCode(), con.getResponseMessage());
-      return null;
+    try {
+      con.setRequestMethod("GET");
+      con.setConnectTimeout(30000);
+      con.setReadTimeout(60000);
+      con.setRequestProperty("Content-Type", "application/json");
+      con.setRequestProperty("Authorization", "Token " + TiingoIO.auth);
+      int code = con.getResponseCode();
+      if (code != HttpURLConnection.HTTP_OK) return code;
+
+      try (InputStream input = con.getInputStream()) {
+        Files.copy(input, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+      return code;
+    } finally {
+      con.disconnect();
     }
+  }
 
-    try (InputStream input = con.getInputStream()) {
-      return IOUtils.toString(input, "UTF-8");
+  /** @return true if the downloaded file holds an error message instead of data. */
+  static boolean isErrorResponse(File file) throws IOException
+  {
+    try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+      String line = in.readLine();
+      if (line != null && line.startsWith("Error")) {
+        System.out.println(line);
+        return true;
+      }
+      return false;
     }
   }
 
-  private static boolean httpGetToFile(URL url, File file) throws IOException
+  /** Replace `to` with `from` in a single step so that readers never see a partially written file. */
+  static void moveAtomic(File from, File to) throws IOException
   {
-    String data = httpGetToString(url);
-    if (data == null) return false;
-
-    if (data.startsWith("Error")) {
-      System.out.println(data);
-      return false;
+    try {
+      Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
     }
+  }
 
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
-      writer.write(data);
+  /** @return temporary file in the same directory as `file` (so that it can be moved atomically). */
+  static File createTempFile(File file) throws IOException
+  {
+    File dir = file.getParentFile();
+    if (!dir.exists()) dir.mkdirs();
+    return File.createTempFile(file.getName() + "-", ".tmp", file.getParentFile());
+  }
+
+  private static boolean httpGetToFile(URL url, File file) throws IOException
+  {
+    File tmp = createTempFile(file);
+    try {
+      int code = download(url, tmp);
+      if (code != HttpURLConnection.HTTP_OK) {
+        System.out.printf("Response: %d (%s)\n", code, file.getName());
+        return false;
+      }
+      if (isErrorResponse(tmp)) return false;
+      moveAtomic(tmp, file);
       return true;
+    } finally {
+      tmp.delete();
     }
   }
 
@@ -323,48 +400,16 @@ public class TiingoIO
     return true;
   }
 
+  /** Download EOD data that is newer than the existing file (see TiingoUpdater). */
   public static boolean updateFundEodData(TiingoFund fund) throws IOException
   {
-    File file = getEodFile(fund.ticker);
-    if (!file.exists() || file.length() <= 0) {
-      return saveFundEodData(fund, true);
-    }
-
-    List<String> lines = Files.readAllLines(file.toPath());
-    String header = lines.get(0).trim();
-    String lastLine = lines.get(lines.size() - 1);
-    String[] toks = DataIO.splitCSV(header);
-    assert toks[0].toLowerCase().equals("date");
-
-    toks = DataIO.splitCSV(lastLine);
-    LocalDate lastDate = LocalDate.parse(toks[0]);
-
-    URL url = buildDataURL(fund.ticker, lastDate);
-    String data = httpGetToString(url);
-
-    String[] newLines = DataIO.splitCSV(data, "\n");
-    if (newLines.length < 3) return true; // no new data
-
-    if (!newLines[0].equals(header)) {
-      System.out.printf("New header => replace entire file (%s)\n", fund.ticker);
-      System.out.printf("Old: %s\n", header);
-      System.out.printf("New: %s\n", newLines[0]);
-      return saveFundEodData(fund, true);
-    }
-
-    if (!lastLine.equals(newLines[1])) {
-      System.out.printf("Old last line doesn't match new first line (%s)\n", fund.ticker);
-      System.out.printf("Old: %s\n", lastLine);
-      System.out.printf("New: %s\n", newLines[1]);
-      return saveFundEodData(fund, true);
-    }
-
-    // Add new lines to old lines (skip header and one line overlap).
-    for (int i = 2; i < newLines.length; ++i) {
-      lines.add(newLines[i]);
+    TiingoUpdater updater = new TiingoUpdater(1, 1, 0L);
+    try {
+      return updater.updateEodData(fund.ticker);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
     }
-    Files.write(file.toPath(), lines);
-    return true;
   }
 
   public static boolean saveFundMetadata(TiingoFund fund) throws IOException
@@ -387,16 +432,17 @@ public class TiingoIO
     return true;
   }
 
+  /**
+   * Download new metadata and EOD data for the given symbols.
+   * 
+   * Symbols are updated in parallel and only data newer than the existing EOD files is requested (see TiingoUpdater).
+   * 
+   * @return true if all symbols were updated successfully.
+   */
   public static boolean updateData(String[] symbols) throws IOException
   {
-    // TODO Implement data update.
-    TiingoIO.loadTickers(getPathSupportedTickers());
-    for (String symbol : symbols) {
-      TiingoFund fund = TiingoFund.get(symbol);
-      if (!TiingoIO.saveFundMetadata(fund)) return false;
-      if (!TiingoIO.saveFundEodData(fund, false)) return false;
-    }
-    return true;
+    TiingoUpdater updater = new TiingoUpdater();
+    return updater.update(symbols);
   }
 
   public static boolean downloadLatestSupportedTickerCSV()
@@ -1,14 +1,15 @@
 package org.minnen.retiretool.data.tiingo;
 
 import java.time.LocalDate;
-import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 public class TiingoMetadata
 {
-  public final static HashMap<String, TiingoMetadata> fundMap = new HashMap<>();
+  public final static Map<String, TiingoMetadata>     fundMap = new ConcurrentHashMap<>();
 
   public final String                                 name;
   public final String                                 ticker;
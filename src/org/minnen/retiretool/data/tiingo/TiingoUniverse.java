@@ -0,0 +1,549 @@
+package org.minnen.retiretool.data.tiingo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.minnen.retiretool.data.CSVReader;
+
+/**
+ * Compact, column-oriented index of the Tiingo supported tickers file.
+ *
+ * Each ticker is a row index into parallel primitive arrays: exchange, asset type, and currency are stored as codes
+ * into small tables of interned names, and start/end dates are stored as epoch days. Tickers are sorted and packed into
+ * a single byte array so that lookups use binary search and the index doesn't hold a heap object per ticker. The index
+ * can be saved to (and quickly loaded from) a binary file.
+ *
+ * Screening uses a Filter, which narrows a selection mask with simple loops over the columns:
+ *
+ * <pre>
+ * LocalDate lastWeek = LocalDate.now().minusWeeks(1);
+ * String[] tickers = universe.filter().assetType("mutual fund").minYears(20).endRange(lastWeek, null).tickers();
+ * </pre>
+ *
+ * TiingoFund objects are only created on request (see getFund()).
+ */
+public class TiingoUniverse
+{
+  private static final int  MAGIC   = 0x54544b55; // "TTKU"
+  private static final int  VERSION = 2;
+
+  private final String[]    exchanges;
+  private final String[]    assetTypes;
+  private final String[]    currencies;
+
+  /** Tickers (ASCII) are stored in sorted order: ticker i is tickerBytes[tickerOffsets[i] .. tickerOffsets[i+1]). */
+  private final byte[]      tickerBytes;
+  private final int[]       tickerOffsets;
+
+  private final short[]     exchange;
+  private final short[]     assetType;
+  private final short[]     currency;
+  private final int[]       startDay;
+  private final int[]       endDay;
+
+  private TiingoUniverse(String[] exchanges, String[] assetTypes, String[] currencies, byte[] tickerBytes,
+      int[] tickerOffsets, short[] exchange, short[] assetType, short[] currency, int[] startDay, int[] endDay)
+  {
+    this.exchanges = exchanges;
+    this.assetTypes = assetTypes;
+    this.currencies = currencies;
+    this.tickerBytes = tickerBytes;
+    this.tickerOffsets = tickerOffsets;
+    this.exchange = exchange;
+    this.assetType = assetType;
+    this.currency = currency;
+    this.startDay = startDay;
+    this.endDay = endDay;
+  }
+
+  /** Interns strings as short codes. */
+  private static class CodeTable
+  {
+    private final Map<String, Short> codes = new HashMap<>();
+    private final List<String>       names = new ArrayList<>();
+
+    public short intern(String name)
+    {
+      Short code = codes.get(name);
+      if (code == null) {
+        if (names.size() > Short.MAX_VALUE) throw new IllegalStateException("Too many codes");
+        code = (short) names.size();
+        codes.put(name, code);
+        names.add(name);
+      }
+      return code;
+    }
+
+    public String[] toArray()
+    {
+      return names.toArray(new String[names.size()]);
+    }
+  }
+
+  /**
+   * Build an index from a supported tickers CSV file.
+   *
+   * Rows with missing fields are skipped (same as TiingoFund.fromCSV()). If a ticker appears more than once, the last
+   * row wins (same as TiingoFund.fundMap).
+   */
+  public static TiingoUniverse fromCSV(File file) throws IOException
+  {
+    CodeTable exchangeCodes = new CodeTable();
+    CodeTable assetTypeCodes = new CodeTable();
+    CodeTable currencyCodes = new CodeTable();
+    List<String> tickers = new ArrayList<>();
+    short[] exchange = new short[1024];
+    short[] assetType = new short[1024];
+    short[] currency = new short[1024];
+    int[] startDay = new int[1024];
+    int[] endDay = new int[1024];
+
+    try (CSVReader in = new CSVReader(file)) {
+      while (in.next()) {
+        if (in.equalsIgnoreCase(0, "ticker")) continue; // skip header
+        if (in.getNumFields() != 6) continue;
+        boolean missing = false;
+        for (int i = 0; i < 6; ++i) {
+          if (in.isEmpty(i)) missing = true;
+        }
+        if (missing) continue;
+
+        int n = tickers.size();
+        if (n == exchange.length) {
+          exchange = Arrays.copyOf(exchange, n * 2);
+          assetType = Arrays.copyOf(assetType, n * 2);
+          currency = Arrays.copyOf(currency, n * 2);
+          startDay = Arrays.copyOf(startDay, n * 2);
+          endDay = Arrays.copyOf(endDay, n * 2);
+        }
+        tickers.add(in.getString(0));
+        exchange[n] = exchangeCodes.intern(in.getString(1));
+        assetType[n] = assetTypeCodes.intern(in.getString(2));
+        currency[n] = currencyCodes.intern(in.getString(3));
+        startDay[n] = (int) in.getDate(4).toEpochDay();
+        endDay[n] = (int) in.getDate(5).toEpochDay();
+      }
+    }
+
+    // Sort rows by ticker (stable so that the last duplicate is last) and drop all but the last duplicate.
+    final int nRows = tickers.size();
+    Integer[] order = new Integer[nRows];
+    for (int i = 0; i < nRows; ++i) {
+      order[i] = i;
+    }
+    Arrays.sort(order, (a, b) -> tickers.get(a).compareTo(tickers.get(b)));
+
+    int n = 0;
+    int nBytes = 0;
+    int[] keep = new int[nRows];
+    for (int i = 0; i < nRows; ++i) {
+      String ticker = tickers.get(order[i]);
+      if (i + 1 < nRows && ticker.equals(tickers.get(order[i + 1]))) continue;
+      keep[n++] = order[i];
+      nBytes += ticker.length();
+    }
+
+    byte[] tickerBytes = new byte[nBytes];
+    int[] tickerOffsets = new int[n + 1];
+    short[] sortedExchange = new short[n];
+    short[] sortedAssetType = new short[n];
+    short[] sortedCurrency = new short[n];
+    int[] sortedStart = new int[n];
+    int[] sortedEnd = new int[n];
+    for (int i = 0; i < n; ++i) {
+      int j = keep[i];
+      byte[] bytes = tickers.get(j).getBytes(StandardCharsets.US_ASCII);
+      System.arraycopy(bytes, 0, tickerBytes, tickerOffsets[i], bytes.length);
+      tickerOffsets[i + 1] = tickerOffsets[i] + bytes.length;
+      sortedExchange[i] = exchange[j];
+      sortedAssetType[i] = assetType[j];
+      sortedCurrency[i] = currency[j];
+      sortedStart[i] = startDay[j];
+      sortedEnd[i] = endDay[j];
+    }
+
+    return new TiingoUniverse(exchangeCodes.toArray(), assetTypeCodes.toArray(), currencyCodes.toArray(), tickerBytes,
+        tickerOffsets, sortedExchange, sortedAssetType, sortedCurrency, sortedStart, sortedEnd);
+  }
+
+  private static void writeNames(DataOutputStream out, String[] names) throws IOException
+  {
+    out.writeInt(names.length);
+    for (String name : names) {
+      byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  /**
+   * @return given count after checking that the buffer holds at least that many items of the given size (so a corrupt
+   *         count doesn't trigger a huge allocation)
+   */
+  private static int checkCount(ByteBuffer buf, int n, int nBytesEach)
+  {
+    if (n < 0 || (long) n * nBytesEach > buf.remaining()) throw new BufferUnderflowException();
+    return n;
+  }
+
+  private static String[] readNames(ByteBuffer buf)
+  {
+    String[] names = new String[checkCount(buf, buf.getInt(), Integer.BYTES)];
+    for (int i = 0; i < names.length; ++i) {
+      byte[] bytes = new byte[checkCount(buf, buf.getInt(), 1)];
+      buf.get(bytes);
+      names[i] = new String(bytes, StandardCharsets.UTF_8);
+    }
+    return names;
+  }
+
+  private static short[] readShorts(ByteBuffer buf, int n)
+  {
+    short[] a = new short[checkCount(buf, n, Short.BYTES)];
+    buf.asShortBuffer().get(a);
+    buf.position(buf.position() + n * Short.BYTES);
+    return a;
+  }
+
+  private static int[] readInts(ByteBuffer buf, int n)
+  {
+    int[] a = new int[checkCount(buf, n, Integer.BYTES)];
+    buf.asIntBuffer().get(a);
+    buf.position(buf.position() + n * Integer.BYTES);
+    return a;
+  }
+
+  /**
+   * Save this index to a binary file.
+   *
+   * @param file file to write
+   * @param sourceModified last-modified time of the source data (see read())
+   * @param sourceLength length of the source data (see read())
+   */
+  public void write(File file, long sourceModified, long sourceLength) throws IOException
+  {
+    final int n = size();
+    File tmp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(sourceModified);
+      out.writeLong(sourceLength);
+      writeNames(out, exchanges);
+      writeNames(out, assetTypes);
+      writeNames(out, currencies);
+      out.writeInt(n);
+      out.writeInt(tickerBytes.length);
+      out.write(tickerBytes);
+      for (int x : tickerOffsets) {
+        out.writeInt(x);
+      }
+      for (short[] column : new short[][] { exchange, assetType, currency }) {
+        for (short x : column) {
+          out.writeShort(x);
+        }
+      }
+      for (int[] column : new int[][] { startDay, endDay }) {
+        for (int x : column) {
+          out.writeInt(x);
+        }
+      }
+    }
+    if (file.exists() && !file.delete()) throw new IOException("Failed to replace ticker index: " + file.getPath());
+    if (!tmp.renameTo(file)) throw new IOException("Failed to rename ticker index: " + tmp.getPath());
+  }
+
+  /**
+   * Load an index from a binary file.
+   *
+   * @param file file to read
+   * @param sourceModified expected last-modified time of the source data (see write())
+   * @param sourceLength expected length of the source data (see write())
+   * @return index or null if the file doesn't exist, isn't a valid index (e.g. it's truncated), or was built from
+   *         different source data
+   */
+  public static TiingoUniverse read(File file, long sourceModified, long sourceLength) throws IOException
+  {
+    if (!file.canRead()) return null;
+    ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    try {
+      if (buf.remaining() < 24 || buf.getInt() != MAGIC || buf.getInt() != VERSION) return null;
+      if (buf.getLong() != sourceModified || buf.getLong() != sourceLength) return null;
+      String[] exchanges = readNames(buf);
+      String[] assetTypes = readNames(buf);
+      String[] currencies = readNames(buf);
+      final int n = buf.getInt();
+      byte[] tickerBytes = new byte[checkCount(buf, buf.getInt(), 1)];
+      buf.get(tickerBytes);
+      int[] tickerOffsets = readInts(buf, n + 1);
+      short[] exchange = readShorts(buf, n);
+      short[] assetType = readShorts(buf, n);
+      short[] currency = readShorts(buf, n);
+      int[] startDay = readInts(buf, n);
+      int[] endDay = readInts(buf, n);
+      if (buf.hasRemaining() || !isValid(tickerOffsets, tickerBytes.length)) return null;
+      if (!isValid(exchange, exchanges.length) || !isValid(assetType, assetTypes.length)
+          || !isValid(currency, currencies.length)) {
+        return null;
+      }
+      return new TiingoUniverse(exchanges, assetTypes, currencies, tickerBytes, tickerOffsets, exchange, assetType,
+          currency, startDay, endDay);
+    } catch (BufferUnderflowException | IllegalArgumentException e) {
+      return null; // corrupt or truncated file
+    }
+  }
+
+  /** @return true if offsets are non-decreasing and span [0, nBytes]. */
+  private static boolean isValid(int[] offsets, int nBytes)
+  {
+    if (offsets[0] != 0 || offsets[offsets.length - 1] != nBytes) return false;
+    for (int i = 1; i < offsets.length; ++i) {
+      if (offsets[i] < offsets[i - 1]) return false;
+    }
+    return true;
+  }
+
+  /** @return true if all codes are valid indices into a table of the given size. */
+  private static boolean isValid(short[] codes, int nNames)
+  {
+    for (short code : codes) {
+      if (code < 0 || code >= nNames) return false;
+    }
+    return true;
+  }
+
+  /** @return number of tickers in the universe. */
+  public int size()
+  {
+    return startDay.length;
+  }
+
+  public String getTicker(int index)
+  {
+    int from = tickerOffsets[index];
+    return new String(tickerBytes, from, tickerOffsets[index + 1] - from, StandardCharsets.US_ASCII);
+  }
+
+  public String getExchange(int index)
+  {
+    return exchanges[exchange[index]];
+  }
+
+  public String getAssetType(int index)
+  {
+    return assetTypes[assetType[index]];
+  }
+
+  public String getCurrency(int index)
+  {
+    return currencies[currency[index]];
+  }
+
+  public LocalDate getStart(int index)
+  {
+    return LocalDate.ofEpochDay(startDay[index]);
+  }
+
+  public LocalDate getEnd(int index)
+  {
+    return LocalDate.ofEpochDay(endDay[index]);
+  }
+
+  /** @return result of comparing ticker `index` with `key` (same order as String.compareTo() for ASCII). */
+  private int compareTicker(int index, String key)
+  {
+    final int from = tickerOffsets[index];
+    final int len = tickerOffsets[index + 1] - from;
+    final int n = Math.min(len, key.length());
+    for (int i = 0; i < n; ++i) {
+      int d = (tickerBytes[from + i] & 0xff) - key.charAt(i);
+      if (d != 0) return d;
+    }
+    return len - key.length();
+  }
+
+  /** @return index of the given ticker or -1 if it's not in the universe. */
+  public int indexOf(String ticker)
+  {
+    int lo = 0;
+    int hi = size() - 1;
+    while (lo <= hi) {
+      int mid = (lo + hi) >>> 1;
+      int cmp = compareTicker(mid, ticker);
+      if (cmp < 0) lo = mid + 1;
+      else if (cmp > 0) hi = mid - 1;
+      else return mid;
+    }
+    return -1;
+  }
+
+  /** @return fund for the given index (reuses an existing TiingoFund if there is one). */
+  public TiingoFund getFund(int index)
+  {
+    String ticker = getTicker(index);
+    TiingoFund fund = TiingoFund.get(ticker);
+    if (fund != null) return fund;
+    return new TiingoFund(ticker, getExchange(index), getAssetType(index), getCurrency(index), getStart(index),
+        getEnd(index));
+  }
+
+  /** @return fund for the given ticker or null if it's not in the universe. */
+  public TiingoFund getFund(String ticker)
+  {
+    int index = indexOf(ticker);
+    return index < 0 ? null : getFund(index);
+  }
+
+  /** @return new filter that initially accepts all tickers. */
+  public Filter filter()
+  {
+    return new Filter();
+  }
+
+  /**
+   * Selection of tickers that is narrowed by successive calls.
+   *
+   * Each call is a single pass over one or two columns that only updates the selection mask.
+   */
+  public class Filter
+  {
+    private final boolean[] mask;
+
+    private Filter()
+    {
+      mask = new boolean[size()];
+      Arrays.fill(mask, true);
+    }
+
+    /** @return lookup table with true for each name that matches one of the given names (ignoring case). */
+    private boolean[] match(String[] table, String[] names)
+    {
+      boolean[] accept = new boolean[table.length];
+      for (int i = 0; i < table.length; ++i) {
+        for (String name : names) {
+          if (table[i].equalsIgnoreCase(name)) accept[i] = true;
+        }
+      }
+      return accept;
+    }
+
+    private Filter keep(short[] codes, boolean[] accept)
+    {
+      for (int i = 0; i < mask.length; ++i) {
+        mask[i] &= accept[codes[i]];
+      }
+      return this;
+    }
+
+    /** Keep tickers that trade on one of the given exchanges. */
+    public Filter exchange(String... names)
+    {
+      return keep(exchange, match(exchanges, names));
+    }
+
+    /** Keep tickers with one of the given asset types (e.g. "Stock", "ETF", "Mutual Fund"). */
+    public Filter assetType(String... names)
+    {
+      return keep(assetType, match(assetTypes, names));
+    }
+
+    /** Keep tickers that trade in one of the given currencies. */
+    public Filter currency(String... names)
+    {
+      return keep(currency, match(currencies, names));
+    }
+
+    private Filter range(int[] days, LocalDate from, LocalDate to)
+    {
+      final int lo = from == null ? Integer.MIN_VALUE : (int) from.toEpochDay();
+      final int hi = to == null ? Integer.MAX_VALUE : (int) to.toEpochDay();
+      for (int i = 0; i < mask.length; ++i) {
+        mask[i] &= (days[i] >= lo) & (days[i] <= hi);
+      }
+      return this;
+    }
+
+    /** Keep tickers whose first date is in [from, to] (null for an open end). */
+    public Filter startRange(LocalDate from, LocalDate to)
+    {
+      return range(startDay, from, to);
+    }
+
+    /** Keep tickers whose last date is in [from, to] (null for an open end). */
+    public Filter endRange(LocalDate from, LocalDate to)
+    {
+      return range(endDay, from, to);
+    }
+
+    /** Keep tickers with at least the given number of days between the first and last date. */
+    public Filter minDays(int nDays)
+    {
+      for (int i = 0; i < mask.length; ++i) {
+        mask[i] &= (endDay[i] - startDay[i] >= nDays);
+      }
+      return this;
+    }
+
+    /** Keep tickers with at least the given number of (365.25-day) years of history. */
+    public Filter minYears(double nYears)
+    {
+      return minDays((int) Math.ceil(nYears * 365.25));
+    }
+
+    /** @return number of selected tickers. */
+    public int count()
+    {
+      int n = 0;
+      for (int i = 0; i < mask.length; ++i) {
+        if (mask[i]) ++n;
+      }
+      return n;
+    }
+
+    /** @return indices of the selected tickers (in ticker order). */
+    public int[] indices()
+    {
+      int[] indices = new int[count()];
+      int n = 0;
+      for (int i = 0; i < mask.length; ++i) {
+        if (mask[i]) indices[n++] = i;
+      }
+      return indices;
+    }
+
+    /** @return selected tickers in sorted order. */
+    public String[] tickers()
+    {
+      int[] indices = indices();
+      String[] tickers = new String[indices.length];
+      for (int i = 0; i < indices.length; ++i) {
+        tickers[i] = getTicker(indices[i]);
+      }
+      return tickers;
+    }
+
+    /** @return funds for the selected tickers (in ticker order). */
+    public List<TiingoFund> funds()
+    {
+      int[] indices = indices();
+      List<TiingoFund> funds = new ArrayList<>(indices.length);
+      for (int index : indices) {
+        funds.add(getFund(index));
+      }
+      return funds;
+    }
+  }
+}
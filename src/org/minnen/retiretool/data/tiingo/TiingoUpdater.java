@@ -0,0 +1,283 @@
+package org.minnen.retiretool.data.tiingo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.minnen.retiretool.data.DataIO;
+import org.minnen.retiretool.util.TimeLib;
+
+/**
+ * Downloads new Tiingo metadata and EOD data for many symbols.
+ *
+ * Symbols are updated in parallel with a bounded number of concurrent requests. Only data on or after the last date in
+ * an existing EOD file is requested, and the new rows are appended if the overlapping row still matches (otherwise the
+ * full history is downloaded again, e.g. because a dividend changed the adjusted prices). Responses are streamed to
+ * temporary files, and EOD and metadata files are replaced atomically so an interrupted update never leaves a partial
+ * file. Failed requests (network errors, rate limits, server errors) are retried with exponential backoff.
+ */
+public class TiingoUpdater
+{
+  public final int            nThreads;
+  public final int            maxAttempts;
+  public final long           backoffMs;
+  public final long           metaReplaceAgeMs = 10 * TimeLib.MS_IN_DAY;
+
+  private final AtomicInteger nRequests        = new AtomicInteger();
+  private final AtomicInteger nRetries         = new AtomicInteger();
+
+  /** Create an updater with reasonable defaults for the Tiingo API. */
+  public TiingoUpdater()
+  {
+    this(8, 4, 1000L);
+  }
+
+  /**
+   * Create an updater.
+   *
+   * @param nThreads maximum number of concurrent requests
+   * @param maxAttempts maximum number of attempts for each request
+   * @param backoffMs delay before the first retry; the delay doubles for each subsequent retry
+   */
+  public TiingoUpdater(int nThreads, int maxAttempts, long backoffMs)
+  {
+    assert nThreads > 0 && maxAttempts > 0 && backoffMs >= 0;
+    this.nThreads = nThreads;
+    this.maxAttempts = maxAttempts;
+    this.backoffMs = backoffMs;
+  }
+
+  /** @return number of HTTP requests made by this updater (including retries). */
+  public int getNumRequests()
+  {
+    return nRequests.get();
+  }
+
+  /** @return number of requests that were retried. */
+  public int getNumRetries()
+  {
+    return nRetries.get();
+  }
+
+  /**
+   * Update metadata and EOD data for all of the given symbols.
+   *
+   * @return true if all symbols were updated successfully.
+   */
+  public boolean update(String... symbols)
+  {
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(nThreads, Math.max(symbols.length, 1)));
+    try {
+      List<Future<Boolean>> futures = new ArrayList<>();
+      for (String symbol : symbols) {
+        futures.add(executor.submit(() -> updateMetadata(symbol) && updateEodData(symbol)));
+      }
+
+      int nFailed = 0;
+      for (int i = 0; i < symbols.length; ++i) {
+        boolean ok;
+        try {
+          ok = futures.get(i).get();
+        } catch (ExecutionException e) {
+          System.err.printf("Failed to update Tiingo data (%s): %s\n", symbols[i], e.getCause());
+          ok = false;
+        }
+        if (!ok) ++nFailed;
+      }
+      if (nFailed > 0) {
+        System.err.printf("Failed to update %d / %d symbols.\n", nFailed, symbols.length);
+      }
+      return nFailed == 0;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /** Download metadata for the given symbol if the existing file is missing or old. */
+  public boolean updateMetadata(String symbol) throws IOException, InterruptedException
+  {
+    File file = TiingoIO.getMetadataFile(symbol);
+    if (file.exists() && file.length() > 0 && !DataIO.shouldDownloadUpdate(file, metaReplaceAgeMs)) return true;
+    return downloadToFile(TiingoIO.buildMetaURL(symbol), file);
+  }
+
+  /**
+   * Download EOD data for the given symbol that is newer than the existing file.
+   *
+   * @return true if the EOD file is up to date.
+   */
+  public boolean updateEodData(String symbol) throws IOException, InterruptedException
+  {
+    File file = TiingoIO.getEodFile(symbol);
+    if (!file.exists() || file.length() <= 0) {
+      System.out.printf("Downloading: %s (eod)\n", symbol);
+      return downloadToFile(TiingoIO.buildDataURL(symbol), file);
+    }
+
+    String header = readFirstLine(file);
+    String lastLine = readLastLine(file);
+    if (header == null || lastLine == null || lastLine.equals(header)) {
+      return downloadToFile(TiingoIO.buildDataURL(symbol), file);
+    }
+    LocalDate lastDate = LocalDate.parse(DataIO.splitCSV(lastLine)[0]);
+
+    File tmp = TiingoIO.createTempFile(file);
+    File merged = null;
+    try {
+      if (!download(TiingoIO.buildDataURL(symbol, lastDate), tmp)) return false;
+
+      try (BufferedReader in = new BufferedReader(new FileReader(tmp))) {
+        String newHeader = in.readLine();
+        String firstLine = in.readLine();
+        if (newHeader == null || firstLine == null || firstLine.trim().isEmpty()) return true; // no new data
+
+        if (!newHeader.trim().equals(header)) {
+          System.out.printf("New header => replace entire file (%s)\n", symbol);
+          return downloadToFile(TiingoIO.buildDataURL(symbol), file);
+        }
+        if (!firstLine.trim().equals(lastLine)) {
+          System.out.printf("Old last line doesn't match new first line => replace entire file (%s)\n", symbol);
+          return downloadToFile(TiingoIO.buildDataURL(symbol), file);
+        }
+
+        // Append new rows to a copy of the existing file and then swap it in.
+        String line = in.readLine();
+        if (line == null) return true; // only the overlapping row
+        merged = TiingoIO.createTempFile(file);
+        Files.copy(file.toPath(), merged.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        boolean needNewline = !endsWithNewline(file);
+        try (Writer writer = new BufferedWriter(
+            new OutputStreamWriter(new FileOutputStream(merged, true), StandardCharsets.UTF_8))) {
+          if (needNewline) writer.write('\n');
+          for (; line != null; line = in.readLine()) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            writer.write(line);
+            writer.write('\n');
+          }
+        }
+      }
+      TiingoIO.moveAtomic(merged, file);
+      return true;
+    } finally {
+      tmp.delete();
+      if (merged != null) merged.delete();
+    }
+  }
+
+  /** Download the given URL to a temporary file and then atomically replace `file`. */
+  private boolean downloadToFile(URL url, File file) throws IOException, InterruptedException
+  {
+    File tmp = TiingoIO.createTempFile(file);
+    try {
+      if (!download(url, tmp)) return false;
+      TiingoIO.moveAtomic(tmp, file);
+      return true;
+    } finally {
+      tmp.delete();
+    }
+  }
+
+  /**
+   * Download the given URL to a file, retrying after network errors, rate limits (429), and server errors (5xx).
+   *
+   * @return true if the download succeeded.
+   */
+  private boolean download(URL url, File file) throws IOException, InterruptedException
+  {
+    for (int attempt = 1;; ++attempt) {
+      String error;
+      nRequests.incrementAndGet();
+      try {
+        int code = TiingoIO.download(url, file);
+        if (code == HttpURLConnection.HTTP_OK) return !TiingoIO.isErrorResponse(file);
+        error = String.format("HTTP %d", code);
+        if (code != 429 && code < 500) {
+          System.err.printf("Request failed (%s): %s\n", error, file.getName());
+          return false;
+        }
+      } catch (IOException e) {
+        if (attempt >= maxAttempts) throw e;
+        error = e.toString();
+      }
+      if (attempt >= maxAttempts) {
+        System.err.printf("Request failed after %d attempts (%s): %s\n", attempt, error, file.getName());
+        return false;
+      }
+
+      // Exponential backoff with jitter so that parallel requests don't retry in lockstep.
+      nRetries.incrementAndGet();
+      long delay = backoffMs << (attempt - 1);
+      Thread.sleep(delay + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+    }
+  }
+
+  private static String readFirstLine(File file) throws IOException
+  {
+    try (BufferedReader in = new BufferedReader(new FileReader(file))) {
+      String line = in.readLine();
+      return line == null ? null : line.trim();
+    }
+  }
+
+  /** @return last non-empty line of the given file, read from the end so that the rest of the file is skipped. */
+  static String readLastLine(File file) throws IOException
+  {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      long end = raf.length();
+
+      // Skip trailing whitespace.
+      while (end > 0) {
+        raf.seek(end - 1);
+        int c = raf.read();
+        if (c != '\n' && c != '\r' && c != ' ') break;
+        --end;
+      }
+      if (end == 0) return null;
+
+      // Scan backward to the previous newline.
+      long start = end;
+      while (start > 0) {
+        raf.seek(start - 1);
+        if (raf.read() == '\n') break;
+        --start;
+      }
+      byte[] bytes = new byte[(int) (end - start)];
+      raf.seek(start);
+      raf.readFully(bytes);
+      return new String(bytes, StandardCharsets.UTF_8).trim();
+    }
+  }
+
+  private static boolean endsWithNewline(File file) throws IOException
+  {
+    try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+      if (raf.length() == 0) return true;
+      raf.seek(raf.length() - 1);
+      return raf.read() == '\n';
+    }
+  }
+}
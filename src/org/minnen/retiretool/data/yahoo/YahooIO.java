@@ -26,6 +26,7 @@ import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
+import org.minnen.retiretool.data.CSVReader;
 import org.minnen.retiretool.data.DataIO;
 import org.minnen.retiretool.data.FeatureVec;
 import org.minnen.retiretool.data.Sequence;
@@ -66,61 +67,46 @@ public class YahooIO
     int iVolume = -1;
     int iAdjClose = -1;
 
-    BufferedReader in = new BufferedReader(new FileReader(file));
     String name = file.getName().replaceFirst("[\\.][^\\\\/\\.]+$", "");
     Sequence data = new Sequence(name);
-    String line;
-    while ((line = in.readLine()) != null) {
-      line = line.trim();
-      if (line.isEmpty()) {
-        continue;
-      }
-      String[] toks = line.trim().split(",");
-      if (toks == null || toks.length != 7) {
-        System.err.printf("Error parsing Yahoo data: [%s]\n", line);
-        continue;
-      }
-      for (int i = 0; i < toks.length; ++i) {
-        toks[i] = toks[i].trim();
-      }
+    try (CSVReader in = new CSVReader(file)) {
+      while (in.next()) {
+        if (in.getNumFields() != 7) {
+          System.err.printf("Error parsing Yahoo data: [%s]\n", in.getLine());
+          continue;
+        }
 
-      // Parse the header.
-      if (iDate < 0) {
-        for (int i = 0; i < toks.length; ++i) {
-          String field = toks[i].toLowerCase().replace(" ", "");
-          if (field.equals("date")) iDate = i;
-          else if (field.equals("open")) iOpen = i;
-          else if (field.equals("high")) iHigh = i;
-          else if (field.equals("low")) iLow = i;
-          else if (field.equals("close")) iClose = i;
-          else if (field.equals("volume")) iVolume = i;
-          else if (field.equals("adjclose")) iAdjClose = i;
+        // Parse the header.
+        if (iDate < 0) {
+          for (int i = 0; i < in.getNumFields(); ++i) {
+            String field = in.getString(i).toLowerCase().replace(" ", "");
+            if (field.equals("date")) iDate = i;
+            else if (field.equals("open")) iOpen = i;
+            else if (field.equals("high")) iHigh = i;
+            else if (field.equals("low")) iLow = i;
+            else if (field.equals("close")) iClose = i;
+            else if (field.equals("volume")) iVolume = i;
+            else if (field.equals("adjclose")) iAdjClose = i;
+          }
+          continue;
         }
-        continue;
-      }
 
-      try {
-        long time = TimeLib.parseDate(toks[iDate]);
-        double open = Double.parseDouble(toks[iOpen]);
-        double high = Double.parseDouble(toks[iHigh]);
-        double low = Double.parseDouble(toks[iLow]);
-        double close = Double.parseDouble(toks[iClose]);
-        double volume = Double.parseDouble(toks[iVolume]);
-        double adjClose = Double.parseDouble(toks[iAdjClose]);
-        FeatureVec fv = new FeatureVec(6);
-        fv.set(FinLib.Open, open);
-        fv.set(FinLib.High, high);
-        fv.set(FinLib.Low, low);
-        fv.set(FinLib.Close, close);
-        fv.set(FinLib.Volume, volume);
-        fv.set(FinLib.AdjClose, adjClose);
-        data.addData(fv, time);
-      } catch (NumberFormatException e) {
-        System.err.printf("Error parsing CSV data: [%s]\n", line);
-        continue;
+        try {
+          long time = in.getTime(iDate);
+          FeatureVec fv = new FeatureVec(6);
+          fv.set(FinLib.Open, in.getRequiredDouble(iOpen));
+          fv.set(FinLib.High, in.getRequiredDouble(iHigh));
+          fv.set(FinLib.Low, in.getRequiredDouble(iLow));
+          fv.set(FinLib.Close, in.getRequiredDouble(iClose));
+          fv.set(FinLib.Volume, in.getRequiredDouble(iVolume));
+          fv.set(FinLib.AdjClose, in.getRequiredDouble(iAdjClose));
+          data.addData(fv, time);
+        } catch (NumberFormatException e) {
+          System.err.printf("Error parsing CSV data: [%s]\n", in.getLine());
+          continue;
+        }
       }
     }
-    in.close();
     if (data.getStartMS() > data.getEndMS()) {
       data.reverse();
     }
@@ -22,6 +22,7 @@ import org.minnen.retiretool.data.Sequence.EndpointBehavior;
 import org.minnen.retiretool.data.SequenceStore;
 import org.minnen.retiretool.data.tiingo.TiingoFund;
 import org.minnen.retiretool.data.tiingo.TiingoIO;
+import org.minnen.retiretool.data.tiingo.TiingoUniverse;
 import org.minnen.retiretool.util.FinLib;
 import org.minnen.retiretool.util.TimeLib;
 
@@ -86,7 +87,7 @@ public class HistoricalAristocrats
 
   public static void main(String[] args) throws IOException
   {
-    TiingoIO.loadTickers();
+    TiingoUniverse universe = TiingoIO.loadUniverse();
     File file = new File(DataIO.getFinancePath(), "historical-aristocrats.txt");
     List<AnnualPortfolio> years = loadAnnualData(file);
     System.out.printf("Years (%d): %d -> %d\n", years.size(), years.get(0).year, years.get(years.size() - 1).year);
@@ -105,7 +106,7 @@ public class HistoricalAristocrats
       Map<Long, Double> returnSum = new TreeMap<>();
       int nSymbols = 0;
       for (String symbol : portfolio.symbols) {
-        TiingoFund fund = TiingoFund.get(symbol);
+        TiingoFund fund = universe.getFund(symbol);
         if (fund == null) {
           // System.err.printf("Unavailable: %s\n", symbol);
           continue;
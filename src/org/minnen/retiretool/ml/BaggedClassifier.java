@@ -2,23 +2,65 @@ package org.minnen.retiretool.ml;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.util.Random;
 
 import smile.classification.Classifier;
 import smile.classification.ClassifierTrainer;
 import smile.classification.SoftClassifier;
 import smile.math.Math;
 
+/**
+ * Bootstrap aggregation of soft classifiers.
+ *
+ * Each weak classifier is trained on its own bootstrap sample (N draws with replacement) using a random stream derived
+ * from the trainer's seed and the round number, so the ensemble only depends on the seed and not on the number of
+ * threads. Examples left out of a sample are scored by that round's classifier, which gives out-of-bag (OOB) estimates
+ * of the accuracy and of the posterior of each training example without a holdout set.
+ */
 public class BaggedClassifier implements SoftClassifier<FeatureVec>
 {
   private final List<SoftClassifier<FeatureVec>> weakClassifiers = new ArrayList<>();
 
+  /** Posterior buffers for each thread (per instance so that nested bags don't share them). */
+  private final ThreadLocal<double[][]>          scratch         = ThreadLocal.withInitial(() -> new double[2][2]);
+
+  /** OOB posterior for each training example (null if the example was in every sample). */
+  private double[][]                             oobPosteriors;
+  private double                                 oobAccuracy     = Double.NaN;
+
+  public int size()
+  {
+    return weakClassifiers.size();
+  }
+
+  public SoftClassifier<FeatureVec> get(int i)
+  {
+    return weakClassifiers.get(i);
+  }
+
+  /** @return OOB accuracy (1.0 = 1%) over the training examples that have an OOB posterior. */
+  public double getOobAccuracy()
+  {
+    return oobAccuracy;
+  }
+
+  /** @return OOB posterior for the given training example (null if it was in every bootstrap sample). */
+  public double[] getOobPosterior(int i)
+  {
+    return oobPosteriors[i];
+  }
+
   @Override
   public int predict(FeatureVec x)
   {
-    return predict(x, new double[2]);
+    return predict(x, scratch.get()[1]);
   }
 
   @Override
@@ -27,7 +69,7 @@ public class BaggedClassifier implements SoftClassifier<FeatureVec>
     assert weakClassifiers.size() > 0;
     assert posteriori.length == 2;
     Arrays.fill(posteriori, 0.0);
-    double[] pos = new double[2];
+    double[] pos = scratch.get()[0];
     for (SoftClassifier<FeatureVec> weak : weakClassifiers) {
       weak.predict(x, pos);
       for (int i = 0; i < posteriori.length; ++i) {
@@ -40,26 +82,169 @@ public class BaggedClassifier implements SoftClassifier<FeatureVec>
     return Math.whichMax(posteriori);
   }
 
+  /** Calculate OOB posteriors for examples [from, to); rounds are always visited in order. */
+  private void scoreOob(FeatureVec[] x, long[][] inBag, int from, int to)
+  {
+    double[] pos = scratch.get()[0];
+    for (int i = from; i < to; ++i) {
+      double[] sum = null;
+      int nVotes = 0;
+      for (int iWeak = 0; iWeak < weakClassifiers.size(); ++iWeak) {
+        if ((inBag[iWeak][i >>> 6] & (1L << i)) != 0) continue;
+        weakClassifiers.get(iWeak).predict(x[i], pos);
+        if (sum == null) sum = new double[2];
+        sum[0] += pos[0];
+        sum[1] += pos[1];
+        ++nVotes;
+      }
+      if (sum != null) {
+        sum[0] /= nVotes;
+        sum[1] /= nVotes;
+      }
+      oobPosteriors[i] = sum;
+    }
+  }
+
   public static class Trainer extends ClassifierTrainer<FeatureVec>
   {
-    private int                           nWeak = 10;
+    /** Number of examples scored by one OOB task. */
+    private static final int              BLOCK_SIZE   = 1024;
+
+    /** Master seed used unless setSeed() is called, so that training is repeatable by default. */
+    public static final long              DEFAULT_SEED = 1234L;
+
+    private int                           nWeak        = 10;
     private ClassifierTrainer<FeatureVec> trainer;
+    private long                          seed         = DEFAULT_SEED;
+    private ForkJoinPool                  pool;
 
+    /**
+     * Create a bagging trainer.
+     *
+     * Rounds run in the calling thread unless a pool is given (see setPool()). Trainers that implement SampleTrainer
+     * receive the bootstrap sample as counts; others get an array with references to the sampled feature vectors.
+     */
     public Trainer(int nWeak, ClassifierTrainer<FeatureVec> trainer)
     {
       this.nWeak = nWeak;
       this.trainer = trainer;
     }
 
+    /** Set the master seed (each round uses a stream seeded by the master seed and the round number). */
+    public Trainer setSeed(long seed)
+    {
+      this.seed = seed;
+      return this;
+    }
+
+    /**
+     * Set the pool used to train rounds and score OOB examples in parallel (null = run in the calling thread).
+     *
+     * The weak trainer must be thread-safe if the pool has more than one thread.
+     */
+    public Trainer setPool(ForkJoinPool pool)
+    {
+      this.pool = pool;
+      return this;
+    }
+
+    /** @return random stream for the given round (depends only on the master seed and the round). */
+    public static Random getRoundRandom(long seed, int iRound)
+    {
+      return new Random(new int[] { (int) seed, (int) (seed >>> 32), iRound });
+    }
+
     @Override
-    public Classifier<FeatureVec> train(FeatureVec[] x, int[] y)
+    public BaggedClassifier train(FeatureVec[] x, int[] y)
     {
-      BaggedClassifier bag = new BaggedClassifier();
+      final int n = x.length;
+      final Dataset data = (trainer instanceof SampleTrainer ? Dataset.fromFeatures(x, y) : null);
+      final ThreadLocal<int[]> countsScratch = ThreadLocal.withInitial(() -> new int[n]);
+
+      // Train each round on its own bootstrap sample and remember which examples were in the bag.
+      final List<SoftClassifier<FeatureVec>> weak = new ArrayList<>(Collections.nCopies(nWeak, null));
+      final long[][] inBag = new long[nWeak][];
+      List<Callable<Void>> tasks = new ArrayList<>();
       for (int iWeak = 0; iWeak < nWeak; ++iWeak) {
-        // TODO need to take a bootstrap sample.
-        bag.weakClassifiers.add((SoftClassifier<FeatureVec>) trainer.train(x, y));
+        final int iRound = iWeak;
+        tasks.add(() -> {
+          Random rng = getRoundRandom(seed, iRound);
+          int[] counts = countsScratch.get();
+          Arrays.fill(counts, 0);
+          for (int i = 0; i < n; ++i) {
+            ++counts[rng.nextInt(n)];
+          }
+          long[] bits = new long[(n + 63) >>> 6];
+          for (int i = 0; i < n; ++i) {
+            if (counts[i] > 0) bits[i >>> 6] |= 1L << i;
+          }
+
+          Classifier<FeatureVec> classifier;
+          if (data != null) {
+            classifier = ((SampleTrainer) trainer).train(data, counts, rng);
+          } else {
+            FeatureVec[] xs = new FeatureVec[n];
+            int[] ys = new int[n];
+            int k = 0;
+            for (int i = 0; i < n; ++i) {
+              for (int j = 0; j < counts[i]; ++j, ++k) {
+                xs[k] = x[i];
+                ys[k] = y[i];
+              }
+            }
+            classifier = trainer.train(xs, ys);
+          }
+          weak.set(iRound, (SoftClassifier<FeatureVec>) classifier);
+          inBag[iRound] = bits;
+          return null;
+        });
+      }
+      invokeAll(tasks);
+
+      BaggedClassifier bag = new BaggedClassifier();
+      bag.weakClassifiers.addAll(weak);
+
+      // Score each example with the rounds that didn't see it.
+      bag.oobPosteriors = new double[n][];
+      tasks.clear();
+      for (int iFrom = 0; iFrom < n; iFrom += BLOCK_SIZE) {
+        final int from = iFrom;
+        final int to = Math.min(n, iFrom + BLOCK_SIZE);
+        tasks.add(() -> {
+          bag.scoreOob(x, inBag, from, to);
+          return null;
+        });
       }
+      invokeAll(tasks);
+
+      int nScored = 0, nCorrect = 0;
+      for (int i = 0; i < n; ++i) {
+        if (bag.oobPosteriors[i] == null) continue;
+        ++nScored;
+        if (Math.whichMax(bag.oobPosteriors[i]) == y[i]) ++nCorrect;
+      }
+      if (nScored > 0) bag.oobAccuracy = 100.0 * nCorrect / nScored;
       return bag;
     }
+
+    /** Run the tasks on the pool and wait for all of them to finish. */
+    private void invokeAll(List<Callable<Void>> tasks)
+    {
+      try {
+        if (pool == null) {
+          for (Callable<Void> task : tasks) {
+            task.call();
+          }
+          return;
+        }
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+          future.get();
+        }
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new RuntimeException(e.getMessage(), e);
+      }
+    }
   }
 }
@@ -0,0 +1,61 @@
+package org.minnen.retiretool.ml;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.util.TimeLib;
+
+import smile.classification.Classifier;
+import smile.classification.ClassifierTrainer;
+
+/** Time bagged stumps on a large synthetic problem for different numbers of threads. */
+public class BenchmarkBagging
+{
+  public static void main(String[] args)
+  {
+    final int N = 100000;
+    final int D = 10;
+    final int nWeak = 500;
+    Random rng = new Random(1234);
+    FeatureVec[] x = new FeatureVec[N];
+    int[] y = new int[N];
+    for (int i = 0; i < N; ++i) {
+      x[i] = new FeatureVec(D);
+      for (int d = 0; d < D; ++d) {
+        x[i].set(d, rng.nextGaussian());
+      }
+      y[i] = (x[i].get(0) + 0.5 * x[i].get(1) + rng.nextGaussian() > 0.0 ? 1 : 0);
+    }
+    System.out.printf("N=%d D=%d Weak=%d\n", N, D, nWeak);
+
+    // Baseline: the sampled examples are passed as arrays so each round builds and sorts its own dataset.
+    final int nBaseline = 20;
+    Stump.SweepTrainer sweep = new Stump.SweepTrainer(3, false);
+    ClassifierTrainer<FeatureVec> arraysOnly = new ClassifierTrainer<FeatureVec>()
+    {
+      @Override
+      public Classifier<FeatureVec> train(FeatureVec[] x, int[] y)
+      {
+        return sweep.train(x, y);
+      }
+    };
+    ForkJoinPool pool = new ForkJoinPool(1);
+    long t0 = TimeLib.getTime();
+    new BaggedClassifier.Trainer(nBaseline, arraysOnly).setSeed(1L).setPool(pool).train(x, y);
+    long t1 = TimeLib.getTime();
+    pool.shutdown();
+    System.out.printf(" Copied samples (1 thread): %6.1fms / round\n", (double) (t1 - t0) / nBaseline);
+
+    final int nMaxThreads = Runtime.getRuntime().availableProcessors();
+    for (int nThreads = 1; nThreads <= nMaxThreads; nThreads *= 2) {
+      pool = new ForkJoinPool(nThreads);
+      long t2 = TimeLib.getTime();
+      BaggedClassifier bag = new BaggedClassifier.Trainer(nWeak, sweep).setSeed(1L).setPool(pool).train(x, y);
+      long t3 = TimeLib.getTime();
+      pool.shutdown();
+      System.out.printf(" Threads: %2d  %6dms (%.1fms / round)  OOB=%.2f%%\n", nThreads, t3 - t2,
+          (double) (t3 - t2) / nWeak, bag.getOobAccuracy());
+    }
+  }
+}
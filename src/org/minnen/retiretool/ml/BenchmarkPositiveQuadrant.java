@@ -0,0 +1,78 @@
+package org.minnen.retiretool.ml;
+
+import java.util.Random;
+
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.util.TimeLib;
+
+/** Time greedy positive quadrant training with bit masks vs. predicting every example for each candidate. */
+public class BenchmarkPositiveQuadrant
+{
+  /** Greedy selection that scores each candidate by predicting every example, which is O(S * D * N * S). */
+  private static PositiveQuadrant predictAll(FeatureVec[] x, int[] y, int nStumps)
+  {
+    final int D = x[0].getNumDims();
+    boolean[] used = new boolean[D];
+    Stump[] stumps = new Stump[nStumps];
+    PositiveQuadrant posQuad = new PositiveQuadrant();
+    for (int iStump = 0; iStump < nStumps; ++iStump) {
+      Stump bestStump = null;
+      double bestAccuracy = -1.0;
+      for (int d = 0; d < D; ++d) {
+        if (used[d]) continue;
+        PositiveQuadrant candidate = new PositiveQuadrant();
+        for (int i = 0; i < iStump; ++i) {
+          candidate.add(stumps[i]);
+        }
+        Stump stump = new Stump(d, 0.0);
+        candidate.add(stump);
+        double accuracy = new ClassificationModel(null, candidate).accuracy(x, y, true);
+        if (bestStump == null || accuracy > bestAccuracy) {
+          bestStump = stump;
+          bestAccuracy = accuracy;
+        }
+      }
+      used[bestStump.iDim] = true;
+      stumps[iStump] = bestStump;
+      posQuad.add(bestStump);
+    }
+    return posQuad;
+  }
+
+  public static void main(String[] args)
+  {
+    final int D = 64;
+    final int nStumps = 4;
+    Random rng = new Random(1234);
+    for (int N : new int[] { 20000, 250000 }) {
+      FeatureVec[] x = new FeatureVec[N];
+      int[] y = new int[N];
+      for (int i = 0; i < N; ++i) {
+        x[i] = new FeatureVec(D);
+        for (int d = 0; d < D; ++d) {
+          x[i].set(d, rng.nextGaussian());
+        }
+        x[i].setWeight(1 + rng.nextInt(4));
+        y[i] = (x[i].get(3) > 0.0 && x[i].get(17) + rng.nextGaussian() > 0.0 ? 1 : 0);
+      }
+      System.out.printf("N=%d D=%d Stumps=%d\n", N, D, nStumps);
+
+      long t0 = TimeLib.getTime();
+      PositiveQuadrant posQuad = (PositiveQuadrant) new PositiveQuadrant.Trainer(nStumps, -1, true).train(x, y);
+      long t1 = TimeLib.getTime();
+      System.out.printf(" Bit masks:       %6dms  %s\n", t1 - t0, posQuad);
+
+      double[] thresholds = new double[] { -1.0, -0.5, 0.0, 0.5, 1.0 };
+      posQuad = (PositiveQuadrant) new PositiveQuadrant.Trainer(nStumps, -1, true).setThresholds(thresholds).train(x,
+          y);
+      long t2 = TimeLib.getTime();
+      System.out.printf(" Bit masks (x%d):  %6dms  %s\n", thresholds.length, t2 - t1, posQuad);
+
+      if (N <= 20000) {
+        posQuad = predictAll(x, y, nStumps);
+        long t3 = TimeLib.getTime();
+        System.out.printf(" Predict all:     %6dms  %s\n", t3 - t2, posQuad);
+      }
+    }
+  }
+}
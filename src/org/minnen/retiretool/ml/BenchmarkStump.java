@@ -0,0 +1,82 @@
+package org.minnen.retiretool.ml;
+
+import java.util.Random;
+
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.util.TimeLib;
+
+/** Time stump training with a fixed threshold (Trainer) and optimal thresholds (SweepTrainer). */
+public class BenchmarkStump
+{
+  /** Score every candidate threshold separately, which is O(D * N^2). */
+  private static Stump bruteForce(FeatureVec[] x, int[] y)
+  {
+    final int D = x[0].getNumDims();
+    Stump best = null;
+    double bestAccuracy = -1.0;
+    for (int d = 0; d < D; ++d) {
+      for (int i = 0; i < x.length; ++i) {
+        for (boolean invert : new boolean[] { false, true }) {
+          Stump stump = new Stump(d, x[i].get(d), invert);
+          double accuracy = new ClassificationModel(null, stump).accuracy(x, y, true);
+          if (accuracy > bestAccuracy) {
+            best = stump;
+            bestAccuracy = accuracy;
+          }
+        }
+      }
+    }
+    return best;
+  }
+
+  public static void main(String[] args)
+  {
+    final int D = 50;
+    Random rng = new Random(1234);
+    for (int N : new int[] { 2000, 100000 }) {
+      FeatureVec[] x = new FeatureVec[N];
+      int[] y = new int[N];
+      for (int i = 0; i < N; ++i) {
+        x[i] = new FeatureVec(D);
+        for (int d = 0; d < D; ++d) {
+          x[i].set(d, rng.nextGaussian());
+        }
+        x[i].setWeight(1.0);
+        y[i] = (x[i].get(7) + rng.nextGaussian() > 0.5 ? 1 : 0);
+      }
+      Dataset data = Dataset.fromFeatures(x, y);
+      System.out.printf("N=%d D=%d\n", N, D);
+
+      long t0 = TimeLib.getTime();
+      new Stump.Trainer(-1, true).train(x, y);
+      long t1 = TimeLib.getTime();
+      System.out.printf(" Fixed threshold:        %6dms\n", t1 - t0);
+
+      Stump.SweepTrainer trainer = new Stump.SweepTrainer(-1, true);
+      Stump stump = trainer.train(data);
+      long t2 = TimeLib.getTime();
+      System.out.printf(" Sweep (with sort):      %6dms  %s\n", t2 - t1, stump);
+
+      // Later rounds (e.g. boosting with new weights) reuse the sorted indices.
+      for (int i = 0; i < N; ++i) {
+        data.setWeight(i, 0.5 + rng.nextDouble());
+      }
+      long t3 = TimeLib.getTime();
+      trainer.train(data);
+      long t4 = TimeLib.getTime();
+      System.out.printf(" Sweep (presorted):      %6dms\n", t4 - t3);
+
+      // Soft stumps visit the examples within a few sigmas of each threshold.
+      double sigma = (N <= 2000 ? 0.1 : 0.001);
+      new Stump.SweepTrainer(-1, true, sigma).train(data);
+      long t5 = TimeLib.getTime();
+      System.out.printf(" Soft sweep (sigma=%.3f): %5dms\n", sigma, t5 - t4);
+
+      if (N <= 2000) {
+        stump = bruteForce(x, y);
+        long t6 = TimeLib.getTime();
+        System.out.printf(" Brute force:            %6dms  %s\n", t6 - t5, stump);
+      }
+    }
+  }
+}
@@ -0,0 +1,215 @@
+package org.minnen.retiretool.ml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.util.Library;
+
+/**
+ * Growable set of examples stored in primitive arrays.
+ *
+ * Features are stored column-major (one array per dimension) so that learners can scan a single feature without
+ * touching the rest of the data. Examples can only be appended, which makes the dataset a good fit for walk-forward
+ * training where each step adds a few new examples to a long history.
+ */
+public class Dataset
+{
+  private final int  nDims;
+  private int        size;
+  private double[][] columns;
+  private int[]      classes;
+  private double[]   targets;
+  private double[]   weights;
+  private long[]     times;
+
+  /** Indices that sort each column (null until requested), valid for the first `sortedSize` examples. */
+  private int[][]    sortedIndices;
+  private int        sortedSize;
+
+  public Dataset(int nDims)
+  {
+    this(nDims, 256);
+  }
+
+  public Dataset(int nDims, int capacity)
+  {
+    assert nDims > 0 && capacity > 0;
+    this.nDims = nDims;
+    columns = new double[nDims][capacity];
+    classes = new int[capacity];
+    targets = new double[capacity];
+    weights = new double[capacity];
+    times = new long[capacity];
+  }
+
+  /** @return new dataset holding all of the given examples. */
+  public static Dataset fromExamples(List<Example> examples)
+  {
+    Dataset data = new Dataset(examples.get(0).x.getNumDims(), Math.max(1, examples.size()));
+    for (Example example : examples) {
+      data.add(example);
+    }
+    return data;
+  }
+
+  /** @return new dataset with the given features and classes; weights and times come from the feature vectors. */
+  public static Dataset fromFeatures(FeatureVec[] x, int[] y)
+  {
+    assert x.length == y.length;
+    Dataset data = new Dataset(x[0].getNumDims(), Math.max(1, x.length));
+    for (int i = 0; i < x.length; ++i) {
+      data.add(Example.forClassification(x[i], y[i]));
+    }
+    return data;
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  public boolean isEmpty()
+  {
+    return size == 0;
+  }
+
+  public int getNumDims()
+  {
+    return nDims;
+  }
+
+  private void ensureCapacity(int capacity)
+  {
+    if (capacity <= classes.length) return;
+    capacity = Math.max(capacity, classes.length * 2);
+    for (int d = 0; d < nDims; ++d) {
+      columns[d] = Arrays.copyOf(columns[d], capacity);
+    }
+    classes = Arrays.copyOf(classes, capacity);
+    targets = Arrays.copyOf(targets, capacity);
+    weights = Arrays.copyOf(weights, capacity);
+    times = Arrays.copyOf(times, capacity);
+  }
+
+  /**
+   * Append an example; the weight and time are taken from the example's feature vector.
+   *
+   * @return index of the new example
+   */
+  public int add(Example example)
+  {
+    FeatureVec x = example.x;
+    assert x.getNumDims() == nDims;
+    ensureCapacity(size + 1);
+    for (int d = 0; d < nDims; ++d) {
+      columns[d][size] = x.get(d);
+    }
+    classes[size] = example.k;
+    targets[size] = example.y;
+    weights[size] = x.getWeight();
+    times[size] = x.getTime();
+    return size++;
+  }
+
+  public double get(int i, int d)
+  {
+    assert i >= 0 && i < size;
+    return columns[d][i];
+  }
+
+  /** @return backing array for the given dimension (only the first size() entries are valid). */
+  public double[] getColumn(int d)
+  {
+    return columns[d];
+  }
+
+  /**
+   * Indices of all examples sorted by their value in the given dimension (ties broken by index).
+   *
+   * The sort is computed on the first request and reused until more examples are added, so learners that revisit the
+   * same data (boosting or bagging rounds) only pay for it once.
+   *
+   * @return sorted indices (do not modify)
+   */
+  public synchronized int[] getSortedIndices(int d)
+  {
+    if (sortedIndices == null || sortedSize != size) {
+      sortedIndices = new int[nDims][];
+      sortedSize = size;
+    }
+    if (sortedIndices[d] == null) {
+      sortedIndices[d] = Library.argsort(Arrays.copyOf(columns[d], size));
+    }
+    return sortedIndices[d];
+  }
+
+  /** @return backing array of classes (only the first size() entries are valid). */
+  public int[] getClasses()
+  {
+    return classes;
+  }
+
+  /** @return backing array of weights (only the first size() entries are valid). */
+  public double[] getWeights()
+  {
+    return weights;
+  }
+
+  public int getClass(int i)
+  {
+    assert i >= 0 && i < size;
+    return classes[i];
+  }
+
+  public double getTarget(int i)
+  {
+    assert i >= 0 && i < size;
+    return targets[i];
+  }
+
+  public double getWeight(int i)
+  {
+    assert i >= 0 && i < size;
+    return weights[i];
+  }
+
+  /** Set the weight of the given example and return the previous weight. */
+  public double setWeight(int i, double weight)
+  {
+    assert i >= 0 && i < size;
+    double prev = weights[i];
+    weights[i] = weight;
+    return prev;
+  }
+
+  public long getTime(int i)
+  {
+    assert i >= 0 && i < size;
+    return times[i];
+  }
+
+  /** @return features of the given example as a new vector. */
+  public FeatureVec getFeatures(int i)
+  {
+    assert i >= 0 && i < size;
+    FeatureVec x = new FeatureVec(nDims);
+    for (int d = 0; d < nDims; ++d) {
+      x.set(d, columns[d][i]);
+    }
+    x.setTime(times[i]);
+    x.setWeight(weights[i]);
+    return x;
+  }
+
+  /** @return list of examples for learners that don't work with datasets. */
+  public List<Example> toExamples()
+  {
+    List<Example> examples = new ArrayList<>(size);
+    for (int i = 0; i < size; ++i) {
+      examples.add(Example.forBoth(getFeatures(i), targets[i], classes[i]));
+    }
+    return examples;
+  }
+}
@@ -0,0 +1,23 @@
+package org.minnen.retiretool.ml;
+
+import org.minnen.retiretool.data.FeatureVec;
+
+import smile.classification.Classifier;
+
+/**
+ * Trainer that maintains sufficient statistics as examples are added to a dataset.
+ *
+ * Walk-forward optimization only adds a few examples at each step, so updating the statistics and rebuilding the model
+ * costs time proportional to the new data rather than the full history.
+ */
+public interface IncrementalTrainer
+{
+  /** Update statistics with examples [iFrom, data.size()). */
+  void add(Dataset data, int iFrom);
+
+  /** Update statistics after the weight of example `i` changed from `prevWeight` to its current value. */
+  void reweight(Dataset data, int i, double prevWeight);
+
+  /** @return classifier trained on all examples seen so far. */
+  Classifier<FeatureVec> train();
+}
@@ -2,7 +2,9 @@ package org.minnen.retiretool.ml;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.minnen.retiretool.data.FeatureVec;
 import org.minnen.retiretool.util.Library;
@@ -58,11 +60,25 @@ public class PositiveQuadrant implements SoftClassifier<FeatureVec>
     return sb.toString();
   }
 
+  /**
+   * Trainer that selects the dimensions (and thresholds) of a positive quadrant.
+   * 
+   * The decisions of every candidate stump are computed once and stored as bit sets (one bit per example). A quadrant
+   * is the AND of its stumps, so adding a stump to the current quadrant is an AND of two masks and its accuracy comes
+   * from popcounts against the label mask. Weighted accuracy uses one label mask per distinct weight when there are
+   * few distinct weights (e.g. bootstrap counts) and sums the weights of the set bits otherwise.
+   */
   public static class Trainer extends ClassifierTrainer<FeatureVec>
   {
-    private int     nStumps      = -1;
-    private int     nRandomTries = 10;
-    private boolean useWeights;        ;
+    /** Maximum number of distinct weights handled with popcounts. */
+    private static final int MAX_WEIGHT_BUCKETS = 32;
+
+    private int              nStumps            = -1;
+    private int              nRandomTries       = 10;
+    private boolean          useWeights;
+
+    /** Candidate thresholds for each dimension (null = 0.0 for greedy selection and 0.1 for random tries). */
+    private double[][]       thresholds;
 
     public Trainer(int nStumps, int nRandomTries, boolean useWeights)
     {
@@ -71,6 +87,33 @@ public class PositiveQuadrant implements SoftClassifier<FeatureVec>
       this.useWeights = useWeights;
     }
 
+    /** Use the same candidate thresholds for every dimension. */
+    public Trainer setThresholds(double... thresholds)
+    {
+      this.thresholds = new double[][] { thresholds.clone() };
+      return this;
+    }
+
+    /**
+     * Set the candidate thresholds for each dimension.
+     * 
+     * Greedy selection tries every threshold of every unused dimension; random tries pick a random threshold for each
+     * selected dimension (no random draw if there's only one).
+     */
+    public Trainer setThresholds(double[][] thresholds)
+    {
+      this.thresholds = thresholds.clone();
+      return this;
+    }
+
+    private double[] getThresholds(int d)
+    {
+      if (thresholds == null) {
+        return new double[] { nRandomTries < 0 ? 0.0 : 0.1 };
+      }
+      return thresholds.length == 1 ? thresholds[0] : thresholds[d];
+    }
+
     @Override
     public Classifier<FeatureVec> train(FeatureVec[] x, int[] y)
     {
@@ -80,39 +123,49 @@ public class PositiveQuadrant implements SoftClassifier<FeatureVec>
         nStumps = D;
       }
       assert nStumps > 0 && nStumps <= D;
+      assert thresholds == null || thresholds.length == 1 || thresholds.length == D;
+
+      Masks masks = new Masks(x, y, useWeights);
+      final double[][] candidates = new double[D][];
+      final long[][][] decisions = new long[D][][];
+      for (int d = 0; d < D; ++d) {
+        candidates[d] = getThresholds(d);
+        decisions[d] = masks.decisions(x, d, candidates[d]);
+      }
 
       if (nRandomTries < 0) { // Greedy selection
         boolean[] used = new boolean[D];
-        double threshold = 0.0;
+        long[] current = masks.all.clone();
+        long[] trial = new long[current.length];
         PositiveQuadrant posQuad = new PositiveQuadrant();
         while (posQuad.stumps.size() < nStumps) {
-          Stump bestStump = null;
-          double bestAccuracy = -1.0;
+          int bestDim = -1, bestThreshold = -1;
+          double bestScore = -1.0;
 
           for (int d = 0; d < D; ++d) {
             if (used[d]) continue;
-            Stump stump = new Stump(d, threshold);
-            posQuad.add(stump);
-            ClassificationModel model = new ClassificationModel(null, posQuad);
-            double accuracy = model.accuracy(x, y, useWeights);
-            // System.out.printf("%s: %.2f\n", posQuad, accuracy);
-            if (bestStump == null || accuracy > bestAccuracy) {
-              bestStump = stump;
-              bestAccuracy = accuracy;
+            for (int t = 0; t < candidates[d].length; ++t) {
+              Masks.and(current, decisions[d][t], trial);
+              double score = masks.score(trial);
+              if (bestDim < 0 || score > bestScore) {
+                bestDim = d;
+                bestThreshold = t;
+                bestScore = score;
+              }
             }
-            posQuad.stumps.remove(posQuad.stumps.size() - 1);
           }
 
-          used[bestStump.iDim] = true;
-          posQuad.add(bestStump);
+          used[bestDim] = true;
+          Masks.and(current, decisions[bestDim][bestThreshold], current);
+          posQuad.add(new Stump(bestDim, candidates[bestDim][bestThreshold]));
         }
         // System.out.println(posQuad);
         return posQuad;
       } else {
-        // Random rng = new Random();
-        ClassificationModel best = null;
-        double bestAccuracy = -1.0;
-        int[] ii = new int[nStumps];// new int[] { 3, 7, 10 };// Library.genIdentityArray(nStumps);
+        PositiveQuadrant best = null;
+        double bestScore = -1.0;
+        int[] ii = Library.genIdentityArray(nStumps);
+        long[] current = new long[masks.all.length];
         for (int iTry = 0; iTry < nRandomTries; ++iTry) {
           if (nStumps < D) {
             int[] a = Library.shuffle(D);
@@ -122,22 +175,137 @@ public class PositiveQuadrant implements SoftClassifier<FeatureVec>
           assert ii.length == nStumps;
 
           PositiveQuadrant posQuad = new PositiveQuadrant();
+          System.arraycopy(masks.all, 0, current, 0, current.length);
           for (int i = 0; i < nStumps; ++i) {
-            // System.out.printf("Try=%d  Stump %d: %d (%d)\n", iTry, i, ii[i], D);
-            double threshold = 0.1;// rng.nextDouble() * 0.1;
-            Stump stump = new Stump(ii[i], threshold);
-            posQuad.add(stump);
+            final int d = ii[i];
+            int t = (candidates[d].length == 1 ? 0 : Library.rng.nextInt(candidates[d].length));
+            posQuad.add(new Stump(d, candidates[d][t]));
+            Masks.and(current, decisions[d][t], current);
           }
           assert posQuad.stumps.size() == nStumps;
-          ClassificationModel model = new ClassificationModel(null, posQuad);
-          double accuracy = model.accuracy(x, y, useWeights);
-          if (best == null || accuracy > bestAccuracy) {
-            best = model;
-            bestAccuracy = accuracy;
+          double score = masks.score(current);
+          if (best == null || score > bestScore) {
+            best = posQuad;
+            bestScore = score;
+          }
+        }
+        // System.out.println(best);
+        return best;
+      }
+    }
+
+    /** Bit sets over the training examples plus the label masks used to score a set of positive decisions. */
+    private static class Masks
+    {
+      /** All valid bits (the last word may be partial). */
+      public final long[]   all;
+
+      /** Examples of class 1 and class 0 (one pair of masks per weight bucket). */
+      private final long[][] pos, neg;
+
+      /** Weight of each bucket (unweighted = a single bucket with weight 1.0). */
+      private final double[] bucketWeights;
+
+      /** Weight of each example when there are too many distinct weights for buckets (else null). */
+      private final double[] weights;
+
+      public Masks(FeatureVec[] x, int[] y, boolean useWeights)
+      {
+        final int n = x.length;
+        final int nWords = (n + 63) >>> 6;
+        all = new long[nWords];
+        for (int i = 0; i < n; ++i) {
+          all[i >>> 6] |= 1L << i;
+        }
+
+        // Map each example to a weight bucket.
+        int[] bucket = new int[n];
+        List<Double> distinct = new ArrayList<>();
+        if (useWeights) {
+          Map<Double, Integer> index = new HashMap<>();
+          for (int i = 0; i < n && distinct.size() <= MAX_WEIGHT_BUCKETS; ++i) {
+            Integer b = index.get(x[i].getWeight());
+            if (b == null) {
+              b = distinct.size();
+              index.put(x[i].getWeight(), b);
+              distinct.add(x[i].getWeight());
+            }
+            bucket[i] = b;
+          }
+        } else {
+          distinct.add(1.0);
+        }
+
+        if (distinct.size() > MAX_WEIGHT_BUCKETS) {
+          weights = new double[n];
+          for (int i = 0; i < n; ++i) {
+            weights[i] = x[i].getWeight();
+          }
+          distinct.clear();
+          distinct.add(1.0);
+          Arrays.fill(bucket, 0);
+        } else {
+          weights = null;
+        }
+
+        bucketWeights = new double[distinct.size()];
+        pos = new long[distinct.size()][nWords];
+        neg = new long[distinct.size()][nWords];
+        for (int b = 0; b < bucketWeights.length; ++b) {
+          bucketWeights[b] = distinct.get(b);
+        }
+        for (int i = 0; i < n; ++i) {
+          long[][] labels = (y[i] == 1 ? pos : neg);
+          labels[bucket[i]][i >>> 6] |= 1L << i;
+        }
+      }
+
+      /** @return masks[t] = examples with x[d] > thresholds[t]. */
+      public long[][] decisions(FeatureVec[] x, int d, double[] thresholds)
+      {
+        long[][] masks = new long[thresholds.length][all.length];
+        for (int i = 0; i < x.length; ++i) {
+          final double v = x[i].get(d);
+          for (int t = 0; t < thresholds.length; ++t) {
+            if (v > thresholds[t]) masks[t][i >>> 6] |= 1L << i;
+          }
+        }
+        return masks;
+      }
+
+      /** out = a & b (out may be a or b). */
+      public static void and(long[] a, long[] b, long[] out)
+      {
+        for (int w = 0; w < out.length; ++w) {
+          out[w] = a[w] & b[w];
+        }
+      }
+
+      /** @return (weighted) number of examples classified correctly by the given positive decisions. */
+      public double score(long[] decisions)
+      {
+        if (weights != null) {
+          double score = 0.0;
+          for (int w = 0; w < decisions.length; ++w) {
+            long correct = (decisions[w] & pos[0][w]) | (~decisions[w] & neg[0][w]);
+            while (correct != 0) {
+              score += weights[(w << 6) + Long.numberOfTrailingZeros(correct)];
+              correct &= correct - 1;
+            }
+          }
+          return score;
+        }
+
+        double score = 0.0;
+        for (int b = 0; b < bucketWeights.length; ++b) {
+          final long[] p = pos[b], q = neg[b];
+          long n = 0;
+          for (int w = 0; w < decisions.length; ++w) {
+            n += Long.bitCount(decisions[w] & p[w]) + Long.bitCount(~decisions[w] & q[w]);
           }
+          score += bucketWeights[b] * n;
         }
-        // System.out.println(best.modelFV);
-        return (PositiveQuadrant) best.modelFV;
+        return score;
       }
     }
   }
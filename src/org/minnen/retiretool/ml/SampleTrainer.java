@@ -0,0 +1,25 @@
+package org.minnen.retiretool.ml;
+
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.util.Random;
+
+import smile.classification.Classifier;
+
+/**
+ * Trainer that learns from a sample of a dataset given as a count for each example.
+ *
+ * Bagging draws many bootstrap samples from the same data, so passing counts avoids copying examples and lets the
+ * trainer reuse anything it caches for the dataset (e.g. sorted columns).
+ */
+public interface SampleTrainer
+{
+  /**
+   * Train a classifier on the given sample.
+   *
+   * @param data all examples
+   * @param counts number of copies of each example in the sample (null for one copy of each)
+   * @param rng random stream for any random choices made by the trainer
+   * @return classifier trained on the sample
+   */
+  public Classifier<FeatureVec> train(Dataset data, int[] counts, Random rng);
+}
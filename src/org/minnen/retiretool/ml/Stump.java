@@ -1,7 +1,10 @@
 package org.minnen.retiretool.ml;
 
+import java.util.Arrays;
+
 import org.minnen.retiretool.data.FeatureVec;
 import org.minnen.retiretool.util.Library;
+import org.minnen.retiretool.util.Random;
 
 import smile.classification.Classifier;
 import smile.classification.ClassifierTrainer;
@@ -111,4 +114,372 @@ public class Stump implements SoftClassifier<FeatureVec>
       return (Stump) best.modelFV;
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Trainer that finds the best threshold and polarity for each dimension.
+   * 
+   * Each dimension is scanned once in sorted order (the sort is cached by the dataset so it's shared across boosting or
+   * bagging rounds). Moving the threshold past an example only changes the weighted class counts below it, so every
+   * threshold is scored for both polarities in O(N). Candidate thresholds are the midpoints between consecutive
+   * distinct values plus -inf and +inf. Ties go to the first dimension tried, then the lower threshold, then
+   * `invert` = false.
+   * 
+   * If `sigma` > 0, candidates are scored by the expected accuracy of the soft stump (see predict(x, posteriori)).
+   * Examples within SOFT_RANGE sigmas of the threshold are scored directly. The sigmoid of every other example is
+   * expanded as a geometric series in exp(-|u|), and the series terms are kept as running sums in the same sweep, so
+   * the score is exact to double precision while the cost only depends on the number of examples near each threshold.
+   */
+  public static class SweepTrainer extends ClassifierTrainer<FeatureVec> implements SampleTrainer
+  {
+    /** Examples within this many sigmas of the threshold are scored directly by soft stumps. */
+    public static final double         SOFT_RANGE = 2.0;
+
+    /** Number of series terms for examples outside the soft range (truncation error < exp(-42) per example). */
+    private static final int           SOFT_TERMS = 20;
+
+    private final int                  nTryDims;
+    private final boolean              useWeights;
+    private final double               sigma;
+
+    /** Scratch space for each thread so that rounds of bagging can train in parallel. */
+    private final ThreadLocal<Scratch> scratch    = ThreadLocal.withInitial(() -> new Scratch());
+
+    public SweepTrainer(int nTryDims, boolean useWeights)
+    {
+      this(nTryDims, useWeights, 0.0);
+    }
+
+    public SweepTrainer(int nTryDims, boolean useWeights, double sigma)
+    {
+      this.nTryDims = nTryDims;
+      this.useWeights = useWeights;
+      this.sigma = sigma;
+    }
+
+    @Override
+    public Stump train(FeatureVec[] x, int[] y)
+    {
+      return train(Dataset.fromFeatures(x, y), null);
+    }
+
+    public Stump train(Dataset data)
+    {
+      return train(data, null);
+    }
+
+    /**
+     * Train a stump on (copies of) the examples in the given dataset.
+     * 
+     * @param data examples to learn from
+     * @param counts number of copies of each example (e.g. a bootstrap sample) or null for one copy of each
+     * @return best stump
+     */
+    public Stump train(Dataset data, int[] counts)
+    {
+      return train(data, counts, null);
+    }
+
+    /**
+     * Train a stump on (copies of) the examples in the given dataset.
+     * 
+     * @param data examples to learn from
+     * @param counts number of copies of each example (e.g. a bootstrap sample) or null for one copy of each
+     * @param rng random stream used to select dimensions when nTryDims < D (null = shared generator)
+     * @return best stump
+     */
+    @Override
+    public Stump train(Dataset data, int[] counts, Random rng)
+    {
+      final int D = data.getNumDims();
+      int nTryDims = this.nTryDims;
+      assert nTryDims <= D;
+      if (nTryDims <= 0) {
+        nTryDims = D;
+      }
+
+      int[] ii = null;
+      if (nTryDims == D) {
+        ii = Library.genIdentityArray(nTryDims);
+      } else {
+        int[] a = (rng == null ? Library.shuffle(D) : Library.shuffle(D, rng));
+        ii = new int[nTryDims];
+        System.arraycopy(a, 0, ii, 0, nTryDims);
+      }
+
+      final Scratch s = scratch.get();
+      Stump best = null;
+      double bestScore = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < nTryDims; ++i) {
+        final int d = ii[i];
+        final int m = s.collect(data, d, counts);
+        if (m == 0) continue;
+        final double[] values = s.values, w0 = s.w0, w1 = s.w1;
+
+        // Totals for each class; the sweep moves examples from "above" to "below" the threshold.
+        double total0 = 0.0, total1 = 0.0;
+        for (int j = 0; j < m; ++j) {
+          total0 += w0[j];
+          total1 += w1[j];
+        }
+        final double total = total0 + total1;
+
+        double below0 = 0.0, below1 = 0.0;
+        if (sigma > 0.0) s.prepareSoft(m);
+        for (int j = 0; j <= m; ++j) {
+          // Threshold between values[j - 1] and values[j].
+          double threshold;
+          if (j == 0) {
+            threshold = Double.NEGATIVE_INFINITY;
+          } else if (j == m) {
+            threshold = Double.POSITIVE_INFINITY;
+          } else if (values[j] == values[j - 1]) {
+            below0 += w0[j - 1];
+            below1 += w1[j - 1];
+            continue;
+          } else {
+            threshold = values[j - 1] + (values[j] - values[j - 1]) / 2.0;
+            if (threshold >= values[j]) threshold = values[j - 1];
+          }
+          if (j > 0) {
+            below0 += w0[j - 1];
+            below1 += w1[j - 1];
+          }
+
+          // Non-inverted stumps predict class 1 above the threshold; inverted stumps are always the complement.
+          double score;
+          if (sigma > 0.0 && j > 0 && j < m) {
+            score = s.softScore(m, threshold, total0);
+          } else {
+            score = below0 + (total1 - below1);
+          }
+
+          if (best == null || score > bestScore) {
+            best = new Stump(d, threshold, false, sigma > 0.0 ? sigma : 1.0);
+            bestScore = score;
+          }
+          if (total - score > bestScore) {
+            best = new Stump(d, threshold, true, sigma > 0.0 ? sigma : 1.0);
+            bestScore = total - score;
+          }
+        }
+      }
+      return best;
+    }
+
+    /** Sorted values and (weighted) class counts of the examples in the current dimension, plus soft scoring state. */
+    private class Scratch
+    {
+      private double[]       values, w0, w1;
+
+      /** Soft scoring: c = w1 - w0 with suffix sums of c and of the series terms (see prepareSoft()). */
+      private double[]       c, cSuffix;
+      private double[][]     suffix;
+      private final double[] prefix = new double[SOFT_TERMS];
+      private int            lo, hi;
+
+      /** Setup suffix sums for soft scoring of the `m` examples in the scratch arrays. */
+      private void prepareSoft(int m)
+      {
+        if (c == null || c.length < m) {
+          c = new double[m];
+          cSuffix = new double[m + 1];
+          suffix = new double[SOFT_TERMS][m];
+        }
+
+        // suffix[t][i] = sum_{k >= i} c[k] * exp(-(t + 1) * (values[k] - values[i]) / sigma)
+        cSuffix[m] = 0.0;
+        for (int i = m - 1; i >= 0; --i) {
+          c[i] = w1[i] - w0[i];
+          cSuffix[i] = c[i] + cSuffix[i + 1];
+          double f = (i + 1 < m ? Math.exp(-(values[i + 1] - values[i]) / sigma) : 0.0);
+          double g = 1.0;
+          for (int t = 0; t < SOFT_TERMS; ++t) {
+            g *= f;
+            suffix[t][i] = c[i] + (i + 1 < m ? g * suffix[t][i + 1] : 0.0);
+          }
+        }
+        Arrays.fill(prefix, 0.0);
+        lo = 0;
+        hi = 0;
+      }
+
+      /**
+       * Expected (weighted) number of correct predictions of a soft stump with the given threshold.
+       * 
+       * Thresholds must be non-decreasing between calls to prepareSoft().
+       */
+      private double softScore(int m, double threshold, double total0)
+      {
+        final double range = SOFT_RANGE * sigma;
+
+        // prefix[t] = sum_{k < lo} c[k] * exp(-(t + 1) * (values[lo - 1] - values[k]) / sigma)
+        while (lo < m && values[lo] < threshold - range) {
+          double f = (lo > 0 ? Math.exp(-(values[lo] - values[lo - 1]) / sigma) : 0.0);
+          double g = 1.0;
+          for (int t = 0; t < SOFT_TERMS; ++t) {
+            g *= f;
+            prefix[t] = c[lo] + g * prefix[t];
+          }
+          ++lo;
+        }
+        hi = Math.max(hi, lo);
+        while (hi < m && values[hi] <= threshold + range) {
+          ++hi;
+        }
+
+        // Accuracy = sum(w0) + sum(c * p) where p is the probability of class 1.
+        double score = total0;
+        for (int k = lo; k < hi; ++k) {
+          score += c[k] * Library.sigmoid(values[k], sigma, threshold);
+        }
+
+        // Above the window (u > 0): p = 1 - exp(-u) + exp(-2u) - ...
+        score += cSuffix[hi];
+        if (hi < m) {
+          double f = Math.exp(-(values[hi] - threshold) / sigma);
+          double g = 1.0, sign = -1.0;
+          for (int t = 0; t < SOFT_TERMS; ++t) {
+            g *= f;
+            score += sign * g * suffix[t][hi];
+            sign = -sign;
+          }
+        }
+
+        // Below the window (u < 0): p = exp(u) - exp(2u) + ...
+        if (lo > 0) {
+          double f = Math.exp(-(threshold - values[lo - 1]) / sigma);
+          double g = 1.0, sign = 1.0;
+          for (int t = 0; t < SOFT_TERMS; ++t) {
+            g *= f;
+            score += sign * g * prefix[t];
+            sign = -sign;
+          }
+        }
+        return score;
+      }
+
+      /**
+       * Copy the values and class weights of dimension `d` into the scratch arrays in sorted order.
+       * 
+       * @return number of distinct examples (examples with a count of zero are skipped)
+       */
+      private int collect(Dataset data, int d, int[] counts)
+      {
+        final int n = data.size();
+        if (values == null || values.length < n) {
+          values = new double[n];
+          w0 = new double[n];
+          w1 = new double[n];
+        }
+        int[] order = data.getSortedIndices(d);
+        double[] column = data.getColumn(d);
+        int[] classes = data.getClasses();
+        double[] weights = data.getWeights();
+        int m = 0;
+        for (int j = 0; j < n; ++j) {
+          final int i = order[j];
+          double w = (useWeights ? weights[i] : 1.0);
+          if (counts != null) {
+            if (counts[i] == 0) continue;
+            w *= counts[i];
+          }
+          values[m] = column[i];
+          w0[m] = (classes[i] == 0 ? w : 0.0);
+          w1[m] = (classes[i] == 0 ? 0.0 : w);
+          ++m;
+        }
+        return m;
+      }
+    }
+  }
+
+  /**
+   * Incremental version of Trainer that learns a stump with a fixed threshold for each dimension.
+   * 
+   * The trainer keeps the (weighted) number of correct and wrong predictions per dimension, so new examples and weight
+   * changes are O(D) and train() never revisits old examples. It selects the same stump as Trainer when all dimensions
+   * are tried.
+   */
+  public static class Incremental implements IncrementalTrainer
+  {
+    public final double   threshold;
+    public final boolean  useWeights;
+
+    private int[]         nCorrect;
+    private double[]      wCorrect;
+    private double[]      wWrong;
+    private int           n;
+
+    public Incremental(double threshold, boolean useWeights)
+    {
+      this.threshold = threshold;
+      this.useWeights = useWeights;
+    }
+
+    @Override
+    public void add(Dataset data, int iFrom)
+    {
+      final int D = data.getNumDims();
+      if (nCorrect == null) {
+        nCorrect = new int[D];
+        wCorrect = new double[D];
+        wWrong = new double[D];
+      }
+      assert nCorrect.length == D;
+
+      for (int d = 0; d < D; ++d) {
+        double[] column = data.getColumn(d);
+        for (int i = iFrom; i < data.size(); ++i) {
+          int k = (column[i] > threshold ? 1 : 0);
+          if (k == data.getClass(i)) {
+            wCorrect[d] += data.getWeight(i);
+            ++nCorrect[d];
+          } else {
+            wWrong[d] += data.getWeight(i);
+          }
+        }
+      }
+      n += data.size() - iFrom;
+    }
+
+    @Override
+    public void reweight(Dataset data, int i, double prevWeight)
+    {
+      final double delta = data.getWeight(i) - prevWeight;
+      for (int d = 0; d < nCorrect.length; ++d) {
+        int k = (data.get(i, d) > threshold ? 1 : 0);
+        if (k == data.getClass(i)) {
+          wCorrect[d] += delta;
+        } else {
+          wWrong[d] += delta;
+        }
+      }
+    }
+
+    /** @return accuracy (1.0 = 1%) of the stump for the given dimension. */
+    public double accuracy(int d)
+    {
+      if (useWeights) {
+        return 100.0 * wCorrect[d] / (wCorrect[d] + wWrong[d]);
+      } else {
+        return 100.0 * nCorrect[d] / n;
+      }
+    }
+
+    @Override
+    public Stump train()
+    {
+      assert n > 0;
+      int bestDim = -1;
+      double bestAccuracy = -1.0;
+      for (int d = 0; d < nCorrect.length; ++d) {
+        double accuracy = accuracy(d);
+        if (bestDim < 0 || accuracy > bestAccuracy) {
+          bestDim = d;
+          bestAccuracy = accuracy;
+        }
+      }
+      return new Stump(bestDim, threshold);
+    }
+  }
+}
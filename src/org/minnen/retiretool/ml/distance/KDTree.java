@@ -0,0 +1,186 @@
+package org.minnen.retiretool.ml.distance;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.ml.Example;
+
+/**
+ * K-d tree for the L1 and (squared) L2 metrics.
+ *
+ * Each internal node splits its points at the median of the dimension with the largest spread. Searches track the
+ * distance from the query to each cell (Arya and Mount's incremental method) so that cells farther than the current
+ * bound are skipped.
+ */
+public class KDTree extends NeighborIndex
+{
+  private static final int LEAF_SIZE = 16;
+
+  private final boolean    bSquared;
+  private final int        nDims;
+
+  // Node data; leaves have splitDim = -1 and hold points [start, end).
+  private int[]            splitDim, left, right, start, end;
+  private double[]         splitValue;
+  private long[]           minTime, maxTime;
+  private int              nNodes;
+
+  public KDTree(List<Example> examples, DistanceMetric metric)
+  {
+    super(examples, metric);
+    assert metric instanceof L1 || metric instanceof L2;
+    bSquared = isSquared(metric);
+
+    final int n = examples.size();
+    nDims = (n > 0 ? examples.get(0).x.getNumDims() : 0);
+    perm = new int[n];
+    double[] raw = new double[n * nDims];
+    for (int i = 0; i < n; ++i) {
+      perm[i] = i;
+      FeatureVec x = examples.get(i).x;
+      assert x.getNumDims() == nDims;
+      System.arraycopy(x.get(), 0, raw, i * nDims, nDims);
+    }
+
+    int capacity = Math.max(1, 2 * (n / LEAF_SIZE + 1));
+    splitDim = new int[capacity];
+    left = new int[capacity];
+    right = new int[capacity];
+    start = new int[capacity];
+    end = new int[capacity];
+    splitValue = new double[capacity];
+    minTime = new long[capacity];
+    maxTime = new long[capacity];
+    build(raw, 0, n);
+    storeTreeOrder(perm);
+  }
+
+  private int newNode()
+  {
+    if (nNodes == splitDim.length) {
+      int capacity = nNodes * 2;
+      splitDim = Arrays.copyOf(splitDim, capacity);
+      left = Arrays.copyOf(left, capacity);
+      right = Arrays.copyOf(right, capacity);
+      start = Arrays.copyOf(start, capacity);
+      end = Arrays.copyOf(end, capacity);
+      splitValue = Arrays.copyOf(splitValue, capacity);
+      minTime = Arrays.copyOf(minTime, capacity);
+      maxTime = Arrays.copyOf(maxTime, capacity);
+    }
+    return nNodes++;
+  }
+
+  /** Build the subtree for points [lo, hi) of `perm` and return its node index. */
+  private int build(double[] raw, int lo, int hi)
+  {
+    final int node = newNode();
+    start[node] = lo;
+    end[node] = hi;
+    long tMin = Long.MAX_VALUE, tMax = Long.MIN_VALUE;
+    for (int p = lo; p < hi; ++p) {
+      long t = times[perm[p]];
+      tMin = Math.min(tMin, t);
+      tMax = Math.max(tMax, t);
+    }
+    minTime[node] = tMin;
+    maxTime[node] = tMax;
+
+    // Split along the dimension with the largest spread.
+    int bestDim = -1;
+    double bestSpread = 0.0;
+    if (hi - lo > LEAF_SIZE) {
+      for (int d = 0; d < nDims; ++d) {
+        double vmin = Double.POSITIVE_INFINITY, vmax = Double.NEGATIVE_INFINITY;
+        for (int p = lo; p < hi; ++p) {
+          double v = raw[perm[p] * nDims + d];
+          vmin = Math.min(vmin, v);
+          vmax = Math.max(vmax, v);
+        }
+        if (vmax - vmin > bestSpread) {
+          bestSpread = vmax - vmin;
+          bestDim = d;
+        }
+      }
+    }
+    splitDim[node] = bestDim;
+    if (bestDim < 0) return node; // leaf (few points or all identical)
+
+    int mid = (lo + hi) >>> 1;
+    select(raw, bestDim, lo, hi - 1, mid);
+    splitValue[node] = raw[perm[mid] * nDims + bestDim];
+    int a = build(raw, lo, mid);
+    int b = build(raw, mid, hi);
+    left[node] = a;
+    right[node] = b;
+    return node;
+  }
+
+  /** Reorder perm[lo..hi] (inclusive) so that perm[k] has the k-th smallest value in dimension d. */
+  private void select(double[] raw, int d, int lo, int hi, int k)
+  {
+    while (hi > lo) {
+      double pivot = raw[perm[(lo + hi) >>> 1] * nDims + d];
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (raw[perm[i] * nDims + d] < pivot)
+          ++i;
+        while (raw[perm[j] * nDims + d] > pivot)
+          --j;
+        if (i <= j) {
+          int t = perm[i];
+          perm[i] = perm[j];
+          perm[j] = t;
+          ++i;
+          --j;
+        }
+      }
+      if (k <= j) hi = j;
+      else if (k >= i) lo = i;
+      else break;
+    }
+  }
+
+  private double cost(double diff)
+  {
+    return bSquared ? diff * diff : Math.abs(diff);
+  }
+
+  @Override
+  protected void search(FeatureVec q, long tq, long delay, Collector collector)
+  {
+    if (nNodes == 0 || examples.isEmpty()) return;
+    assert q.getNumDims() == nDims;
+    search(0, q, tq, delay, collector, 0.0, new double[nDims]);
+  }
+
+  /**
+   * @param rd lower bound on the distance from q to any point in this node
+   * @param off per-dimension offset from q to the node's cell (used to update `rd` incrementally)
+   */
+  private void search(int node, FeatureVec q, long tq, long delay, Collector collector, double rd, double[] off)
+  {
+    if (rd > collector.bound() * (1.0 + EPS)) return;
+    if (isExcluded(minTime[node], maxTime[node], tq, delay)) return;
+
+    final int d = splitDim[node];
+    if (d < 0) {
+      for (int p = start[node]; p < end[node]; ++p) {
+        if (isExcluded(pointTimes[p], tq, delay)) continue;
+        collector.add(perm[p], metric.distance(points[p], q));
+      }
+      return;
+    }
+
+    double diff = q.get(d) - splitValue[node];
+    int near = (diff <= 0.0 ? left[node] : right[node]);
+    int far = (diff <= 0.0 ? right[node] : left[node]);
+    search(near, q, tq, delay, collector, rd, off);
+
+    double oldOff = off[d];
+    off[d] = diff;
+    search(far, q, tq, delay, collector, rd - cost(oldOff) + cost(diff), off);
+    off[d] = oldOff;
+  }
+}
@@ -0,0 +1,109 @@
+package org.minnen.retiretool.ml.distance;
+
+/**
+ * Bounded max-heap that keeps the k closest (index, distance) pairs seen so far.
+ *
+ * Ties are broken by index (lower index is closer), so the result is the same as a stable sort of all candidates by
+ * distance followed by taking the first k.
+ */
+public class KnnHeap
+{
+  private final int      k;
+  private final int[]    indices;
+  private final double[] dists;
+  private int            size;
+
+  public KnnHeap(int k)
+  {
+    assert k >= 0;
+    this.k = k;
+    indices = new int[k];
+    dists = new double[k];
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  public boolean isFull()
+  {
+    return size == k;
+  }
+
+  /** @return distance of the farthest kept pair (infinity if the heap isn't full). */
+  public double worst()
+  {
+    return size < k ? Double.POSITIVE_INFINITY : dists[0];
+  }
+
+  /** @return true if (a, ia) is farther than (b, ib). */
+  private static boolean isFarther(double a, int ia, double b, int ib)
+  {
+    return a > b || (a == b && ia > ib);
+  }
+
+  /**
+   * Add a candidate if it's closer than the farthest kept pair.
+   *
+   * @return true if the candidate was added
+   */
+  public boolean offer(int index, double dist)
+  {
+    if (size < k) {
+      // Sift up.
+      int i = size++;
+      while (i > 0) {
+        int parent = (i - 1) >> 1;
+        if (!isFarther(dist, index, dists[parent], indices[parent])) break;
+        dists[i] = dists[parent];
+        indices[i] = indices[parent];
+        i = parent;
+      }
+      dists[i] = dist;
+      indices[i] = index;
+      return true;
+    }
+    if (k == 0 || !isFarther(dists[0], indices[0], dist, index)) return false;
+    siftDown(dist, index);
+    return true;
+  }
+
+  /** Put the given pair at the root (replacing the current root) and restore the heap property. */
+  private void siftDown(double dist, int index)
+  {
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= size) break;
+      if (child + 1 < size && isFarther(dists[child + 1], indices[child + 1], dists[child], indices[child])) ++child;
+      if (!isFarther(dists[child], indices[child], dist, index)) break;
+      dists[i] = dists[child];
+      indices[i] = indices[child];
+      i = child;
+    }
+    dists[i] = dist;
+    indices[i] = index;
+  }
+
+  /**
+   * Remove all pairs from the heap, closest first.
+   *
+   * @param outIndices receives the indices (length >= size())
+   * @param outDists receives the distances (length >= size(), may be null)
+   * @return number of pairs
+   */
+  public int drain(int[] outIndices, double[] outDists)
+  {
+    final int n = size;
+    for (int j = n - 1; j >= 0; --j) {
+      outIndices[j] = indices[0];
+      if (outDists != null) outDists[j] = dists[0];
+
+      // Move last element to the root and sift down.
+      --size;
+      if (size > 0) siftDown(dists[size], indices[size]);
+    }
+    return n;
+  }
+}
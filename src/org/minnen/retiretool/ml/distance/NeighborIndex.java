@@ -0,0 +1,260 @@
+package org.minnen.retiretool.ml.distance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.ml.Example;
+
+/**
+ * Spatial index over the feature vectors of a list of examples that answers k-nearest-neighbor and radius queries.
+ *
+ * Queries can exclude examples whose time is in [t, t + delay) where t is the time of the query, which matches the
+ * look-ahead exclusion used by ExploreCKDE. Excluded examples (and whole subtrees that only hold excluded examples)
+ * are skipped during the search so they don't use up any of the k slots.
+ *
+ * Results are sorted by increasing distance with ties broken by example index, so they're identical to a stable sort
+ * over all candidates. Distances are always computed by the metric given to the index.
+ */
+public abstract class NeighborIndex
+{
+  /** Relative slack for pruning tests so that rounding error never removes a tied neighbor. */
+  protected static final double EPS = 1e-9;
+
+  /** Result of a query. */
+  public static class Match
+  {
+    /** Index of the example in the list used to build the index. */
+    public final int    index;
+    public final double distance;
+
+    public Match(int index, double distance)
+    {
+      this.index = index;
+      this.distance = distance;
+    }
+
+    @Override
+    public String toString()
+    {
+      return String.format("[%d: %f]", index, distance);
+    }
+  }
+
+  /** Receives candidates during a search and provides the current pruning bound. */
+  protected static abstract class Collector
+  {
+    /** @return maximum distance of a useful candidate. */
+    public abstract double bound();
+
+    public abstract void add(int index, double dist);
+  }
+
+  private static class KnnCollector extends Collector
+  {
+    public final KnnHeap heap;
+
+    public KnnCollector(int k)
+    {
+      heap = new KnnHeap(k);
+    }
+
+    @Override
+    public double bound()
+    {
+      return heap.worst();
+    }
+
+    @Override
+    public void add(int index, double dist)
+    {
+      heap.offer(index, dist);
+    }
+  }
+
+  private static class RadiusCollector extends Collector
+  {
+    public final double      radius;
+    public final List<Match> matches = new ArrayList<>();
+
+    public RadiusCollector(double radius)
+    {
+      this.radius = radius;
+    }
+
+    @Override
+    public double bound()
+    {
+      return radius;
+    }
+
+    @Override
+    public void add(int index, double dist)
+    {
+      if (dist <= radius) matches.add(new Match(index, dist));
+    }
+  }
+
+  public final DistanceMetric     metric;
+  protected final List<Example>   examples;
+
+  /** Time of each example. */
+  protected final long[]          times;
+
+  /** Sorted copy of `times` for counting excluded examples. */
+  private final long[]            sortedTimes;
+
+  /** Example index for each position in tree order. */
+  protected int[]                 perm;
+
+  /** Copies of the feature vectors in tree order so that searches touch contiguous memory. */
+  protected FeatureVec[]          points;
+
+  /** Example time for each position in tree order. */
+  protected long[]                pointTimes;
+
+  protected NeighborIndex(List<Example> examples, DistanceMetric metric)
+  {
+    this.examples = examples;
+    this.metric = metric;
+    final int n = examples.size();
+    times = new long[n];
+    for (int i = 0; i < n; ++i) {
+      times[i] = examples.get(i).x.getTime();
+    }
+    sortedTimes = times.clone();
+    Arrays.sort(sortedTimes);
+  }
+
+  /** Store copies of the feature vectors and times in tree order (called once the tree is built). */
+  protected void storeTreeOrder(int[] perm)
+  {
+    this.perm = perm;
+    final int n = perm.length;
+    points = new FeatureVec[n];
+    pointTimes = new long[n];
+    for (int p = 0; p < n; ++p) {
+      points[p] = new FeatureVec(examples.get(perm[p]).x.get());
+      pointTimes[p] = times[perm[p]];
+    }
+  }
+
+  /**
+   * Build the best index for the given metric.
+   *
+   * L1 and L2 use a k-d tree. Other metrics use a vantage-point tree, which requires a metric that satisfies the
+   * triangle inequality (WeightedL2 is handled by taking the square root of the squared distance).
+   */
+  public static NeighborIndex build(List<Example> examples, DistanceMetric metric)
+  {
+    if (metric instanceof L1 || metric instanceof L2) {
+      return new KDTree(examples, metric);
+    } else {
+      return new VPTree(examples, metric);
+    }
+  }
+
+  /** @return true if the metric returns a squared distance (so its square root is the true metric). */
+  public static boolean isSquared(DistanceMetric metric)
+  {
+    return metric instanceof L2 || metric instanceof WeightedL2;
+  }
+
+  public int size()
+  {
+    return examples.size();
+  }
+
+  public Example get(int index)
+  {
+    return examples.get(index);
+  }
+
+  /** @return true if an example with time `t` is excluded from a query at time `tq`. */
+  protected static boolean isExcluded(long t, long tq, long delay)
+  {
+    long dtime = t - tq;
+    return dtime >= 0 && dtime < delay;
+  }
+
+  /** @return true if all examples with times in [tMin, tMax] are excluded from a query at time `tq`. */
+  protected static boolean isExcluded(long tMin, long tMax, long tq, long delay)
+  {
+    return tMin - tq >= 0 && tMax - tq < delay;
+  }
+
+  /** @return number of examples that aren't excluded from a query at the given time. */
+  public int countEligible(long tq, long delay)
+  {
+    if (delay <= 0) return sortedTimes.length;
+    int a = lowerBound(sortedTimes, tq);
+    int b = lowerBound(sortedTimes, tq + delay);
+    return sortedTimes.length - (b - a);
+  }
+
+  /** @return index of the first element >= x. */
+  private static int lowerBound(long[] a, long x)
+  {
+    int lo = 0, hi = a.length;
+    while (lo < hi) {
+      int mid = (lo + hi) >>> 1;
+      if (a[mid] < x) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo;
+  }
+
+  /**
+   * Find the k nearest examples.
+   *
+   * @param q query vector (must have a time if delay > 0)
+   * @param k number of neighbors
+   * @param delay exclude examples with time in [q.time, q.time + delay) (no exclusion if delay <= 0)
+   * @return up to k matches sorted by increasing distance
+   */
+  public List<Match> nearest(FeatureVec q, int k, long delay)
+  {
+    KnnCollector collector = new KnnCollector(Math.min(k, size()));
+    if (k > 0) search(q, q.getTime(), delay, collector);
+    KnnHeap heap = collector.heap;
+    int[] indices = new int[heap.size()];
+    double[] dists = new double[heap.size()];
+    final int n = heap.drain(indices, dists);
+    List<Match> matches = new ArrayList<>(n);
+    for (int i = 0; i < n; ++i) {
+      matches.add(new Match(indices[i], dists[i]));
+    }
+    return matches;
+  }
+
+  /**
+   * Find all examples within the given distance.
+   *
+   * @param q query vector (must have a time if delay > 0)
+   * @param radius maximum distance (inclusive, same units as the metric)
+   * @param delay exclude examples with time in [q.time, q.time + delay) (no exclusion if delay <= 0)
+   * @return matches sorted by increasing distance
+   */
+  public List<Match> withinRadius(FeatureVec q, double radius, long delay)
+  {
+    RadiusCollector collector = new RadiusCollector(radius);
+    search(q, q.getTime(), delay, collector);
+    List<Match> matches = collector.matches;
+    matches.sort((a, b) -> {
+      int c = Double.compare(a.distance, b.distance);
+      return c != 0 ? c : Integer.compare(a.index, b.index);
+    });
+    return matches;
+  }
+
+  /**
+   * Pass every candidate that might be within the collector's bound to the collector.
+   *
+   * @param q query vector
+   * @param tq time of the query
+   * @param delay exclusion window (see isExcluded())
+   * @param collector receives candidates
+   */
+  protected abstract void search(FeatureVec q, long tq, long delay, Collector collector);
+}
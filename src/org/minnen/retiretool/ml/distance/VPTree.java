@@ -0,0 +1,185 @@
+package org.minnen.retiretool.ml.distance;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.ml.Example;
+
+/**
+ * Vantage-point tree for any metric that satisfies the triangle inequality.
+ *
+ * Each internal node picks a vantage point and splits the remaining points at the median distance `mu` from it. A
+ * search only visits a side of the split if it can hold a point within the current bound. Metrics that return squared
+ * distances (L2, WeightedL2) are organized by the square root of the distance, which is a true metric.
+ */
+public class VPTree extends NeighborIndex
+{
+  private static final int LEAF_SIZE = 8;
+
+  private final boolean    bSquared;
+
+  // Node data; vp is the position of the vantage point (-1 for leaves, which hold points [start, end)).
+  private int[]            vp, inside, outside, start, end;
+  private double[]         mu;
+  private long[]           minTime, maxTime;
+  private int              nNodes;
+
+  public VPTree(List<Example> examples, DistanceMetric metric)
+  {
+    super(examples, metric);
+    bSquared = isSquared(metric);
+
+    final int n = examples.size();
+    perm = new int[n];
+    for (int i = 0; i < n; ++i) {
+      perm[i] = i;
+    }
+
+    int capacity = Math.max(1, 2 * (n / LEAF_SIZE + 1));
+    vp = new int[capacity];
+    inside = new int[capacity];
+    outside = new int[capacity];
+    start = new int[capacity];
+    end = new int[capacity];
+    mu = new double[capacity];
+    minTime = new long[capacity];
+    maxTime = new long[capacity];
+    build(0, n, new double[n], new Random(n));
+    storeTreeOrder(perm);
+  }
+
+  /** @return distance in tree units (see class comment). */
+  private double treeDist(double dist)
+  {
+    return bSquared ? Math.sqrt(dist) : dist;
+  }
+
+  private int newNode()
+  {
+    if (nNodes == vp.length) {
+      int capacity = nNodes * 2;
+      vp = Arrays.copyOf(vp, capacity);
+      inside = Arrays.copyOf(inside, capacity);
+      outside = Arrays.copyOf(outside, capacity);
+      start = Arrays.copyOf(start, capacity);
+      end = Arrays.copyOf(end, capacity);
+      mu = Arrays.copyOf(mu, capacity);
+      minTime = Arrays.copyOf(minTime, capacity);
+      maxTime = Arrays.copyOf(maxTime, capacity);
+    }
+    return nNodes++;
+  }
+
+  /**
+   * Build the subtree for points [lo, hi) of `perm` and return its node index.
+   *
+   * @param dists scratch space for distances to the vantage point (indexed like `perm`)
+   */
+  private int build(int lo, int hi, double[] dists, Random rng)
+  {
+    final int node = newNode();
+    start[node] = lo;
+    end[node] = hi;
+    long tMin = Long.MAX_VALUE, tMax = Long.MIN_VALUE;
+    for (int p = lo; p < hi; ++p) {
+      long t = times[perm[p]];
+      tMin = Math.min(tMin, t);
+      tMax = Math.max(tMax, t);
+    }
+    minTime[node] = tMin;
+    maxTime[node] = tMax;
+
+    if (hi - lo <= LEAF_SIZE) {
+      vp[node] = -1;
+      return node;
+    }
+
+    // Move a random vantage point to the front and split the rest at the median distance.
+    swap(dists, lo, lo + rng.nextInt(hi - lo));
+    vp[node] = lo;
+    FeatureVec x = examples.get(perm[lo]).x;
+    for (int p = lo + 1; p < hi; ++p) {
+      dists[p] = treeDist(metric.distance(examples.get(perm[p]).x, x));
+    }
+    int mid = (lo + 1 + hi) >>> 1;
+    select(dists, lo + 1, hi - 1, mid);
+    mu[node] = dists[mid];
+    int a = build(lo + 1, mid, dists, rng);
+    int b = build(mid, hi, dists, rng);
+    inside[node] = a;
+    outside[node] = b;
+    return node;
+  }
+
+  private void swap(double[] dists, int i, int j)
+  {
+    int t = perm[i];
+    perm[i] = perm[j];
+    perm[j] = t;
+    double d = dists[i];
+    dists[i] = dists[j];
+    dists[j] = d;
+  }
+
+  /** Reorder [lo, hi] (inclusive) so that position k has the k-th smallest distance. */
+  private void select(double[] dists, int lo, int hi, int k)
+  {
+    while (hi > lo) {
+      double pivot = dists[(lo + hi) >>> 1];
+      int i = lo, j = hi;
+      while (i <= j) {
+        while (dists[i] < pivot)
+          ++i;
+        while (dists[j] > pivot)
+          --j;
+        if (i <= j) {
+          swap(dists, i, j);
+          ++i;
+          --j;
+        }
+      }
+      if (k <= j) hi = j;
+      else if (k >= i) lo = i;
+      else break;
+    }
+  }
+
+  @Override
+  protected void search(FeatureVec q, long tq, long delay, Collector collector)
+  {
+    if (nNodes == 0 || examples.isEmpty()) return;
+    search(0, q, tq, delay, collector);
+  }
+
+  private void search(int node, FeatureVec q, long tq, long delay, Collector collector)
+  {
+    if (isExcluded(minTime[node], maxTime[node], tq, delay)) return;
+
+    if (vp[node] < 0) {
+      for (int p = start[node]; p < end[node]; ++p) {
+        if (isExcluded(pointTimes[p], tq, delay)) continue;
+        collector.add(perm[p], metric.distance(points[p], q));
+      }
+      return;
+    }
+
+    final int p = vp[node];
+    double dist = metric.distance(points[p], q);
+    if (!isExcluded(pointTimes[p], tq, delay)) collector.add(perm[p], dist);
+
+    // Visit the more promising side first; the bound may shrink before we check the other side.
+    double d = treeDist(dist);
+    boolean bInsideFirst = d <= mu[node];
+    for (int pass = 0; pass < 2; ++pass) {
+      boolean bInside = (pass == 0) == bInsideFirst;
+      double tau = treeDist(collector.bound()) * (1.0 + EPS);
+      if (bInside && d - tau <= mu[node]) {
+        search(inside[node], q, tq, delay, collector);
+      } else if (!bInside && d + tau >= mu[node]) {
+        search(outside[node], q, tq, delay, collector);
+      }
+    }
+  }
+}
@@ -0,0 +1,62 @@
+package org.minnen.retiretool.ml.rank;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.minnen.retiretool.util.TimeLib;
+
+/** Time dense and sparse Colley rankers on random tournaments of different sizes and densities. */
+public class BenchmarkColley
+{
+  public static void main(String[] args)
+  {
+    Random rng = new Random(1234);
+    for (int N : new int[] { 1000, 10000, 50000 }) {
+      for (double density : new double[] { 0.01, 0.05 }) {
+        // Each pair meets with the given probability and better teams (lower index) tend to win.
+        final int nGames = (int) Math.round(density * N * (N - 1) / 2);
+        int[] winners = new int[nGames];
+        int[] losers = new int[nGames];
+        for (int k = 0; k < nGames; ++k) {
+          int i = rng.nextInt(N);
+          int j = (i + 1 + rng.nextInt(N - 1)) % N;
+          boolean iWins = rng.nextDouble() * N < Math.abs(j - i) + N / 2 == i < j;
+          winners[k] = (iWins ? i : j);
+          losers[k] = (iWins ? j : i);
+        }
+        System.out.printf("N=%d density=%.2f games=%d\n", N, density, nGames);
+
+        SparseColleyRanker sparse = new SparseColleyRanker(0, 1e-12);
+        long t0 = TimeLib.getTime();
+        sparse.rank(N, winners, losers);
+        long t1 = TimeLib.getTime();
+        System.out.printf(" Sparse CG:      %6dms (%d iterations)\n", t1 - t0, sparse.getIterations());
+
+        // Add 0.1% more games and re-rank from the previous scores.
+        final int nMore = nGames / 1000;
+        winners = Arrays.copyOf(winners, nGames + nMore);
+        losers = Arrays.copyOf(losers, nGames + nMore);
+        for (int k = nGames; k < winners.length; ++k) {
+          winners[k] = rng.nextInt(N);
+          losers[k] = (winners[k] + 1 + rng.nextInt(N - 1)) % N;
+        }
+        long t2 = TimeLib.getTime();
+        sparse.rank(N, winners, losers);
+        long t3 = TimeLib.getTime();
+        System.out.printf(" Warm start:     %6dms (%d iterations)\n", t3 - t2, sparse.getIterations());
+
+        if (N <= 1000) {
+          int[][] wins = new int[N][N];
+          for (int k = 0; k < winners.length; ++k) {
+            wins[winners[k]][losers[k]] = 1;
+            wins[losers[k]][winners[k]] = -1;
+          }
+          long t4 = TimeLib.getTime();
+          new ColleyRanker().rank(wins);
+          long t5 = TimeLib.getTime();
+          System.out.printf(" Dense solve:    %6dms\n", t5 - t4);
+        }
+      }
+    }
+  }
+}
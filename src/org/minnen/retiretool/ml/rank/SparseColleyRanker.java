@@ -0,0 +1,272 @@
+package org.minnen.retiretool.ml.rank;
+
+import java.util.Arrays;
+
+import org.minnen.retiretool.util.Library;
+import org.ojalgo.matrix.BasicMatrix.PhysicalBuilder;
+import org.ojalgo.matrix.PrimitiveMatrix;
+
+/**
+ * Colley ranker for large tournaments where most pairs never meet.
+ *
+ * The Colley matrix is assembled in compressed sparse row (CSR) format and solved with Jacobi-preconditioned conjugate
+ * gradients (CG), which needs O(games) memory and time per iteration instead of O(N^2) memory and O(N^3) time. The
+ * matrix is symmetric positive definite and diagonally dominant so CG converges in a few dozen iterations. The previous
+ * scores are used as the starting point when the number of teams doesn't change, so re-ranking after adding a few
+ * games only takes a few iterations. Small tournaments are solved directly (same as ColleyRanker).
+ */
+public class SparseColleyRanker extends Ranker
+{
+  /** Tournaments with at most this many teams are solved directly by default. */
+  public static final int DEFAULT_MAX_DENSE = 200;
+
+  private final int       maxDense;
+  private final double    tolerance;
+  private boolean         warmStart         = true;
+
+  private double[]        scores;
+  private int             nIterations;
+
+  /** Create a ranker with the default dense threshold and a relative residual tolerance of 1e-12. */
+  public SparseColleyRanker()
+  {
+    this(DEFAULT_MAX_DENSE, 1e-12);
+  }
+
+  /**
+   * Create a sparse Colley ranker.
+   *
+   * @param maxDense solve tournaments with at most this many teams directly (0 = always use CG)
+   * @param tolerance stop CG when the norm of the residual is below tolerance times the norm of the right-hand side
+   */
+  public SparseColleyRanker(int maxDense, double tolerance)
+  {
+    this.maxDense = maxDense;
+    this.tolerance = tolerance;
+  }
+
+  /** Start CG from the previous scores (when the number of teams is the same). */
+  public SparseColleyRanker setWarmStart(boolean warmStart)
+  {
+    this.warmStart = warmStart;
+    return this;
+  }
+
+  /** @return number of CG iterations used by the last solve (0 if it was solved directly). */
+  public int getIterations()
+  {
+    return nIterations;
+  }
+
+  @Override
+  public double[] getScores()
+  {
+    return scores;
+  }
+
+  @Override
+  public int[] rank(int[][] wins)
+  {
+    final int N = wins.length;
+    int[] rowPtr = new int[N + 1];
+    for (int i = 0; i < N; ++i) {
+      rowPtr[i + 1] = rowPtr[i];
+      for (int j = 0; j < N; ++j) {
+        if (wins[i][j] != 0) ++rowPtr[i + 1];
+      }
+    }
+    int[] col = new int[rowPtr[N]];
+    byte[] result = new byte[rowPtr[N]];
+    for (int i = 0, k = 0; i < N; ++i) {
+      for (int j = 0; j < N; ++j) {
+        if (wins[i][j] == 0) continue;
+        col[k] = j;
+        result[k] = (byte) (wins[i][j] > 0 ? 1 : -1);
+        ++k;
+      }
+    }
+    return rank(rowPtr, col, result);
+  }
+
+  /**
+   * Rank teams given a list of games (no ties).
+   *
+   * @param N number of teams
+   * @param winners winners[k] is the index of the team that won game k
+   * @param losers losers[k] is the index of the team that lost game k
+   * @return array of indices where the best (higher rank) values comes first.
+   */
+  public int[] rank(int N, int[] winners, int[] losers)
+  {
+    assert winners.length == losers.length;
+    int[] rowPtr = new int[N + 1];
+    for (int k = 0; k < winners.length; ++k) {
+      ++rowPtr[winners[k] + 1];
+      ++rowPtr[losers[k] + 1];
+    }
+    for (int i = 0; i < N; ++i) {
+      rowPtr[i + 1] += rowPtr[i];
+    }
+    int[] next = Arrays.copyOf(rowPtr, N);
+    int[] col = new int[rowPtr[N]];
+    byte[] result = new byte[rowPtr[N]];
+    for (int k = 0; k < winners.length; ++k) {
+      int w = winners[k], l = losers[k];
+      col[next[w]] = l;
+      result[next[w]++] = 1;
+      col[next[l]] = w;
+      result[next[l]++] = -1;
+    }
+    return rank(rowPtr, col, result);
+  }
+
+  /**
+   * Rank teams given the games of each team in CSR format.
+   *
+   * Every game must be listed for both teams (e.g. a win for i in row i and a loss for j in row j). Pairs may meet more
+   * than once and the columns of a row don't have to be sorted.
+   *
+   * @param rowPtr games of team i are at indices [rowPtr[i], rowPtr[i+1])
+   * @param col col[k] is the opponent in game k
+   * @param result result[k] is 1 for a win, -1 for a loss, and 0 for a tie (half a win and half a loss)
+   * @return array of indices where the best (higher rank) values comes first.
+   */
+  public int[] rank(int[] rowPtr, int[] col, byte[] result)
+  {
+    final int N = rowPtr.length - 1;
+    assert col.length >= rowPtr[N] && result.length >= rowPtr[N];
+
+    // Construct the Colley matrix: C[i][i] = 2 + n_i, C[i][j] = -n_ij, b[i] = 1 + (w_i - l_i) / 2.
+    double[] diag = new double[N];
+    double[] b = new double[N];
+    int[] cRowPtr = new int[N + 1];
+    int[] cCol = new int[rowPtr[N]];
+    double[] cVal = new double[rowPtr[N]];
+    int nnz = 0;
+    for (int i = 0; i < N; ++i) {
+      final int from = rowPtr[i], to = rowPtr[i + 1];
+      int wl = 0;
+      for (int k = from; k < to; ++k) {
+        wl += result[k];
+      }
+      diag[i] = 2.0 + (to - from);
+      b[i] = 1.0 + 0.5 * wl;
+
+      // Merge repeated opponents.
+      int[] opponents = Arrays.copyOfRange(col, from, to);
+      Arrays.sort(opponents);
+      for (int k = 0; k < opponents.length; ++k) {
+        assert opponents[k] != i;
+        if (k > 0 && opponents[k] == opponents[k - 1]) {
+          cVal[nnz - 1] -= 1.0;
+        } else {
+          cCol[nnz] = opponents[k];
+          cVal[nnz++] = -1.0;
+        }
+      }
+      cRowPtr[i + 1] = nnz;
+    }
+
+    if (N <= maxDense) {
+      solveDense(cRowPtr, cCol, cVal, diag, b);
+    } else {
+      solveCG(cRowPtr, cCol, cVal, diag, b);
+    }
+    return Library.sort(scores.clone(), false);
+  }
+
+  /** Solve the Colley system with a dense direct solver. */
+  private void solveDense(int[] rowPtr, int[] col, double[] val, double[] diag, double[] b)
+  {
+    final int N = diag.length;
+    PhysicalBuilder<Double, PrimitiveMatrix> builderA = PrimitiveMatrix.FACTORY.getBuilder(N, N);
+    PhysicalBuilder<Double, PrimitiveMatrix> builderB = PrimitiveMatrix.FACTORY.getBuilder(N);
+    for (int i = 0; i < N; ++i) {
+      for (int k = rowPtr[i]; k < rowPtr[i + 1]; ++k) {
+        builderA.set(i, col[k], val[k]);
+      }
+      builderA.set(i, i, diag[i]);
+      builderB.set(i, b[i]);
+    }
+    PrimitiveMatrix r = builderA.build().solve(builderB.build());
+
+    scores = new double[N];
+    for (int i = 0; i < N; ++i) {
+      scores[i] = r.get(i);
+    }
+    nIterations = 0;
+  }
+
+  /** Solve the Colley system with Jacobi-preconditioned conjugate gradients. */
+  private void solveCG(int[] rowPtr, int[] col, double[] val, double[] diag, double[] b)
+  {
+    final int N = diag.length;
+    double[] x;
+    if (warmStart && scores != null && scores.length == N) {
+      x = scores.clone();
+    } else {
+      x = new double[N];
+      Arrays.fill(x, 0.5); // all teams are equal without any games
+    }
+
+    // r = b - Ax, z = r / diag, p = z
+    double[] r = new double[N];
+    double[] z = new double[N];
+    double[] p = new double[N];
+    double[] q = new double[N];
+    multiply(rowPtr, col, val, diag, x, r);
+    double bnorm2 = 0.0, rz = 0.0;
+    for (int i = 0; i < N; ++i) {
+      r[i] = b[i] - r[i];
+      z[i] = r[i] / diag[i];
+      p[i] = z[i];
+      rz += r[i] * z[i];
+      bnorm2 += b[i] * b[i];
+    }
+    final double stop2 = tolerance * tolerance * bnorm2;
+
+    nIterations = 0;
+    double rnorm2 = dot(r, r);
+    while (rnorm2 > stop2 && nIterations < 10 * N) {
+      multiply(rowPtr, col, val, diag, p, q);
+      double alpha = rz / dot(p, q);
+      rnorm2 = 0.0;
+      double rzNew = 0.0;
+      for (int i = 0; i < N; ++i) {
+        x[i] += alpha * p[i];
+        r[i] -= alpha * q[i];
+        z[i] = r[i] / diag[i];
+        rnorm2 += r[i] * r[i];
+        rzNew += r[i] * z[i];
+      }
+      double beta = rzNew / rz;
+      for (int i = 0; i < N; ++i) {
+        p[i] = z[i] + beta * p[i];
+      }
+      rz = rzNew;
+      ++nIterations;
+    }
+    scores = x;
+  }
+
+  /** y = Ax where A is given by its diagonal and off-diagonal entries in CSR format. */
+  private static void multiply(int[] rowPtr, int[] col, double[] val, double[] diag, double[] x, double[] y)
+  {
+    for (int i = 0; i < diag.length; ++i) {
+      double sum = diag[i] * x[i];
+      for (int k = rowPtr[i]; k < rowPtr[i + 1]; ++k) {
+        sum += val[k] * x[col[k]];
+      }
+      y[i] = sum;
+    }
+  }
+
+  private static double dot(double[] a, double[] b)
+  {
+    double sum = 0.0;
+    for (int i = 0; i < a.length; ++i) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+}
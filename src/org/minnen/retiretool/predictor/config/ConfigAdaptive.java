@@ -1,6 +1,7 @@
 package org.minnen.retiretool.predictor.config;
 
 import org.minnen.retiretool.broker.BrokerInfoAccess;
+import org.minnen.retiretool.data.SMAWindows;
 import org.minnen.retiretool.predictor.daily.AdaptiveMomentumPredictor;
 import org.minnen.retiretool.predictor.daily.Predictor;
 import org.minnen.retiretool.predictor.features.Momentum;
@@ -73,6 +74,18 @@ public class ConfigAdaptive extends PredictorConfig
     return new AdaptiveMomentumPredictor(this, brokerAccess, assetNames);
   }
 
+  @Override
+  public void addSMAWindows(SMAWindows windows, String... assetNames)
+  {
+    // Momentum averages end one index later than SMA windows (see Momentum.calculate).
+    if (nTriggerB < 1 || nBaseB < 1) return;
+    for (String assetName : assetNames) {
+      if (assetName.equals("cash")) continue;
+      windows.add(assetName, iPrice, nTriggerA - 1, nTriggerB - 1);
+      windows.add(assetName, iPrice, nBaseA - 1, nBaseB - 1);
+    }
+  }
+
   @Override
   public String toString()
   {
@@ -86,6 +99,14 @@ public class ConfigAdaptive extends PredictorConfig
     return sb.toString();
   }
 
+  @Override
+  public String toCanonicalString()
+  {
+    return String.format("Adaptive(%d,%d|%s|%d|%.6f,%.6f|%d,%d,%d,%d|%.6f,%d|%d|%s|%s|%s|%d)", iPredictIn, iPredictOut,
+        weighting, nCorrelation, minWeight, maxWeight, nTriggerA, nTriggerB, nBaseA, nBaseB, maxKeepFrac, maxKeep,
+        pctQuantum, tradeFreq, returnOrMul, compoundPeriod, iPrice);
+  }
+
   public static ConfigAdaptive buildEqualWeight(int nTrigger, int nBaseA, int nBaseB, double maxKeepFrac, int maxKeep,
       int pctQuantum, TradeFreq tradeFreq, int iPrice)
   {
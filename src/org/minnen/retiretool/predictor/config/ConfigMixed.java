@@ -4,6 +4,7 @@ import java.util.Arrays;
 
 import org.minnen.retiretool.broker.BrokerInfoAccess;
 import org.minnen.retiretool.data.DiscreteDistribution;
+import org.minnen.retiretool.data.SMAWindows;
 import org.minnen.retiretool.predictor.daily.MixedPredictor;
 import org.minnen.retiretool.predictor.daily.Predictor;
 
@@ -54,6 +55,29 @@ public class ConfigMixed extends PredictorConfig
     return new MixedPredictor(predictors, mix, brokerAccess, assetNames);
   }
 
+  @Override
+  public void addSMAWindows(SMAWindows windows, String... assetNames)
+  {
+    for (PredictorConfig config : configs) {
+      config.addSMAWindows(windows, assetNames);
+    }
+  }
+
+  @Override
+  public String toCanonicalString()
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Mixed(%d,%d|", iPredictIn, iPredictOut));
+    for (int i = 0; i < mix.size(); ++i) {
+      sb.append(String.format("%s=%.6f,", mix.names[i], mix.weights[i]));
+    }
+    for (PredictorConfig config : configs) {
+      sb.append("|").append(config.toCanonicalString());
+    }
+    sb.append(")");
+    return sb.toString();
+  }
+
   @Override
   public String toString()
   {
@@ -81,4 +81,11 @@ public class ConfigMonthlySMA extends PredictorConfig
   {
     return String.format("[%d]", nLookback);
   }
+
+  @Override
+  public String toCanonicalString()
+  {
+    return String.format("MonthlySMA(%d,%d|%d|%d|%b|%s)", iPredictIn, iPredictOut, nLookback, iPrice, invert,
+        analysisName);
+  }
 }
@@ -5,8 +5,10 @@ import java.io.StringWriter;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.TreeSet;
 
 import org.minnen.retiretool.broker.BrokerInfoAccess;
+import org.minnen.retiretool.data.SMAWindows;
 import org.minnen.retiretool.predictor.daily.MultiPredictor;
 import org.minnen.retiretool.predictor.daily.Predictor;
 import org.minnen.retiretool.util.IntPair;
@@ -91,6 +93,14 @@ public class ConfigMulti extends PredictorConfig
         assetNames[iPredictOut], brokerAccess);
   }
 
+  @Override
+  public void addSMAWindows(SMAWindows windows, String... assetNames)
+  {
+    for (PredictorConfig config : configs) {
+      config.addSMAWindows(windows, assetNames);
+    }
+  }
+
   @Override
   public String toString()
   {
@@ -104,6 +114,23 @@ public class ConfigMulti extends PredictorConfig
     return sw.toString();
   }
 
+  @Override
+  public String toCanonicalString()
+  {
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("Multi(%d,%d|%b|", iPredictIn, iPredictOut, defaultDecision));
+    sb.append(contraryCodes == null ? "null" : new TreeSet<Integer>(contraryCodes));
+    sb.append("|");
+    for (IntPair pair : contraryPairs == null ? new TreeSet<IntPair>() : new TreeSet<IntPair>(contraryPairs)) {
+      sb.append(String.format("(%d,%d)", pair.first, pair.second));
+    }
+    for (PredictorConfig config : configs) {
+      sb.append("|").append(config.toCanonicalString());
+    }
+    sb.append(")");
+    return sb.toString();
+  }
+
   public static ConfigMulti buildTactical(int iPrice, int iPredictIn, int iPredictOut)
   {
     final boolean defaultDecision = true;
@@ -43,4 +43,11 @@ public class ConfigRecession extends PredictorConfig
   {
     return String.format("[%.2f, %.2f]", threshProb, threshDiffRecover);
   }
+
+  @Override
+  public String toCanonicalString()
+  {
+    return String.format("Recession(%d,%d|%.6f,%.6f|%s,%s)", iPredictIn, iPredictOut, threshProb, threshDiffRecover,
+        riskyAsset, safeAsset);
+  }
 }
@@ -1,6 +1,7 @@
 package org.minnen.retiretool.predictor.config;
 
 import org.minnen.retiretool.broker.BrokerInfoAccess;
+import org.minnen.retiretool.data.SMAWindows;
 import org.minnen.retiretool.predictor.daily.Predictor;
 import org.minnen.retiretool.predictor.daily.SMAPredictor;
 import org.minnen.retiretool.util.Random;
@@ -56,6 +57,14 @@ public class ConfigSMA extends PredictorConfig
     return new SMAPredictor(this, assetNames[iPredictIn], assetNames[iPredictOut], brokerAccess);
   }
 
+  @Override
+  public void addSMAWindows(SMAWindows windows, String... assetNames)
+  {
+    String assetName = assetNames[iPredictIn];
+    windows.add(assetName, iPrice, nLookbackTriggerA, nLookbackTriggerB);
+    windows.add(assetName, iPrice, nLookbackBaseA, nLookbackBaseB);
+  }
+
   @Override
   public boolean isValid()
   {
@@ -111,6 +120,13 @@ public class ConfigSMA extends PredictorConfig
         margin);
   }
 
+  @Override
+  public String toCanonicalString()
+  {
+    return String.format("SMA(%d,%d|%d,%d,%d,%d|%d|%d|%d)", iPredictIn, iPredictOut, nLookbackTriggerA,
+        nLookbackTriggerB, nLookbackBaseA, nLookbackBaseB, margin, iPrice, minTimeBetweenFlips);
+  }
+
   @Override
   public int hashCode()
   {
@@ -41,4 +41,9 @@ public class ConfigTactical extends PredictorConfig
     return new TacticalPredictor(this, brokerAccess, assetChoices);
   }
 
+  @Override
+  public String toCanonicalString()
+  {
+    return String.format("Tactical(%d,%d|%d|%s)", iPredictIn, iPredictOut, iPrice, String.join(",", assetChoices));
+  }
 }
@@ -1,6 +1,7 @@
 package org.minnen.retiretool.predictor.config;
 
 import org.minnen.retiretool.broker.BrokerInfoAccess;
+import org.minnen.retiretool.data.SMAWindows;
 import org.minnen.retiretool.predictor.daily.Predictor;
 import org.minnen.retiretool.util.Random;
 
@@ -28,4 +29,24 @@ public abstract class PredictorConfig
   public abstract PredictorConfig genPerturbed();
 
   public abstract Predictor build(BrokerInfoAccess brokerAccess, String... assetNames);
+
+  /**
+   * @return string that uniquely identifies this config, e.g. as a key for persistent caches.
+   * 
+   * Unlike toString(), which is meant for humans, the canonical string must include every parameter that affects
+   * predictions. Subclasses whose toString() omits such parameters should override this method.
+   */
+  public String toCanonicalString()
+  {
+    return String.format("%s(%d,%d|%s)", getClass().getSimpleName(), iPredictIn, iPredictOut, this);
+  }
+
+  /**
+   * Register the moving-average windows used by predictors built from this config.
+   * 
+   * Registered windows can be precomputed once for a whole search (see SMACube). The default implementation registers
+   * nothing, in which case predictors simply calculate averages on demand.
+   */
+  public void addSMAWindows(SMAWindows windows, String... assetNames)
+  {}
 }
@@ -3,24 +3,42 @@ package org.minnen.retiretool.predictor.daily;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.minnen.retiretool.broker.BrokerInfoAccess;
 import org.minnen.retiretool.data.DiscreteDistribution;
-import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.data.RollingCovariance;
 import org.minnen.retiretool.predictor.config.ConfigAdaptive;
 import org.minnen.retiretool.predictor.config.ConfigAdaptive.TradeFreq;
 import org.minnen.retiretool.predictor.config.ConfigAdaptive.Weighting;
 import org.minnen.retiretool.predictor.features.Momentum;
 import org.minnen.retiretool.util.FinLib;
-import org.minnen.retiretool.util.Library;
 import org.minnen.retiretool.util.PortfolioOpt;
 
 public class AdaptiveMomentumPredictor extends Predictor
 {
-  private final ConfigAdaptive config;
-  private DiscreteDistribution prevDistribution = null;
-  private final Momentum       momentumFE;
+  /** Maximum number of min-variance solutions to cache. */
+  private static final int             MAX_CACHED_WEIGHTS = 4096;
+
+  private final ConfigAdaptive         config;
+  private DiscreteDistribution         prevDistribution   = null;
+  private final Momentum               momentumFE;
+
+  /** Rolling covariance of daily returns for all non-cash assets (created when first needed). */
+  private RollingCovariance            covariance;
+
+  /** Min-variance weights keyed by the selected assets and their covariance windows. */
+  private final Map<String, double[]>  minVarCache        = new LinkedHashMap<String, double[]>(16, 0.75f, true)
+  {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest)
+    {
+      return size() > MAX_CACHED_WEIGHTS;
+    }
+  };
+  private int                          minVarGeneration   = -1;
 
   private static class MomScore implements Comparable<MomScore>
   {
@@ -65,22 +83,33 @@ public class AdaptiveMomentumPredictor extends Predictor
     return weights;
   }
 
-  private double[][] getReturns(List<MomScore> moms)
+  /**
+   * Move the covariance windows to the current day.
+   *
+   * @return indices (in `covariance`) of the given assets.
+   */
+  private int[] getCovarianceIndices(List<MomScore> moms)
   {
-    final int n = moms.size();
+    if (covariance == null) {
+      List<String> names = new ArrayList<>();
+      for (String name : assetChoices) {
+        if (!name.equals("cash")) names.add(name);
+      }
+      assert config.nCorrelation > 1;
+      covariance = new RollingCovariance(config.nCorrelation - 1, config.iPrice,
+          names.toArray(new String[names.size()]));
+    }
+    covariance.advance(brokerAccess);
 
-    final int nLookback = config.nCorrelation;
-    assert nLookback > 0;
-    double[][] returns = new double[n][];
+    final int n = moms.size();
+    int[] ids = new int[n];
     for (int i = 0; i < n; ++i) {
       String name = moms.get(i).name;
       assert !name.equals("cash");
-      Sequence seq = brokerAccess.getSeq(name);
-      assert seq != null : moms.get(i).name;
-      returns[i] = FinLib.getDailyReturns(seq, -nLookback, -1, config.iPrice);
-      assert returns[i].length == returns[0].length;
+      ids[i] = covariance.indexOf(name);
+      assert ids[i] >= 0 : name;
     }
-    return returns;
+    return ids;
   }
 
   private double[] getMinVarWeights(List<MomScore> moms)
@@ -97,7 +126,23 @@ public class AdaptiveMomentumPredictor extends Predictor
     double minWeight = (config.minWeight > 0.0 ? config.minWeight : 0.0);
     assert minWeight >= 0.0 && minWeight <= uniformWeight : String.format("%f vs %f", minWeight, uniformWeight);
 
-    double[][] returns = getReturns(moms);
+    // Reuse the solution if the selected assets and their covariance windows haven't changed.
+    int[] ids = getCovarianceIndices(moms);
+    if (covariance.getGeneration() != minVarGeneration) {
+      minVarCache.clear();
+      minVarGeneration = covariance.getGeneration();
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int id : ids) {
+      sb.append(id).append(':').append(covariance.getWindowEnd(id)).append(' ');
+    }
+    String key = sb.toString();
+    double[] mvw = minVarCache.get(key);
+    if (mvw != null) {
+      System.arraycopy(mvw, 0, weights, 0, n);
+      return weights;
+    }
+
     // for (int i = 0; i < n; ++i) {
     // System.out.printf("%5s: ", moms.get(i).name);
     // double[] r = returns[i];
@@ -109,7 +154,7 @@ public class AdaptiveMomentumPredictor extends Predictor
     // }
     // System.out.println();
 
-    double[][] cov = Library.covariance(returns);
+    double[][] cov = covariance.getCovariance(ids);
     // double[][] corr = Library.correlation(returns);
     // double[] dev = Library.cov2dev(cov);
     // for (int i = 0; i < n; ++i) {
@@ -122,7 +167,8 @@ public class AdaptiveMomentumPredictor extends Predictor
     // }
     // System.out.println();
 
-    double[] mvw = PortfolioOpt.minvar(cov, minWeight, maxWeight);
+    mvw = PortfolioOpt.minvar(cov, minWeight, maxWeight);
+    minVarCache.put(key, mvw);
     // System.out.print("MVW: ");
     // for (int i = 0; i < n; ++i) {
     // System.out.printf("%5.3f ", mvw[i]);
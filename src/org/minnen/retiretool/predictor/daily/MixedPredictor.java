@@ -26,6 +26,12 @@ public class MixedPredictor extends Predictor
     for (int i = 0; i < predictors.length; ++i) {
       double wi = mix.weights[i];
       DiscreteDistribution dist = predictors[i].selectDistribution();
+      if (dist.universe != null && dist.universe == distribution.universe) {
+        for (int j = 0; j < dist.size(); ++j) {
+          distribution.weights[j] += wi * dist.weights[j];
+        }
+        continue;
+      }
       for (int j = 0; j < dist.size(); ++j) {
         int iName = distribution.find(dist.names[j]);
         assert iName >= 0 : dist.names[j];
@@ -5,6 +5,7 @@ import java.util.List;
 import java.util.Map;
 
 import org.minnen.retiretool.broker.BrokerInfoAccess;
+import org.minnen.retiretool.data.AssetUniverse;
 import org.minnen.retiretool.data.DiscreteDistribution;
 import org.minnen.retiretool.util.Library;
 import org.minnen.retiretool.util.TimeLib;
@@ -31,6 +32,9 @@ public abstract class Predictor
   /** Names of assets available to this predictor. */
   public final String[]        assetChoices;
 
+  /** Index of asset choices shared by all distributions from this predictor (created on first use). */
+  private AssetUniverse        universe;
+
   /** Access object for getting information from a broker. */
   protected BrokerInfoAccess   brokerAccess;
 
@@ -75,7 +79,7 @@ public abstract class Predictor
   {
     // Create / reset distribution.
     if (distribution == null || distribution.size() != assetChoices.length) {
-      distribution = new DiscreteDistribution(assetChoices);
+      distribution = new DiscreteDistribution(getUniverse());
     } else {
       distribution.clear();
     }
@@ -92,6 +96,15 @@ public abstract class Predictor
     return distribution;
   }
 
+  /** @return universe of asset choices; distributions from selectDistribution() are bound to this universe. */
+  public AssetUniverse getUniverse()
+  {
+    if (universe == null || universe.size() != assetChoices.length) {
+      universe = AssetUniverse.of(assetChoices);
+    }
+    return universe;
+  }
+
   protected String calcSelectOne()
   {
     throw new RuntimeException("Predictors that select a single asset should override calcSelectOne().");
@@ -1,6 +1,7 @@
 package org.minnen.retiretool.predictor.daily;
 
 import org.minnen.retiretool.broker.BrokerInfoAccess;
+import org.minnen.retiretool.data.SMACube;
 import org.minnen.retiretool.data.Sequence;
 import org.minnen.retiretool.predictor.config.ConfigSMA;
 import org.minnen.retiretool.util.TimeLib;
@@ -17,6 +18,11 @@ public class SMAPredictor extends Predictor
   private int             assetID;
   private int             integralID;
 
+  /** Precomputed averages (null if not available) and row indices for the base and trigger windows. */
+  private SMACube         cube;
+  private int             cubeRowBase;
+  private int             cubeRowTrigger;
+
   public SMAPredictor(ConfigSMA config, String assetName, String alternativeAsset, BrokerInfoAccess brokerAccess)
   {
     super("SMA", brokerAccess, assetName, alternativeAsset);
@@ -63,13 +69,20 @@ public class SMAPredictor extends Predictor
     }
 
     // Calculate SMA values for base (threshold) and trigger.
-    double threshold, trigger;
-    if (integral != null) {
-      threshold = integral.integralAverage(iBaseA, iBaseB, config.iPrice);
-      trigger = integral.integralAverage(iTriggerA, iTriggerB, config.iPrice);
-    } else {
-      threshold = seq.average(iBaseA, iBaseB, config.iPrice);
-      trigger = seq.average(iTriggerA, iTriggerB, config.iPrice);
+    double threshold = Double.NaN, trigger = Double.NaN;
+    if (cube != null && seq != null && cube.covers(seq, config.iPrice)) {
+      final int iReal = seq.getRealIndex(iLast);
+      threshold = cube.get(cubeRowBase, iReal);
+      trigger = cube.get(cubeRowTrigger, iReal);
+    }
+    if (Double.isNaN(threshold) || Double.isNaN(trigger)) {
+      if (integral != null) {
+        threshold = integral.integralAverage(iBaseA, iBaseB, config.iPrice);
+        trigger = integral.integralAverage(iTriggerA, iTriggerB, config.iPrice);
+      } else {
+        threshold = seq.average(iBaseA, iBaseB, config.iPrice);
+        trigger = seq.average(iTriggerA, iTriggerB, config.iPrice);
+      }
     }
 
     // Adjust threshold if we're using a trigger margin.
@@ -87,6 +100,20 @@ public class SMAPredictor extends Predictor
     return reloc >= 0;
   }
 
+  /** Look for precomputed averages that cover both the base and trigger windows. */
+  private void setupCube()
+  {
+    cube = null;
+    if (integralID >= 0) return;
+    SMACube cube = brokerAccess.getSMACube(assetID, config.iPrice);
+    if (cube == null) return;
+    cubeRowBase = cube.getRow(config.nLookbackBaseA, config.nLookbackBaseB);
+    cubeRowTrigger = cube.getRow(config.nLookbackTriggerA, config.nLookbackTriggerB);
+    if (cubeRowBase >= 0 && cubeRowTrigger >= 0) {
+      this.cube = cube;
+    }
+  }
+
   @Override
   public void reset()
   {
@@ -102,8 +129,10 @@ public class SMAPredictor extends Predictor
     if (brokerAccess != null) {
       this.assetID = brokerAccess.getID(assetName);
       this.integralID = brokerAccess.getID(integralName);
+      setupCube();
     } else {
       this.assetID = this.integralID = -1;
+      this.cube = null;
     }
   }
 }
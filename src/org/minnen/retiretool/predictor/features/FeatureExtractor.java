@@ -26,6 +26,15 @@ public abstract class FeatureExtractor
     return 1;
   }
 
+  /**
+   * @return string that identifies the full configuration of this extractor (extractors with equal keys calculate the
+   *         same features) or null if extractors can only be compared by identity.
+   */
+  public String getKey()
+  {
+    return null;
+  }
+
   @Override
   public String toString()
   {
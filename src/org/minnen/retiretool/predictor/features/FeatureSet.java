@@ -57,4 +57,28 @@ public class FeatureSet extends FeatureExtractor
     }
     return features;
   }
+
+  @Override
+  public String toString()
+  {
+    StringBuilder sb = new StringBuilder(name).append("(");
+    for (int i = 0; i < extractors.size(); ++i) {
+      if (i > 0) sb.append(", ");
+      sb.append(extractors.get(i));
+    }
+    return sb.append(")").toString();
+  }
+
+  @Override
+  public String getKey()
+  {
+    StringBuilder sb = new StringBuilder(name).append("(");
+    for (int i = 0; i < extractors.size(); ++i) {
+      String key = extractors.get(i).getKey();
+      if (key == null) return null;
+      if (i > 0) sb.append(", ");
+      sb.append(key);
+    }
+    return sb.append(")").toString();
+  }
 }
@@ -32,4 +32,10 @@ public class ITAScore extends FeatureExtractor
     double score = 0.7 * m60 + 0.5 * m120 + 0.1 * m240 - 0.3 * dev;
     return new FeatureVec(brokerAccess.getName(assetID), 1, score).setTime(brokerAccess.getTime());
   }
+
+  @Override
+  public String getKey()
+  {
+    return String.format("ITA[%d]", iPrice);
+  }
 }
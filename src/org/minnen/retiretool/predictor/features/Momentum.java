@@ -2,6 +2,7 @@ package org.minnen.retiretool.predictor.features;
 
 import org.minnen.retiretool.broker.BrokerInfoAccess;
 import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.data.SMACube;
 import org.minnen.retiretool.data.Sequence;
 import org.minnen.retiretool.util.FinLib;
 
@@ -42,8 +43,18 @@ public class Momentum extends FeatureExtractor
     Sequence seq = brokerAccess.getSeq(assetID);
 
     // Base momentum is the ratio of the trigger average over the base average.
-    double now = seq.average(-nTriggerA, -nTriggerB, iPrice);
-    double before = seq.average(-nBaseA, -nBaseB, iPrice);
+    double now = Double.NaN, before = Double.NaN;
+    SMACube cube = brokerAccess.getSMACube(assetID, iPrice);
+    if (cube != null && nTriggerB > 0 && nBaseB > 0) {
+      // Negative indices are relative to the length so windows are shifted by one vs. the cube's convention.
+      final int iReal = seq.getRealIndex(seq.length() - 1);
+      now = cube.average(nTriggerA - 1, nTriggerB - 1, iReal);
+      before = cube.average(nBaseA - 1, nBaseB - 1, iReal);
+    }
+    if (Double.isNaN(now) || Double.isNaN(before)) {
+      now = seq.average(-nTriggerA, -nTriggerB, iPrice);
+      before = seq.average(-nBaseA, -nBaseB, iPrice);
+    }
     double momentum = now / before;
 
     // Adjust total multiplier for different compounding periods.
@@ -69,4 +80,11 @@ public class Momentum extends FeatureExtractor
 
     return new FeatureVec(seq.getName(), 1, momentum).setTime(brokerAccess.getTime());
   }
+
+  @Override
+  public String getKey()
+  {
+    return String.format("Momentum[%d,%d]/[%d,%d],%s,%s,%d", nTriggerA, nTriggerB, nBaseA, nBaseB, returnOrMul,
+        compoundPeriod, iPrice);
+  }
 }
@@ -37,4 +37,10 @@ public class RiskAdjustedReturn extends FeatureExtractor
     double rar = tr / (dev + addDev);
     return new FeatureVec(brokerAccess.getName(assetID), 3, rar, tr, dev).setTime(brokerAccess.getTime());
   }
+
+  @Override
+  public String getKey()
+  {
+    return String.format("RiskAdjustedReturn[%d,%s,%d]", nLookback, addDev, iPrice);
+  }
 }
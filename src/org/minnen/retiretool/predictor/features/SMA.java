@@ -25,4 +25,10 @@ public class SMA extends FeatureExtractor
     double sma = seq.average(-nTrigger, -nTrigger, iPrice);
     return new FeatureVec(seq.getName(), 1, sma).setTime(brokerAccess.getTime());
   }
+
+  @Override
+  public String getKey()
+  {
+    return String.format("SMA[%d,%d,%d]", nTrigger, nBase, iPrice);
+  }
 }
@@ -28,4 +28,10 @@ public class StdDev extends FeatureExtractor
     double sdev = Library.stdev(rets) * Math.sqrt(252);
     return new FeatureVec(seq.getName(), 1, sdev);
   }
+
+  @Override
+  public String getKey()
+  {
+    return String.format("StdDev[%d,%s,%d]", nLookback, K, iPrice);
+  }
 }
@@ -0,0 +1,89 @@
+package org.minnen.retiretool.predictor.optimize;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.minnen.retiretool.broker.SimFactory;
+import org.minnen.retiretool.broker.Simulation;
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.data.SequenceStore;
+import org.minnen.retiretool.predictor.config.ConfigSMA;
+import org.minnen.retiretool.predictor.config.PredictorConfig;
+import org.minnen.retiretool.stats.CumulativeStats;
+import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.PriceModel;
+import org.minnen.retiretool.util.Slippage;
+import org.minnen.retiretool.util.TimeLib;
+
+/** Compare simulated days, time, and the selected config for a grid search vs. successive halving. */
+public class BenchmarkSuccessiveHalving
+{
+  public static void main(String[] args)
+  {
+    final int nYears = 20;
+    final String[] assetNames = new String[] { "stock", "cash" };
+
+    // Synthetic daily prices with a year of history before the optimization range.
+    Random rng = new Random(1234);
+    Sequence prices = new Sequence("stock");
+    LocalDate date = LocalDate.of(1990, Month.JANUARY, 2);
+    double price = 100.0;
+    while (prices.length() < (nYears + 1) * 252) {
+      if (TimeLib.isBusinessDay(date)) {
+        price *= 1.0 + 0.0003 + 0.01 * rng.nextGaussian();
+        prices.addData(new FeatureVec(7, price, price, price, price, 1e6, price, price), TimeLib.toMs(date));
+      }
+      date = date.plusDays(1);
+    }
+    SequenceStore store = new SequenceStore();
+    store.add(prices);
+    SimFactory simFactory = new SimFactory(store, prices.subseq(252), Slippage.None, 0, 10000.0, 0.0,
+        PriceModel.adjCloseModel, PriceModel.adjCloseModel);
+
+    List<PredictorConfig> configs = new ArrayList<>();
+    for (int nTrigger : new int[] { 1, 5, 10, 20, 30 }) {
+      for (int nBase : new int[] { 50, 80, 100, 150, 200, 250 }) {
+        for (int margin : new int[] { 0, 50, 100, 200, 300 }) {
+          configs.add(new ConfigSMA(nTrigger, 0, nBase, 0, margin, FinLib.AdjClose, TimeLib.MS_IN_DAY));
+        }
+      }
+    }
+    Optimizer.precomputeSMA(configs, store, assetNames);
+    System.out.printf("Configs=%d Days=%d\n", configs.size(), simFactory.guideSeq.length());
+
+    // Exhaustive search: every config simulated over the full range.
+    long t0 = TimeLib.getTime();
+    Simulation sim = simFactory.build();
+    double[] scores = new double[configs.size()];
+    long nGridDays = 0;
+    for (int i = 0; i < scores.length; ++i) {
+      Sequence returns = sim.run(configs.get(i).build(sim.broker.accessObject, assetNames), "Grid");
+      scores[i] = CumulativeStats.calc(returns).scoreSimple();
+      nGridDays += sim.returnsDaily.length();
+    }
+    long t1 = TimeLib.getTime();
+    int iBest = 0;
+    for (int i = 1; i < scores.length; ++i) {
+      if (scores[i] > scores[iBest]) iBest = i;
+    }
+    System.out.printf(" Grid:    %9d days %6dms  best=%.3f\n", nGridDays, t1 - t0, scores[iBest]);
+
+    for (double eta : new double[] { 2.0, 3.0, 4.0 }) {
+      SuccessiveHalving halving = new SuccessiveHalving(simFactory, SuccessiveHalving.scoreSimple, null, eta, 12, 1);
+      long t2 = TimeLib.getTime();
+      PredictorConfig config = halving.run(configs, TimeLib.TIME_BEGIN, TimeLib.TIME_END, assetNames).get(0);
+      long t3 = TimeLib.getTime();
+      double score = scores[configs.indexOf(config)];
+      int rank = 0;
+      for (double x : scores) {
+        if (x > score) ++rank;
+      }
+      System.out.printf(" eta=%.0f:   %9d days %6dms  best=%.3f (%.1f%% of days, rank %d)\n", eta,
+          halving.getNumSimulatedDays(), t3 - t2, score, 100.0 * halving.getNumSimulatedDays() / nGridDays, rank + 1);
+    }
+  }
+}
@@ -1,6 +1,12 @@
 package org.minnen.retiretool.predictor.optimize;
 
+import java.util.Collection;
+import java.util.List;
+
+import org.minnen.retiretool.broker.SimFactory;
 import org.minnen.retiretool.broker.Simulation;
+import org.minnen.retiretool.data.SMAWindows;
+import org.minnen.retiretool.data.SequenceStore;
 import org.minnen.retiretool.predictor.config.PredictorConfig;
 import org.minnen.retiretool.predictor.daily.Predictor;
 import org.minnen.retiretool.stats.CumulativeStats;
@@ -23,11 +29,13 @@ public class Optimizer
   public static PredictorConfig grid(ConfigScanner<? extends PredictorConfig> scanner, Simulation sim, long timeStart,
       long timeEnd, String... assetNames)
   {
+    // Generate all configs up front so that shared moving averages are only computed once.
+    List<PredictorConfig> configs = scanner.getAll();
+    precomputeSMA(configs, sim.store, assetNames);
+
     PredictorConfig bestConfig = null;
     double bestScore = 0.0;
-    while (true) {
-      PredictorConfig config = scanner.get();
-      if (config == null) break;
+    for (PredictorConfig config : configs) {
       Predictor predictor = config.build(sim.broker.accessObject, assetNames);
       sim.run(predictor, timeStart, timeEnd, "GridOpt: " + config);
       CumulativeStats stats = CumulativeStats.calc(sim.returnsMonthly);
@@ -39,4 +47,47 @@ public class Optimizer
     }
     return bestConfig;
   }
+
+  /**
+   * Select optimal config via successive halving (see SuccessiveHalving).
+   * 
+   * Results are scored the same way as grid() but most configs are discarded after simulating short periods.
+   * 
+   * @param scanner generates valid configs.
+   * @param simFactory builds simulators for testing configs
+   * @param nThreads number of simulations to run in parallel
+   * @param timeStart start simulations at this time.
+   * @param timeEnd end simulations at this time.
+   * @param assetNames array of all asset names available to the predictor.
+   * @return best predictor config.
+   */
+  public static PredictorConfig successiveHalving(ConfigScanner<? extends PredictorConfig> scanner,
+      SimFactory simFactory, int nThreads, long timeStart, long timeEnd, String... assetNames)
+  {
+    SuccessiveHalving halving = new SuccessiveHalving(simFactory, SuccessiveHalving.scoreSimple, null, 3.0, 12,
+        nThreads);
+    return halving.optimize(scanner, timeStart, timeEnd, assetNames);
+  }
+
+  /**
+   * Precompute all moving averages needed by the given configs.
+   * 
+   * Averages are stored in the sequence store so predictors get O(1) lookups and later searches over the same data
+   * only pay for new windows.
+   * 
+   * @param configs configs that will be evaluated
+   * @param store store holding the asset sequences
+   * @param assetNames array of all asset names available to the predictors
+   * @return number of distinct windows requested by the configs
+   */
+  public static int precomputeSMA(Collection<? extends PredictorConfig> configs, SequenceStore store,
+      String... assetNames)
+  {
+    SMAWindows windows = new SMAWindows();
+    for (PredictorConfig config : configs) {
+      config.addSMAWindows(windows, assetNames);
+    }
+    windows.precompute(store);
+    return windows.size();
+  }
 }
@@ -0,0 +1,264 @@
+package org.minnen.retiretool.predictor.optimize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.minnen.retiretool.broker.SimFactory;
+import org.minnen.retiretool.broker.Simulation;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.predictor.config.PredictorConfig;
+import org.minnen.retiretool.predictor.daily.Predictor;
+import org.minnen.retiretool.stats.ComparisonStats;
+import org.minnen.retiretool.stats.CumulativeStats;
+import org.minnen.retiretool.util.TimeLib;
+
+/**
+ * Select an optimal config via successive halving (the building block of Hyperband).
+ *
+ * All candidates are first evaluated on a short period that ends at the end of the optimization range. Only the top
+ * 1/eta of the candidates survive to the next rung, which uses a period that is eta times longer. The final rung covers
+ * the full range. Most candidates are thus discarded after simulating a small fraction of the days that a grid search
+ * would need. Candidates within a rung are evaluated in parallel, each thread using its own copy of the data.
+ */
+public class SuccessiveHalving
+{
+  /** Calculates a score (larger is better) for the results of a single run. */
+  public interface Scorer
+  {
+    /**
+     * @param cumulative stats for the monthly returns of the run
+     * @param comparison stats relative to the baseline over the same period (null if there's no baseline config)
+     * @return score for the run, larger is better.
+     */
+    public double score(CumulativeStats cumulative, ComparisonStats comparison);
+
+    /** @return shortest period (in months) for which score() is meaningful. */
+    public int getMinMonths();
+  }
+
+  /** Score based on CAGR and drawdown (see CumulativeStats.scoreSimple()). */
+  public static final Scorer scoreSimple     = new Scorer()
+  {
+    @Override
+    public double score(CumulativeStats cumulative, ComparisonStats comparison)
+    {
+      return cumulative.scoreSimple();
+    }
+
+    @Override
+    public int getMinMonths()
+    {
+      return 12;
+    }
+  };
+
+  /** Score based on win rates vs. the baseline (see ComparisonStats.score()), which uses 20-year periods. */
+  public static final Scorer scoreComparison = new Scorer()
+  {
+    @Override
+    public double score(CumulativeStats cumulative, ComparisonStats comparison)
+    {
+      return comparison.score();
+    }
+
+    @Override
+    public int getMinMonths()
+    {
+      return 20 * 12 + 1;
+    }
+  };
+
+  public final SimFactory      simFactory;
+  public final Scorer          scorer;
+  public final PredictorConfig baselineConfig;
+  public final double          eta;
+  public final int             minMonths;
+  public final int             nThreads;
+
+  private final AtomicLong     nSimulatedDays = new AtomicLong();
+
+  /**
+   * Create a successive-halving optimizer.
+   *
+   * @param simFactory builds simulations for testing configs
+   * @param scorer calculates the score for each run
+   * @param baselineConfig config used for comparison stats (null for none)
+   * @param eta keep 1/eta of the candidates at each rung (must be > 1)
+   * @param minMonths minimum length of the evaluation period for the first rung (the scorer's minimum is used if it's
+   *          longer)
+   * @param nThreads number of simulations to run in parallel
+   */
+  public SuccessiveHalving(SimFactory simFactory, Scorer scorer, PredictorConfig baselineConfig, double eta,
+      int minMonths, int nThreads)
+  {
+    assert eta > 1.0 && minMonths > 0 && nThreads > 0;
+    assert scorer != scoreComparison || baselineConfig != null;
+    this.simFactory = simFactory;
+    this.scorer = scorer;
+    this.baselineConfig = baselineConfig;
+    this.eta = eta;
+    this.minMonths = Math.max(minMonths, scorer.getMinMonths());
+    this.nThreads = nThreads;
+  }
+
+  /** @return total number of days simulated by this optimizer (including baseline runs). */
+  public long getNumSimulatedDays()
+  {
+    return nSimulatedDays.get();
+  }
+
+  /**
+   * Select the best config from all configs generated by the given scanner.
+   *
+   * @param scanner generates valid configs.
+   * @param timeStart start of the optimization range.
+   * @param timeEnd end of the optimization range.
+   * @param assetNames array of all asset names available to the predictor.
+   * @return best predictor config.
+   */
+  public PredictorConfig optimize(ConfigScanner<? extends PredictorConfig> scanner, long timeStart, long timeEnd,
+      String... assetNames)
+  {
+    return run(scanner.getAll(), timeStart, timeEnd, assetNames).get(0);
+  }
+
+  /**
+   * Run successive halving over the given candidates.
+   *
+   * @param candidates configs to evaluate.
+   * @param timeStart start of the optimization range.
+   * @param timeEnd end of the optimization range.
+   * @param assetNames array of all asset names available to the predictor.
+   * @return configs that survived to the final rung, sorted from best to worst.
+   */
+  public List<PredictorConfig> run(List<? extends PredictorConfig> candidates, long timeStart, long timeEnd,
+      String... assetNames)
+  {
+    assert !candidates.isEmpty();
+    if (timeStart == TimeLib.TIME_BEGIN) timeStart = simFactory.guideSeq.getStartMS();
+    if (timeEnd == TimeLib.TIME_END) timeEnd = simFactory.guideSeq.getEndMS();
+
+    // Determine number of rungs: enough to reduce the pool to a single config, as long as the first rung's period is
+    // at least `minMonths` long.
+    final double nFullMonths = TimeLib.monthsBetween(timeStart, timeEnd);
+    if (nFullMonths < scorer.getMinMonths()) {
+      throw new IllegalArgumentException(String.format("Optimization range is too short for scorer (%.1f < %d months)",
+          nFullMonths, scorer.getMinMonths()));
+    }
+    int nRungs = 1 + (int) Math.floor(Math.log(candidates.size()) / Math.log(eta) + 1e-9);
+    while (nRungs > 1 && nFullMonths / Math.pow(eta, nRungs - 1) < minMonths) {
+      --nRungs;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+    try {
+      Simulation[] sims = buildSims(candidates, assetNames);
+      List<PredictorConfig> pool = new ArrayList<>(candidates);
+      for (int iRung = 0; iRung < nRungs; ++iRung) {
+        // Each rung uses the most recent part of the range, with the final rung covering all of it.
+        long periodStart = timeStart;
+        if (iRung < nRungs - 1) {
+          int nMonths = Math.max(minMonths, (int) Math.ceil(nFullMonths / Math.pow(eta, nRungs - 1 - iRung)));
+          periodStart = Math.max(timeStart, TimeLib.toMs(TimeLib.ms2date(timeEnd).minusMonths(nMonths)));
+        }
+
+        double[] scores = evalRung(pool, periodStart, timeEnd, assetNames, sims, executor);
+
+        // Sort by score (ties broken by original order so results are deterministic).
+        Integer[] ii = new Integer[pool.size()];
+        for (int i = 0; i < ii.length; ++i) {
+          ii[i] = i;
+        }
+        Arrays.sort(ii, (a, b) -> scores[a] != scores[b] ? Double.compare(scores[b], scores[a])
+            : Integer.compare(a, b));
+
+        int nKeep = pool.size();
+        if (iRung < nRungs - 1) {
+          nKeep = Math.max(1, (int) Math.ceil(pool.size() / eta));
+        }
+        List<PredictorConfig> survivors = new ArrayList<>();
+        for (int i = 0; i < nKeep; ++i) {
+          survivors.add(pool.get(ii[i]));
+        }
+        pool = survivors;
+      }
+      return pool;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Build one simulation per thread.
+   * 
+   * Moving averages for all configs are computed once in the factory's store. Other threads use views of the store
+   * (see SequenceStore.view()) so that locks don't collide without copying the data.
+   */
+  private Simulation[] buildSims(List<? extends PredictorConfig> candidates, String... assetNames)
+  {
+    List<PredictorConfig> configs = new ArrayList<>(candidates);
+    if (baselineConfig != null) configs.add(baselineConfig);
+    Optimizer.precomputeSMA(configs, simFactory.store, assetNames);
+
+    Simulation[] sims = new Simulation[nThreads];
+    for (int i = 0; i < nThreads; ++i) {
+      sims[i] = (i == 0 ? simFactory.build() : simFactory.build(simFactory.store.view()));
+    }
+    return sims;
+  }
+
+  /** @return score for each config evaluated over [periodStart, timeEnd]. */
+  private double[] evalRung(List<PredictorConfig> configs, long periodStart, long timeEnd, String[] assetNames,
+      Simulation[] sims, ExecutorService executor)
+  {
+    final double[] scores = new double[configs.size()];
+    final AtomicInteger next = new AtomicInteger();
+    List<Future<?>> futures = new ArrayList<>();
+    for (int iThread = 0; iThread < Math.min(nThreads, configs.size()); ++iThread) {
+      final Simulation sim = sims[iThread];
+      futures.add(executor.submit(() -> {
+        Sequence baselineReturns = null;
+        if (baselineConfig != null) {
+          baselineReturns = run(sim, baselineConfig, periodStart, timeEnd, "Baseline", assetNames);
+        }
+        while (true) {
+          int i = next.getAndIncrement();
+          if (i >= configs.size()) break;
+          Sequence returns = run(sim, configs.get(i), periodStart, timeEnd, "Halving", assetNames);
+          CumulativeStats cumulative = CumulativeStats.calc(returns);
+          ComparisonStats comparison = null;
+          if (baselineReturns != null) {
+            comparison = ComparisonStats.calc(returns, baselineReturns, 0.25);
+          }
+          scores[i] = scorer.score(cumulative, comparison);
+        }
+      }));
+    }
+
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException | ExecutionException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return scores;
+  }
+
+  /** @return monthly returns for the given config over [timeStart, timeEnd]. */
+  private Sequence run(Simulation sim, PredictorConfig config, long timeStart, long timeEnd, String name,
+      String[] assetNames)
+  {
+    Predictor predictor = config.build(sim.broker.accessObject, assetNames);
+    Sequence returns = sim.run(predictor, timeStart, timeEnd, name);
+    nSimulatedDays.addAndGet(sim.returnsDaily.length());
+    return returns;
+  }
+}
@@ -0,0 +1,262 @@
+package org.minnen.retiretool.simba;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.minnen.retiretool.data.AllocationSpace;
+import org.minnen.retiretool.data.DiscreteDistribution;
+import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.Library;
+
+/**
+ * Calculates the statistics reported by SimbaPortfolios.getStats() for many fixed allocations at once.
+ *
+ * Annual returns are packed into a dense [symbol][year] matrix and the allocations are given as a sparse weight matrix
+ * in CSR format (one row per portfolio, columns are symbol indices). Portfolios are processed in blocks: the annual
+ * returns for a block come from one sparse x dense product and the statistics are then computed from each row using
+ * scratch buffers that belong to the block, so nothing is allocated per portfolio. Blocks are independent and can run
+ * in parallel.
+ *
+ * The arithmetic follows the Sequence-based path step by step so the results match getStats().
+ */
+public class BatchEvaluator
+{
+  /** Stats are stored in the same order as SimbaPortfolios.statNames. */
+  public static final int    WORST_PERIOD   = 0;
+  public static final int    PERCENTILE10   = 1;
+  public static final int    MEDIAN         = 2;
+  public static final int    CAGR           = 3;
+  public static final int    STD_DEV        = 4;
+  public static final int    MAX_DRAWDOWN   = 5;
+  public static final int    NUM_STATS      = 6;
+
+  /** Number of portfolios per block. */
+  public static final int    BLOCK_SIZE     = 2048;
+
+  private final double[][]   returns;
+  private final int          nYears;
+  private final int          nPeriodYears;
+  private final int          nPeriods;
+  private final double       principle;
+  private final double       contribution;
+  private final double       nMonths;
+  private ForkJoinPool       pool;
+
+  /**
+   * Create an evaluator for the given returns.
+   *
+   * @param returns return multipliers (1.4 = 40%) for each symbol and year (rows may be null for unused symbols)
+   * @param nPeriodYears length of the periods used for the worst, 10th percentile, median, and std dev stats
+   * @param principle initial balance
+   * @param contribution amount added at the start of each year after the first
+   * @param nMonths length in months of the cumulative returns (used for CAGR)
+   */
+  public BatchEvaluator(double[][] returns, int nPeriodYears, double principle, double contribution, double nMonths)
+  {
+    int nYears = -1;
+    for (double[] row : returns) {
+      if (row == null) continue;
+      assert nYears < 0 || row.length == nYears;
+      nYears = row.length;
+    }
+    assert nYears > nPeriodYears;
+
+    this.returns = returns;
+    this.nYears = nYears;
+    this.nPeriodYears = nPeriodYears;
+    this.nPeriods = nYears + 1 - nPeriodYears;
+    this.principle = principle;
+    this.contribution = contribution;
+    this.nMonths = nMonths;
+  }
+
+  /** Set the pool used to evaluate blocks in parallel (null = run in the calling thread). */
+  public BatchEvaluator setPool(ForkJoinPool pool)
+  {
+    this.pool = pool;
+    return this;
+  }
+
+  /**
+   * Calculate statistics for each allocation.
+   *
+   * @param allocations allocations to evaluate (weights below 1e-9 are ignored, same as getStats())
+   * @param symbol2index maps the names in the allocations to rows of the returns matrix
+   * @return stats for allocation i are at [i * NUM_STATS, (i + 1) * NUM_STATS)
+   */
+  public double[] evaluate(List<DiscreteDistribution> allocations, Map<String, Integer> symbol2index)
+  {
+    final int n = allocations.size();
+    int[] rowPtr = new int[n + 1];
+    for (int i = 0; i < n; ++i) {
+      rowPtr[i + 1] = rowPtr[i];
+      for (double w : allocations.get(i).weights) {
+        if (w >= 1e-9) ++rowPtr[i + 1];
+      }
+    }
+    int[] col = new int[rowPtr[n]];
+    double[] weight = new double[rowPtr[n]];
+    for (int i = 0, k = 0; i < n; ++i) {
+      DiscreteDistribution allocation = allocations.get(i);
+      for (int j = 0; j < allocation.size(); ++j) {
+        if (allocation.weights[j] < 1e-9) continue;
+        col[k] = symbol2index.get(allocation.names[j]);
+        weight[k++] = allocation.weights[j];
+      }
+    }
+    return evaluate(rowPtr, col, weight);
+  }
+
+  /**
+   * Calculate statistics for each allocation in the given space.
+   *
+   * Allocations are decoded from their ranks one block at a time, so memory use doesn't depend on the size of the
+   * space (except for the returned stats).
+   *
+   * @param space allocations to evaluate (symbol i of the space is row i of the returns matrix)
+   * @return stats for the allocation with rank i are at [i * NUM_STATS, (i + 1) * NUM_STATS)
+   */
+  public double[] evaluate(AllocationSpace space)
+  {
+    assert space.getNumSymbols() == returns.length;
+    final int n = Math.toIntExact(space.size());
+    final double[] stats = new double[Math.multiplyExact(n, NUM_STATS)];
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int iFrom = 0; iFrom < n; iFrom += BLOCK_SIZE) {
+      final int from = iFrom;
+      final int to = Math.min(n, iFrom + BLOCK_SIZE);
+      tasks.add(() -> {
+        int[] weights = new int[space.getNumSymbols()];
+        int[] rowPtr = new int[to - from + 1];
+        int[] col = new int[(to - from) * weights.length];
+        double[] weight = new double[col.length];
+        for (int i = from, k = 0; i < to; ++i) {
+          space.unrank(i, weights);
+          for (int j = 0; j < weights.length; ++j) {
+            if (weights[j] == 0) continue;
+            col[k] = j;
+            weight[k++] = weights[j] / 100.0;
+          }
+          rowPtr[i - from + 1] = k;
+        }
+        evaluateBlock(rowPtr, col, weight, 0, to - from, stats, from);
+        return null;
+      });
+    }
+    invokeAll(tasks);
+    return stats;
+  }
+
+  /**
+   * Calculate statistics for each portfolio.
+   *
+   * @param rowPtr weights of portfolio i are at indices [rowPtr[i], rowPtr[i+1])
+   * @param col col[k] is the symbol index for weight k
+   * @param weight weight[k] is the fraction (0.3 = 30%) of the portfolio in symbol col[k]
+   * @return stats for portfolio i are at [i * NUM_STATS, (i + 1) * NUM_STATS)
+   */
+  public double[] evaluate(int[] rowPtr, int[] col, double[] weight)
+  {
+    final int n = rowPtr.length - 1;
+    final double[] stats = new double[Math.multiplyExact(n, NUM_STATS)];
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int iFrom = 0; iFrom < n; iFrom += BLOCK_SIZE) {
+      final int from = iFrom;
+      final int to = Math.min(n, iFrom + BLOCK_SIZE);
+      tasks.add(() -> {
+        evaluateBlock(rowPtr, col, weight, from, to, stats, from);
+        return null;
+      });
+    }
+    invokeAll(tasks);
+    return stats;
+  }
+
+  /** Run the tasks on the pool (or in the calling thread if there's no pool) and wait for all of them to finish. */
+  private void invokeAll(List<Callable<Void>> tasks)
+  {
+    try {
+      if (pool == null) {
+        for (Callable<Void> task : tasks) {
+          task.call();
+        }
+      } else {
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+          future.get();
+        }
+      }
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e.getMessage(), e);
+    }
+  }
+
+  /** Calculate stats for CSR rows [from, to) and store them starting with portfolio `iOut` in `stats`. */
+  private void evaluateBlock(int[] rowPtr, int[] col, double[] weight, int from, int to, double[] stats, int iOut)
+  {
+    final double[] annual = new double[(to - from) * nYears];
+    final double[] cumulative = new double[nYears + 1];
+    final double[] periods = new double[nPeriods];
+
+    // Annual return multipliers for the block: sparse weights x dense returns.
+    for (int i = from; i < to; ++i) {
+      final int base = (i - from) * nYears;
+      for (int k = rowPtr[i]; k < rowPtr[i + 1]; ++k) {
+        final double w = weight[k];
+        final double[] r = returns[col[k]];
+        for (int t = 0; t < nYears; ++t) {
+          annual[base + t] += w * r[t];
+        }
+      }
+    }
+
+    for (int i = from; i < to; ++i) {
+      calcStats(annual, (i - from) * nYears, cumulative, periods, stats, (iOut + i - from) * NUM_STATS);
+    }
+  }
+
+  /** Calculate stats for the annual returns at annual[base, base + nYears) and store them at stats[out...]. */
+  private void calcStats(double[] annual, int base, double[] cumulative, double[] periods, double[] stats, int out)
+  {
+    // Cumulative returns (same as FinLib.cumulativeFromReturns() applied to the annual returns).
+    double balance = principle;
+    cumulative[0] = balance;
+    for (int t = 0; t < nYears; ++t) {
+      if (t > 0) balance += contribution;
+      balance *= FinLib.ret2mul(FinLib.mul2ret(annual[base + t]));
+      cumulative[t + 1] = balance;
+    }
+
+    // CAGR and max drawdown (same as CumulativeStats).
+    stats[out + CAGR] = FinLib.getAnnualReturn(cumulative[nYears] / cumulative[0], nMonths);
+    final double firstValue = cumulative[0];
+    double peakReturn = 1.0;
+    double drawdown = 0.0;
+    for (int t = 1; t <= nYears; ++t) {
+      double value = cumulative[t] / firstValue;
+      if (value < peakReturn) {
+        drawdown = Math.max(drawdown, 100.0 * (peakReturn - value) / peakReturn);
+      } else if (value > peakReturn) {
+        peakReturn = value;
+      }
+    }
+    stats[out + MAX_DRAWDOWN] = -drawdown;
+
+    // CAGR for each period and their distribution (same as ReturnStats).
+    final int nPeriodMonths = nPeriodYears * 12;
+    for (int t = 0; t < nPeriods; ++t) {
+      periods[t] = FinLib.getAnnualReturn(cumulative[t + nPeriodYears] / cumulative[t], nPeriodMonths);
+    }
+    stats[out + STD_DEV] = Library.stdev(periods);
+    Arrays.sort(periods);
+    stats[out + WORST_PERIOD] = periods[0];
+    stats[out + PERCENTILE10] = periods[Math.min(Math.round(nPeriods * 0.1f), nPeriods - 1)];
+    stats[out + MEDIAN] = periods[Math.min(Math.round(nPeriods * 0.5f), nPeriods - 1)];
+  }
+}
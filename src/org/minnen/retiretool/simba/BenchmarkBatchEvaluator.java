@@ -0,0 +1,95 @@
+package org.minnen.retiretool.simba;
+
+import java.time.Month;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.stats.CumulativeStats;
+import org.minnen.retiretool.stats.ReturnStats;
+import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.TimeLib;
+
+/** Time the batched evaluator vs. building sequences for each portfolio (as in SimbaPortfolios.getStats()). */
+public class BenchmarkBatchEvaluator
+{
+  public static void main(String[] args)
+  {
+    final int nSymbols = 16;
+    final int nYears = 40;
+    final int nPeriodYears = 10;
+    final int nPortfolios = 1000000;
+    Random rng = new Random(1234);
+
+    Sequence[] returnSeqs = new Sequence[nSymbols];
+    double[][] returns = new double[nSymbols][nYears];
+    for (int i = 0; i < nSymbols; ++i) {
+      returnSeqs[i] = new Sequence(String.format("SYM%d", i));
+      for (int iYear = 0; iYear < nYears; ++iYear) {
+        returns[i][iYear] = 1.07 + 0.2 * rng.nextGaussian();
+        returnSeqs[i].addData(returns[i][iYear], TimeLib.toMs(1970 + iYear, Month.DECEMBER, 31));
+      }
+    }
+
+    // Random portfolios with 3-6 assets.
+    int[] rowPtr = new int[nPortfolios + 1];
+    int[] col = new int[nPortfolios * 6];
+    double[] weight = new double[col.length];
+    for (int i = 0; i < nPortfolios; ++i) {
+      int nAssets = 3 + rng.nextInt(4);
+      int k = rowPtr[i];
+      for (int j = 0; j < nAssets; ++j, ++k) {
+        col[k] = (j == 0 ? rng.nextInt(nSymbols) : (col[k - 1] + 1 + rng.nextInt(2)) % nSymbols);
+        weight[k] = 1.0 / nAssets;
+      }
+      rowPtr[i + 1] = k;
+    }
+    Sequence dates = new Sequence("Dates");
+    for (int iYear = 0; iYear < nYears; ++iYear) {
+      dates.addData(0.0, returnSeqs[0].getTimeMS(iYear));
+    }
+    double nMonths = FinLib.cumulativeFromReturns(dates, 1000, 0).getLengthMonths();
+    System.out.printf("Portfolios=%d Years=%d Symbols=%d\n", nPortfolios, nYears, nSymbols);
+
+    // Sequence-based path on a subset.
+    final int nSlow = 20000;
+    long t0 = TimeLib.getTime();
+    for (int i = 0; i < nSlow; ++i) {
+      Sequence annualReturns = new Sequence("Annual");
+      for (int iYear = 0; iYear < nYears; ++iYear) {
+        double m = 0.0;
+        for (int k = rowPtr[i]; k < rowPtr[i + 1]; ++k) {
+          m += weight[k] * returnSeqs[col[k]].get(iYear, 0);
+        }
+        annualReturns.addData(FinLib.mul2ret(m), returnSeqs[0].getTimeMS(iYear));
+      }
+      Sequence cumulativeReturns = FinLib.cumulativeFromReturns(annualReturns, 1000, 0);
+      double[] periodReturns = new double[cumulativeReturns.length() - nPeriodYears];
+      for (int j = 0; j < periodReturns.length; ++j) {
+        double tr = FinLib.getTotalReturn(cumulativeReturns, j, j + nPeriodYears);
+        periodReturns[j] = FinLib.getAnnualReturn(tr, nPeriodYears * 12);
+      }
+      ReturnStats.calc("Periods", periodReturns);
+      CumulativeStats.calc(cumulativeReturns, false);
+    }
+    long t1 = TimeLib.getTime();
+    System.out.printf(" Sequences:      %6.2fus / portfolio\n", 1000.0 * (t1 - t0) / nSlow);
+
+    BatchEvaluator evaluator = new BatchEvaluator(returns, nPeriodYears, 1000, 0, nMonths);
+    evaluator.evaluate(rowPtr, col, weight); // warm up
+    long t2 = TimeLib.getTime();
+    evaluator.evaluate(rowPtr, col, weight);
+    long t3 = TimeLib.getTime();
+    System.out.printf(" Batch (serial): %6dms (%.2fus / portfolio)\n", t3 - t2, 1000.0 * (t3 - t2) / nPortfolios);
+
+    final int nMaxThreads = Runtime.getRuntime().availableProcessors();
+    for (int nThreads = 1; nThreads <= nMaxThreads; nThreads *= 2) {
+      ForkJoinPool pool = new ForkJoinPool(nThreads);
+      long t4 = TimeLib.getTime();
+      evaluator.setPool(pool).evaluate(rowPtr, col, weight);
+      long t5 = TimeLib.getTime();
+      pool.shutdown();
+      System.out.printf(" Batch (%2d threads): %6dms\n", nThreads, t5 - t4);
+    }
+  }
+}
@@ -85,6 +85,18 @@ public class Portfolio implements Comparable<Portfolio>
 
   /** @return 0 if portfolio stats are similar else 1 if this object dominates and -1 if `other` dominates. */
   public int dominates(Portfolio other, double[] domdir, double[] threshold, Strictness strictness)
+  {
+    return dominates(stats.get(), 0, other.stats.get(), 0, domdir, threshold, strictness);
+  }
+
+  /**
+   * Compare stats stored in arrays (same as the instance version of dominates()).
+   * 
+   * @return 0 if the stats at a[offsetA...] and b[offsetB...] are similar else 1 if `a` dominates and -1 if `b`
+   *         dominates.
+   */
+  public static int dominates(double[] a, int offsetA, double[] b, int offsetB, double[] domdir, double[] threshold,
+      Strictness strictness)
   {
     int nLoss = 0;
     int nTiePlus = 0; // within threshold but slightly better
@@ -94,7 +106,7 @@ public class Portfolio implements Comparable<Portfolio>
     for (int i = 0; i < domdir.length; ++i) {
       if (Math.abs(domdir[i]) < 0.1) continue; // skip this feature
       ++nCategories;
-      double v = stats.get(i) - other.stats.get(i);
+      double v = a[offsetA + i] - b[offsetB + i];
       if (domdir[i] > 0) { // bigger is better
         if (v < -threshold[i]) ++nLoss;
         else if (v <= threshold[i]) { // within threshold range => tie
@@ -186,6 +198,44 @@ public class Portfolio implements Comparable<Portfolio>
     return portfolios;
   }
 
+  /**
+   * Find the portfolios that aren't dominated (same as removeNonDominators()) from stats stored in one array.
+   * 
+   * @param stats stats for portfolio i are at [i * nStats, (i + 1) * nStats)
+   * @param nStats number of stats per portfolio
+   * @return indices of the remaining portfolios in increasing order
+   */
+  public static int[] findNonDominators(double[] stats, int nStats, double[] domdir, double[] thresholds,
+      Strictness strictness)
+  {
+    assert domdir.length == thresholds.length;
+    assert stats.length % nStats == 0;
+    final int n = stats.length / nStats;
+    boolean[] removed = new boolean[n];
+    int nRemoved = 0;
+    for (int i = 0; i < n; ++i) {
+      if (removed[i]) continue;
+      for (int j = i + 1; j < n; ++j) {
+        if (removed[j]) continue;
+        int dom = dominates(stats, i * nStats, stats, j * nStats, domdir, thresholds, strictness);
+        if (dom > 0) {
+          removed[j] = true;
+          ++nRemoved;
+        } else if (dom < 0) {
+          removed[i] = true;
+          ++nRemoved;
+          break;
+        }
+      }
+    }
+
+    int[] indices = new int[n - nRemoved];
+    for (int i = 0, k = 0; i < n; ++i) {
+      if (!removed[i]) indices[k++] = i;
+    }
+    return indices;
+  }
+
   @Override
   public int compareTo(Portfolio other)
   {
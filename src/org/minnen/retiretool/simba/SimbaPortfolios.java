@@ -17,8 +17,10 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
+import org.minnen.retiretool.data.AllocationSpace;
 import org.minnen.retiretool.data.DataIO;
 import org.minnen.retiretool.data.DiscreteDistribution;
 import org.minnen.retiretool.data.FeatureVec;
@@ -313,54 +315,22 @@ public class SimbaPortfolios
     return true;
   }
 
-  /** Generates all valid portfolios and stores them in the `portfolios` list. */
-  private static void scanDistributions(int minAssets, int maxAssets, int minWeight, int maxWeight, int weightStep,
-      boolean[] avoid, List<DiscreteDistribution> portfolios)
+  /** @return space of all valid portfolios (same constraints as `symbolCap`, `requiredSets`, and `avoid`). */
+  private static AllocationSpace buildAllocationSpace(int minAssets, int maxAssets, int minWeight, int maxWeight,
+      int weightStep, boolean[] avoid)
   {
-    int[] weights = new int[returnSeqs.length];
-    scanDistributionsHelper(weights, 0, 0, 100, minAssets, maxAssets, minWeight, maxWeight, weightStep, avoid,
-        portfolios);
-  }
-
-  /** Helper function for scanDistributions(). */
-  private static void scanDistributionsHelper(int[] weights, int index, int nAssetsSoFar, int weightLeft, int minAssets,
-      int maxAssets, int minWeight, int maxWeight, int weightStep, boolean[] avoid,
-      List<DiscreteDistribution> portfolios)
-  {
-    assert weightLeft >= 0 && weightLeft <= 100;
-    if (weightLeft == 0) { // reached the end of this path but result may not be valid
-      assert nAssetsSoFar <= maxAssets;
-      if (nAssetsSoFar < minAssets) return;
-      if (!hasRequiredSets(weights)) return;
-
-      assert isValid(weights, minAssets, maxAssets, minWeight, maxWeight);
-      DiscreteDistribution dist = buildDistribution(weights);
-      portfolios.add(dist);
-      if (portfolios.size() % 100000 == 0) {
-        System.out.printf("%d\n", portfolios.size());
-      }
+    AllocationSpace space = new AllocationSpace(symbols.length, minAssets, maxAssets, minWeight, maxWeight,
+        weightStep);
+    if (avoid != null) space.setAvoid(avoid);
+    for (int i = 0; i < symbols.length; ++i) {
+      if (symbols[i] == null) continue;
+      space.setCap(i, symbolCap.getOrDefault(symbols[i], 100));
     }
-
-    if (index >= weights.length) return; // no more assets
-    if (weightLeft < minWeight) return; // not enough weight left to meet min constraint
-    if (nAssetsSoFar >= maxAssets) return; // will break the max assets constraint with any more assets
-
-    // More weight (portfolio percentage) to distribute so continue DFS.
-    if (avoid == null | !avoid[index]) {
-      // Try assigning all valid weights to asset[index].
-      String symbol = symbols[index];
-      int maxWeightForAsset = Library.min(maxWeight, weightLeft, symbolCap.getOrDefault(symbol, 100));
-      for (int w = maxWeightForAsset; w >= minWeight; w -= weightStep) {
-        weights[index] = w;
-        scanDistributionsHelper(weights, index + 1, nAssetsSoFar + 1, weightLeft - w, minAssets, maxAssets, minWeight,
-            maxWeight, weightStep, avoid, portfolios);
-      }
+    for (Set<String> set : requiredSets) {
+      // Symbols without data can't be used; a set with none of its symbols leaves the space empty.
+      space.addRequiredSet(set.stream().filter(symbol2index::containsKey).mapToInt(symbol2index::get).toArray());
     }
-
-    // Skip asset[index].
-    weights[index] = 0;
-    scanDistributionsHelper(weights, index + 1, nAssetsSoFar, weightLeft, minAssets, maxAssets, minWeight, maxWeight,
-        weightStep, avoid, portfolios);
+    return space;
   }
 
   /** @return Sequence containing CAGR for each `nYears` period. */
@@ -412,29 +382,72 @@ public class SimbaPortfolios
     return v;
   }
 
+  /** @return evaluator that calculates the same stats as getStats() for many allocations at once. */
+  private static BatchEvaluator buildEvaluator()
+  {
+    int nYears = returnSeqs[getFirstReturnIndex()].size();
+    double[][] returns = new double[returnSeqs.length][];
+    for (int i = 0; i < returnSeqs.length; ++i) {
+      if (returnSeqs[i] == null) continue;
+      returns[i] = new double[nYears];
+      for (int iYear = 0; iYear < nYears; ++iYear) {
+        returns[i][iYear] = returnSeqs[i].get(iYear, 0);
+      }
+    }
+
+    // All portfolios have the same dates so CAGR uses the same number of months.
+    Sequence dates = new Sequence("Dates");
+    for (int iYear = 0; iYear < nYears; ++iYear) {
+      dates.addData(0.0, index2ms(iYear));
+    }
+    double nMonths = FinLib.cumulativeFromReturns(dates, principle, contribution).getLengthMonths();
+    return new BatchEvaluator(returns, nPeriodYears, principle, contribution, nMonths);
+  }
+
+  /** @return stats vector (same as getStats()) for the allocation from the stats at batchStats[offset...]. */
+  private static FeatureVec buildStatsVector(DiscreteDistribution allocation, double[] batchStats, int offset)
+  {
+    FeatureVec v = new FeatureVec(allocation.toStringWithNames(nSigDig), statNames.length);
+    v.setMeta("allocation", allocation);
+    v.set(stat2index.get("Worst Period"), batchStats[offset + BatchEvaluator.WORST_PERIOD]);
+    v.set(stat2index.get("10th Percentile"), batchStats[offset + BatchEvaluator.PERCENTILE10]);
+    v.set(stat2index.get("Median"), batchStats[offset + BatchEvaluator.MEDIAN]);
+    v.set(stat2index.get("CAGR"), batchStats[offset + BatchEvaluator.CAGR]);
+    v.set(stat2index.get("Std Dev"), batchStats[offset + BatchEvaluator.STD_DEV]);
+    v.set(stat2index.get("Max Drawdown"), batchStats[offset + BatchEvaluator.MAX_DRAWDOWN]);
+    return v;
+  }
+
   private static List<Portfolio> generate() throws IOException
   {
-    List<DiscreteDistribution> allocations = new ArrayList<>();
     boolean[] avoid = buildUniverseMask(universe);
     // TODO setup scan at top of class (create config object?)
-    scanDistributions(3, 6, 10, 30, 10, avoid, allocations);
-    System.out.printf("Portfolios: %d\n", allocations.size());
-    if (allocations.isEmpty()) return new ArrayList<>();
+    final int minAssets = 3, maxAssets = 6, minWeight = 10, maxWeight = 30;
+    AllocationSpace space = buildAllocationSpace(minAssets, maxAssets, minWeight, maxWeight, 10, avoid);
+    final int nAllocations = Math.toIntExact(space.size());
+    System.out.printf("Portfolios: %d\n", nAllocations);
+    if (nAllocations == 0) return new ArrayList<>();
 
     System.out.println("Calculate Returns...");
     long start = TimeLib.getTime();
+    double[] batchStats = buildEvaluator().setPool(ForkJoinPool.commonPool()).evaluate(space);
+    System.out.printf("Time: %s  (%d)\n", TimeLib.formatDuration(TimeLib.getTime() - start), nAllocations);
+
+    // Filter results by removing portfolios that are "dominated" by another portfolio. Only the remaining portfolios
+    // are decoded, so there's never a DiscreteDistribution for each allocation.
+    System.out.println("Remove dominated portfolios...");
+    int[] ranks = Portfolio.findNonDominators(batchStats, BatchEvaluator.NUM_STATS, domDir, domThresholds,
+        domStrictness);
     List<Portfolio> portfolios = new ArrayList<>();
-    for (int i = 0; i < allocations.size(); ++i) {
-      DiscreteDistribution allocation = allocations.get(i);
-      FeatureVec stats = getStats(allocation);
+    int[] weights = new int[symbols.length];
+    for (int rank : ranks) {
+      space.unrank(rank, weights);
+      assert isValid(weights, minAssets, maxAssets, minWeight, maxWeight) && hasRequiredSets(weights);
+      DiscreteDistribution allocation = buildDistribution(weights);
+      FeatureVec stats = buildStatsVector(allocation, batchStats, rank * BatchEvaluator.NUM_STATS);
+      assert stats.dist(getStats(allocation)) < 1e-9;
       portfolios.add(new Portfolio(allocation, stats));
-      if (i % 100000 == 0 && i > 0) System.out.printf("%d  (%.1f%%)\n", i, 100.0 * (i + 1) / allocations.size());
     }
-    System.out.printf("Time: %s  (%d)\n", TimeLib.formatDuration(TimeLib.getTime() - start), allocations.size());
-
-    // Filter results by removing portfolios that are "dominated" by another portfolio.
-    System.out.println("Remove dominated portfolios...");
-    portfolios = Portfolio.removeNonDominators(portfolios, domDir, domThresholds, domStrictness);
     System.out.printf("Filtered: %d\n", portfolios.size());
 
     portfolios = blendPortfolios(portfolios);
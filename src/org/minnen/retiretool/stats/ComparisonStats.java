@@ -1,5 +1,8 @@
 package org.minnen.retiretool.stats;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Map;
@@ -48,6 +51,50 @@ public class ComparisonStats
     targetReturn = Double.NaN;
   }
 
+  /** Write the target return and results for each duration (return sequences are not saved). */
+  public void write(DataOutput out) throws IOException
+  {
+    out.writeDouble(targetReturn);
+    out.writeInt(durationToResults.size());
+    for (Map.Entry<Integer, Results> entry : durationToResults.entrySet()) {
+      Results results = entry.getValue();
+      out.writeInt(entry.getKey());
+      out.writeBoolean(results != null);
+      if (results == null) continue;
+      out.writeInt(results.duration);
+      out.writeDouble(results.winPercent1);
+      out.writeDouble(results.winPercent2);
+      out.writeDouble(results.meanExcess);
+      out.writeDouble(results.worstExcess);
+      out.writeDouble(results.medianExcess);
+      out.writeDouble(results.bestExcess);
+    }
+  }
+
+  /** @return stats saved by write() (without return sequences). */
+  public static ComparisonStats read(DataInput in) throws IOException
+  {
+    ComparisonStats stats = new ComparisonStats();
+    stats.targetReturn = in.readDouble();
+    final int nResults = in.readInt();
+    for (int i = 0; i < nResults; ++i) {
+      int duration = in.readInt();
+      Results results = null;
+      if (in.readBoolean()) {
+        results = new Results();
+        results.duration = in.readInt();
+        results.winPercent1 = in.readDouble();
+        results.winPercent2 = in.readDouble();
+        results.meanExcess = in.readDouble();
+        results.worstExcess = in.readDouble();
+        results.medianExcess = in.readDouble();
+        results.bestExcess = in.readDouble();
+      }
+      stats.durationToResults.put(duration, results);
+    }
+    return stats;
+  }
+
   public static ComparisonStats calc(Sequence cumulativeReturns, double diffMargin, Sequence... defenders)
   {
     assert cumulativeReturns.length() == defenders[0].length() : String.format("%d vs. %d", cumulativeReturns.length(),
@@ -0,0 +1,294 @@
+package org.minnen.retiretool.stats;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.minnen.retiretool.broker.Simulation;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.predictor.config.PredictorConfig;
+import org.minnen.retiretool.util.Library;
+import org.minnen.retiretool.util.TimeLib;
+
+/**
+ * Persistent cache of backtest results so that repeated searches don't re-simulate configs they've already seen.
+ *
+ * Results are keyed by the canonical config string (see PredictorConfig.toCanonicalString()) within a context that
+ * captures everything else that affects the results: the data, time range, and simulation settings (see
+ * calcContext()). Only summary statistics are stored, so cached results don't include return sequences.
+ *
+ * The file is append-only: a header followed by length-prefixed records of (context, key, stats). Records from other
+ * contexts are skipped when the file is opened, and a partial record left by an interrupted write is truncated. An
+ * in-memory LRU cache sits in front of the file.
+ */
+public class ResultsCache implements Closeable
+{
+  private static final int                      MAGIC   = 0x52435231; // "RCR1"
+  private static final int                      VERSION = 1;
+  private static final int                      HEADER  = 8;
+
+  public final File                             file;
+  public final long                             context;
+
+  private final RandomAccessFile                raf;
+
+  /** Map from key to file offset of the corresponding record. */
+  private final Map<String, Long>               index   = new HashMap<>();
+
+  /** Recently used results in access order. */
+  private final LinkedHashMap<String, AllStats> lru;
+
+  private int                                   nHits;
+  private int                                   nMisses;
+
+  /**
+   * Open (or create) a results cache.
+   *
+   * @param file file that holds the cached results
+   * @param context hash of everything (other than the config) that affects results (see calcContext())
+   * @param lruCapacity maximum number of results to keep in memory
+   * @throws IOException if the file can't be read or isn't a results cache
+   */
+  public ResultsCache(File file, long context, int lruCapacity) throws IOException
+  {
+    this.file = file;
+    this.context = context;
+    this.lru = new LinkedHashMap<String, AllStats>(16, 0.75f, true)
+    {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, AllStats> eldest)
+      {
+        return size() > lruCapacity;
+      }
+    };
+
+    long validLength = scan();
+    raf = new RandomAccessFile(file, "rw");
+    if (validLength < HEADER) {
+      raf.setLength(0);
+      raf.writeInt(MAGIC);
+      raf.writeInt(VERSION);
+    } else if (raf.length() > validLength) {
+      System.out.printf("Truncating partial record in results cache: %s\n", file.getPath());
+      raf.setLength(validLength);
+    }
+  }
+
+  /**
+   * Calculate a context hash for results generated by the given simulation.
+   *
+   * @param sim simulation that will generate results
+   * @param timeStart start of simulation (TIME_BEGIN for start of guide sequence)
+   * @param timeEnd end of simulation (TIME_END for end of guide sequence)
+   * @param extra additional sequences that affect the results (e.g. baseline returns for comparison stats)
+   * @return 64-bit hash that identifies the data, time range, and simulation settings
+   */
+  public static long calcContext(Simulation sim, long timeStart, long timeEnd, Sequence... extra)
+  {
+    if (timeStart == TimeLib.TIME_BEGIN) timeStart = sim.getStartMS();
+    if (timeEnd == TimeLib.TIME_END) timeEnd = sim.getEndMS();
+
+    long hash = Library.hash64(Library.HASH64_INIT, sim.store.fingerprint());
+    hash = Library.hash64(hash, sim.guideSeq.fingerprint());
+    hash = Library.hash64(hash, timeStart);
+    hash = Library.hash64(hash, timeEnd);
+    hash = Library.hash64(hash, sim.getSettingsString());
+    for (Sequence seq : extra) {
+      hash = Library.hash64(hash, seq.getName() == null ? "" : seq.getName());
+      hash = Library.hash64(hash, seq.fingerprint());
+    }
+    return hash;
+  }
+
+  /**
+   * Index all records in the current context.
+   *
+   * @return length of the valid prefix of the file (zero if the file doesn't exist or is empty).
+   */
+  private long scan() throws IOException
+  {
+    if (!file.exists() || file.length() == 0) return 0;
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (file.length() < HEADER) return 0;
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not a results cache: " + file.getPath());
+      }
+      long offset = HEADER;
+      while (true) {
+        int len;
+        try {
+          len = in.readInt();
+        } catch (EOFException e) {
+          return offset;
+        }
+        if (len <= 0) return offset;
+        byte[] payload = new byte[len];
+        try {
+          in.readFully(payload);
+        } catch (EOFException e) {
+          return offset;
+        }
+        DataInputStream record = new DataInputStream(new ByteArrayInputStream(payload));
+        if (record.readLong() == context) {
+          index.put(record.readUTF(), offset);
+        }
+        offset += 4 + len;
+      }
+    }
+  }
+
+  /** @return number of results available in the current context. */
+  public synchronized int size()
+  {
+    return index.size();
+  }
+
+  public synchronized int getNumHits()
+  {
+    return nHits;
+  }
+
+  public synchronized int getNumMisses()
+  {
+    return nMisses;
+  }
+
+  /**
+   * Look up cached results for the given config.
+   *
+   * @return cached stats (without return sequences) or null if the config hasn't been evaluated in this context.
+   */
+  public synchronized AllStats get(PredictorConfig config) throws IOException
+  {
+    String key = config.toCanonicalString();
+    AllStats stats = lru.get(key);
+    if (stats == null) {
+      stats = read(key);
+      if (stats == null) {
+        ++nMisses;
+        return null;
+      }
+      lru.put(key, stats);
+    }
+    ++nHits;
+
+    AllStats copy = new AllStats();
+    copy.cumulative = stats.cumulative;
+    copy.comparisons.putAll(stats.comparisons);
+    copy.config = config;
+    return copy;
+  }
+
+  /** Add results for the given config to the cache. */
+  public synchronized void put(PredictorConfig config, AllStats stats) throws IOException
+  {
+    String key = config.toCanonicalString();
+    if (index.containsKey(key)) return;
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeInt(0); // placeholder for payload length
+    out.writeLong(context);
+    out.writeUTF(key);
+    write(stats, out);
+    out.flush();
+    byte[] record = bytes.toByteArray();
+    int len = record.length - 4;
+    record[0] = (byte) (len >>> 24);
+    record[1] = (byte) (len >>> 16);
+    record[2] = (byte) (len >>> 8);
+    record[3] = (byte) len;
+
+    // Write the full record at once so that an interrupted write only leaves a partial tail.
+    long offset = raf.length();
+    raf.seek(offset);
+    raf.write(record);
+    index.put(key, offset);
+  }
+
+  private AllStats read(String key) throws IOException
+  {
+    Long offset = index.get(key);
+    if (offset == null) return null;
+
+    raf.seek(offset);
+    byte[] payload = new byte[raf.readInt()];
+    raf.readFully(payload);
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+    if (in.readLong() != context || !in.readUTF().equals(key)) {
+      throw new IOException(String.format("Corrupt record at offset %d: %s", offset, file.getPath()));
+    }
+    return readStats(in);
+  }
+
+  private static void write(AllStats stats, DataOutputStream out) throws IOException
+  {
+    CumulativeStats cumulative = stats.cumulative;
+    out.writeDouble(cumulative.cagr);
+    out.writeDouble(cumulative.meanAnnualReturn);
+    out.writeDouble(cumulative.devAnnualReturn);
+    out.writeDouble(cumulative.totalReturn);
+    out.writeDouble(cumulative.drawdown);
+    out.writeDouble(cumulative.percentNewHigh);
+    out.writeDouble(cumulative.percentDown10);
+    out.writeDouble(cumulative.peakReturn);
+    out.writeDouble(cumulative.percentUp);
+    out.writeDouble(cumulative.percentDown);
+    out.writeInt(cumulative.annualPercentiles.length);
+    for (double x : cumulative.annualPercentiles) {
+      out.writeDouble(x);
+    }
+
+    out.writeInt(stats.comparisons.size());
+    for (Map.Entry<String, ComparisonStats> entry : stats.comparisons.entrySet()) {
+      out.writeUTF(entry.getKey());
+      entry.getValue().write(out);
+    }
+  }
+
+  private static AllStats readStats(DataInputStream in) throws IOException
+  {
+    AllStats stats = new AllStats();
+    CumulativeStats cumulative = new CumulativeStats();
+    cumulative.cagr = in.readDouble();
+    cumulative.meanAnnualReturn = in.readDouble();
+    cumulative.devAnnualReturn = in.readDouble();
+    cumulative.totalReturn = in.readDouble();
+    cumulative.drawdown = in.readDouble();
+    cumulative.percentNewHigh = in.readDouble();
+    cumulative.percentDown10 = in.readDouble();
+    cumulative.peakReturn = in.readDouble();
+    cumulative.percentUp = in.readDouble();
+    cumulative.percentDown = in.readDouble();
+    cumulative.annualPercentiles = new double[in.readInt()];
+    for (int i = 0; i < cumulative.annualPercentiles.length; ++i) {
+      cumulative.annualPercentiles[i] = in.readDouble();
+    }
+    stats.cumulative = cumulative;
+
+    final int nComparisons = in.readInt();
+    for (int i = 0; i < nComparisons; ++i) {
+      String name = in.readUTF();
+      stats.comparisons.put(name, ComparisonStats.read(in));
+    }
+    return stats;
+  }
+
+  @Override
+  public synchronized void close() throws IOException
+  {
+    raf.close();
+  }
+}
@@ -16,6 +16,7 @@ import org.minnen.retiretool.predictor.config.ConfigConst;
 import org.minnen.retiretool.predictor.config.PredictorConfig;
 import org.minnen.retiretool.stats.AllStats;
 import org.minnen.retiretool.stats.ComparisonStats;
+import org.minnen.retiretool.stats.ResultsCache;
 import org.minnen.retiretool.tactical.ConfigGenerator.Mode;
 import org.minnen.retiretool.util.TimeLib;
 import org.minnen.retiretool.util.Writer;
@@ -31,6 +32,8 @@ public class SearchConfigs
   public static final boolean              initializeTripleDefenders = false;
   public static final Mode                 searchMode                = Mode.EXTEND;
   public static final String               targetNum                 = "three";
+  public static final String               resultsCacheFilename      = "tactical-results-cache.bin";
+  public static final int                  resultsCacheSize          = 100000;
   public static final String               saveFilename              = String.format("%s-sma-winners-%s.txt", targetNum,
       TimeLib.formatTimeSig(TimeLib.getTime()));
 
@@ -95,6 +98,13 @@ public class SearchConfigs
     baselineMonthlyReturns = baselineStats.cumulative.monthlyReturns;
     System.out.printf("%s: %s\n", baselineDailyReturns.getName(), baselineStats);
 
+    // Reuse results from previous searches over the same data and settings.
+    long context = ResultsCache.calcContext(sim, TimeLib.TIME_BEGIN, TimeLib.TIME_END, baselineMonthlyReturns);
+    ResultsCache resultsCache = new ResultsCache(new File(DataIO.getOutputPath(), resultsCacheFilename), context,
+        resultsCacheSize);
+    TacticLib.setResultsCache(resultsCache);
+    System.out.printf("Results cache: %d known results\n", resultsCache.size());
+
     // Set up "defenders" based on known-good configs.
     List<AllStats> dominators = new ArrayList<>();
 
@@ -167,6 +177,10 @@ public class SearchConfigs
           System.out.printf(" %s (%s)\n", optimized, optimized.config);
         }
       }
+    } finally {
+      // Detach the cache before closing it so that later evaluations don't use a closed file.
+      TacticLib.setResultsCache(null);
+      resultsCache.close();
     }
   }
 }
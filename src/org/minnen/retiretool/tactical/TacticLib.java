@@ -1,6 +1,7 @@
 package org.minnen.retiretool.tactical;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
@@ -9,6 +10,7 @@ import java.util.Set;
 import org.minnen.retiretool.broker.Simulation;
 import org.minnen.retiretool.data.DataIO;
 import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.data.SMAWindows;
 import org.minnen.retiretool.data.Sequence;
 import org.minnen.retiretool.data.SequenceStore;
 import org.minnen.retiretool.predictor.config.PredictorConfig;
@@ -16,14 +18,43 @@ import org.minnen.retiretool.predictor.daily.Predictor;
 import org.minnen.retiretool.stats.AllStats;
 import org.minnen.retiretool.stats.ComparisonStats;
 import org.minnen.retiretool.stats.CumulativeStats;
+import org.minnen.retiretool.stats.ResultsCache;
 import org.minnen.retiretool.util.FinLib;
 import org.minnen.retiretool.util.TimeLib;
 
 public class TacticLib
 {
-  public static final String   riskyName  = "stock";
-  public static final String   safeName   = "3-month-treasuries";
-  public static final String[] assetNames = new String[] { riskyName, safeName };
+  public static final String   riskyName        = "stock";
+  public static final String   safeName         = "3-month-treasuries";
+  public static final String[] assetNames       = new String[] { riskyName, safeName };
+
+  /** Maximum number of precomputed moving averages kept in the store (see setMaxCachedWindows()). */
+  private static int           maxCachedWindows = 512;
+
+  /** Optional persistent cache of results (see setResultsCache()). */
+  private static ResultsCache  resultsCache;
+
+  /**
+   * Set the cache used to skip simulations for configs that were evaluated in a previous run.
+   * 
+   * The cache's context must match the simulation and baseline passed to eval() (see ResultsCache.calcContext()).
+   */
+  public static void setResultsCache(ResultsCache cache)
+  {
+    resultsCache = cache;
+  }
+
+  /**
+   * Set the maximum number of precomputed moving averages kept in the store across all sequences.
+   * 
+   * Each window holds one value per day (20k days => ~160KB per window), so the default of 512 windows is about 80MB
+   * for a single daily sequence. Grid searches use a fixed set of windows, but hill-climbing visits an open-ended set,
+   * so the cache is dropped once the next batch of windows would exceed this limit.
+   */
+  public static void setMaxCachedWindows(int maxWindows)
+  {
+    maxCachedWindows = maxWindows;
+  }
 
   public static void setupData(String symbol, SequenceStore store) throws IOException
   {
@@ -59,40 +90,25 @@ public class TacticLib
   public static AllStats eval(PredictorConfig config, String name, int nPerturb, Simulation sim,
       Comparator<AllStats> comp, Sequence baselineMonthlyReturns, List<AllStats> statsList)
   {
-    Predictor pred = config.build(null, TacticLib.assetNames);
-    sim.run(pred, name);
-    AllStats worstStats = new AllStats();
-    worstStats.cumulative = CumulativeStats.calc(sim.returnsDaily, sim.returnsMonthly, true);
-    if (baselineMonthlyReturns != null) {
-      assert baselineMonthlyReturns.matches(sim.returnsMonthly);
-      ComparisonStats comparison = ComparisonStats.calc(sim.returnsMonthly, baselineMonthlyReturns, 0.25);
-      worstStats.comparisons.put(baselineMonthlyReturns.getName(), comparison);
+    // Generate perturbed configs first so that all moving averages can be precomputed together.
+    List<PredictorConfig> perturbedConfigs = new ArrayList<>();
+    Set<PredictorConfig> tested = new HashSet<>();
+    for (int i = 0; i < nPerturb; ++i) {
+      PredictorConfig perturbedConfig = config.genPerturbed();
+      if (tested.contains(perturbedConfig)) continue;
+      tested.add(perturbedConfig);
+      perturbedConfigs.add(perturbedConfig);
     }
-    worstStats.config = config;
+    precomputeSMA(config, perturbedConfigs, sim.store);
+
+    AllStats worstStats = evalOne(config, name, sim, baselineMonthlyReturns);
     if (statsList != null) {
       statsList.clear();
       statsList.add(worstStats);
     }
 
-    Set<PredictorConfig> tested = new HashSet<>();
-    for (int i = 0; i < nPerturb; ++i) {
-      PredictorConfig perturbedConfig = config.genPerturbed();
-      if (tested.contains(perturbedConfig)) {
-        System.out.println("DUP!");
-        continue;
-      }
-      tested.add(perturbedConfig);
-
-      pred = perturbedConfig.build(null, TacticLib.assetNames);
-      sim.run(pred, name);
-      AllStats stats = new AllStats();
-      stats.cumulative = CumulativeStats.calc(sim.returnsDaily, sim.returnsMonthly, true);
-      if (baselineMonthlyReturns != null) {
-        assert baselineMonthlyReturns.matches(sim.returnsMonthly);
-        ComparisonStats comparison = ComparisonStats.calc(sim.returnsMonthly, baselineMonthlyReturns, 0.25);
-        stats.comparisons.put(baselineMonthlyReturns.getName(), comparison);
-      }
-      stats.config = perturbedConfig;
+    for (PredictorConfig perturbedConfig : perturbedConfigs) {
+      AllStats stats = evalOne(perturbedConfig, name, sim, baselineMonthlyReturns);
       if (statsList != null) statsList.add(stats);
       if (comp.compare(stats, worstStats) < 0) { // performance of strategy = worst over perturbed params
         worstStats = stats;
@@ -101,4 +117,64 @@ public class TacticLib
 
     return worstStats;
   }
+
+  /**
+   * Run a single simulation for the given config.
+   * 
+   * Results are looked up in (and added to) the results cache when one is set and there's a baseline for comparison.
+   * Without a baseline, callers typically need the return sequences, which aren't cached.
+   */
+  private static AllStats evalOne(PredictorConfig config, String name, Simulation sim, Sequence baselineMonthlyReturns)
+  {
+    final boolean bUseCache = (resultsCache != null && baselineMonthlyReturns != null);
+    if (bUseCache) {
+      try {
+        AllStats stats = resultsCache.get(config);
+        if (stats != null) return stats;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    Predictor pred = config.build(null, TacticLib.assetNames);
+    sim.run(pred, name);
+    AllStats stats = new AllStats();
+    stats.cumulative = CumulativeStats.calc(sim.returnsDaily, sim.returnsMonthly, true);
+    if (baselineMonthlyReturns != null) {
+      assert baselineMonthlyReturns.matches(sim.returnsMonthly);
+      ComparisonStats comparison = ComparisonStats.calc(sim.returnsMonthly, baselineMonthlyReturns, 0.25);
+      stats.comparisons.put(baselineMonthlyReturns.getName(), comparison);
+    }
+    stats.config = config;
+
+    if (bUseCache) {
+      try {
+        resultsCache.put(config, stats);
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return stats;
+  }
+
+  /**
+   * Precompute moving averages for a config and its perturbations.
+   * 
+   * The cache is dropped first if the new windows would push it past maxCachedWindows (see setMaxCachedWindows()).
+   */
+  private static void precomputeSMA(PredictorConfig config, List<PredictorConfig> perturbedConfigs,
+      SequenceStore store)
+  {
+    SMAWindows windows = new SMAWindows();
+    config.addSMAWindows(windows, assetNames);
+    for (PredictorConfig perturbedConfig : perturbedConfigs) {
+      perturbedConfig.addSMAWindows(windows, assetNames);
+    }
+    if (windows.isEmpty()) return;
+
+    if (store.getNumSMAWindows() + windows.size() > maxCachedWindows) {
+      store.clearSMACubes();
+    }
+    windows.precompute(store);
+  }
 }
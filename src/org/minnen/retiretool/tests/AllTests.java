@@ -10,10 +10,14 @@ import org.minnen.retiretool.data.Sequence;
 import org.minnen.retiretool.util.TimeLib;
 
 @RunWith(Suite.class)
-@SuiteClasses({ TestBond.class, TestCumulativeStats.class, TestFinLib.class, TestFixedPoint.class,
-    TestInvestmentStats.class, TestKDE.class, TestLibrary.class, TestMixablePredictor.class, TestRankers.class,
-    TestRegression.class, TestSequence.class, TestSequenceStore.class, TestSequenceStoreV1.class, TestSlippage.class,
-    TestStockInfo.class, TestStump.class, TestSwrLib.class, TestTimeLib.class })
+@SuiteClasses({ TestAllocationSpace.class, TestBaggedClassifier.class, TestBatchEvaluator.class, TestBond.class,
+    TestCSVReader.class, TestCkdeEvaluator.class, TestCumulativeStats.class, TestDiscreteDistribution.class,
+    TestFinLib.class, TestFixedPoint.class, TestInvestmentStats.class, TestKDE.class, TestLibrary.class,
+    TestMathKernels.class, TestMixablePredictor.class, TestMonthlyBatchRunner.class, TestNeighborIndex.class,
+    TestPositiveQuadrant.class, TestRankers.class, TestRegression.class, TestResultsCache.class,
+    TestRollingCovariance.class, TestSequence.class, TestSequenceStore.class, TestSequenceStoreV1.class,
+    TestSimulation.class, TestSlippage.class, TestStockInfo.class, TestStump.class, TestSuccessiveHalving.class,
+    TestSwrLib.class, TestTiingoUniverse.class, TestTiingoUpdater.class, TestTimeLib.class, TestTradingCalendar.class })
 public class AllTests
 {
   public static Sequence buildMonthlySequence(double[] data)
@@ -0,0 +1,145 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+
+import org.junit.Test;
+import org.minnen.retiretool.data.AllocationSpace;
+import org.minnen.retiretool.data.DiscreteDistribution;
+import org.minnen.retiretool.vanguard.SummaryTools;
+
+public class TestAllocationSpace
+{
+  /** Same scan as SimbaPortfolios (caps, avoided symbols, and required sets) that collects the weights. */
+  private static void scan(int[] weights, int index, int nAssetsSoFar, int weightLeft, int minAssets, int maxAssets,
+      int minWeight, int maxWeight, int weightStep, int[] caps, boolean[] avoid, int[][] requiredSets,
+      List<int[]> portfolios)
+  {
+    if (weightLeft == 0) {
+      if (nAssetsSoFar < minAssets) return;
+      for (int[] set : requiredSets) {
+        if (Arrays.stream(set).allMatch(i -> weights[i] == 0)) return;
+      }
+      portfolios.add(weights.clone());
+      return;
+    }
+    if (index >= weights.length) return;
+    if (weightLeft < minWeight) return;
+    if (nAssetsSoFar >= maxAssets) return;
+
+    if (!avoid[index]) {
+      int maxWeightForAsset = Math.min(Math.min(maxWeight, weightLeft), caps[index]);
+      for (int w = maxWeightForAsset; w >= minWeight; w -= weightStep) {
+        weights[index] = w;
+        scan(weights, index + 1, nAssetsSoFar + 1, weightLeft - w, minAssets, maxAssets, minWeight, maxWeight,
+            weightStep, caps, avoid, requiredSets, portfolios);
+      }
+    }
+    weights[index] = 0;
+    scan(weights, index + 1, nAssetsSoFar, weightLeft, minAssets, maxAssets, minWeight, maxWeight, weightStep, caps,
+        avoid, requiredSets, portfolios);
+  }
+
+  /** Verify that the space holds the expected allocations in the same order. */
+  private static void assertSameAllocations(List<int[]> expected, AllocationSpace space)
+  {
+    assertEquals(expected.size(), space.size());
+    int[] weights = new int[space.getNumSymbols()];
+    for (int rank = 0; rank < expected.size(); ++rank) {
+      assertArrayEquals(expected.get(rank), space.unrank(rank, weights));
+      assertEquals(rank, space.rank(expected.get(rank)));
+    }
+  }
+
+  @Test
+  public void testMatchesSummaryTools()
+  {
+    // { nSymbols, minAssets, maxAssets, minWeight, maxWeight, weightStep }
+    int[][] configs = new int[][] { { 6, 1, 6, 10, 100, 10 }, { 8, 3, 5, 5, 40, 5 }, { 7, 2, 4, 15, 60, 10 },
+        { 10, 4, 6, 5, 30, 5 }, { 5, 6, 8, 10, 50, 10 } };
+    String[] prevSymbols = SummaryTools.fundSymbols;
+    try {
+      for (int[] config : configs) {
+        String[] symbols = new String[config[0]];
+        for (int i = 0; i < symbols.length; ++i) {
+          symbols[i] = String.format("F%d", i);
+        }
+        SummaryTools.fundSymbols = symbols;
+        List<DiscreteDistribution> portfolios = new ArrayList<>();
+        SummaryTools.scanDistributions(config[1], config[2], config[3], config[4], config[5], portfolios);
+        List<int[]> expected = new ArrayList<>();
+        for (DiscreteDistribution portfolio : portfolios) {
+          expected.add(Arrays.stream(portfolio.weights).mapToInt(w -> (int) Math.round(w * 100)).toArray());
+        }
+        assertSameAllocations(expected,
+            new AllocationSpace(config[0], config[1], config[2], config[3], config[4], config[5]));
+      }
+    } finally {
+      SummaryTools.fundSymbols = prevSymbols;
+    }
+  }
+
+  @Test
+  public void testConstraints()
+  {
+    final int N = 12;
+    int[] caps = new int[N];
+    Arrays.fill(caps, 100);
+    caps[2] = caps[7] = 10;
+    caps[5] = 20;
+    boolean[] avoid = new boolean[N];
+    avoid[3] = avoid[9] = true;
+    int[][] requiredSets = new int[][] { { 0, 4, 8 }, { 5, 6 }, { 11 } };
+
+    for (int nRequired = 0; nRequired <= requiredSets.length; ++nRequired) {
+      int[][] sets = Arrays.copyOf(requiredSets, nRequired);
+      List<int[]> expected = new ArrayList<>();
+      scan(new int[N], 0, 0, 100, 3, 6, 10, 30, 10, caps, avoid, sets, expected);
+
+      AllocationSpace space = new AllocationSpace(N, 3, 6, 10, 30, 10).setAvoid(avoid);
+      for (int i = 0; i < N; ++i) {
+        space.setCap(i, caps[i]);
+      }
+      for (int[] set : sets) {
+        space.addRequiredSet(set);
+      }
+      assertSameAllocations(expected, space);
+    }
+
+    // Allocations that break a constraint aren't in the space.
+    AllocationSpace space = new AllocationSpace(N, 3, 6, 10, 30, 10).setAvoid(avoid).setCap(2, 10);
+    assertEquals(-1, space.rank(new int[] { 30, 30, 20, 0, 20, 0, 0, 0, 0, 0, 0, 0 })); // over cap
+    assertEquals(-1, space.rank(new int[] { 30, 30, 0, 20, 20, 0, 0, 0, 0, 0, 0, 0 })); // avoided
+    assertEquals(-1, space.rank(new int[] { 30, 30, 30, 0, 0, 0, 0, 0, 0, 0, 0, 0 })); // too few assets
+    assertEquals(-1, space.rank(new int[] { 30, 30, 10, 0, 20, 0, 0, 0, 0, 0, 0, 0 })); // doesn't sum to 100
+    assertTrue(space.rank(new int[] { 30, 30, 10, 0, 30, 0, 0, 0, 0, 0, 0, 0 }) >= 0);
+
+    // An empty required set can't be satisfied.
+    assertEquals(0, new AllocationSpace(N, 3, 6, 10, 30, 10).addRequiredSet().size());
+  }
+
+  @Test
+  public void testSpliterator()
+  {
+    AllocationSpace space = new AllocationSpace(10, 2, 5, 5, 50, 5).addRequiredSet(1, 2);
+    final long n = space.size();
+
+    Spliterator<int[]> a = space.spliterator();
+    Spliterator<int[]> b = a.trySplit();
+    assertEquals(n / 2, b.estimateSize());
+    assertEquals(n - n / 2, a.estimateSize());
+    assertTrue(a.hasCharacteristics(Spliterator.SUBSIZED));
+
+    // A parallel stream visits every allocation exactly once.
+    long[] ranks = space.stream(true).mapToLong(space::rank).sorted().toArray();
+    assertEquals(n, ranks.length);
+    for (int i = 0; i < n; ++i) {
+      assertEquals(i, ranks[i]);
+    }
+    assertEquals(n, space.stream(true).filter(w -> w[1] > 0 || w[2] > 0).count());
+  }
+}
@@ -0,0 +1,147 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.ml.BaggedClassifier;
+import org.minnen.retiretool.ml.Stump;
+import org.minnen.retiretool.util.Random;
+
+import smile.classification.ClassifierTrainer;
+
+public class TestBaggedClassifier
+{
+  private static FeatureVec[] genFeatures(Random rng, int n, int D)
+  {
+    FeatureVec[] x = new FeatureVec[n];
+    for (int i = 0; i < n; ++i) {
+      x[i] = new FeatureVec(D);
+      for (int d = 0; d < D; ++d) {
+        x[i].set(d, rng.nextGaussian());
+      }
+    }
+    return x;
+  }
+
+  /** Class 1 if a noisy linear function of the first two features is positive. */
+  private static int[] genClasses(Random rng, FeatureVec[] x)
+  {
+    int[] y = new int[x.length];
+    for (int i = 0; i < x.length; ++i) {
+      y[i] = (x[i].get(0) + 0.5 * x[i].get(1) + 0.7 * rng.nextGaussian() > 0.0 ? 1 : 0);
+    }
+    return y;
+  }
+
+  /** Train a bag using a pool with the given number of threads (or the calling thread if nThreads is zero). */
+  private static BaggedClassifier train(ClassifierTrainer<FeatureVec> weak, int nWeak, long seed, int nThreads,
+      FeatureVec[] x, int[] y)
+  {
+    ForkJoinPool pool = (nThreads > 0 ? new ForkJoinPool(nThreads) : null);
+    try {
+      return new BaggedClassifier.Trainer(nWeak, weak).setSeed(seed).setPool(pool).train(x, y);
+    } finally {
+      if (pool != null) pool.shutdown();
+    }
+  }
+
+  private static void assertSameStumps(BaggedClassifier a, BaggedClassifier b)
+  {
+    assertEquals(a.size(), b.size());
+    for (int i = 0; i < a.size(); ++i) {
+      Stump sa = (Stump) a.get(i);
+      Stump sb = (Stump) b.get(i);
+      assertEquals(sa.iDim, sb.iDim);
+      assertEquals(sa.threshold, sb.threshold, 0.0);
+      assertEquals(sa.invert, sb.invert);
+    }
+  }
+
+  @Test
+  public void testDeterministic()
+  {
+    Random rng = new Random(1234);
+    FeatureVec[] x = genFeatures(rng, 1500, 6);
+    int[] y = genClasses(rng, x);
+
+    // The sweep trainer gets counts and a random stream (it picks 3 random dimensions per round); the fixed-threshold
+    // trainer gets copies of the sampled references.
+    List<ClassifierTrainer<FeatureVec>> trainers = Arrays.asList(new Stump.SweepTrainer(3, false),
+        new Stump.Trainer(-1, false));
+    for (ClassifierTrainer<FeatureVec> weak : trainers) {
+      BaggedClassifier bag = train(weak, 40, 42L, 1, x, y);
+      assertEquals(40, bag.size());
+      assertFalse(Double.isNaN(bag.getOobAccuracy()));
+      for (int nThreads : new int[] { 0, 2, 5 }) {
+        BaggedClassifier other = train(weak, 40, 42L, nThreads, x, y);
+        assertSameStumps(bag, other);
+        assertEquals(bag.getOobAccuracy(), other.getOobAccuracy(), 0.0);
+        for (int i = 0; i < x.length; ++i) {
+          double[] a = bag.getOobPosterior(i);
+          double[] b = other.getOobPosterior(i);
+          if (a == null) {
+            assertNull(b);
+          } else {
+            assertArrayEquals(a, b, 0.0);
+          }
+        }
+      }
+    }
+
+    // A different seed draws different samples.
+    BaggedClassifier a = train(new Stump.SweepTrainer(-1, false), 20, 1L, 1, x, y);
+    BaggedClassifier b = train(new Stump.SweepTrainer(-1, false), 20, 2L, 1, x, y);
+    boolean bSame = true;
+    for (int i = 0; i < a.size(); ++i) {
+      bSame &= ((Stump) a.get(i)).threshold == ((Stump) b.get(i)).threshold;
+    }
+    assertFalse(bSame);
+
+    // Without a seed, bags use the same default seed.
+    ClassifierTrainer<FeatureVec> weak = new Stump.SweepTrainer(3, false);
+    assertSameStumps(train(weak, 20, BaggedClassifier.Trainer.DEFAULT_SEED, 1, x, y),
+        new BaggedClassifier.Trainer(20, weak).train(x, y));
+  }
+
+  @Test
+  public void testOobMatchesKFold()
+  {
+    final int N = 3000;
+    final int nFolds = 5;
+    final int nWeak = 150;
+    Random rng = new Random(5678);
+    FeatureVec[] x = genFeatures(rng, N, 5);
+    int[] y = genClasses(rng, x);
+    ClassifierTrainer<FeatureVec> weak = new Stump.SweepTrainer(2, false);
+
+    BaggedClassifier bag = train(weak, nWeak, 7L, 4, x, y);
+    double oobAccuracy = bag.getOobAccuracy();
+
+    // Examples are in random order, so contiguous folds are fine.
+    int nCorrect = 0;
+    for (int iFold = 0; iFold < nFolds; ++iFold) {
+      int from = iFold * N / nFolds;
+      int to = (iFold + 1) * N / nFolds;
+      FeatureVec[] xTrain = new FeatureVec[N - (to - from)];
+      int[] yTrain = new int[xTrain.length];
+      for (int i = 0, k = 0; i < N; ++i) {
+        if (i >= from && i < to) continue;
+        xTrain[k] = x[i];
+        yTrain[k] = y[i];
+        ++k;
+      }
+      BaggedClassifier foldBag = train(weak, nWeak, 100L + iFold, 4, xTrain, yTrain);
+      for (int i = from; i < to; ++i) {
+        if (foldBag.predict(x[i]) == y[i]) ++nCorrect;
+      }
+    }
+    double kfoldAccuracy = 100.0 * nCorrect / N;
+    assertTrue(oobAccuracy > 70.0);
+    assertEquals(kfoldAccuracy, oobAccuracy, 3.0);
+  }
+}
@@ -0,0 +1,148 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.minnen.retiretool.data.AllocationSpace;
+import org.minnen.retiretool.data.DiscreteDistribution;
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.simba.BatchEvaluator;
+import org.minnen.retiretool.simba.Portfolio;
+import org.minnen.retiretool.simba.Portfolio.Strictness;
+import org.minnen.retiretool.stats.CumulativeStats;
+import org.minnen.retiretool.stats.ReturnStats;
+import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.Random;
+import org.minnen.retiretool.util.TimeLib;
+
+public class TestBatchEvaluator
+{
+  private static final int    nYears       = 40;
+  private static final int    nPeriodYears = 10;
+  private static final double principle    = 1000.0;
+  private static final double contribution = 0.0;
+
+  /** Same steps as SimbaPortfolios.getStats(): annual returns -> cumulative returns -> period and cumulative stats. */
+  private static double[] getStats(DiscreteDistribution allocation, Sequence[] returnSeqs, Map<String, Integer> index)
+  {
+    Sequence annualReturns = new Sequence("Annual");
+    for (int iYear = 0; iYear < nYears; ++iYear) {
+      double m = 0.0;
+      for (int i = 0; i < allocation.size(); ++i) {
+        double w = allocation.weights[i];
+        if (w < 1e-9) continue;
+        m += w * returnSeqs[index.get(allocation.names[i])].get(iYear, 0);
+      }
+      annualReturns.addData(FinLib.mul2ret(m), returnSeqs[0].getTimeMS(iYear));
+    }
+    Sequence cumulativeReturns = FinLib.cumulativeFromReturns(annualReturns, principle, contribution);
+
+    final int nMonths = nPeriodYears * 12;
+    double[] periodReturns = new double[cumulativeReturns.length() - nPeriodYears];
+    for (int i = 0; i < periodReturns.length; ++i) {
+      double tr = FinLib.getTotalReturn(cumulativeReturns, i, i + nPeriodYears);
+      periodReturns[i] = FinLib.getAnnualReturn(tr, nMonths);
+    }
+    ReturnStats rstats = ReturnStats.calc("Periods", periodReturns);
+    CumulativeStats cstats = CumulativeStats.calc(cumulativeReturns, false);
+    return new double[] { rstats.min, rstats.percentile10, rstats.median, cstats.cagr, rstats.sdev, -cstats.drawdown };
+  }
+
+  @Test
+  public void testMatchesSequenceStats()
+  {
+    Random rng = new Random(1234);
+    final int nSymbols = 12;
+    String[] names = new String[nSymbols];
+    Sequence[] returnSeqs = new Sequence[nSymbols];
+    double[][] returns = new double[nSymbols][nYears];
+    Map<String, Integer> symbol2index = new HashMap<>();
+    for (int i = 0; i < nSymbols; ++i) {
+      names[i] = String.format("SYM%d", i);
+      symbol2index.put(names[i], i);
+      returnSeqs[i] = new Sequence(names[i]);
+      for (int iYear = 0; iYear < nYears; ++iYear) {
+        returns[i][iYear] = 1.07 + 0.2 * rng.nextGaussian();
+        returnSeqs[i].addData(returns[i][iYear], TimeLib.toMs(1970 + iYear, Month.DECEMBER, 31));
+      }
+    }
+
+    // Random allocations with 3-6 assets (in units of 10%) plus some zero weights that are ignored.
+    List<DiscreteDistribution> allocations = new ArrayList<>();
+    for (int iPortfolio = 0; iPortfolio < 5000; ++iPortfolio) {
+      DiscreteDistribution allocation = new DiscreteDistribution(names);
+      int nAssets = 3 + rng.nextInt(4);
+      int left = 10;
+      for (int i = 0; i < nAssets; ++i) {
+        int k = (i == nAssets - 1 ? left : 1 + rng.nextInt(left - (nAssets - i - 1)));
+        allocation.weights[rng.nextInt(nSymbols)] += k / 10.0;
+        left -= k;
+      }
+      assertEquals(0, left);
+      allocations.add(allocation);
+    }
+
+    Sequence dates = new Sequence("Dates");
+    for (int iYear = 0; iYear < nYears; ++iYear) {
+      dates.addData(0.0, returnSeqs[0].getTimeMS(iYear));
+    }
+    double nMonths = FinLib.cumulativeFromReturns(dates, principle, contribution).getLengthMonths();
+    BatchEvaluator evaluator = new BatchEvaluator(returns, nPeriodYears, principle, contribution, nMonths);
+    double[] stats = evaluator.evaluate(allocations, symbol2index);
+    assertEquals(allocations.size() * BatchEvaluator.NUM_STATS, stats.length);
+    for (int i = 0; i < allocations.size(); ++i) {
+      double[] expected = getStats(allocations.get(i), returnSeqs, symbol2index);
+      for (int j = 0; j < BatchEvaluator.NUM_STATS; ++j) {
+        assertEquals(expected[j], stats[i * BatchEvaluator.NUM_STATS + j], 1e-9);
+      }
+    }
+
+    // Blocks are independent so a pool gives identical results.
+    ForkJoinPool pool = new ForkJoinPool(3);
+    double[] parallel = evaluator.setPool(pool).evaluate(allocations, symbol2index);
+    pool.shutdown();
+    assertArrayEquals(stats, parallel, 0.0);
+
+    // Allocations decoded from a space give the same stats as a list of the same allocations.
+    AllocationSpace space = new AllocationSpace(nSymbols, 3, 4, 10, 40, 10);
+    List<DiscreteDistribution> spaceAllocations = new ArrayList<>();
+    space.stream(false).forEach(weights -> {
+      DiscreteDistribution allocation = new DiscreteDistribution(names);
+      for (int i = 0; i < nSymbols; ++i) {
+        allocation.weights[i] = weights[i] / 100.0;
+      }
+      spaceAllocations.add(allocation);
+    });
+    assertTrue(spaceAllocations.size() > BatchEvaluator.BLOCK_SIZE);
+    assertArrayEquals(evaluator.setPool(null).evaluate(spaceAllocations, symbol2index), evaluator.evaluate(space),
+        0.0);
+
+    // Filtering the stats array keeps the same portfolios as filtering a list.
+    double[] domDir = new double[] { 1, 1, 1, 1, 0, 1 };
+    double[] domThresholds = new double[] { 0.1, 0.1, 0.1, 0.1, 0.1, 1.0 };
+    List<Portfolio> portfolios = new ArrayList<>();
+    for (int i = 0; i < allocations.size(); ++i) {
+      double[] v = Arrays.copyOfRange(stats, i * BatchEvaluator.NUM_STATS, (i + 1) * BatchEvaluator.NUM_STATS);
+      portfolios.add(new Portfolio(String.valueOf(i), allocations.get(i), new FeatureVec(v.length, v)));
+    }
+    for (Strictness strictness : Strictness.values()) {
+      List<Portfolio> expected = Portfolio.removeNonDominators(new ArrayList<>(portfolios), domDir, domThresholds,
+          strictness);
+      int[] indices = Portfolio.findNonDominators(stats, BatchEvaluator.NUM_STATS, domDir, domThresholds, strictness);
+      assertTrue(indices.length < allocations.size());
+      assertEquals(expected.size(), indices.length);
+      for (int i = 0; i < indices.length; ++i) {
+        assertEquals(expected.get(i).name, String.valueOf(indices[i]));
+      }
+    }
+  }
+}
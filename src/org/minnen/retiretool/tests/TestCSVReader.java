@@ -0,0 +1,238 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.junit.Test;
+import org.minnen.retiretool.data.CSVReader;
+import org.minnen.retiretool.data.DataIO;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.data.yahoo.YahooIO;
+import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.TimeLib;
+
+public class TestCSVReader
+{
+  private static CSVReader reader(String s)
+  {
+    return new CSVReader(s.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static List<String> fields(CSVReader in)
+  {
+    List<String> fields = new ArrayList<>();
+    for (int i = 0; i < in.getNumFields(); ++i) {
+      fields.add(in.getString(i));
+    }
+    return fields;
+  }
+
+  private static List<List<String>> readAll(CSVReader in) throws IOException
+  {
+    List<List<String>> lines = new ArrayList<>();
+    while (in.next()) {
+      lines.add(fields(in));
+    }
+    return lines;
+  }
+
+  private static List<String> list(String... fields)
+  {
+    List<String> list = new ArrayList<>();
+    for (String field : fields) {
+      list.add(field);
+    }
+    return list;
+  }
+
+  /** Input stream that returns at most `n` bytes per read to exercise buffer refills. */
+  private static class ChunkedInputStream extends ByteArrayInputStream
+  {
+    private final int n;
+
+    public ChunkedInputStream(byte[] bytes, int n)
+    {
+      super(bytes);
+      this.n = n;
+    }
+
+    @Override
+    public synchronized int read(byte[] b, int off, int len)
+    {
+      return super.read(b, off, Math.min(len, n));
+    }
+  }
+
+  @Test
+  public void testTokenize() throws IOException
+  {
+    String csv = "\uFEFFdate, a ,\"b, c\",\"say \"\"hi\"\"\"\r\n" + "\n" + "   \n" + "2020-01-02,1.5,,n/a\n"
+        + "# comment\n" + "x,\"\",y # trailing\n" + "last,line";
+    List<List<String>> lines = readAll(reader(csv).setCommentChar('#'));
+    assertEquals(4, lines.size());
+    assertEquals(list("date", "a", "b, c", "say \"hi\""), lines.get(0));
+    assertEquals(list("2020-01-02", "1.5", "", "n/a"), lines.get(1));
+    assertEquals(list("x", "", "y"), lines.get(2));
+    assertEquals(list("last", "line"), lines.get(3));
+
+    // Without a comment character, '#' is just another character.
+    lines = readAll(reader("# not a comment,1\n"));
+    assertEquals(list("# not a comment", "1"), lines.get(0));
+
+    // Split on any sequence of commas and whitespace.
+    lines = readAll(reader("1990-01-01  4.5\n1990-02-01,\t4.6 \n").setSplitOnWhitespace(true));
+    assertEquals(list("1990-01-01", "4.5"), lines.get(0));
+    assertEquals(list("1990-02-01", "4.6"), lines.get(1));
+  }
+
+  @Test
+  public void testValues() throws IOException
+  {
+    CSVReader in = reader("2020-01-02,1990/12/31,2017-10,-2.5e-3,none,N/A,.,ND,,abc,-42,Date");
+    assertTrue(in.next());
+    assertEquals(TimeLib.toMs(2020, 1, 2), in.getTime(0));
+    assertEquals(LocalDate.of(1990, 12, 31), in.getDate(1));
+    assertEquals(TimeLib.toMs(2017, 10, 1), in.getTime(2));
+    assertEquals(-2.5e-3, in.getDouble(3), 0.0);
+    for (int i = 4; i <= 8; ++i) {
+      assertTrue(in.isMissing(i));
+      assertTrue(Double.isNaN(in.getDouble(i)));
+      assertEquals(7.0, in.getDouble(i, 7.0), 0.0);
+      try {
+        in.getRequiredDouble(i);
+        fail();
+      } catch (NumberFormatException e) {}
+    }
+    assertEquals(-2.5e-3, in.getRequiredDouble(3), 0.0);
+    assertTrue(in.isEmpty(8));
+    assertFalse(in.isMissing(9));
+    assertEquals(7.0, in.getDouble(9, 7.0), 0.0);
+    assertEquals(-42, in.getInt(10));
+    assertTrue(in.equalsIgnoreCase(11, "date"));
+    assertTrue(in.startsWithIgnoreCase(11, "DA"));
+    assertFalse(in.equalsIgnoreCase(11, "dat"));
+    assertFalse(in.next());
+
+    for (String bad : new String[] { "abc", "2020-13-01", "2020-01-02T00:00", "1.2.3", "1e" }) {
+      in = reader(bad);
+      assertTrue(in.next());
+      try {
+        if (bad.startsWith("2020")) in.getTime(0);
+        else in.getDouble(0);
+        fail(bad);
+      } catch (NumberFormatException e) {}
+    }
+  }
+
+  @Test
+  public void testParseDouble() throws IOException
+  {
+    Random rng = new Random(1234);
+    StringBuilder sb = new StringBuilder();
+    List<String> expected = new ArrayList<>();
+    for (int i = 0; i < 20000; ++i) {
+      double x = Math.exp(rng.nextGaussian() * 10) * (rng.nextBoolean() ? 1 : -1);
+      String s;
+      switch (i % 5) {
+      case 0:
+        s = Double.toString(x);
+        break;
+      case 1:
+        s = String.format(Locale.US, "%.4f", x);
+        break;
+      case 2:
+        s = String.format(Locale.US, "%.17e", x);
+        break;
+      case 3:
+        s = String.format(Locale.US, "%.2e", x);
+        break;
+      default:
+        s = Long.toString((long) (x * 1000));
+      }
+      expected.add(s);
+      sb.append(s);
+      sb.append(i % 10 == 9 ? "\n" : ",");
+    }
+
+    // Small chunks to make sure lines crossing buffer boundaries are handled correctly.
+    InputStream stream = new ChunkedInputStream(sb.toString().getBytes(StandardCharsets.UTF_8), 1000);
+    int k = 0;
+    try (CSVReader in = new CSVReader(stream)) {
+      while (in.next()) {
+        assertEquals(10, in.getNumFields());
+        for (int i = 0; i < in.getNumFields(); ++i, ++k) {
+          String s = expected.get(k);
+          assertEquals(s, Double.parseDouble(s), in.getDouble(i), 0.0);
+        }
+      }
+    }
+    assertEquals(expected.size(), k);
+  }
+
+  @Test
+  public void testLongLines() throws IOException
+  {
+    // Lines longer than the default buffer size must be handled by growing the buffer.
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 3; ++i) {
+      for (int j = 0; j < 50000; ++j) {
+        if (j > 0) sb.append(',');
+        sb.append(i + j);
+      }
+      sb.append('\n');
+    }
+    try (CSVReader in = new CSVReader(new ByteArrayInputStream(sb.toString().getBytes(StandardCharsets.UTF_8)))) {
+      for (int i = 0; i < 3; ++i) {
+        assertTrue(in.next());
+        assertEquals(i + 1, in.getLineNumber());
+        assertEquals(50000, in.getNumFields());
+        assertEquals(i, in.getInt(0));
+        assertEquals(i + 49999, in.getInt(49999));
+      }
+      assertFalse(in.next());
+    }
+  }
+
+  @Test
+  public void testLoaders() throws IOException
+  {
+    File file = File.createTempFile("test-csv-", ".csv");
+    try {
+      Files.write(file.toPath(), list("\"DATE\",\"VALUE\"", "1990-01-01,7.5", "1990-02-01,.", "1990-03-01 7.25"));
+      Sequence seq = DataIO.loadDateValueCSV(file);
+      assertEquals(2, seq.length());
+      assertEquals(TimeLib.toMs(1990, 1, 1), seq.getStartMS());
+      assertEquals(TimeLib.toMs(1990, 3, 1), seq.getEndMS());
+      assertEquals(7.25, seq.getLast(0), 0.0);
+
+      Files.write(file.toPath(), list("# comment", "Date,\"A\",B", "2000-02-01,1,None", "2000-01-01,2.5,3"));
+      seq = DataIO.loadCSV(file, null);
+      assertEquals(list("A", "B"), seq.getDimNames());
+      assertEquals(2, seq.length());
+      assertEquals(TimeLib.toMs(2000, 1, 1), seq.getStartMS());
+      assertEquals(2.5, seq.get(0, 0), 0.0);
+      assertTrue(Double.isNaN(seq.get(1, 1)));
+
+      // Rows with a blank price are skipped.
+      Files.write(file.toPath(), list("Date,Open,High,Low,Close,Volume,Adj Close", "2000-01-03,1,2,0.5,1.5,100,1.5",
+          "2000-01-04,1,2,0.5,,100,1.5", "2000-01-05,1,2,0.5,1.25,100,1.25"));
+      seq = YahooIO.loadData(file);
+      assertEquals(2, seq.length());
+      assertEquals(TimeLib.toMs(2000, 1, 5), seq.getEndMS());
+      assertEquals(1.25, seq.getLast(FinLib.Close), 0.0);
+    } finally {
+      file.delete();
+    }
+  }
+}
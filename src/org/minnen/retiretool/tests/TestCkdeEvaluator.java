@@ -0,0 +1,118 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.time.Duration;
+import java.time.Month;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.minnen.retiretool.ckde.CkdeEvaluator;
+import org.minnen.retiretool.ckde.ExploreCKDE;
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.ml.Example;
+import org.minnen.retiretool.ml.distance.DistanceMetric;
+import org.minnen.retiretool.ml.distance.WeightedL2;
+import org.minnen.retiretool.ml.kernel.EpanechnikovKernel;
+import org.minnen.retiretool.ml.kernel.Kernel;
+import org.minnen.retiretool.predictor.features.FeatureSet;
+import org.minnen.retiretool.predictor.features.Momentum;
+import org.minnen.retiretool.predictor.features.Momentum.CompoundPeriod;
+import org.minnen.retiretool.predictor.features.Momentum.ReturnOrMul;
+import org.minnen.retiretool.predictor.features.StdDev;
+import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.TimeLib;
+
+public class TestCkdeEvaluator
+{
+  private static final String assetName = "TestCkdeEvaluator";
+
+  /** Add a random walk (one price per business day) to the CKDE store if it isn't already there. */
+  private static synchronized Sequence getSyntheticSeries()
+  {
+    if (ExploreCKDE.store.hasName(assetName)) return ExploreCKDE.store.get(assetName);
+    Random rng = new Random(1234);
+    Sequence seq = new Sequence(assetName);
+    long time = TimeLib.toMs(2000, Month.JANUARY, 3);
+    double price = 100.0;
+    for (int i = 0; i < 2000; ++i) {
+      FeatureVec v = new FeatureVec(FinLib.AdjClose + 1);
+      v.fill(price);
+      seq.addData(v, time);
+      price *= 1.0 + 0.0003 + rng.nextGaussian() * 0.01;
+      time = TimeLib.plusBusinessDays(time, 1);
+    }
+    ExploreCKDE.store.add(seq);
+    return seq;
+  }
+
+  @Test
+  public void testMatchesCalcLogProb()
+  {
+    Sequence seq = getSyntheticSeries();
+    long timeStart = TimeLib.toNextBusinessDay(seq.getTimeMS(300));
+    long timeEnd = seq.getEndMS();
+
+    Momentum mom1 = new Momentum(20, 1, 120, 100, ReturnOrMul.Return, CompoundPeriod.Weekly, FinLib.AdjClose);
+    Momentum mom2 = new Momentum(60, 1, 250, 200, ReturnOrMul.Return, CompoundPeriod.Weekly, FinLib.AdjClose);
+    FeatureSet features = new FeatureSet(mom1, mom2);
+    DistanceMetric metric = new WeightedL2(new double[] { 0.7, 0.3 });
+    Kernel kernel = new EpanechnikovKernel();
+    double fraction = 0.2;
+    long delay = Duration.ofDays(180).toMillis();
+    double[] bandwidths = new double[] { 0.3, 1.0, 2.5 };
+
+    CkdeEvaluator serial = new CkdeEvaluator(assetName, features, metric, kernel, fraction, delay, timeStart, timeEnd,
+        new ForkJoinPool(1));
+    assertTrue(serial.size() > 500);
+    double[] logProbs = serial.logProb(bandwidths);
+    for (int i = 0; i < bandwidths.length; ++i) {
+      double expected = ExploreCKDE.CalcLogProb(assetName, features, metric, kernel, bandwidths[i], fraction, delay,
+          timeStart, timeEnd);
+      assertEquals(expected, logProbs[i], 0.0);
+      assertEquals(expected, serial.logProb(bandwidths[i]), 0.0);
+    }
+
+    // Same features in a new feature set should reuse the cached examples.
+    CkdeEvaluator parallel = new CkdeEvaluator(assetName, new FeatureSet(mom1, mom2), metric, kernel, fraction, delay,
+        timeStart, timeEnd, new ForkJoinPool(4));
+    assertSame(serial.examples, parallel.examples);
+    assertArrayEquals(logProbs, parallel.logProb(bandwidths), 0.0);
+  }
+
+  @Test
+  public void testCacheKey()
+  {
+    Sequence seq = getSyntheticSeries();
+    long timeStart = TimeLib.toNextBusinessDay(seq.getTimeMS(300));
+    long timeEnd = seq.getEndMS();
+
+    // Same name but different configurations must not share examples.
+    Momentum ret = new Momentum(20, 1, 120, 100, ReturnOrMul.Return, CompoundPeriod.Weekly, FinLib.AdjClose);
+    Momentum mul = new Momentum(20, 1, 120, 100, ReturnOrMul.Mul, CompoundPeriod.Weekly, FinLib.AdjClose);
+    Momentum open = new Momentum(20, 1, 120, 100, ReturnOrMul.Return, CompoundPeriod.Weekly, FinLib.Open);
+    assertEquals(ret.toString(), mul.toString());
+    assertNotEquals(ret.getKey(), mul.getKey());
+    assertNotEquals(ret.getKey(), open.getKey());
+    List<Example> retExamples = CkdeEvaluator.getExamples(assetName, ret, timeStart, timeEnd);
+    List<Example> mulExamples = CkdeEvaluator.getExamples(assetName, mul, timeStart, timeEnd);
+    assertNotSame(retExamples, mulExamples);
+    assertEquals(retExamples.get(0).x.get(0), (mulExamples.get(0).x.get(0) - 1.0) * 100.0, 1e-6);
+    StdDev sdev1 = new StdDev(20, 1.0, FinLib.AdjClose);
+    StdDev sdev2 = new StdDev(40, 1.0, FinLib.AdjClose);
+    assertNotEquals(sdev1.getKey(), sdev2.getKey());
+    assertNotEquals(new FeatureSet(ret).getKey(), new FeatureSet(mul).getKey());
+
+    // Least recently used lists are dropped once the cache is full.
+    CkdeEvaluator.setMaxCachedExamples(1);
+    try {
+      assertSame(mulExamples, CkdeEvaluator.getExamples(assetName, mul, timeStart, timeEnd));
+      assertNotSame(retExamples, CkdeEvaluator.getExamples(assetName, ret, timeStart, timeEnd));
+    } finally {
+      CkdeEvaluator.setMaxCachedExamples(8);
+    }
+  }
+}
@@ -0,0 +1,81 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.minnen.retiretool.data.AssetUniverse;
+import org.minnen.retiretool.data.DiscreteDistribution;
+
+public class TestDiscreteDistribution
+{
+  @Test
+  public void testUniverse()
+  {
+    AssetUniverse universe = AssetUniverse.of("stock", "bonds", "gold");
+    assertSame(universe, AssetUniverse.of("stock", "bonds", "gold"));
+    assertNotSame(universe, AssetUniverse.of("bonds", "stock", "gold"));
+    assertEquals(3, universe.size());
+    assertEquals(1, universe.indexOf("bonds"));
+    assertEquals(-1, universe.indexOf("cash"));
+    assertEquals(-1, universe.indexOf(null));
+
+    AssetUniverse extended = universe.extend("gold", "cash");
+    assertEquals(4, extended.size());
+    assertEquals("cash", extended.getName(3));
+    assertTrue(universe.isPrefixOf(extended));
+    assertFalse(extended.isPrefixOf(universe));
+    assertSame(universe, universe.extend("stock"));
+
+    DiscreteDistribution dist = new DiscreteDistribution(universe);
+    assertEquals(3, dist.size());
+    assertTrue(dist.hasNames());
+    dist.set("gold", 0.25);
+    dist.set(0, "stock", 0.75);
+    assertEquals(2, dist.find("gold"));
+    assertEquals(0.75, dist.weight("stock"), 0.0);
+    assertEquals(0.0, dist.get("cash"), 0.0);
+    try {
+      dist.set(0, "cash", 1.0);
+      fail();
+    } catch (IllegalArgumentException e) {}
+
+    // Copies share the universe but not the weights.
+    DiscreteDistribution copy = new DiscreteDistribution(dist);
+    assertSame(universe, copy.universe);
+    assertSame(dist.names, copy.names);
+    copy.weights[1] = 0.5;
+    assertEquals(0.0, dist.weights[1], 0.0);
+    copy.copyFrom(dist);
+    assertArrayEquals(dist.weights, copy.weights, 0.0);
+  }
+
+  @Test
+  public void testIsSimilar()
+  {
+    AssetUniverse universe = AssetUniverse.of("a", "b", "c");
+    AssetUniverse extended = universe.extend("cash");
+    Random rng = new Random(1234);
+    for (int iter = 0; iter < 1000; ++iter) {
+      DiscreteDistribution x = new DiscreteDistribution(universe);
+      DiscreteDistribution y = new DiscreteDistribution(extended);
+      for (int i = 0; i < y.size(); ++i) {
+        if (i < x.size()) x.weights[i] = rng.nextInt(3) * 0.05;
+        y.weights[i] = rng.nextInt(3) * 0.05;
+      }
+
+      // Unbound copies use the name-based comparison.
+      DiscreteDistribution ux = new DiscreteDistribution(x.names.clone(), x.weights);
+      DiscreteDistribution uy = new DiscreteDistribution(y.names.clone(), y.weights);
+      assertNull(ux.universe);
+      for (double eps : new double[] { 0.01, 0.07 }) {
+        boolean expected = ux.isSimilar(uy, eps);
+        assertEquals(expected, uy.isSimilar(ux, eps));
+        assertEquals(expected, x.isSimilar(y, eps));
+        assertEquals(expected, y.isSimilar(x, eps));
+        assertEquals(expected, x.isSimilar(uy, eps));
+      }
+    }
+  }
+}
@@ -3,7 +3,9 @@ package org.minnen.retiretool.tests;
 import static org.junit.Assert.assertEquals;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Test;
 import org.minnen.retiretool.ckde.KDE;
@@ -73,4 +75,91 @@ public class TestKDE
     double diff = kde.density(0.2) - kde.density(0.2);
     assertEquals(0.0, diff, 0.001);
   }
+
+  /** CDF computed the way KDE.cdf() used to (linear sum below the window, nearest entry in the lookup table). */
+  private static double referenceCdf(double[] sorted, double[] weights, double sd, double x)
+  {
+    double cdf = 0.0;
+    for (int i = 0; i < sorted.length; ++i) {
+      double u = (x - sorted[i]) / sd;
+      if (u >= 5.0) {
+        cdf += weights[i];
+      } else if (u > -5.0) {
+        int j = (int) Math.round((u + 5.0) / 10.0 * KDE.cdflut.length);
+        cdf += (j < KDE.cdflut.length ? KDE.cdflut[j] : 1.0) * weights[i];
+      }
+    }
+    return cdf;
+  }
+
+  /** Percentile computed the way KDE.percentile() used to (bisection over the reference CDF). */
+  private static double referencePercentile(double[] sorted, double[] weights, double sd, double pct)
+  {
+    int n = sorted.length;
+    double range = sorted[n - 1] - sorted[0];
+    double a = sorted[0] - range;
+    double b = sorted[n - 1] + range;
+    while (b - a > 0.0005) {
+      double m = (a + b) / 2.0;
+      if (referenceCdf(sorted, weights, sd, m) < pct / 100.0) a = m;
+      else b = m;
+    }
+    return (a + b) / 2.0;
+  }
+
+  @Test
+  public void testMatchesReference()
+  {
+    Random rng = new Random(1234);
+    for (int n : new int[] { 1, 10, 300, 2000 }) {
+      List<Neighbor> neighbors = new ArrayList<>();
+      double[] values = new double[n];
+      double[] weights = new double[n];
+      double wsum = 0.0;
+      for (int i = 0; i < n; ++i) {
+        values[i] = rng.nextGaussian() * 10.0 + (rng.nextBoolean() ? 5.0 : -3.0);
+        weights[i] = 0.1 + rng.nextDouble();
+        wsum += weights[i];
+        neighbors.add(new Neighbor(values[i], 0.0, weights[i], 0L));
+      }
+      double sd = (n == 1 ? 1.0 : 0.5 + rng.nextDouble() * 2.0);
+      KDE kde = new KDE(neighbors, sd);
+      KDE kde2 = new KDE(values, weights, sd);
+
+      // Reference expects sorted values with normalized weights.
+      Integer[] order = new Integer[n];
+      for (int i = 0; i < n; ++i) {
+        order[i] = i;
+      }
+      Arrays.sort(order, (a, b) -> Double.compare(values[a], values[b]));
+      double[] sorted = new double[n];
+      double[] normalized = new double[n];
+      for (int i = 0; i < n; ++i) {
+        sorted[i] = values[order[i]];
+        normalized[i] = weights[order[i]] / wsum;
+      }
+
+      for (int i = 0; i < 200; ++i) {
+        double x = sorted[0] - 5.0 + rng.nextDouble() * (sorted[n - 1] - sorted[0] + 10.0);
+        double expected = referenceCdf(sorted, normalized, sd, x);
+        assertEquals(expected, kde.cdf(x), 1e-4);
+        assertEquals(kde.cdf(x), kde2.cdf(x), 1e-12);
+      }
+
+      double[] pcts = new double[99];
+      for (int i = 0; i < pcts.length; ++i) {
+        pcts[i] = 99 - i; // batch API accepts any order
+      }
+      double[] results = kde.percentiles(pcts);
+      for (int i = 0; i < pcts.length; ++i) {
+        // Reference bisection stops within 0.00025 of the root (and has an empty search range for one value).
+        if (n > 1) {
+          double expected = referencePercentile(sorted, normalized, sd, pcts[i]);
+          assertEquals(expected, results[i], 0.0005);
+        }
+        assertEquals(pcts[i] / 100.0, kde.cdf(results[i]), 1e-6);
+        assertEquals(results[i], kde.percentile(pcts[i]), 1e-6);
+      }
+    }
+  }
 }
@@ -2,6 +2,8 @@ package org.minnen.retiretool.tests;
 
 import static org.junit.Assert.*;
 
+import java.util.Random;
+
 import org.junit.Test;
 import org.minnen.retiretool.util.Library;
 
@@ -72,6 +74,26 @@ public class TestLibrary
     assertArrayEquals(expected, a, 0.0);
   }
 
+  @Test
+  public void testArgsort()
+  {
+    double[] a = new double[] { 5, -3, 2, 0.01, 1e6, 2 };
+    double[] orig = a.clone();
+    assertArrayEquals(new int[] { 1, 3, 2, 5, 0, 4 }, Library.argsort(a));
+    assertArrayEquals(orig, a, 0.0);
+
+    // Large array with many ties: indices must be sorted by (value, index).
+    Random rng = new Random(1234);
+    a = new double[5000];
+    for (int i = 0; i < a.length; ++i) {
+      a[i] = rng.nextInt(100);
+    }
+    int[] ii = Library.argsort(a);
+    for (int i = 1; i < ii.length; ++i) {
+      assertTrue(a[ii[i - 1]] < a[ii[i]] || (a[ii[i - 1]] == a[ii[i]] && ii[i - 1] < ii[i]));
+    }
+  }
+
   @Test
   public void testReorderDouble()
   {
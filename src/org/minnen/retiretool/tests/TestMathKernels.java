@@ -0,0 +1,92 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.minnen.retiretool.util.Library;
+import org.minnen.retiretool.util.MathKernels;
+
+public class TestMathKernels
+{
+  private static double[] genArray(Random rng, int n)
+  {
+    double[] a = new double[n];
+    for (int i = 0; i < n; ++i) {
+      a[i] = 100.0 + rng.nextGaussian() * 10.0;
+    }
+    return a;
+  }
+
+  /** Compare the selected kernels (vectorized when available) against the scalar kernels. */
+  @Test
+  public void testAgreement()
+  {
+    MathKernels scalar = MathKernels.scalar();
+    MathKernels kernels = MathKernels.get();
+    Random rng = new Random(1234);
+    for (int n = 1; n < 70; ++n) {
+      double[] a = genArray(rng, n);
+      double[] b = genArray(rng, n);
+      double eps = 1e-12 * n;
+
+      double[] x = a.clone();
+      double[] y = a.clone();
+      scalar.add(x, b, n);
+      kernels.add(y, b, n);
+      assertArrayEquals(x, y, 0.0);
+      scalar.mul(x, b, n - 1);
+      kernels.mul(y, b, n - 1);
+      assertArrayEquals(x, y, 0.0);
+
+      double dot = scalar.dot(a, b, n);
+      assertEquals(1.0, kernels.dot(a, b, n) / dot, eps);
+      assertEquals(1.0, kernels.norm2(a, n) / scalar.norm2(a, n), eps);
+      assertEquals(1.0, kernels.dist2(a, b, n) / scalar.dist2(a, b, n), eps);
+
+      double ma = Library.mean(a);
+      double mb = Library.mean(b);
+      double ss = scalar.centeredSumSq(a, ma);
+      assertEquals(ss, kernels.centeredSumSq(a, ma), Math.abs(ss) * eps + 1e-9);
+      double cd = scalar.centeredDot(a, ma, b, mb);
+      assertEquals(cd, kernels.centeredDot(a, ma, b, mb), Math.abs(cd) * eps + 1e-9);
+    }
+  }
+
+  @Test
+  public void testCovariance()
+  {
+    Random rng = new Random(4321);
+    double[][] r = new double[12][];
+    for (int i = 0; i < r.length; ++i) {
+      r[i] = genArray(rng, 253);
+    }
+    r[3] = new double[r[3].length]; // zero variance => zero correlation
+
+    double[][] cov = Library.covariance(r);
+    double[][] corr = Library.correlation(r);
+    for (int i = 0; i < r.length; ++i) {
+      for (int j = 0; j < r.length; ++j) {
+        double[] a = r[i], b = r[j];
+        double ma = Library.mean(a), mb = Library.mean(b);
+        double expected = 0.0;
+        for (int k = 0; k < a.length; ++k) {
+          expected += (a[k] - ma) * (b[k] - mb);
+        }
+        expected /= a.length - 1;
+        assertEquals(expected, cov[i][j], 1e-9);
+        assertEquals(expected, Library.covariance(a, b), 1e-9);
+
+        if (i == j) {
+          assertEquals(1.0, corr[i][j], 0.0);
+          assertEquals(expected, Library.variance(a), 1e-9);
+        } else {
+          assertEquals(Library.correlation(a, b), corr[i][j], 1e-12);
+          if (i == 3 || j == 3) assertEquals(0.0, corr[i][j], 0.0);
+          else assertEquals(expected / (Library.stdev(a) * Library.stdev(b)), corr[i][j], 1e-9);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,197 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.minnen.retiretool.data.DiscreteDistribution;
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.util.Random;
+import org.minnen.retiretool.util.TimeLib;
+import org.minnen.retiretool.vanguard.MonthlyBatchRunner;
+import org.minnen.retiretool.vanguard.MonthlyRunner;
+import org.minnen.retiretool.vanguard.PortfolioRunner;
+import org.minnen.retiretool.vanguard.PortfolioSearchConfig;
+import org.minnen.retiretool.vanguard.SummaryTools;
+
+public class TestMonthlyBatchRunner
+{
+  private static final int nMonths        = 240;
+  private static final int durStatsMonths = 60;
+
+  /** @return monthly return multipliers for each fund. */
+  private static List<Sequence> buildReturns(int nFunds, Random rng)
+  {
+    List<Sequence> seqs = new ArrayList<>();
+    LocalDate start = LocalDate.of(1990, Month.JANUARY, 1);
+    for (int i = 0; i < nFunds; ++i) {
+      Sequence seq = new Sequence(String.format("F%d", i));
+      for (int t = 0; t < nMonths; ++t) {
+        seq.addData(1.006 + 0.04 * rng.nextGaussian(), TimeLib.toMs(start.plusMonths(t)));
+      }
+      assertTrue(TimeLib.isMonthly(seq));
+      seqs.add(seq);
+    }
+    return seqs;
+  }
+
+  /** @return random portfolios with 1-5 funds (in units of 10%) plus some zero weights that are removed. */
+  private static List<DiscreteDistribution> buildPortfolios(int n, String[] names, Random rng)
+  {
+    List<DiscreteDistribution> portfolios = new ArrayList<>();
+    for (int iPortfolio = 0; iPortfolio < n; ++iPortfolio) {
+      DiscreteDistribution portfolio = new DiscreteDistribution(names);
+      int nAssets = 1 + rng.nextInt(5);
+      int left = 10;
+      for (int i = 0; i < nAssets; ++i) {
+        int k = (i == nAssets - 1 ? left : 1 + rng.nextInt(left - (nAssets - i - 1)));
+        portfolio.weights[rng.nextInt(names.length)] += k / 10.0;
+        left -= k;
+      }
+      portfolios.add(portfolio);
+    }
+    return portfolios;
+  }
+
+  private static void assertSameStats(List<DiscreteDistribution> portfolios, MonthlyRunner runner,
+      List<FeatureVec> stats)
+  {
+    assertEquals(portfolios.size(), stats.size());
+    for (int i = 0; i < portfolios.size(); ++i) {
+      FeatureVec expected = runner.run(portfolios.get(i));
+      FeatureVec v = stats.get(i);
+      assertEquals(expected.getName(), v.getName());
+      assertArrayEquals(expected.get(), v.get(), 0.0);
+    }
+  }
+
+  @Test
+  public void testMatchesMonthlyRunner()
+  {
+    Random rng = new Random(1234);
+    List<Sequence> seqs = buildReturns(10, rng);
+    String[] names = seqs.stream().map(Sequence::getName).toArray(String[]::new);
+    List<DiscreteDistribution> portfolios = buildPortfolios(2 * MonthlyBatchRunner.BLOCK_SIZE + 37, names, rng);
+
+    // Default schedule: rebalance every six months.
+    MonthlyRunner runner = new MonthlyRunner(seqs, durStatsMonths);
+    MonthlyBatchRunner batchRunner = new MonthlyBatchRunner(seqs, durStatsMonths);
+    List<FeatureVec> stats = batchRunner.run(portfolios);
+    assertSameStats(portfolios, runner, stats);
+    assertArrayEquals(stats.get(0).get(), batchRunner.run(portfolios.get(0)).get(), 0.0);
+
+    // Blocks are independent so a pool gives identical results.
+    ForkJoinPool pool = new ForkJoinPool(3);
+    List<FeatureVec> parallel = batchRunner.setPool(pool).run(portfolios);
+    pool.shutdown();
+    for (int i = 0; i < stats.size(); ++i) {
+      assertArrayEquals(stats.get(i).get(), parallel.get(i).get(), 0.0);
+    }
+
+    // Rebalance once a year or when a position drifts 5% from its target.
+    runner.setRebalance(12, 0.05);
+    batchRunner.setPool(null).setRebalance(12, 0.05);
+    assertSameStats(portfolios, runner, batchRunner.run(portfolios));
+
+    // Duration shorter than a year uses simple returns.
+    runner = new MonthlyRunner(seqs, 6);
+    assertSameStats(portfolios, runner, new MonthlyBatchRunner(seqs, 6).run(portfolios));
+
+    // Duration longer than the data uses the total return of the whole period.
+    runner = new MonthlyRunner(seqs, nMonths + 12);
+    assertSameStats(portfolios, runner, new MonthlyBatchRunner(seqs, nMonths + 12).run(portfolios));
+  }
+
+  @Test
+  public void testWeightMatrix()
+  {
+    Random rng = new Random(5678);
+    List<Sequence> seqs = buildReturns(8, rng);
+    String[] names = seqs.stream().map(Sequence::getName).toArray(String[]::new);
+    List<DiscreteDistribution> portfolios = buildPortfolios(MonthlyBatchRunner.BLOCK_SIZE + 11, names, rng);
+
+    // Rows of the weight matrix are in the same order as the sequences.
+    MonthlyBatchRunner batchRunner = new MonthlyBatchRunner(seqs, durStatsMonths);
+    assertEquals(names.length, batchRunner.getNumFunds());
+    assertEquals(3, batchRunner.getFundIndex("F3"));
+    assertEquals(-1, batchRunner.getFundIndex("Missing"));
+    double[][] weights = new double[portfolios.size()][];
+    for (int i = 0; i < weights.length; ++i) {
+      weights[i] = portfolios.get(i).weights.clone();
+    }
+    weights[5] = null;
+    List<FeatureVec> stats = batchRunner.run(weights);
+    assertNull(stats.get(5));
+    for (int i = 0; i < weights.length; ++i) {
+      if (i == 5) continue;
+      FeatureVec expected = batchRunner.run(portfolios.get(i));
+      assertEquals(expected.getName(), stats.get(i).getName());
+      assertArrayEquals(expected.get(), stats.get(i).get(), 0.0);
+    }
+  }
+
+  @Test
+  public void testSavePortfolioStats() throws IOException
+  {
+    List<Sequence> seqs = buildReturns(6, new Random(99));
+    PortfolioSearchConfig config = new PortfolioSearchConfig(1, 4, 10, 50, 10);
+
+    // Symbols in a different order than the sequences.
+    String[] prevSymbols = SummaryTools.fundSymbols;
+    File file = File.createTempFile("test-portfolios-", ".txt");
+    try {
+      SummaryTools.fundSymbols = new String[] { "F3", "F0", "F5", "F1", "F4", "F2" };
+      PortfolioRunner runner = new MonthlyRunner(seqs, durStatsMonths);
+      List<FeatureVec> expected = SummaryTools.savePortfolioStats(runner, config, file);
+      List<String> expectedLines = Files.readAllLines(file.toPath());
+      MonthlyBatchRunner batchRunner = new MonthlyBatchRunner(seqs, durStatsMonths);
+      List<FeatureVec> stats = SummaryTools.savePortfolioStats(batchRunner, config, file);
+      assertTrue(stats.size() > MonthlyBatchRunner.BLOCK_SIZE);
+      assertEquals(expected.size(), stats.size());
+      List<String> lines = Files.readAllLines(file.toPath());
+      assertEquals(expectedLines.size(), lines.size());
+      for (int i = 0; i < stats.size(); ++i) {
+        DiscreteDistribution a = DiscreteDistribution.fromStringWithNames(expected.get(i).getName());
+        DiscreteDistribution b = DiscreteDistribution.fromStringWithNames(stats.get(i).getName());
+        assertTrue(a.isSimilar(b, 1e-9));
+        assertArrayEquals(expected.get(i).get(), stats.get(i).get(), 1e-9);
+      }
+
+      // Unknown symbols are rejected before anything is simulated.
+      SummaryTools.fundSymbols = new String[] { "F0", "Missing" };
+      try {
+        SummaryTools.savePortfolioStats(batchRunner, config, file);
+        fail();
+      } catch (IllegalArgumentException e) {
+        assertTrue(e.getMessage().contains("Missing"));
+      }
+    } finally {
+      SummaryTools.fundSymbols = prevSymbols;
+      file.delete();
+    }
+  }
+
+  @Test
+  public void testUnknownFund()
+  {
+    List<Sequence> seqs = buildReturns(3, new Random(42));
+    DiscreteDistribution portfolio = new DiscreteDistribution(new String[] { "F0", "Missing" });
+    portfolio.weights[0] = portfolio.weights[1] = 0.5;
+    List<DiscreteDistribution> portfolios = new ArrayList<>();
+    portfolios.add(new DiscreteDistribution(new String[] { "F2" }, 1.0));
+    portfolios.add(portfolio);
+
+    List<FeatureVec> stats = new MonthlyBatchRunner(seqs, durStatsMonths).run(portfolios);
+    assertNotNull(stats.get(0));
+    assertNull(stats.get(1));
+  }
+}
@@ -0,0 +1,154 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.minnen.retiretool.ckde.ExploreCKDE;
+import org.minnen.retiretool.ckde.Neighbor;
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.ml.Example;
+import org.minnen.retiretool.ml.distance.DistanceMetric;
+import org.minnen.retiretool.ml.distance.KDTree;
+import org.minnen.retiretool.ml.distance.L1;
+import org.minnen.retiretool.ml.distance.L2;
+import org.minnen.retiretool.ml.distance.NeighborIndex;
+import org.minnen.retiretool.ml.distance.NeighborIndex.Match;
+import org.minnen.retiretool.ml.distance.VPTree;
+import org.minnen.retiretool.ml.distance.WeightedL2;
+import org.minnen.retiretool.ml.kernel.EpanechnikovKernel;
+import org.minnen.retiretool.ml.kernel.Kernel;
+
+public class TestNeighborIndex
+{
+  private static final long DAY = 24 * 60 * 60 * 1000L;
+
+  /** Random examples (one per day) with coarse values so that there are many ties. */
+  private static List<Example> genExamples(Random rng, int n, int D)
+  {
+    List<Example> examples = new ArrayList<>();
+    for (int i = 0; i < n; ++i) {
+      FeatureVec x = new FeatureVec(D);
+      for (int d = 0; d < D; ++d) {
+        x.set(d, rng.nextInt(20) * 0.5);
+      }
+      x.setTime(i * DAY);
+      examples.add(Example.forRegression(x, rng.nextGaussian()));
+    }
+    return examples;
+  }
+
+  /** Brute force: stable sort of all eligible examples by distance. */
+  private static List<Match> bruteForce(List<Example> examples, DistanceMetric metric, FeatureVec q, long delay)
+  {
+    List<Match> all = new ArrayList<>();
+    for (int i = 0; i < examples.size(); ++i) {
+      long dtime = examples.get(i).getTime() - q.getTime();
+      if (dtime >= 0 && dtime < delay) continue;
+      all.add(new Match(i, metric.distance(examples.get(i).x, q)));
+    }
+    Collections.sort(all, (a, b) -> Double.compare(a.distance, b.distance));
+    return all;
+  }
+
+  private static void assertMatches(List<Match> expected, List<Match> actual)
+  {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); ++i) {
+      assertEquals(expected.get(i).index, actual.get(i).index);
+      assertEquals(expected.get(i).distance, actual.get(i).distance, 0.0);
+    }
+  }
+
+  @Test
+  public void testAgainstBruteForce()
+  {
+    Random rng = new Random(1234);
+    for (int D : new int[] { 1, 3, 6 }) {
+      List<Example> examples = genExamples(rng, 1500, D);
+      double[] weights = new double[D];
+      for (int d = 0; d < D; ++d) {
+        weights[d] = 0.1 + rng.nextDouble();
+      }
+      DistanceMetric[] metrics = new DistanceMetric[] { new L1(), new L2(), new WeightedL2(weights) };
+      for (DistanceMetric metric : metrics) {
+        List<NeighborIndex> indices = new ArrayList<>();
+        indices.add(NeighborIndex.build(examples, metric));
+        indices.add(new VPTree(examples, metric));
+        if (!(metric instanceof WeightedL2)) indices.add(new KDTree(examples, metric));
+
+        for (int iQuery = 0; iQuery < 40; ++iQuery) {
+          FeatureVec q = examples.get(rng.nextInt(examples.size())).x;
+          long delay = (iQuery % 4 == 0 ? 0 : rng.nextInt(800) * DAY);
+          List<Match> all = bruteForce(examples, metric, q, delay);
+          int k = (iQuery % 5 == 0 ? all.size() + 3 : 1 + rng.nextInt(200));
+          double radius = all.get(rng.nextInt(all.size() / 4)).distance;
+          List<Match> within = new ArrayList<>();
+          for (Match match : all) {
+            if (match.distance <= radius) within.add(match);
+          }
+
+          for (NeighborIndex index : indices) {
+            assertEquals(all.size(), index.countEligible(q.getTime(), delay));
+            assertMatches(all.subList(0, Math.min(k, all.size())), index.nearest(q, k, delay));
+            assertMatches(within, index.withinRadius(q, radius, delay));
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testFindNeighbors()
+  {
+    Random rng = new Random(4321);
+    List<Example> examples = genExamples(rng, 800, 3);
+    WeightedL2 metric = new WeightedL2(new double[] { 0.55, 0.27, 0.18 });
+    Kernel kernel = new EpanechnikovKernel();
+    NeighborIndex index = NeighborIndex.build(examples, metric);
+    long delay = 100 * DAY;
+    for (int i = 0; i < examples.size(); i += 7) {
+      FeatureVec q = examples.get(i).x;
+      List<Neighbor> expected = bruteForceNeighbors(examples, metric, kernel, q, 0.3, delay);
+      List<List<Neighbor>> results = Arrays.asList(ExploreCKDE.findNeighbors(q, examples, metric, kernel, 0.3, delay),
+          ExploreCKDE.findNeighbors(q, index, kernel, 0.3, delay));
+      for (List<Neighbor> nbs : results) {
+        assertEquals(expected.size(), nbs.size());
+        for (int j = 0; j < nbs.size(); ++j) {
+          assertEquals(expected.get(j).time, nbs.get(j).time);
+          assertEquals(expected.get(j).tr, nbs.get(j).tr, 0.0);
+          assertEquals(expected.get(j).distance, nbs.get(j).distance, 0.0);
+          assertEquals(expected.get(j).weight, nbs.get(j).weight, 0.0);
+        }
+      }
+    }
+  }
+
+  /** Original implementation of ExploreCKDE.findNeighbors() (full sort). */
+  private static List<Neighbor> bruteForceNeighbors(List<Example> examples, DistanceMetric metric, Kernel kernel,
+      FeatureVec q, double fraction, long delay)
+  {
+    List<Neighbor> all = new ArrayList<Neighbor>();
+    for (Example example : examples) {
+      long dtime = example.getTime() - q.getTime();
+      if (dtime >= 0 && dtime < delay) continue;
+      double dist = metric.distance(example.x, q);
+      all.add(new Neighbor(example.y, dist, 1.0, example.getTime()));
+    }
+    int nNeighbors = (int) Math.round(all.size() * fraction);
+    Collections.sort(all);
+    List<Neighbor> neighbors = new ArrayList<Neighbor>(all.subList(0, nNeighbors));
+    if (nNeighbors > 0) {
+      double maxDist = neighbors.get(nNeighbors - 1).distance * 1.01;
+      for (Neighbor neighbor : neighbors) {
+        neighbor.weight = kernel.weight(neighbor.distance / maxDist);
+      }
+    }
+    return neighbors;
+  }
+}
@@ -0,0 +1,149 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.ml.ClassificationModel;
+import org.minnen.retiretool.ml.PositiveQuadrant;
+import org.minnen.retiretool.ml.Stump;
+import org.minnen.retiretool.util.Library;
+import org.minnen.retiretool.util.Random;
+
+import smile.classification.Classifier;
+
+public class TestPositiveQuadrant
+{
+  /** Features in [-1, 1]; class 1 if the first two features are large (plus noise). */
+  private static FeatureVec[] genFeatures(Random rng, int n, int D, double[] weights)
+  {
+    FeatureVec[] x = new FeatureVec[n];
+    for (int i = 0; i < n; ++i) {
+      x[i] = new FeatureVec(D);
+      for (int d = 0; d < D; ++d) {
+        x[i].set(d, 2.0 * rng.nextDouble() - 1.0);
+      }
+      x[i].setWeight(weights[rng.nextInt(weights.length)]);
+    }
+    return x;
+  }
+
+  private static int[] genClasses(Random rng, FeatureVec[] x)
+  {
+    int[] y = new int[x.length];
+    for (int i = 0; i < x.length; ++i) {
+      y[i] = (x[i].get(0) > -0.2 && x[i].get(1) + 0.3 * rng.nextGaussian() > 0.0 ? 1 : 0);
+    }
+    return y;
+  }
+
+  /** Greedy selection that scores each candidate quadrant by predicting every example. */
+  private static PositiveQuadrant greedy(FeatureVec[] x, int[] y, int nStumps, double[] thresholds,
+      boolean useWeights)
+  {
+    final int D = x[0].getNumDims();
+    boolean[] used = new boolean[D];
+    PositiveQuadrant posQuad = new PositiveQuadrant();
+    Stump[] stumps = new Stump[nStumps];
+    for (int iStump = 0; iStump < nStumps; ++iStump) {
+      Stump bestStump = null;
+      double bestAccuracy = -1.0;
+      for (int d = 0; d < D; ++d) {
+        if (used[d]) continue;
+        for (double threshold : thresholds) {
+          PositiveQuadrant candidate = new PositiveQuadrant();
+          for (int i = 0; i < iStump; ++i) {
+            candidate.add(stumps[i]);
+          }
+          Stump stump = new Stump(d, threshold);
+          candidate.add(stump);
+          double accuracy = new ClassificationModel(null, candidate).accuracy(x, y, useWeights);
+          if (bestStump == null || accuracy > bestAccuracy) {
+            bestStump = stump;
+            bestAccuracy = accuracy;
+          }
+        }
+      }
+      used[bestStump.iDim] = true;
+      stumps[iStump] = bestStump;
+      posQuad.add(bestStump);
+    }
+    return posQuad;
+  }
+
+  /** Random tries with a fixed threshold of 0.1 (nStumps < D) that score each quadrant by predicting every example. */
+  private static PositiveQuadrant randomTries(FeatureVec[] x, int[] y, int nStumps, int nTries, boolean useWeights)
+  {
+    final int D = x[0].getNumDims();
+    PositiveQuadrant best = null;
+    double bestAccuracy = -1.0;
+    for (int iTry = 0; iTry < nTries; ++iTry) {
+      int[] ii = Arrays.copyOf(Library.shuffle(D), nStumps);
+      Arrays.sort(ii);
+      PositiveQuadrant posQuad = new PositiveQuadrant();
+      for (int d : ii) {
+        posQuad.add(new Stump(d, 0.1));
+      }
+      double accuracy = new ClassificationModel(null, posQuad).accuracy(x, y, useWeights);
+      if (best == null || accuracy > bestAccuracy) {
+        best = posQuad;
+        bestAccuracy = accuracy;
+      }
+    }
+    return best;
+  }
+
+  private static void assertSamePredictions(Classifier<FeatureVec> a, Classifier<FeatureVec> b, FeatureVec[] x)
+  {
+    for (FeatureVec v : x) {
+      assertEquals(a.predict(v), b.predict(v));
+    }
+  }
+
+  @Test
+  public void testGreedy()
+  {
+    Random rng = new Random(1234);
+    // Dyadic weights so that sums are exact in any order; 64 distinct weights exceeds the number of weight buckets.
+    double[] few = new double[] { 0.5, 1.0, 2.0 };
+    double[] many = new double[64];
+    for (int i = 0; i < many.length; ++i) {
+      many[i] = (i + 1) / 64.0;
+    }
+    for (double[] weights : new double[][] { few, many }) {
+      // More than 64 examples so that masks span several words (and the last one is partial).
+      FeatureVec[] x = genFeatures(rng, 1000, 8, weights);
+      int[] y = genClasses(rng, x);
+      for (boolean useWeights : new boolean[] { false, true }) {
+        PositiveQuadrant expected = greedy(x, y, 3, new double[] { 0.0 }, useWeights);
+        Classifier<FeatureVec> posQuad = new PositiveQuadrant.Trainer(3, -1, useWeights).train(x, y);
+        assertEquals(expected.toString(), posQuad.toString());
+        assertSamePredictions(expected, posQuad, x);
+
+        double[] thresholds = new double[] { -0.5, -0.25, 0.0, 0.25 };
+        expected = greedy(x, y, 4, thresholds, useWeights);
+        posQuad = new PositiveQuadrant.Trainer(4, -1, useWeights).setThresholds(thresholds).train(x, y);
+        assertEquals(expected.toString(), posQuad.toString());
+        assertSamePredictions(expected, posQuad, x);
+      }
+    }
+  }
+
+  @Test
+  public void testRandomTries()
+  {
+    Random rng = new Random(5678);
+    FeatureVec[] x = genFeatures(rng, 777, 10, new double[] { 0.25, 1.0 });
+    int[] y = genClasses(rng, x);
+    for (boolean useWeights : new boolean[] { false, true }) {
+      Library.rng.setSeed(42L);
+      PositiveQuadrant expected = randomTries(x, y, 3, 25, useWeights);
+      Library.rng.setSeed(42L);
+      Classifier<FeatureVec> posQuad = new PositiveQuadrant.Trainer(3, 25, useWeights).train(x, y);
+      assertEquals(expected.toString(), posQuad.toString());
+      assertSamePredictions(expected, posQuad, x);
+    }
+  }
+}
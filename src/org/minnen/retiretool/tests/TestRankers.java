@@ -2,9 +2,14 @@ package org.minnen.retiretool.tests;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
 
 import org.junit.Test;
 import org.minnen.retiretool.ml.rank.ColleyRanker;
+import org.minnen.retiretool.ml.rank.SparseColleyRanker;
+import org.minnen.retiretool.util.Random;
 
 public class TestRankers
 {
@@ -26,4 +31,93 @@ public class TestRankers
     final double[] expectedScores = new double[] { 0.6429, 0.6429, 0.5, 0.5, 0.2143 };
     assertArrayEquals(expectedScores, scores, 1e-4);
   }
+
+  /** Random tournament where each pair meets with the given probability and better teams tend to win. */
+  private static int[][] genTournament(Random rng, int N, double density)
+  {
+    int[][] wins = new int[N][N];
+    for (int i = 0; i < N; ++i) {
+      for (int j = i + 1; j < N; ++j) {
+        if (rng.nextDouble() >= density) continue;
+        wins[i][j] = (rng.nextDouble() * N < j - i + N / 2 ? 1 : -1);
+        wins[j][i] = -wins[i][j];
+      }
+    }
+    return wins;
+  }
+
+  @Test
+  public void testSparseColleyRanker()
+  {
+    Random rng = new Random(1234);
+    SparseColleyRanker sparse = new SparseColleyRanker(0, 1e-12);
+    for (int N : new int[] { 5, 50, 400 }) {
+      for (double density : new double[] { 0.01, 0.05, 0.3 }) {
+        int[][] wins = genTournament(rng, N, density);
+        ColleyRanker dense = new ColleyRanker();
+        dense.rank(wins);
+        sparse.setWarmStart(false).rank(wins);
+        assertArrayEquals(dense.getScores(), sparse.getScores(), 1e-8);
+
+        // Same tournament as a list of games.
+        int nGames = 0;
+        int[] w = new int[N * N];
+        int[] l = new int[N * N];
+        for (int i = 0; i < N; ++i) {
+          for (int j = 0; j < N; ++j) {
+            if (wins[i][j] > 0) {
+              w[nGames] = i;
+              l[nGames++] = j;
+            }
+          }
+        }
+        w = Arrays.copyOf(w, nGames);
+        l = Arrays.copyOf(l, nGames);
+        sparse.setWarmStart(false).rank(N, w, l);
+        assertArrayEquals(dense.getScores(), sparse.getScores(), 1e-8);
+
+        // Small tournaments are solved directly by default.
+        SparseColleyRanker fallback = new SparseColleyRanker();
+        fallback.rank(N, w, l);
+        assertEquals(N <= SparseColleyRanker.DEFAULT_MAX_DENSE, fallback.getIterations() == 0);
+        assertArrayEquals(dense.getScores(), fallback.getScores(), 1e-8);
+      }
+    }
+
+    // Ties count as half a win and half a loss.
+    int[] rowPtr = new int[] { 0, 2, 4, 6 };
+    int[] col = new int[] { 1, 2, 0, 2, 0, 1 };
+    byte[] result = new byte[] { 0, 1, 0, 1, -1, -1 };
+    sparse.rank(rowPtr, col, result);
+    double[] scores = sparse.getScores();
+    assertEquals(scores[0], scores[1], 1e-10);
+    assertTrue(scores[0] > scores[2]);
+    assertEquals(1.5, scores[0] + scores[1] + scores[2], 1e-10);
+  }
+
+  @Test
+  public void testSparseColleyWarmStart()
+  {
+    Random rng = new Random(5678);
+    final int N = 2000;
+    int[][] wins = genTournament(rng, N, 0.01);
+    SparseColleyRanker ranker = new SparseColleyRanker();
+    ranker.rank(wins);
+    int nColdIterations = ranker.getIterations();
+
+    // Add a few games and re-rank from the previous scores.
+    for (int k = 0; k < 10; ++k) {
+      int i = rng.nextInt(N);
+      int j = (i + 1 + rng.nextInt(N - 1)) % N;
+      wins[i][j] = (rng.nextBoolean() ? 1 : -1);
+      wins[j][i] = -wins[i][j];
+    }
+    ranker.rank(wins);
+    assertTrue(ranker.getIterations() < nColdIterations);
+
+    SparseColleyRanker cold = new SparseColleyRanker();
+    cold.rank(wins);
+    assertEquals(nColdIterations, cold.getIterations(), 5);
+    assertArrayEquals(cold.getScores(), ranker.getScores(), 1e-8);
+  }
 }
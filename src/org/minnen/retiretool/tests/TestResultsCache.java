@@ -0,0 +1,172 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.junit.Test;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.predictor.config.ConfigConst;
+import org.minnen.retiretool.predictor.config.ConfigSMA;
+import org.minnen.retiretool.predictor.config.PredictorConfig;
+import org.minnen.retiretool.stats.AllStats;
+import org.minnen.retiretool.stats.ComparisonStats;
+import org.minnen.retiretool.stats.CumulativeStats;
+import org.minnen.retiretool.stats.ResultsCache;
+import org.minnen.retiretool.util.TimeLib;
+
+public class TestResultsCache
+{
+  private static AllStats buildStats(double growth)
+  {
+    final int N = 300;
+    double[] a = new double[N];
+    double[] b = new double[N];
+    a[0] = b[0] = 1.0;
+    for (int i = 1; i < N; ++i) {
+      a[i] = a[i - 1] * (1.0 + growth + 0.02 * Math.sin(i));
+      b[i] = b[i - 1] * 1.005;
+    }
+    Sequence returns = AllTests.buildMonthlySequence("returns", a);
+    Sequence baseline = AllTests.buildMonthlySequence("baseline", b);
+
+    AllStats stats = new AllStats();
+    stats.cumulative = CumulativeStats.calc(returns);
+    stats.comparisons.put("baseline", ComparisonStats.calc(returns, baseline, 0.25));
+    return stats;
+  }
+
+  private static void assertStatsEqual(AllStats expected, AllStats actual)
+  {
+    assertEquals(expected.cumulative.cagr, actual.cumulative.cagr, 0.0);
+    assertEquals(expected.cumulative.drawdown, actual.cumulative.drawdown, 0.0);
+    assertEquals(expected.cumulative.devAnnualReturn, actual.cumulative.devAnnualReturn, 0.0);
+    assertArrayEquals(expected.cumulative.annualPercentiles, actual.cumulative.annualPercentiles, 0.0);
+    assertEquals(expected.comparisons.keySet(), actual.comparisons.keySet());
+    for (String name : expected.comparisons.keySet()) {
+      ComparisonStats x = expected.comparisons.get(name);
+      ComparisonStats y = actual.comparisons.get(name);
+      assertEquals(x.durationToResults.keySet(), y.durationToResults.keySet());
+      for (int duration : x.durationToResults.keySet()) {
+        ComparisonStats.Results rx = x.durationToResults.get(duration);
+        ComparisonStats.Results ry = y.durationToResults.get(duration);
+        assertEquals(rx.winPercent1, ry.winPercent1, 0.0);
+        assertEquals(rx.winPercent2, ry.winPercent2, 0.0);
+        assertEquals(rx.medianExcess, ry.medianExcess, 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException
+  {
+    File file = File.createTempFile("results-cache", ".bin");
+    file.deleteOnExit();
+    file.delete();
+
+    PredictorConfig configA = new ConfigSMA(20, 0, 240, 150, 25, 0, TimeLib.MS_IN_DAY);
+    PredictorConfig configB = new ConfigSMA(20, 0, 240, 150, 26, 0, TimeLib.MS_IN_DAY);
+    PredictorConfig configC = new ConfigConst("stock");
+    AllStats statsA = buildStats(0.008);
+    AllStats statsB = buildStats(0.004);
+
+    try (ResultsCache cache = new ResultsCache(file, 42L, 1)) {
+      assertNull(cache.get(configA));
+      cache.put(configA, statsA);
+      cache.put(configB, statsB);
+      assertEquals(2, cache.size());
+      assertStatsEqual(statsA, cache.get(configA));
+      assertStatsEqual(statsB, cache.get(configB));
+      assertStatsEqual(statsA, cache.get(configA)); // evicted from LRU so must be read from disk
+      assertSame(configA, cache.get(configA).config);
+      assertNull(cache.get(configC));
+    }
+
+    // Reopen with the same context.
+    try (ResultsCache cache = new ResultsCache(file, 42L, 10)) {
+      assertEquals(2, cache.size());
+      assertStatsEqual(statsA, cache.get(configA));
+      assertStatsEqual(statsB, cache.get(configB));
+      assertNull(cache.get(configC));
+      assertEquals(2, cache.getNumHits());
+      assertEquals(1, cache.getNumMisses());
+    }
+
+    // Results from other contexts are ignored.
+    try (ResultsCache cache = new ResultsCache(file, 17L, 10)) {
+      assertEquals(0, cache.size());
+      assertNull(cache.get(configA));
+      cache.put(configA, statsB);
+      assertStatsEqual(statsB, cache.get(configA));
+    }
+    try (ResultsCache cache = new ResultsCache(file, 42L, 10)) {
+      assertEquals(2, cache.size());
+      assertStatsEqual(statsA, cache.get(configA));
+    }
+  }
+
+  @Test
+  public void testManyConfigs() throws IOException
+  {
+    File file = File.createTempFile("results-cache", ".bin");
+    file.deleteOnExit();
+    file.delete();
+
+    // Every distinct config gets its own record (entries are indexed by the full key).
+    final int n = 200;
+    AllStats stats = buildStats(0.006);
+    try (ResultsCache cache = new ResultsCache(file, 42L, 10)) {
+      for (int i = 0; i < n; ++i) {
+        cache.put(new ConfigSMA(20, 0, 240, 150, i, 0, TimeLib.MS_IN_DAY), stats);
+      }
+      assertEquals(n, cache.size());
+    }
+    try (ResultsCache cache = new ResultsCache(file, 42L, 10)) {
+      assertEquals(n, cache.size());
+      for (int i = 0; i < n; ++i) {
+        assertStatsEqual(stats, cache.get(new ConfigSMA(20, 0, 240, 150, i, 0, TimeLib.MS_IN_DAY)));
+      }
+      assertEquals(n, cache.getNumHits());
+    }
+  }
+
+  @Test
+  public void testPartialRecord() throws IOException
+  {
+    File file = File.createTempFile("results-cache", ".bin");
+    file.deleteOnExit();
+    file.delete();
+
+    PredictorConfig configA = new ConfigSMA(20, 0, 240, 150, 25, 0, TimeLib.MS_IN_DAY);
+    PredictorConfig configB = new ConfigSMA(50, 0, 180, 30, 100, 0, TimeLib.MS_IN_DAY);
+    AllStats statsA = buildStats(0.008);
+    AllStats statsB = buildStats(0.004);
+
+    long lengthA;
+    try (ResultsCache cache = new ResultsCache(file, 42L, 10)) {
+      cache.put(configA, statsA);
+      lengthA = file.length();
+      cache.put(configB, statsB);
+    }
+
+    // Simulate an interrupted write by chopping off the end of the last record.
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(file.length() - 5);
+    }
+
+    try (ResultsCache cache = new ResultsCache(file, 42L, 10)) {
+      assertEquals(lengthA, file.length());
+      assertEquals(1, cache.size());
+      assertStatsEqual(statsA, cache.get(configA));
+      assertNull(cache.get(configB));
+      cache.put(configB, statsB);
+    }
+
+    try (ResultsCache cache = new ResultsCache(file, 42L, 10)) {
+      assertEquals(2, cache.size());
+      assertStatsEqual(statsB, cache.get(configB));
+    }
+  }
+}
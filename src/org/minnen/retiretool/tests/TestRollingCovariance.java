@@ -0,0 +1,84 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.minnen.retiretool.data.RollingCovariance;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.Library;
+
+public class TestRollingCovariance
+{
+  private static Sequence genPrices(String name, Random rng, int n)
+  {
+    Sequence seq = new Sequence(name);
+    double price = 100.0;
+    for (int i = 0; i < n; ++i) {
+      seq.addData(price);
+      price *= 1.0 + rng.nextGaussian() * 0.02;
+    }
+    return seq;
+  }
+
+  @Test
+  public void testMatchesFullCovariance()
+  {
+    final int nDays = 800;
+    final int nReturns = 20;
+    Random rng = new Random(1234);
+    Sequence[] seqs = new Sequence[4];
+    String[] names = new String[seqs.length];
+    for (int i = 0; i < seqs.length; ++i) {
+      seqs[i] = genPrices("s" + i, rng, nDays);
+      names[i] = seqs[i].getName();
+    }
+
+    RollingCovariance rc = new RollingCovariance(nReturns, 0, names);
+    assertEquals(2, rc.indexOf("s2"));
+    assertEquals(-1, rc.indexOf("cash"));
+    int[] ids = new int[] { 3, 0, 2 };
+
+    // Mostly small steps, plus some big jumps, steps back, and windows that don't move together.
+    int end = nReturns + 1;
+    while (end < nDays) {
+      boolean skew = rng.nextInt(10) == 0;
+      for (int i = 0; i < seqs.length; ++i) {
+        int iEnd = (skew && i == 1 ? end - 1 : end);
+        seqs[i].lock(0, iEnd, 42);
+      }
+      rc.advance(seqs);
+
+      double[][] returns = new double[ids.length][];
+      for (int i = 0; i < ids.length; ++i) {
+        Sequence seq = seqs[ids[i]];
+        returns[i] = FinLib.getDailyReturns(seq, -(nReturns + 1), -1, 0);
+        assertEquals(seq.getRealIndex(seq.length() - 1), rc.getWindowEnd(ids[i]));
+      }
+      double[][] expected = Library.covariance(returns);
+      double[][] cov = rc.getCovariance(ids);
+      for (int i = 0; i < ids.length; ++i) {
+        assertArrayEquals(expected[i], cov[i], 1e-9);
+      }
+
+      for (Sequence seq : seqs) {
+        seq.unlock(42);
+      }
+      int r = rng.nextInt(20);
+      if (r == 0) end += 50;
+      else if (r == 1) end -= 5;
+      else end += 1 + rng.nextInt(3);
+      end = Math.max(end, nReturns + 1);
+    }
+
+    // Replacing a sequence starts a new generation.
+    int generation = rc.getGeneration();
+    rc.advance(seqs);
+    assertEquals(generation, rc.getGeneration());
+    seqs[1] = genPrices("s1", rng, nDays);
+    rc.advance(seqs);
+    assertEquals(generation + 1, rc.getGeneration());
+  }
+}
@@ -3,8 +3,15 @@ package org.minnen.retiretool.tests;
 import static org.junit.Assert.*;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.time.LocalDate;
+import java.util.Random;
+
 import org.junit.Test;
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.data.OverlaySequence;
+import org.minnen.retiretool.data.SMACube;
 import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.util.LinearFunc;
 
 public class TestSequence
 {
@@ -250,4 +257,128 @@ public class TestSequence
       integral.integralAverage(3, 2);
     });
   }
+
+  @Test
+  public void testSMACube()
+  {
+    Sequence seq = new Sequence(new double[] { 1.0, 2.0, 3.0, 4.0, 6.0, 5.0 });
+    SMACube cube = new SMACube(seq, 0);
+    assertEquals(0, cube.getNumWindows());
+    assertEquals(0, cube.addWindow(3, 1));
+    assertEquals(1, cube.addWindow(2, 0));
+    assertEquals(-1, cube.addWindow(3, 1));
+    assertEquals(2, cube.getNumWindows());
+    assertEquals(0, cube.getRow(3, 1));
+    assertEquals(1, cube.getRow(2, 0));
+    assertEquals(-1, cube.getRow(4, 0));
+
+    // Not enough history => NaN.
+    assertTrue(Double.isNaN(cube.average(3, 1, 2)));
+    assertTrue(Double.isNaN(cube.average(2, 0, 1)));
+
+    for (int i = 3; i < seq.length(); ++i) {
+      assertEquals(seq.average(i - 3, i - 1, 0), cube.average(3, 1, i), eps);
+      assertEquals(seq.average(i - 2, i, 0), cube.average(2, 0, i), eps);
+    }
+
+    // Locked sequences use real indices.
+    seq.lock(0, 3, 42);
+    int iReal = seq.getRealIndex(seq.length() - 1);
+    assertEquals(3, iReal);
+    assertEquals(2.0, cube.average(3, 1, iReal), eps);
+    seq.unlock(42);
+  }
+
+  @Test
+  public void testOverlay()
+  {
+    final int n = 100;
+    Sequence base = new Sequence("base");
+    LocalDate date = LocalDate.of(2000, 1, 1);
+    for (int i = 0; i < n; ++i) {
+      base.addData(new FeatureVec(3, i, 10.0 + i, -i), date.plusMonths(i));
+    }
+    LinearFunc priceSDev = new LinearFunc(0.05, 0.1);
+    final long seed = 1234L;
+    OverlaySequence noisy = OverlaySequence.noisy("noisy", base, 1, priceSDev, seed);
+    assertEquals(n, noisy.length());
+    assertEquals(3, noisy.getNumDims());
+    assertFalse(noisy.isCopy());
+
+    // Same values as copying the whole sequence and adding noise.
+    Random rng = new Random(seed);
+    for (int i = 0; i < n; ++i) {
+      double price = base.get(i, 1);
+      double x = price + rng.nextGaussian() * priceSDev.calc(price);
+      if (x <= 0.0) x = price * (0.01 + rng.nextDouble() * 0.2);
+      x = Math.round(x * 100.0) / 100.0;
+      assertEquals(x, noisy.get(i, 1), 0.0);
+      assertEquals(x, noisy.get(i).get(1), 0.0);
+      assertEquals(base.get(i, 0), noisy.get(i, 0), 0.0);
+      assertEquals(base.get(i, 2), noisy.get(i).get(2), 0.0);
+      assertEquals(base.getTimeMS(i), noisy.getTimeMS(i));
+    }
+    assertEquals(noisy.fingerprint(), OverlaySequence.noisy("noisy2", base, 1, priceSDev, seed).fingerprint());
+    assertNotEquals(noisy.fingerprint(), OverlaySequence.noisy("noisy3", base, 1, priceSDev, seed + 1).fingerprint());
+
+    // Locks and subsequences work as usual.
+    double first = noisy.get(10, 1);
+    noisy.lock(10, 19, 42);
+    assertEquals(10, noisy.length());
+    assertEquals(first, noisy.getFirst(1), 0.0);
+    assertEquals(base.getTimeMS(19), noisy.getEndMS());
+    noisy.unlock(42);
+    Sequence sub = noisy.subseq(5, 3);
+    assertEquals(noisy.get(6, 1), sub.get(1, 1), 0.0);
+
+    // Changes to the overlay dimension are stored in the column; other changes go to owned vectors.
+    long fpBase = base.fingerprint();
+    noisy.set(3, 1, 7.5);
+    assertEquals(7.5, noisy.get(3, 1), 0.0);
+    assertEquals(7.5, noisy.get(3).get(1), 0.0);
+    assertFalse(noisy.isCopy());
+
+    // Vectors from get() belong to the overlay, so they can be changed directly.
+    noisy.get(4).set(1, 8.5);
+    assertEquals(8.5, noisy.get(4, 1), 0.0);
+    noisy.set(4, 1, 9.5);
+    assertEquals(9.5, noisy.get(4).get(1), 0.0);
+    noisy.set(-1, 0, -1.0);
+    assertEquals(-1.0, noisy.getLast(0), 0.0);
+    assertFalse(noisy.isCopy());
+
+    // Subsequences and copies have their own vectors.
+    sub = noisy.subseq(2, 4);
+    sub.set(1, 1, 1.25);
+    sub.set(2, 0, -2.0);
+    assertEquals(1.25, sub.get(1, 1), 0.0);
+    assertEquals(-2.0, sub.get(2, 0), 0.0);
+    assertEquals(7.5, noisy.get(3, 1), 0.0);
+    assertEquals(base.get(4, 0), noisy.get(4, 0), 0.0);
+    Sequence copy = noisy.dup();
+    copy.set(3, 1, 2.5);
+    assertEquals(2.5, copy.get(3, 1), 0.0);
+    assertEquals(7.5, noisy.get(3, 1), 0.0);
+
+    // Views share data but not locks.
+    noisy.lock(2, 8, 7);
+    Sequence view = noisy.view();
+    noisy.unlock(7);
+    assertEquals(7, view.length());
+    view.set(1, 1, 3.25);
+    view.set(3, 0, -3.0);
+    view.get(4).set(2, 0.5);
+    assertEquals(3.25, noisy.get(3, 1), 0.0);
+    assertEquals(-3.0, noisy.get(5, 0), 0.0);
+    assertEquals(0.5, noisy.get(6, 2), 0.0);
+    assertEquals(noisy.get(8, 1), view.getLast(1), 0.0);
+    assertFalse(noisy.isCopy());
+
+    // In-place operations on the whole sequence copy the data.
+    noisy._mul(2.0);
+    assertTrue(noisy.isCopy());
+    assertEquals(6.5, noisy.get(3, 1), 0.0);
+    assertEquals(-2.0, noisy.getLast(0), 0.0);
+    assertEquals(fpBase, base.fingerprint());
+  }
 }
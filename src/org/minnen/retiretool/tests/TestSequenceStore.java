@@ -2,9 +2,18 @@ package org.minnen.retiretool.tests;
 
 import static org.junit.Assert.*;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.data.SequenceSource;
 import org.minnen.retiretool.data.SequenceStore;
+import org.minnen.retiretool.util.IntPair;
+import org.minnen.retiretool.util.TimeLib;
 
 public class TestSequenceStore
 {
@@ -44,4 +53,191 @@ public class TestSequenceStore
     assertEquals(r1, store.get("test1"));
     assertEquals(r2, store.get("test2"));
   }
+
+  @Test
+  public void testSMAWindows()
+  {
+    SequenceStore store = new SequenceStore();
+    store.add(AllTests.buildMonthlySequence("r1", new double[] { 1, 2, 3, 4, 5 }));
+    store.add(AllTests.buildMonthlySequence("r2", new double[] { 6, 7, 8, 9, 10 }));
+    assertEquals(0, store.getNumSMAWindows());
+
+    // Windows from every sequence count toward the total.
+    store.addSMAWindows("r1", 0, Arrays.asList(new IntPair(2, 0), new IntPair(3, 1)));
+    store.addSMAWindows("r2", 0, Arrays.asList(new IntPair(2, 0)));
+    store.addSMAWindows("r1", 0, Arrays.asList(new IntPair(2, 0)));
+    assertEquals(3, store.getNumSMAWindows());
+
+    store.clearSMACubes();
+    assertEquals(0, store.getNumSMAWindows());
+  }
+
+  /** @return source that builds a monthly sequence and counts how often it is called. */
+  private static SequenceSource countingSource(AtomicInteger nLoads, double... data)
+  {
+    return () -> {
+      nLoads.incrementAndGet();
+      return AllTests.buildMonthlySequence("unnamed", data);
+    };
+  }
+
+  @Test
+  public void testLazyLoad()
+  {
+    AtomicInteger nLoads = new AtomicInteger();
+    SequenceStore store = new SequenceStore();
+    store.register("a", countingSource(nLoads, 1, 2, 3, 4));
+    store.register("b", countingSource(nLoads, 5, 6, 7, 8));
+    store.add(AllTests.buildMonthlySequence("c", new double[] { 9, 10, 11, 12 }));
+    assertEquals(3, store.size());
+    assertEquals(1, store.getIndex("b"));
+    assertFalse(store.isLoaded("a"));
+    assertTrue(store.isLoaded("c"));
+    assertEquals(0, nLoads.get());
+
+    // Sequences are loaded on first access and clipped to the common time range.
+    store.setCommonTimes(TimeLib.toMs(2000, 2, 1), TimeLib.toMs(2000, 3, 1));
+    Sequence a = store.get("a");
+    assertEquals(1, nLoads.get());
+    assertEquals("a", a.getName());
+    assertEquals(2, a.length());
+    assertEquals(2.0, a.get(0, 0), 0.0);
+    assertSame(a, store.get("a"));
+    assertEquals(1, nLoads.get());
+    assertFalse(store.isLoaded("b"));
+    assertEquals(2, store.get("c").length());
+
+    // Sequences loaded while the store is locked are locked too.
+    store.lock(TimeLib.toMs(2000, 2, 1), TimeLib.toMs(2000, 2, 1), 42L);
+    assertTrue(store.get("b").isLocked(42L));
+    assertEquals(1, store.get("b").length());
+    store.unlock(42L);
+    assertFalse(store.get("b").isLocked());
+    assertEquals(2, nLoads.get());
+
+    // Duplicates load independently.
+    store.register("d", countingSource(nLoads, 0, 1, 2, 3));
+    SequenceStore dup = store.dup();
+    assertEquals(2, dup.get("d").length());
+    assertFalse(store.isLoaded("d"));
+    assertEquals(3, nLoads.get());
+
+    // Data that doesn't cover the common time range (e.g. stale data) is an error.
+    store.register("short", countingSource(nLoads, 1, 2));
+    try {
+      store.get("short");
+      fail();
+    } catch (IllegalStateException e) {}
+    assertFalse(store.isLoaded("short"));
+  }
+
+  @Test
+  public void testPrefetchAndEvict()
+  {
+    AtomicInteger nLoads = new AtomicInteger();
+    SequenceStore store = new SequenceStore();
+    final int n = 10;
+    for (int i = 0; i < n; ++i) {
+      store.register("s" + i, countingSource(nLoads, i, i + 1, i + 2));
+    }
+    store.prefetch("s0", "s1", "s2", "unknown");
+    for (int i = 0; i < 3; ++i) {
+      assertEquals(i, store.get("s" + i).get(0, 0), 0.0);
+    }
+    assertEquals(3, nLoads.get());
+
+    // Budget for about two sequences.
+    long nBytes = store.getMemoryUsed() / 3;
+    store.setMemoryBudget(2 * nBytes);
+    assertEquals(2 * nBytes, store.getMemoryUsed());
+    assertFalse(store.isLoaded("s0")); // least recently used
+    assertTrue(store.isLoaded("s1"));
+    assertTrue(store.isLoaded("s2"));
+
+    store.get("s1"); // s1 is now more recent than s2
+    store.get("s3");
+    assertFalse(store.isLoaded("s2"));
+    assertTrue(store.isLoaded("s1"));
+    assertTrue(store.isLoaded("s3"));
+    assertEquals(4, nLoads.get());
+
+    // Evicted sequences are reloaded.
+    assertEquals(0.0, store.get("s0").get(0, 0), 0.0);
+    assertEquals(5, nLoads.get());
+
+    // Iterating loads everything but keeps the budget.
+    int count = 0;
+    for (Sequence seq : store) {
+      assertEquals(count, seq.get(0, 0), 0.0);
+      ++count;
+    }
+    assertEquals(n, count);
+    assertEquals(n, store.getSeqs().size());
+    assertTrue(store.getMemoryUsed() <= 2 * nBytes);
+  }
+
+  @Test
+  public void testAddAll() throws IOException
+  {
+    AtomicInteger nLoads = new AtomicInteger();
+    SequenceStore store = new SequenceStore();
+    Map<String, SequenceSource> sources = new LinkedHashMap<>();
+    final int n = 20;
+    for (int i = 0; i < n; ++i) {
+      double[] data = new double[12 + i % 5];
+      for (int j = 0; j < data.length; ++j) {
+        data[j] = i * 100 + j;
+      }
+      final int iStart = i % 4;
+      sources.put("s" + i, () -> {
+        nLoads.incrementAndGet();
+        Sequence seq = AllTests.buildMonthlySequence("unnamed", data);
+        return seq.subseq(iStart);
+      });
+    }
+    long[] common = store.addAll(sources);
+    assertEquals(n, nLoads.get());
+    assertEquals(n, store.size());
+
+    long commonStart = TimeLib.TIME_BEGIN;
+    long commonEnd = TimeLib.TIME_END;
+    for (int i = 0; i < n; ++i) {
+      Sequence seq = store.get("s" + i);
+      assertEquals(i, store.getIndex("s" + i));
+      assertEquals("s" + i, seq.getName());
+      assertEquals(i * 100 + i % 4, seq.get(0, 0), 0.0);
+      commonStart = Math.max(commonStart, seq.getStartMS());
+      commonEnd = Math.min(commonEnd, seq.getEndMS());
+    }
+    assertEquals(commonStart, common[0]);
+    assertEquals(commonEnd, common[1]);
+
+    // A failed load doesn't add anything.
+    sources.put("bad", () -> {
+      throw new IOException("bad source");
+    });
+    store = new SequenceStore();
+    try {
+      store.addAll(sources);
+      fail();
+    } catch (IOException e) {}
+    assertEquals(0, store.size());
+
+    // Registered sources can be loaded in bulk, too.
+    store = new SequenceStore();
+    store.register("a", countingSource(nLoads, 1, 2, 3));
+    store.register("b", countingSource(nLoads, 4, 5, 6));
+    store.loadAll();
+    assertTrue(store.isLoaded("a"));
+    assertTrue(store.isLoaded("b"));
+    assertEquals(4.0, store.get("b").get(0, 0), 0.0);
+
+    // Failures are reported to the caller.
+    store.register("bad", sources.get("bad"));
+    try {
+      store.loadAll();
+      fail();
+    } catch (IOException e) {}
+    assertFalse(store.isLoaded("bad"));
+  }
 }
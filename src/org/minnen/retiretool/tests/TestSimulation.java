@@ -0,0 +1,103 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.minnen.retiretool.broker.Simulation;
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.data.SequenceStore;
+import org.minnen.retiretool.predictor.config.ConfigSMA;
+import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.IntPair;
+import org.minnen.retiretool.util.PriceModel;
+import org.minnen.retiretool.util.Slippage;
+import org.minnen.retiretool.util.TimeLib;
+
+public class TestSimulation
+{
+  private static Sequence buildPrices(String name, Random rng, int n)
+  {
+    Sequence seq = new Sequence(name);
+    LocalDate date = LocalDate.of(1990, Month.JANUARY, 2);
+    double price = 100.0;
+    while (seq.length() < n) {
+      if (TimeLib.isBusinessDay(date)) {
+        price *= 1.0 + 0.0003 + 0.01 * rng.nextGaussian();
+        seq.addData(new FeatureVec(7, price, price, price, price, 1e6, price, price), TimeLib.toMs(date));
+      }
+      date = date.plusDays(1);
+    }
+    return seq;
+  }
+
+  private static double[] getValues(Sequence seq)
+  {
+    double[] values = new double[seq.length()];
+    for (int i = 0; i < values.length; ++i) {
+      values[i] = seq.get(i, 0);
+    }
+    return values;
+  }
+
+  @Test
+  public void testSeededDelays()
+  {
+    SequenceStore store = new SequenceStore();
+    store.add(buildPrices("stock", new Random(1), 2000));
+    Sequence guideSeq = store.get("stock").subseq(300);
+    String[] assetNames = new String[] { "stock", "cash" };
+    ConfigSMA config = new ConfigSMA(20, 0, 240, 150, 25, FinLib.AdjClose, TimeLib.MS_IN_DAY);
+
+    // Each run reseeds the simulation's RNG so random rebalance delays don't depend on earlier runs.
+    Simulation sim = new Simulation(store, guideSeq.dup(), Slippage.None, 5, PriceModel.adjCloseModel,
+        PriceModel.adjCloseModel);
+    double[] expected = getValues(sim.run(config.build(sim.broker.accessObject, assetNames), "First"));
+    assertArrayEquals(expected, getValues(sim.run(config.build(sim.broker.accessObject, assetNames), "Second")), 0.0);
+
+    // Simulations with the same seed give the same results; another seed delays some trades differently.
+    Simulation other = new Simulation(store.view(), guideSeq.dup(), Slippage.None, 5, PriceModel.adjCloseModel,
+        PriceModel.adjCloseModel);
+    assertArrayEquals(expected, getValues(other.run(config.build(other.broker.accessObject, assetNames), "Same")),
+        0.0);
+    other.setSeed(Simulation.DEFAULT_SEED + 1);
+    double[] returns = getValues(other.run(config.build(other.broker.accessObject, assetNames), "Other"));
+    assertFalse(Arrays.equals(expected, returns));
+  }
+
+  @Test
+  public void testSMACube()
+  {
+    SequenceStore store = new SequenceStore();
+    store.add(buildPrices("stock", new Random(2), 2000));
+    Sequence guideSeq = store.get("stock").subseq(300);
+    String[] assetNames = new String[] { "stock", "cash" };
+    ConfigSMA config = new ConfigSMA(20, 0, 240, 150, 25, FinLib.Close, TimeLib.MS_IN_DAY);
+
+    Simulation sim = new Simulation(store.view(), guideSeq.dup(), Slippage.None, 5, PriceModel.adjCloseModel,
+        PriceModel.adjCloseModel);
+    double[] expected = getValues(sim.run(config.build(sim.broker.accessObject, assetNames), "Direct"));
+
+    // Precompute averages and then flatten the prices they came from, so only the cube gives the same results.
+    store.addSMAWindows("stock", FinLib.Close, Arrays.asList(new IntPair(20, 0), new IntPair(240, 150)));
+    for (FeatureVec fv : store.get("stock").getData()) {
+      fv.set(FinLib.Close, 1.0);
+    }
+
+    // Simulations run on views of the store, which hold different sequence objects than the cube.
+    sim = new Simulation(store.view(), guideSeq.dup(), Slippage.None, 5, PriceModel.adjCloseModel,
+        PriceModel.adjCloseModel);
+    assertArrayEquals(expected, getValues(sim.run(config.build(sim.broker.accessObject, assetNames), "Cube")), 0.0);
+
+    store.clearSMACubes();
+    sim = new Simulation(store.view(), guideSeq.dup(), Slippage.None, 5, PriceModel.adjCloseModel,
+        PriceModel.adjCloseModel);
+    double[] returns = getValues(sim.run(config.build(sim.broker.accessObject, assetNames), "Flat"));
+    assertFalse(Arrays.equals(expected, returns));
+  }
+}
@@ -2,9 +2,16 @@ package org.minnen.retiretool.tests;
 
 import static org.junit.Assert.*;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.Test;
 import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.ml.Dataset;
+import org.minnen.retiretool.ml.Example;
 import org.minnen.retiretool.ml.Stump;
+import org.minnen.retiretool.util.Random;
 
 public class TestStump
 {
@@ -58,4 +65,167 @@ public class TestStump
     assertEquals(kp, kn);
     assertArrayEquals(postPos, postNeg, 1e-6);
   }
+
+  @Test
+  public void testIncremental()
+  {
+    final int N = 600;
+    final int D = 6;
+    Random rng = new Random(1234);
+    List<Example> examples = new ArrayList<>();
+    for (int i = 0; i < N; ++i) {
+      FeatureVec x = new FeatureVec(D);
+      for (int d = 0; d < D; ++d) {
+        x.set(d, rng.nextGaussian());
+      }
+      x.setWeight(0.5 + rng.nextDouble());
+      int k = (x.get(i % D) + 0.5 * rng.nextGaussian() > 0.0 ? 1 : 0);
+      examples.add(Example.forClassification(x, k));
+    }
+
+    for (boolean useWeights : new boolean[] { false, true }) {
+      Dataset data = new Dataset(D, 16);
+      Stump.Incremental incremental = new Stump.Incremental(0.0, useWeights);
+      Stump.Trainer trainer = new Stump.Trainer(-1, useWeights);
+      int iFrom = 0;
+      while (iFrom < N) {
+        int iTo = Math.min(N, iFrom + 1 + rng.nextInt(40));
+        for (int i = iFrom; i < iTo; ++i) {
+          data.add(examples.get(i));
+        }
+        incremental.add(data, iFrom);
+        iFrom = iTo;
+
+        List<Example> sofar = examples.subList(0, iTo);
+        Stump expected = (Stump) trainer.train(Example.getFeatureArray(sofar), Example.getClassArray(sofar));
+        Stump stump = incremental.train();
+        assertEquals(expected.iDim, stump.iDim);
+        assertEquals(expected.threshold, stump.threshold, 0.0);
+      }
+      assertEquals(N, data.size());
+
+      // Change weights in place and verify that the incremental trainer tracks them.
+      for (int i = 0; i < N; i += 3) {
+        double prevWeight = data.setWeight(i, 4.0);
+        examples.get(i).x.setWeight(4.0);
+        incremental.reweight(data, i, prevWeight);
+      }
+      Stump expected = (Stump) trainer.train(Example.getFeatureArray(examples), Example.getClassArray(examples));
+      assertEquals(expected.iDim, incremental.train().iDim);
+    }
+  }
+
+  /** @return (weighted) number of correct predictions, using posteriors for soft stumps. */
+  private static double score(Stump stump, List<Example> examples, int[] counts, boolean useWeights, boolean soft)
+  {
+    double score = 0.0;
+    double[] post = new double[2];
+    for (int i = 0; i < examples.size(); ++i) {
+      Example example = examples.get(i);
+      double w = (useWeights ? example.x.getWeight() : 1.0) * (counts == null ? 1 : counts[i]);
+      if (soft) {
+        stump.predict(example.x, post);
+        score += w * post[example.k];
+      } else if (stump.predict(example.x) == example.k) {
+        score += w;
+      }
+    }
+    return score;
+  }
+
+  /** Try every threshold on every dimension (same candidates and tie-breaking as SweepTrainer). */
+  private static Stump bruteForce(List<Example> examples, int[] counts, boolean useWeights, double sigma)
+  {
+    final int D = examples.get(0).x.getNumDims();
+    Stump best = null;
+    double bestScore = Double.NEGATIVE_INFINITY;
+    for (int d = 0; d < D; ++d) {
+      List<Double> values = new ArrayList<>();
+      for (int i = 0; i < examples.size(); ++i) {
+        if (counts == null || counts[i] > 0) values.add(examples.get(i).x.get(d));
+      }
+      Collections.sort(values);
+      List<Double> thresholds = new ArrayList<>();
+      thresholds.add(Double.NEGATIVE_INFINITY);
+      for (int i = 1; i < values.size(); ++i) {
+        double a = values.get(i - 1), b = values.get(i);
+        if (a < b) thresholds.add(a + (b - a) / 2.0);
+      }
+      thresholds.add(Double.POSITIVE_INFINITY);
+      for (double threshold : thresholds) {
+        for (boolean invert : new boolean[] { false, true }) {
+          Stump stump = new Stump(d, threshold, invert, sigma > 0.0 ? sigma : 1.0);
+          double score = score(stump, examples, counts, useWeights, sigma > 0.0);
+          if (best == null || score > bestScore) {
+            best = stump;
+            bestScore = score;
+          }
+        }
+      }
+    }
+    return best;
+  }
+
+  @Test
+  public void testSweepTrainer()
+  {
+    final int N = 300;
+    final int D = 4;
+    Random rng = new Random(1234);
+    for (int iter = 0; iter < 12; ++iter) {
+      List<Example> examples = new ArrayList<>();
+      for (int i = 0; i < N; ++i) {
+        FeatureVec x = new FeatureVec(D);
+        for (int d = 0; d < D; ++d) {
+          double v = rng.nextGaussian();
+          x.set(d, d % 2 == 0 ? v : Math.round(v * 4.0) / 4.0); // odd dimensions have many ties
+        }
+        x.setWeight(0.5 + rng.nextDouble());
+        int k = (x.get(iter % D) + 0.8 * rng.nextGaussian() > 0.3 ? 1 : 0);
+        examples.add(Example.forClassification(x, k));
+      }
+      Dataset data = Dataset.fromExamples(examples);
+      int[] counts = null;
+      if (iter % 3 == 2) {
+        counts = new int[N];
+        for (int i = 0; i < N; ++i) {
+          ++counts[rng.nextInt(N)];
+        }
+      }
+      final boolean useWeights = (iter % 2 == 1);
+      final double sigma = (iter >= 6 ? 0.1 + 0.1 * (iter - 6) : 0.0);
+
+      Stump expected = bruteForce(examples, counts, useWeights, sigma);
+      Stump stump = new Stump.SweepTrainer(-1, useWeights, sigma).train(data, counts);
+      double expectedScore = score(expected, examples, counts, useWeights, sigma > 0.0);
+      double actualScore = score(stump, examples, counts, useWeights, sigma > 0.0);
+      assertEquals(expectedScore, actualScore, 1e-9);
+      if (!useWeights && sigma == 0.0) {
+        // Integer scores so the exact split must match.
+        assertEquals(expected.iDim, stump.iDim);
+        assertEquals(expected.threshold, stump.threshold, 0.0);
+        assertEquals(expected.invert, stump.invert);
+      }
+    }
+  }
+
+  @Test
+  public void testSweepTrainerFeatures()
+  {
+    // Class depends on x[1] < 2 so the trainer must find an inverted split with a non-zero threshold.
+    Random rng = new Random(42);
+    FeatureVec[] x = new FeatureVec[200];
+    int[] y = new int[x.length];
+    for (int i = 0; i < x.length; ++i) {
+      x[i] = new FeatureVec(3, rng.nextGaussian() * 3.0, rng.nextDouble() * 4.0, rng.nextGaussian());
+      y[i] = (x[i].get(1) < 2.0 ? 1 : 0);
+    }
+    Stump stump = new Stump.SweepTrainer(-1, false).train(x, y);
+    assertEquals(1, stump.iDim);
+    assertTrue(stump.invert);
+    assertEquals(2.0, stump.threshold, 0.1);
+    for (int i = 0; i < x.length; ++i) {
+      assertEquals(y[i], stump.predict(x[i]));
+    }
+  }
 }
@@ -0,0 +1,175 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.minnen.retiretool.broker.SimFactory;
+import org.minnen.retiretool.broker.Simulation;
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.data.SequenceStore;
+import org.minnen.retiretool.predictor.config.ConfigSMA;
+import org.minnen.retiretool.predictor.config.PredictorConfig;
+import org.minnen.retiretool.predictor.optimize.Optimizer;
+import org.minnen.retiretool.predictor.optimize.SuccessiveHalving;
+import org.minnen.retiretool.stats.CumulativeStats;
+import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.PriceModel;
+import org.minnen.retiretool.util.Slippage;
+import org.minnen.retiretool.util.TimeLib;
+
+public class TestSuccessiveHalving
+{
+  private static final String[] assetNames = new String[] { "stock", "cash" };
+
+  private static Sequence buildPrices(String name, Random rng, int n)
+  {
+    Sequence seq = new Sequence(name);
+    LocalDate date = LocalDate.of(1990, Month.JANUARY, 2);
+    double price = 100.0;
+    while (seq.length() < n) {
+      if (TimeLib.isBusinessDay(date)) {
+        price *= 1.0 + 0.0003 + 0.01 * rng.nextGaussian();
+        seq.addData(new FeatureVec(7, price, price, price, price, 1e6, price, price), TimeLib.toMs(date));
+      }
+      date = date.plusDays(1);
+    }
+    return seq;
+  }
+
+  /** @return factory for simulations over about nine years of synthetic prices. */
+  private static SimFactory buildFactory()
+  {
+    SequenceStore store = new SequenceStore();
+    store.add(buildPrices("stock", new Random(1), 2600));
+    Sequence guideSeq = store.get("stock").subseq(300);
+    return new SimFactory(store, guideSeq, Slippage.None, 0, 10000.0, 0.0, PriceModel.adjCloseModel,
+        PriceModel.adjCloseModel);
+  }
+
+  private static List<PredictorConfig> buildGrid()
+  {
+    List<PredictorConfig> configs = new ArrayList<>();
+    for (int nTrigger : new int[] { 5, 10, 20 }) {
+      for (int nBase : new int[] { 50, 100, 150, 200 }) {
+        for (int margin : new int[] { 0, 100, 250 }) {
+          configs.add(new ConfigSMA(nTrigger, 0, nBase, 0, margin, FinLib.AdjClose, TimeLib.MS_IN_DAY));
+        }
+      }
+    }
+    return configs;
+  }
+
+  /** @return scoreSimple() for each config over the full range of the factory's guide sequence. */
+  private static double[] scoreAll(SimFactory simFactory, List<PredictorConfig> configs)
+  {
+    Optimizer.precomputeSMA(configs, simFactory.store, assetNames);
+    Simulation sim = simFactory.build();
+    double[] scores = new double[configs.size()];
+    for (int i = 0; i < scores.length; ++i) {
+      Sequence returns = sim.run(configs.get(i).build(sim.broker.accessObject, assetNames), "Exhaustive");
+      scores[i] = CumulativeStats.calc(returns).scoreSimple();
+    }
+    return scores;
+  }
+
+  @Test
+  public void testSingleRungMatchesGrid()
+  {
+    SimFactory simFactory = buildFactory();
+    List<PredictorConfig> configs = buildGrid();
+    double[] scores = scoreAll(simFactory, configs);
+    int iBest = 0;
+    for (int i = 1; i < scores.length; ++i) {
+      if (scores[i] > scores[iBest]) iBest = i;
+    }
+
+    // With eta larger than the number of configs, there's only one rung and every config sees the full range.
+    SuccessiveHalving halving = new SuccessiveHalving(simFactory, SuccessiveHalving.scoreSimple, null,
+        configs.size() + 1, 12, 1);
+    List<PredictorConfig> ranked = halving.run(configs, TimeLib.TIME_BEGIN, TimeLib.TIME_END, assetNames);
+    assertEquals(configs.size(), ranked.size());
+    assertSame(configs.get(iBest), ranked.get(0));
+  }
+
+  @Test
+  public void testMatchesExhaustiveSearch()
+  {
+    SimFactory simFactory = buildFactory();
+    List<PredictorConfig> configs = buildGrid();
+    double[] scores = scoreAll(simFactory, configs);
+
+    for (int nThreads = 1; nThreads <= 2; ++nThreads) {
+      SuccessiveHalving halving = new SuccessiveHalving(simFactory, SuccessiveHalving.scoreSimple, null, 3.0, 12,
+          nThreads);
+      List<PredictorConfig> survivors = halving.run(configs, TimeLib.TIME_BEGIN, TimeLib.TIME_END, assetNames);
+
+      // Survivors are scored on the full range so the winner must be the best of them.
+      double bestScore = scores[configs.indexOf(survivors.get(0))];
+      for (PredictorConfig config : survivors) {
+        assertTrue(scores[configs.indexOf(config)] <= bestScore);
+      }
+
+      // Winner should be near the top of the exhaustive ranking.
+      int rank = 0;
+      for (double score : scores) {
+        if (score > bestScore) ++rank;
+      }
+      assertTrue(rank < configs.size() / 4);
+
+      // Pruned configs only see short periods so far fewer days are simulated.
+      long nExhaustiveDays = (long) configs.size() * simFactory.guideSeq.length();
+      assertTrue(halving.getNumSimulatedDays() < nExhaustiveDays / 2);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRangeTooShortForScorer()
+  {
+    SimFactory simFactory = buildFactory();
+    ConfigSMA baseline = new ConfigSMA(20, 0, 240, 0, 0, FinLib.AdjClose, TimeLib.MS_IN_DAY);
+    SuccessiveHalving halving = new SuccessiveHalving(simFactory, SuccessiveHalving.scoreComparison, baseline, 3.0,
+        12, 1);
+    assertEquals(SuccessiveHalving.scoreComparison.getMinMonths(), halving.minMonths);
+    halving.run(buildGrid(), TimeLib.TIME_BEGIN, TimeLib.TIME_END, assetNames);
+  }
+
+  @Test
+  public void testStoreView()
+  {
+    SimFactory simFactory = buildFactory();
+    List<PredictorConfig> configs = buildGrid();
+    Optimizer.precomputeSMA(configs, simFactory.store, assetNames);
+
+    // Views share data and moving averages but have their own locks.
+    SimFactory viewFactory = simFactory.view();
+    assertNotSame(simFactory.store, viewFactory.store);
+    assertEquals(simFactory.store.getNumSMAWindows(), viewFactory.store.getNumSMAWindows());
+    Sequence seq = simFactory.store.get("stock");
+    Sequence view = viewFactory.store.get("stock");
+    assertNotSame(seq, view);
+    assertSame(seq.get(0), view.get(0));
+    final int n = seq.length();
+    seq.lock(0, 10, 1);
+    assertEquals(11, seq.length());
+    assertEquals(n, view.length());
+    seq.unlock(1);
+
+    Simulation sim = simFactory.build();
+    Simulation simView = viewFactory.build();
+    for (PredictorConfig config : configs) {
+      Sequence expected = sim.run(config.build(sim.broker.accessObject, assetNames), "Store");
+      Sequence returns = simView.run(config.build(simView.broker.accessObject, assetNames), "View");
+      assertEquals(expected.length(), returns.length());
+      for (int i = 0; i < expected.length(); ++i) {
+        assertEquals(expected.get(i, 0), returns.get(i, 0), 0.0);
+      }
+    }
+  }
+}
@@ -0,0 +1,141 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import org.junit.Test;
+import org.minnen.retiretool.data.tiingo.TiingoUniverse;
+
+public class TestTiingoUniverse
+{
+  private static final String[] exchanges  = new String[] { "NYSE", "NASDAQ", "NMFQS", "AMEX" };
+  private static final String[] assetTypes = new String[] { "Stock", "ETF", "Mutual Fund" };
+  private static final String[] currencies = new String[] { "USD", "CNY", "EUR" };
+
+  /** Fields of one row in a supported tickers file. */
+  private static class Row
+  {
+    String    ticker, exchange, assetType, currency;
+    LocalDate start, end;
+
+    @Override
+    public String toString()
+    {
+      return String.join(",", ticker, exchange, assetType, currency, start.toString(), end.toString());
+    }
+  }
+
+  private static List<Row> genRows(Random rng, int n)
+  {
+    List<Row> rows = new ArrayList<>();
+    for (int i = 0; i < n; ++i) {
+      Row row = new Row();
+      char[] chars = new char[1 + rng.nextInt(5)];
+      for (int j = 0; j < chars.length; ++j) {
+        chars[j] = (char) ('A' + rng.nextInt(26));
+      }
+      row.ticker = new String(chars);
+      row.exchange = exchanges[rng.nextInt(exchanges.length)];
+      row.assetType = assetTypes[rng.nextInt(assetTypes.length)];
+      row.currency = currencies[rng.nextInt(currencies.length)];
+      row.start = LocalDate.of(1970, 1, 1).plusDays(rng.nextInt(18000));
+      row.end = row.start.plusDays(rng.nextInt(10000));
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  @Test
+  public void testIndex() throws IOException
+  {
+    Random rng = new Random(1234);
+    List<Row> rows = genRows(rng, 5000);
+    List<String> lines = new ArrayList<>();
+    lines.add("ticker,exchange,assetType,priceCurrency,startDate,endDate");
+    for (Row row : rows) {
+      lines.add(row.toString());
+    }
+    lines.add("MISSING,NYSE,Stock,USD,,");
+
+    // Expected index: last row wins for duplicate tickers.
+    TreeMap<String, Row> expected = new TreeMap<>();
+    for (Row row : rows) {
+      expected.put(row.ticker, row);
+    }
+
+    File csv = File.createTempFile("test-tickers-", ".csv");
+    File bin = new File(csv.getPath() + ".idx");
+    try {
+      Files.write(csv.toPath(), lines);
+      TiingoUniverse universe = TiingoUniverse.fromCSV(csv);
+      universe.write(bin, 42L, 1000L);
+      assertNull(TiingoUniverse.read(bin, 43L, 1000L));
+      assertNull(TiingoUniverse.read(bin, 42L, 1001L));
+      TiingoUniverse loaded = TiingoUniverse.read(bin, 42L, 1000L);
+
+      for (TiingoUniverse u : new TiingoUniverse[] { universe, loaded }) {
+        assertEquals(expected.size(), u.size());
+        int i = 0;
+        for (Row row : expected.values()) {
+          assertEquals(row.ticker, u.getTicker(i));
+          assertEquals(row.exchange, u.getExchange(i));
+          assertEquals(row.assetType, u.getAssetType(i));
+          assertEquals(row.currency, u.getCurrency(i));
+          assertEquals(row.start, u.getStart(i));
+          assertEquals(row.end, u.getEnd(i));
+          assertEquals(i, u.indexOf(row.ticker));
+          ++i;
+        }
+        assertEquals(-1, u.indexOf("MISSING"));
+        assertEquals(-1, u.indexOf("AAAAAAA"));
+        assertEquals(-1, u.indexOf(""));
+
+        // Compare filters with a linear scan over the rows.
+        LocalDate from = LocalDate.of(2010, 1, 1);
+        LocalDate to = LocalDate.of(1990, 1, 1);
+        String[] tickers = u.filter().assetType("mutual fund", "ETF").currency("usd").minYears(20)
+            .endRange(from, null).startRange(null, to).tickers();
+        List<String> brute = new ArrayList<>();
+        for (Row row : expected.values()) {
+          if (!row.assetType.equals("Mutual Fund") && !row.assetType.equals("ETF")) continue;
+          if (!row.currency.equals("USD")) continue;
+          if (row.end.toEpochDay() - row.start.toEpochDay() < 7305) continue;
+          if (row.end.isBefore(from) || row.start.isAfter(to)) continue;
+          brute.add(row.ticker);
+        }
+        assertFalse(brute.isEmpty());
+        assertEquals(brute, Arrays.asList(tickers));
+
+        assertEquals(0, u.filter().exchange("LSE").count());
+        assertEquals(u.size(), u.filter().exchange(exchanges).count());
+      }
+
+      // Truncated or corrupt files are rejected (so the caller rebuilds the index).
+      byte[] bytes = Files.readAllBytes(bin.toPath());
+      for (int n : new int[] { 0, 10, 30, bytes.length / 2, bytes.length - 1 }) {
+        Files.write(bin.toPath(), Arrays.copyOf(bytes, n));
+        assertNull(TiingoUniverse.read(bin, 42L, 1000L));
+      }
+      for (int i = 0; i < 100; ++i) {
+        byte[] corrupt = bytes.clone();
+        corrupt[24 + rng.nextInt(corrupt.length - 24)] ^= (byte) (1 + rng.nextInt(255));
+        Files.write(bin.toPath(), corrupt);
+        TiingoUniverse.read(bin, 42L, 1000L); // must not throw
+      }
+      Files.write(bin.toPath(), bytes);
+      assertEquals(universe.size(), TiingoUniverse.read(bin, 42L, 1000L).size());
+    } finally {
+      csv.delete();
+      bin.delete();
+    }
+  }
+}
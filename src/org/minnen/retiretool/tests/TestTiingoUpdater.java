@@ -0,0 +1,200 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.minnen.retiretool.data.DataIO;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.data.tiingo.TiingoIO;
+import org.minnen.retiretool.data.tiingo.TiingoUpdater;
+import org.minnen.retiretool.util.FinLib;
+import org.minnen.retiretool.util.TimeLib;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class TestTiingoUpdater
+{
+  private static final String                header    = "date,close,high,low,open,volume,adjClose,adjHigh,adjLow,"
+      + "adjOpen,adjVolume,divCash,splitFactor";
+  private static final LocalDate             firstDate = LocalDate.of(2020, 1, 2);
+  private static final LocalDate             lastDate  = LocalDate.of(2020, 3, 31);
+
+  private HttpServer                         server;
+  private File                               prevFinancePath;
+  private File                               dir;
+  private String                             prevApiUrl;
+
+  /** Start date of each price request by symbol. */
+  private final Map<String, List<LocalDate>> requests  = new ConcurrentHashMap<>();
+
+  /** Number of requests that should fail (with a 503) before succeeding. */
+  private final AtomicInteger                nFailures = new AtomicInteger();
+
+  private static String row(LocalDate date)
+  {
+    double price = 100.0 + date.getDayOfYear();
+    return String.format("%s,%.1f,%.1f,%.1f,%.1f,1000,%.1f,%.1f,%.1f,%.1f,1000,0.0,1.0", date, price, price + 1,
+        price - 1, price, price, price + 1, price - 1, price);
+  }
+
+  /** @return CSV rows for all business days in [from, to]. */
+  private static List<String> rows(LocalDate from, LocalDate to)
+  {
+    List<String> rows = new ArrayList<>();
+    for (LocalDate date = from; !date.isAfter(to); date = date.plusDays(1)) {
+      if (TimeLib.isBusinessDay(date)) rows.add(row(date));
+    }
+    return rows;
+  }
+
+  private static void respond(HttpExchange exchange, int code, String body) throws IOException
+  {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(code, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private void handle(HttpExchange exchange) throws IOException
+  {
+    if (nFailures.getAndDecrement() > 0) {
+      respond(exchange, 503, "Busy");
+      return;
+    }
+
+    String[] path = exchange.getRequestURI().getPath().split("/");
+    String symbol = path[path.length - (path[path.length - 1].equals("prices") ? 2 : 1)];
+    if (!path[path.length - 1].equals("prices")) {
+      respond(exchange, 200,
+          String.format("{\"ticker\":\"%s\",\"name\":\"Fund %s\",\"description\":\"Test\",\"exchangeCode\":\"NMFQS\","
+              + "\"startDate\":\"%s\",\"endDate\":\"%s\"}", symbol, symbol, firstDate, lastDate));
+      return;
+    }
+
+    LocalDate start = firstDate;
+    for (String param : exchange.getRequestURI().getQuery().split("&")) {
+      if (param.startsWith("startDate=")) start = LocalDate.parse(param.substring(10));
+    }
+    requests.computeIfAbsent(symbol, k -> new ArrayList<>()).add(start);
+
+    List<String> lines = new ArrayList<>();
+    lines.add(header);
+    lines.addAll(rows(start.isBefore(firstDate) ? firstDate : start, lastDate));
+    respond(exchange, 200, String.join("\n", lines) + "\n");
+  }
+
+  @Before
+  public void setUp() throws IOException
+  {
+    dir = Files.createTempDirectory("tiingo-test").toFile();
+    prevFinancePath = DataIO.getFinancePath();
+    DataIO.setFinancePath(dir);
+    TiingoIO.clearMetadataCache();
+
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> handle(exchange));
+    server.start();
+    prevApiUrl = TiingoIO.getApiUrl();
+    TiingoIO.setApiUrl(String.format("http://127.0.0.1:%d/tiingo/daily/", server.getAddress().getPort()));
+  }
+
+  @After
+  public void tearDown() throws IOException
+  {
+    server.stop(0);
+    TiingoIO.setApiUrl(prevApiUrl);
+    TiingoIO.clearMetadataCache();
+    DataIO.setFinancePath(prevFinancePath);
+    Files.walk(dir.toPath()).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+  }
+
+  private static void writeEod(String symbol, List<String> rows) throws IOException
+  {
+    File file = TiingoIO.getEodFile(symbol);
+    file.getParentFile().mkdirs();
+    List<String> lines = new ArrayList<>();
+    lines.add(header);
+    lines.addAll(rows);
+    Files.write(file.toPath(), lines);
+  }
+
+  @Test
+  public void testUpdate() throws IOException
+  {
+    final LocalDate partialEnd = LocalDate.of(2020, 2, 14);
+    writeEod("AAA", rows(firstDate, partialEnd)); // needs new rows
+    writeEod("CCC", Arrays.asList(row(firstDate), "2020-01-03,1,1,1,1,1,1,1,1,1,1,0.0,1.0")); // stale prices
+    writeEod("DDD", rows(firstDate, lastDate)); // already up to date
+    nFailures.set(2);
+
+    TiingoUpdater updater = new TiingoUpdater(3, 4, 1L);
+    assertTrue(updater.update("AAA", "BBB", "CCC", "DDD"));
+    assertEquals(2, updater.getNumRetries());
+
+    List<String> expected = new ArrayList<>();
+    expected.add(header);
+    expected.addAll(rows(firstDate, lastDate));
+    for (String symbol : new String[] { "AAA", "BBB", "CCC", "DDD" }) {
+      assertEquals(symbol, expected, Files.readAllLines(TiingoIO.getEodFile(symbol).toPath()));
+      assertEquals(symbol, TiingoIO.loadMetadata(symbol).ticker);
+      Sequence seq = TiingoIO.loadEodData(symbol);
+      assertEquals(expected.size() - 1, seq.length());
+      assertEquals(100.0 + lastDate.getDayOfYear(), seq.getLast(FinLib.AdjClose), 1e-9);
+    }
+
+    // Only the missing range is requested for existing files.
+    assertEquals(Arrays.asList(partialEnd), requests.get("AAA"));
+    assertEquals(Arrays.asList(lastDate), requests.get("DDD"));
+    assertEquals(1, requests.get("BBB").size());
+    assertEquals(2, requests.get("CCC").size()); // incremental request, then full download
+
+    // No temporary files left behind.
+    for (File file : TiingoIO.getPathEOD().listFiles()) {
+      assertTrue(file.getName(), file.getName().endsWith("-eod.csv"));
+    }
+  }
+
+  @Test
+  public void testFailure() throws IOException
+  {
+    writeEod("AAA", rows(firstDate, LocalDate.of(2020, 2, 14)));
+    List<String> before = Files.readAllLines(TiingoIO.getEodFile("AAA").toPath());
+    nFailures.set(100);
+
+    TiingoUpdater updater = new TiingoUpdater(2, 3, 1L);
+    assertFalse(updater.update("AAA"));
+    assertEquals(3, updater.getNumRequests());
+    assertEquals(before, Files.readAllLines(TiingoIO.getEodFile("AAA").toPath()));
+  }
+
+  @Test
+  public void testBlankPrice() throws IOException
+  {
+    // A row with a blank price is an error (not a NaN price).
+    writeEod("AAA", Arrays.asList(row(firstDate), "2020-01-03,101,102,100,101,1000,,102,100,101,1000,0.0,1.0"));
+    try {
+      TiingoIO.loadEodData("AAA");
+      fail();
+    } catch (NumberFormatException e) {}
+  }
+}
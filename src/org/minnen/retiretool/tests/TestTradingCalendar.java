@@ -0,0 +1,110 @@
+package org.minnen.retiretool.tests;
+
+import static org.junit.Assert.*;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.YearMonth;
+import java.util.Random;
+
+import org.junit.Test;
+import org.minnen.retiretool.util.TimeLib;
+import org.minnen.retiretool.util.TradingCalendar;
+
+public class TestTradingCalendar
+{
+  private static final LocalDate firstDay = TradingCalendar.FIRST_DAY.minusYears(2);
+  private static final LocalDate lastDay  = TradingCalendar.LAST_DAY.plusYears(2);
+
+  /** Business day check that doesn't use the calendar. */
+  private static boolean isBusinessDay(LocalDate date)
+  {
+    return !TimeLib.isWeekend(date) && !TimeLib.isHoliday(date);
+  }
+
+  /** Move by the given number of business days one day at a time. */
+  private static LocalDate plusBusinessDays(LocalDate date, int n)
+  {
+    final int step = (n < 0 ? -1 : 1);
+    for (int i = 0; i != n; i += step) {
+      do {
+        date = date.plusDays(step);
+      } while (!isBusinessDay(date));
+    }
+    return date;
+  }
+
+  @Test
+  public void testIsBusinessDay()
+  {
+    for (LocalDate date = firstDay; !date.isAfter(lastDay); date = date.plusDays(1)) {
+      assertEquals(date.toString(), isBusinessDay(date), TradingCalendar.isBusinessDay(date));
+    }
+    assertTrue(TradingCalendar.isBusinessDay(TimeLib.toMs(2017, Month.JULY, 5)));
+    assertFalse(TradingCalendar.isBusinessDay(TimeLib.toMs(2017, Month.JULY, 4)));
+  }
+
+  @Test
+  public void testPlusBusinessDays()
+  {
+    Random rng = new Random(42);
+    final int nDays = (int) (lastDay.toEpochDay() - firstDay.toEpochDay());
+    for (int i = 0; i < 20000; ++i) {
+      LocalDate date = firstDay.plusDays(rng.nextInt(nDays));
+      int n = rng.nextInt(61) - 30;
+      if (i % 100 == 0) n *= 100; // occasional long jumps
+      LocalDate expected = plusBusinessDays(date, n);
+      assertEquals(date + " " + n, expected, TradingCalendar.plusBusinessDays(date, n));
+      assertEquals(TimeLib.toMs(expected), TradingCalendar.plusBusinessDays(TimeLib.toMs(date), n));
+    }
+
+    // Jumps that cross the ends of the precomputed range.
+    for (int n : new int[] { -1000, -1, 1, 1000 }) {
+      for (LocalDate date : new LocalDate[] { TradingCalendar.FIRST_DAY, TradingCalendar.LAST_DAY }) {
+        assertEquals(plusBusinessDays(date, n), TradingCalendar.plusBusinessDays(date, n));
+      }
+    }
+  }
+
+  @Test
+  public void testMonths()
+  {
+    for (YearMonth month = YearMonth.from(firstDay); !month.isAfter(YearMonth.from(lastDay)); month = month
+        .plusMonths(1)) {
+      LocalDate first = month.atDay(1);
+      LocalDate last = month.atEndOfMonth();
+
+      int n = 0;
+      for (LocalDate date = first; !date.isAfter(last); date = date.plusDays(1)) {
+        if (isBusinessDay(date)) ++n;
+      }
+      assertEquals(month.toString(), n, TradingCalendar.getNumBusinessDays(month));
+      assertEquals(n, TradingCalendar.getNumBusinessDays(first, last.plusDays(1)));
+
+      LocalDate mid = month.atDay(15);
+      assertEquals(plusBusinessDays(first.minusDays(1), 1), TradingCalendar.toFirstBusinessDayOfMonth(mid));
+      assertEquals(plusBusinessDays(last.plusDays(1), -1), TradingCalendar.toLastBusinessDayOfMonth(mid));
+    }
+  }
+
+  @Test
+  public void testWeeks()
+  {
+    int iWeek = 0;
+    for (LocalDate monday = firstDay.with(DayOfWeek.MONDAY); monday.isBefore(lastDay); monday = monday.plusDays(7)) {
+      LocalDate first = null;
+      LocalDate last = null;
+      for (int i = 0; i < 7; ++i) {
+        LocalDate date = monday.plusDays(i);
+        if (isBusinessDay(date)) {
+          if (first == null) first = date;
+          last = date;
+        }
+      }
+      LocalDate date = monday.plusDays(iWeek++ % 7); // query from a different day of the week each time
+      assertEquals(first, TradingCalendar.toFirstBusinessDayOfWeek(date));
+      assertEquals(last, TradingCalendar.toLastBusinessDayOfWeek(date));
+    }
+  }
+}
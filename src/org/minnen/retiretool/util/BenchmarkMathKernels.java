@@ -0,0 +1,93 @@
+package org.minnen.retiretool.util;
+
+import java.util.Random;
+
+/**
+ * Time a covariance matrix and FeatureVec-sized dot products with the scalar kernels vs. the selected kernels.
+ *
+ * Run with `--add-modules jdk.incubator.vector` (and the classes from src-java16 on the classpath) to benchmark the
+ * vector kernels; otherwise both columns use the scalar kernels.
+ */
+public class BenchmarkMathKernels
+{
+  /** @return covariance matrix (same as Library.covariance()) computed with the given kernels. */
+  private static double[][] covariance(MathKernels kernels, double[][] r)
+  {
+    final int n = r.length;
+    double[] means = new double[n];
+    for (int i = 0; i < n; ++i) {
+      means[i] = Library.mean(r[i]);
+    }
+    double[][] cm = new double[n][n];
+    for (int i = 0; i < n; ++i) {
+      for (int j = i; j < n; ++j) {
+        cm[i][j] = cm[j][i] = kernels.centeredDot(r[i], means[i], r[j], means[j]) / (r[i].length - 1);
+      }
+    }
+    return cm;
+  }
+
+  /** @return average time in microseconds for one covariance matrix. */
+  private static double timeCovariance(MathKernels kernels, double[][] r, int nReps)
+  {
+    double sum = 0.0;
+    long t0 = System.nanoTime();
+    for (int rep = 0; rep < nReps; ++rep) {
+      sum += covariance(kernels, r)[0][1];
+    }
+    long t1 = System.nanoTime();
+    if (Double.isNaN(sum)) System.out.println(sum); // keep the result alive
+    return (t1 - t0) / 1000.0 / nReps;
+  }
+
+  /** @return average time in nanoseconds for one dot product of vectors of the given length. */
+  private static double timeDot(MathKernels kernels, int nDims, int nReps)
+  {
+    Random rng = new Random(42);
+    double[] a = new double[nDims];
+    double[] b = new double[nDims];
+    for (int i = 0; i < nDims; ++i) {
+      a[i] = rng.nextGaussian();
+      b[i] = rng.nextGaussian();
+    }
+    double sum = 0.0;
+    long t0 = System.nanoTime();
+    for (int rep = 0; rep < nReps; ++rep) {
+      sum += kernels.dot(a, b, nDims);
+    }
+    long t1 = System.nanoTime();
+    if (Double.isNaN(sum)) System.out.println(sum);
+    return (double) (t1 - t0) / nReps;
+  }
+
+  public static void main(String[] args)
+  {
+    final int nSeries = 40;
+    final int nDays = 2520;
+    Random rng = new Random(1234);
+    double[][] r = new double[nSeries][nDays];
+    for (int i = 0; i < nSeries; ++i) {
+      for (int t = 0; t < nDays; ++t) {
+        r[i][t] = 0.0003 + 0.01 * rng.nextGaussian();
+      }
+    }
+
+    MathKernels scalar = MathKernels.scalar();
+    MathKernels selected = MathKernels.get();
+    System.out.printf("Kernels: %s vs. %s\n", scalar.getName(), selected.getName());
+
+    // Warm up both implementations.
+    for (MathKernels kernels : new MathKernels[] { scalar, selected }) {
+      timeCovariance(kernels, r, 200);
+      timeDot(kernels, 16, 1000000);
+    }
+
+    System.out.printf(" Covariance (%d x %d): %8.1fus  %8.1fus\n", nSeries, nDays, timeCovariance(scalar, r, 500),
+        timeCovariance(selected, r, 500));
+    for (int nDims : new int[] { 4, 16, 256, 4096 }) {
+      final int nReps = 100000000 / nDims;
+      System.out.printf(" Dot (%4d dims):        %8.1fns  %8.1fns\n", nDims, timeDot(scalar, nDims, nReps),
+          timeDot(selected, nDims, nReps));
+    }
+  }
+}
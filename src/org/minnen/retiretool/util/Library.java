@@ -26,6 +26,10 @@ public final class Library
   public final static double  SQRT_2       = Math.sqrt(2.0);
   public static final double  ONE_TWELFTH  = 1.0 / 12.0;
 
+  /** Initial value for 64-bit FNV-1a hashes (see hash64). */
+  public final static long    HASH64_INIT  = 0xcbf29ce484222325L;
+  private final static long   HASH64_PRIME = 0x100000001b3L;
+
   public final static long    AppStartTime = TimeLib.getTime();
   public static final String  os           = System.getProperty("os.name");
   public static final boolean bWindows     = os.startsWith("Win");
@@ -70,6 +74,36 @@ public final class Library
     }
   }
 
+  /** @return 64-bit FNV-1a hash that extends `hash` with the eight bytes of `value`. */
+  public static long hash64(long hash, long value)
+  {
+    for (int i = 0; i < 8; ++i) {
+      hash ^= (value & 0xff);
+      hash *= HASH64_PRIME;
+      value >>>= 8;
+    }
+    return hash;
+  }
+
+  /** @return 64-bit FNV-1a hash that extends `hash` with the characters of `s`. */
+  public static long hash64(long hash, String s)
+  {
+    for (int i = 0; i < s.length(); ++i) {
+      char c = s.charAt(i);
+      hash ^= (c & 0xff);
+      hash *= HASH64_PRIME;
+      hash ^= (c >>> 8);
+      hash *= HASH64_PRIME;
+    }
+    return hash;
+  }
+
+  /** @return 64-bit FNV-1a hash of the given string. */
+  public static long hash64(String s)
+  {
+    return hash64(HASH64_INIT, s);
+  }
+
   /** @return array of length n with a[i] == i */
   public static int[] genIdentityArray(int n)
   {
@@ -82,6 +116,12 @@ public final class Library
 
   /** @return array of length n with values [0,n-1] in random order. */
   public static int[] shuffle(int n)
+  {
+    return shuffle(n, rng);
+  }
+
+  /** @return array of length n with values [0,n-1] in random order (drawn from the given generator). */
+  public static int[] shuffle(int n, Random rng)
   {
     int[] a = genIdentityArray(n);
     for (int i = a.length - 1; i > 0; i--) {
@@ -113,6 +153,66 @@ public final class Library
     return ii;
   }
 
+  /**
+   * Calculate the indices that sort the given array without changing it.
+   * 
+   * Runs in O(n log n) and breaks ties by index, so the result is the same as a stable sort.
+   * 
+   * @param a data to sort
+   * @return indices such that a[ii[0]] <= a[ii[1]] <= ...
+   */
+  public static int[] argsort(double[] a)
+  {
+    double[] keys = Arrays.copyOf(a, a.length);
+    int[] ii = genIdentityArray(a.length);
+    argsort(keys, ii, 0, a.length - 1);
+    return ii;
+  }
+
+  /** @return true if (a[i], ii[i]) comes before (a[j], ii[j]). */
+  private static boolean argless(double[] a, int[] ii, int i, int j)
+  {
+    return a[i] < a[j] || (a[i] == a[j] && ii[i] < ii[j]);
+  }
+
+  /** Quicksort of a[lo..hi] (inclusive) that moves the indices in ii along with the keys. */
+  private static void argsort(double[] a, int[] ii, int lo, int hi)
+  {
+    while (hi - lo > 16) {
+      // Median of three moves the pivot to lo.
+      int mid = (lo + hi) >>> 1;
+      if (argless(a, ii, mid, lo)) swap(a, ii, mid, lo);
+      if (argless(a, ii, hi, lo)) swap(a, ii, hi, lo);
+      if (argless(a, ii, hi, mid)) swap(a, ii, hi, mid);
+      swap(a, ii, lo, mid);
+
+      int i = lo, j = hi + 1;
+      while (true) {
+        while (argless(a, ii, ++i, lo) && i < hi) {}
+        while (argless(a, ii, lo, --j)) {}
+        if (i >= j) break;
+        swap(a, ii, i, j);
+      }
+      swap(a, ii, lo, j);
+
+      // Recurse on the smaller side to bound the stack depth.
+      if (j - lo < hi - j) {
+        argsort(a, ii, lo, j - 1);
+        lo = j + 1;
+      } else {
+        argsort(a, ii, j + 1, hi);
+        hi = j - 1;
+      }
+    }
+
+    // Insertion sort for small ranges.
+    for (int p = lo + 1; p <= hi; ++p) {
+      for (int q = p; q > lo && argless(a, ii, q, q - 1); --q) {
+        swap(a, ii, q, q - 1);
+      }
+    }
+  }
+
   /**
    * Internal insertion sort routine for subarrays that is used by quicksort.
    * 
@@ -360,15 +460,7 @@ public final class Library
     if (a.length < 2) {
       return 0.0;
     }
-
-    double mean = mean(a);
-    double s1 = 0.0, s2 = 0.0;
-    for (int i = 0; i < a.length; ++i) {
-      double diff = a[i] - mean;
-      s1 += diff * diff;
-      s2 += diff;
-    }
-    return (s1 - s2 * s2 / a.length) / (a.length - 1);
+    return MathKernels.get().centeredSumSq(a, mean(a)) / (a.length - 1);
   }
 
   public static double stdev(double... a)
@@ -379,11 +471,18 @@ public final class Library
   public static double[][] correlation(double[][] r)
   {
     final int n = r.length;
+    double[] means = new double[n];
+    double[] devs = new double[n];
+    for (int i = 0; i < n; ++i) {
+      means[i] = mean(r[i]);
+      devs[i] = stdev(r[i]);
+    }
+
     double[][] cm = new double[n][n];
     for (int i = 0; i < n; ++i) {
       cm[i][i] = 1.0;
       for (int j = i + 1; j < n; ++j) {
-        double p = correlation(r[i], r[j]);
+        double p = correlation(r[i], means[i], devs[i], r[j], means[j], devs[j]);
         assert !Double.isNaN(p);
         cm[i][j] = cm[j][i] = p;
       }
@@ -404,23 +503,32 @@ public final class Library
   public static double correlation(double[] a, double[] b)
   {
     assert a.length == b.length;
+    return correlation(a, mean(a), stdev(a), b, mean(b), stdev(b));
+  }
 
-    double sa = stdev(a);
-    double sb = stdev(b);
+  /** @return correlation given precomputed means and standard deviations. */
+  private static double correlation(double[] a, double ma, double sa, double[] b, double mb, double sb)
+  {
     if (Math.abs(sa) < 1e-8 || Math.abs(sb) < 1e-8) return 0.0;
-
-    double cov = covariance(a, b);
+    double cov = MathKernels.get().centeredDot(a, ma, b, mb) / (a.length - 1);
     return cov / (sa * sb);
   }
 
   public static double[][] covariance(double[][] r)
   {
     final int n = r.length;
+    double[] means = new double[n];
+    for (int i = 0; i < n; ++i) {
+      means[i] = mean(r[i]);
+    }
+
+    MathKernels kernels = MathKernels.get();
     double[][] cm = new double[n][n];
     for (int i = 0; i < n; ++i) {
       cm[i][i] = variance(r[i]);
       for (int j = i + 1; j < n; ++j) {
-        double p = covariance(r[i], r[j]);
+        assert r[i].length == r[j].length;
+        double p = kernels.centeredDot(r[i], means[i], r[j], means[j]) / (r[i].length - 1);
         assert !Double.isNaN(p);
         cm[i][j] = cm[j][i] = p;
       }
@@ -431,18 +539,7 @@ public final class Library
   public static double covariance(double[] a, double[] b)
   {
     assert a.length == b.length;
-
-    double ma = mean(a);
-    double mb = mean(b);
-
-    double sum = 0.0;
-    for (int i = 0; i < a.length; ++i) {
-      double da = a[i] - ma;
-      double db = b[i] - mb;
-      sum += da * db;
-    }
-
-    return sum / (a.length - 1);
+    return MathKernels.get().centeredDot(a, mean(a), b, mean(b)) / (a.length - 1);
   }
 
   public static LinearFunc linearFit(double[] x, double[] y)
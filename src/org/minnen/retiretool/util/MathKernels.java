@@ -0,0 +1,131 @@
+package org.minnen.retiretool.util;
+
+/**
+ * Inner loops shared by FeatureVec and the statistics functions in Library.
+ *
+ * This class holds the scalar implementations, which run everywhere. Builds on newer JDKs also include
+ * VectorMathKernels (see src-java16 and the vector-kernels profile in pom.xml), which uses the Vector API and is
+ * selected by get() when it can be loaded, i.e. when the JVM runs with `--add-modules jdk.incubator.vector`. Set the
+ * system property `retiretool.kernels=scalar` to force the scalar version.
+ *
+ * Element-wise operations give identical results in every implementation. Reductions (sums, dot products) may add
+ * terms in a different order, so results can differ in the last few bits.
+ */
+public class MathKernels
+{
+  private static final String      VECTOR_CLASS = "org.minnen.retiretool.util.VectorMathKernels";
+
+  private static final MathKernels scalar       = new MathKernels();
+  private static final MathKernels selected     = select();
+
+  protected MathKernels()
+  {}
+
+  /** @return fastest available implementation (chosen once at startup). */
+  public static MathKernels get()
+  {
+    return selected;
+  }
+
+  /** @return scalar implementation (mostly useful for comparing against the selected kernels). */
+  public static MathKernels scalar()
+  {
+    return scalar;
+  }
+
+  private static MathKernels select()
+  {
+    if ("scalar".equalsIgnoreCase(System.getProperty("retiretool.kernels"))) return scalar;
+    try {
+      Class<?> cls = Class.forName(VECTOR_CLASS);
+      MathKernels kernels = (MathKernels) cls.getDeclaredConstructor().newInstance();
+
+      // Make sure that the Vector API actually works before relying on it.
+      double[] x = new double[] { 1.0, 2.0, 3.0 };
+      if (kernels.dot(x, x, x.length) == 14.0) return kernels;
+    } catch (Throwable e) {
+      // Expected on Java 8 or without the incubator module.
+    }
+    return scalar;
+  }
+
+  /** @return name of this implementation. */
+  public String getName()
+  {
+    return "scalar";
+  }
+
+  /** In-place addition: a[i] += b[i] for i in [0, n). */
+  public void add(double[] a, double[] b, int n)
+  {
+    for (int i = 0; i < n; ++i) {
+      a[i] += b[i];
+    }
+  }
+
+  /** In-place multiplication: a[i] *= b[i] for i in [0, n). */
+  public void mul(double[] a, double[] b, int n)
+  {
+    for (int i = 0; i < n; ++i) {
+      a[i] *= b[i];
+    }
+  }
+
+  /** @return dot product of the first n elements of a and b. */
+  public double dot(double[] a, double[] b, int n)
+  {
+    double sum = 0.0;
+    for (int i = 0; i < n; ++i) {
+      sum += a[i] * b[i];
+    }
+    return sum;
+  }
+
+  /** @return squared distance between the first n elements of a and b. */
+  public double dist2(double[] a, double[] b, int n)
+  {
+    double sum = 0.0;
+    for (int i = 0; i < n; ++i) {
+      double diff = a[i] - b[i];
+      sum += diff * diff;
+    }
+    return sum;
+  }
+
+  /** @return squared L2 norm of the first n elements of a. */
+  public double norm2(double[] a, int n)
+  {
+    return dot(a, a, n);
+  }
+
+  /**
+   * Sum of squared differences from the mean.
+   *
+   * Uses the corrected two-pass algorithm so that rounding error in the mean doesn't matter.
+   *
+   * @return sum((a[i] - mean)^2) - sum(a[i] - mean)^2 / n
+   */
+  public double centeredSumSq(double[] a, double mean)
+  {
+    double s1 = 0.0, s2 = 0.0;
+    for (int i = 0; i < a.length; ++i) {
+      double diff = a[i] - mean;
+      s1 += diff * diff;
+      s2 += diff;
+    }
+    return s1 - s2 * s2 / a.length;
+  }
+
+  /** @return sum((a[i] - ma) * (b[i] - mb)) */
+  public double centeredDot(double[] a, double ma, double[] b, double mb)
+  {
+    assert a.length == b.length;
+    double sum = 0.0;
+    for (int i = 0; i < a.length; ++i) {
+      double da = a[i] - ma;
+      double db = b[i] - mb;
+      sum += da * db;
+    }
+    return sum;
+  }
+}
@@ -11,7 +11,6 @@ import java.time.YearMonth;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoField;
 import java.time.temporal.ChronoUnit;
 import java.time.temporal.TemporalAdjusters;
 import java.util.List;
@@ -304,15 +303,13 @@ public class TimeLib
   /** @return LocalDate for the given date moved to the first business day of the month. */
   public static LocalDate toFirstBusinessDayOfMonth(LocalDate date)
   {
-    LocalDate lastOfPrevMonth = date.minusMonths(1).with(TemporalAdjusters.lastDayOfMonth());
-    return toNextBusinessDay(lastOfPrevMonth);
+    return TradingCalendar.toFirstBusinessDayOfMonth(date);
   }
 
   /** @return LocalDate for the given date moved to the last business day of the month. */
   public static LocalDate toLastBusinessDayOfMonth(LocalDate date)
   {
-    LocalDate firstOfNextMonth = date.with(TemporalAdjusters.firstDayOfNextMonth());
-    return toPreviousBusinessDay(firstOfNextMonth);
+    return TradingCalendar.toLastBusinessDayOfMonth(date);
   }
 
   /** @return human readable string representing the given amount of time */
@@ -421,9 +418,10 @@ public class TimeLib
     return false;
   }
 
+  /** @return True if the given date is a business day (see TradingCalendar). */
   public static boolean isBusinessDay(LocalDate date)
   {
-    return !isWeekend(date) && !isHoliday(date);
+    return TradingCalendar.isBusinessDay(date);
   }
 
   public static long toLastBusinessDayOfWeek(long ms)
@@ -438,70 +436,37 @@ public class TimeLib
    */
   public static LocalDate toLastBusinessDayOfWeek(LocalDate date)
   {
-    LocalDate lastBusinessDayOfWeek = isBusinessDay(date) ? date : null;
-
-    LocalDate next = date;
-    while (true) {
-      next = toNextBusinessDay(next);
-      if (!isSameWeek(next, date)) break;
-      lastBusinessDayOfWeek = next;
-    }
-
-    if (lastBusinessDayOfWeek == null) {
-      LocalDate prev = toPreviousBusinessDay(date);
-      if (isSameWeek(prev, date)) {
-        lastBusinessDayOfWeek = prev;
-      }
-    }
-
-    return lastBusinessDayOfWeek;
+    return TradingCalendar.toLastBusinessDayOfWeek(date);
   }
 
   public static long toPreviousBusinessDay(long ms)
   {
-    return toMs(toPreviousBusinessDay(ms2date(ms)));
+    return TradingCalendar.plusBusinessDays(ms, -1);
   }
 
   public static LocalDate toPreviousBusinessDay(LocalDate date)
   {
-    while (true) {
-      date = date.minusDays(1);
-      if (isBusinessDay(date)) break;
-    }
-    return date;
+    return TradingCalendar.plusBusinessDays(date, -1);
   }
 
   public static long toNextBusinessDay(long ms)
   {
-    return toMs(toNextBusinessDay(ms2date(ms)));
+    return TradingCalendar.plusBusinessDays(ms, 1);
   }
 
   public static LocalDate toNextBusinessDay(LocalDate date)
   {
-    while (true) {
-      date = date.plusDays(1);
-      if (isBusinessDay(date)) break;
-    }
-    return date;
+    return TradingCalendar.plusBusinessDays(date, 1);
   }
 
   public static long plusBusinessDays(long ms, int nBusinessDays)
   {
-    return toMs(plusBusinessDays(ms2date(ms), nBusinessDays));
+    return TradingCalendar.plusBusinessDays(ms, nBusinessDays);
   }
 
   public static LocalDate plusBusinessDays(LocalDate date, int nBusinessDays)
   {
-    if (nBusinessDays < 0) {
-      for (int i = 0; i > nBusinessDays; --i) {
-        date = toPreviousBusinessDay(date);
-      }
-    } else if (nBusinessDays > 0) {
-      for (int i = 0; i < nBusinessDays; ++i) {
-        date = toNextBusinessDay(date);
-      }
-    }
-    return date;
+    return TradingCalendar.plusBusinessDays(date, nBusinessDays);
   }
 
   /**
@@ -538,13 +503,7 @@ public class TimeLib
   /** @return number of business days in the given month. */
   public static int getNumBusinessDays(YearMonth month)
   {
-    int n = 0;
-    LocalDate date = month.atDay(1);
-    while (date.get(ChronoField.MONTH_OF_YEAR) == month.getMonthValue()) {
-      if (isBusinessDay(date)) ++n;
-      date = date.plusDays(1);
-    }
-    return n;
+    return TradingCalendar.getNumBusinessDays(month);
   }
 
   /**
@@ -0,0 +1,186 @@
+package org.minnen.retiretool.util;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Arrays;
+
+/**
+ * Precomputed calendar of business (trading) days.
+ *
+ * Business days are weekdays that aren't holidays (see TimeLib.isHoliday()). The calendar stores a bitset of business
+ * days along with tables that map days to business-day ordinals and back, covering 1871 (start of the Shiller data)
+ * through 2100. All queries within this range take constant time. Queries outside of the range fall back to checking
+ * one day at a time.
+ */
+public class TradingCalendar
+{
+  /** First day covered by the precomputed tables. */
+  public static final LocalDate FIRST_DAY = LocalDate.of(1871, 1, 1);
+
+  /** Last day covered by the precomputed tables. */
+  public static final LocalDate LAST_DAY  = LocalDate.of(2100, 12, 31);
+
+  private static final long     firstEpochDay;
+  private static final int      nDays;
+
+  /** Bit i is set if day i (relative to FIRST_DAY) is a business day. */
+  private static final long[]   businessBits;
+
+  /** ordinals[i] = number of business days before day i (length is nDays + 1). */
+  private static final int[]    ordinals;
+
+  /** businessDays[k] = index of the k^th business day. */
+  private static final int[]    businessDays;
+
+  static {
+    firstEpochDay = FIRST_DAY.toEpochDay();
+    nDays = (int) (LAST_DAY.toEpochDay() - firstEpochDay + 1);
+    businessBits = new long[(nDays + 63) / 64];
+    ordinals = new int[nDays + 1];
+    int[] days = new int[nDays];
+    int nBusinessDays = 0;
+    for (int i = 0; i < nDays; ++i) {
+      ordinals[i] = nBusinessDays;
+      if (calcIsBusinessDay(LocalDate.ofEpochDay(firstEpochDay + i))) {
+        businessBits[i >>> 6] |= 1L << i;
+        days[nBusinessDays++] = i;
+      }
+    }
+    ordinals[nDays] = nBusinessDays;
+    businessDays = Arrays.copyOf(days, nBusinessDays);
+  }
+
+  private static boolean calcIsBusinessDay(LocalDate date)
+  {
+    return !TimeLib.isWeekend(date) && !TimeLib.isHoliday(date);
+  }
+
+  private static long toEpochDay(long ms)
+  {
+    return Math.floorDiv(ms, TimeLib.MS_IN_DAY);
+  }
+
+  /** @return time in ms for noon on the given day (matches TimeLib.toMs(LocalDate)). */
+  private static long toMs(long epochDay)
+  {
+    return epochDay * TimeLib.MS_IN_DAY + TimeLib.MS_IN_DAY / 2;
+  }
+
+  /** @return index of the given day in the precomputed tables, or -1 if it's out of range. */
+  private static int index(long epochDay)
+  {
+    long i = epochDay - firstEpochDay;
+    return (i >= 0 && i < nDays) ? (int) i : -1;
+  }
+
+  private static boolean isBusiness(long epochDay)
+  {
+    int i = index(epochDay);
+    if (i < 0) return calcIsBusinessDay(LocalDate.ofEpochDay(epochDay));
+    return (businessBits[i >>> 6] & (1L << i)) != 0;
+  }
+
+  private static long plus(long epochDay, int nBusinessDays)
+  {
+    if (nBusinessDays == 0) return epochDay;
+    int i = index(epochDay);
+    if (i >= 0) {
+      long k = (nBusinessDays > 0 ? ordinals[i + 1] + nBusinessDays - 1L : ordinals[i] + (long) nBusinessDays);
+      if (k >= 0 && k < businessDays.length) return firstEpochDay + businessDays[(int) k];
+    }
+
+    // Outside of precomputed range so step one day at a time.
+    final int step = (nBusinessDays > 0 ? 1 : -1);
+    for (int n = 0; n != nBusinessDays; n += step) {
+      do {
+        epochDay += step;
+      } while (!isBusiness(epochDay));
+    }
+    return epochDay;
+  }
+
+  /** @return number of business days in [from, to). */
+  private static int count(long from, long to)
+  {
+    if (to <= from) return 0;
+    int iFrom = index(from);
+    int iTo = index(to - 1);
+    if (iFrom >= 0 && iTo >= 0) return ordinals[iTo + 1] - ordinals[iFrom];
+
+    int n = 0;
+    for (long day = from; day < to; ++day) {
+      if (isBusiness(day)) ++n;
+    }
+    return n;
+  }
+
+  public static boolean isBusinessDay(LocalDate date)
+  {
+    return isBusiness(date.toEpochDay());
+  }
+
+  public static boolean isBusinessDay(long ms)
+  {
+    return isBusiness(toEpochDay(ms));
+  }
+
+  /**
+   * Move forward (or backward) by the given number of business days.
+   *
+   * The given date does not need to be a business day, e.g. plusBusinessDays(saturday, 1) returns the following Monday
+   * (if it's not a holiday) and plusBusinessDays(saturday, -1) returns the previous Friday.
+   *
+   * @return business day that is `nBusinessDays` business days after the given date.
+   */
+  public static LocalDate plusBusinessDays(LocalDate date, int nBusinessDays)
+  {
+    return LocalDate.ofEpochDay(plus(date.toEpochDay(), nBusinessDays));
+  }
+
+  /** @return time in ms for noon on the business day `nBusinessDays` after the given time. */
+  public static long plusBusinessDays(long ms, int nBusinessDays)
+  {
+    return toMs(plus(toEpochDay(ms), nBusinessDays));
+  }
+
+  /** @return number of business days in [from, to). */
+  public static int getNumBusinessDays(LocalDate from, LocalDate to)
+  {
+    return count(from.toEpochDay(), to.toEpochDay());
+  }
+
+  /** @return number of business days in the given month. */
+  public static int getNumBusinessDays(YearMonth month)
+  {
+    return count(month.atDay(1).toEpochDay(), month.plusMonths(1).atDay(1).toEpochDay());
+  }
+
+  /** @return first business day in the month containing the given date. */
+  public static LocalDate toFirstBusinessDayOfMonth(LocalDate date)
+  {
+    return LocalDate.ofEpochDay(plus(date.withDayOfMonth(1).toEpochDay() - 1, 1));
+  }
+
+  /** @return last business day in the month containing the given date. */
+  public static LocalDate toLastBusinessDayOfMonth(LocalDate date)
+  {
+    return LocalDate.ofEpochDay(plus(date.withDayOfMonth(1).plusMonths(1).toEpochDay(), -1));
+  }
+
+  /** @return first business day in the week (Monday to Sunday) containing the given date, or null if none. */
+  public static LocalDate toFirstBusinessDayOfWeek(LocalDate date)
+  {
+    long monday = date.toEpochDay() - (date.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue());
+    long day = plus(monday - 1, 1);
+    return day < monday + 7 ? LocalDate.ofEpochDay(day) : null;
+  }
+
+  /** @return last business day in the week (Monday to Sunday) containing the given date, or null if none. */
+  public static LocalDate toLastBusinessDayOfWeek(LocalDate date)
+  {
+    long monday = date.toEpochDay() - (date.getDayOfWeek().getValue() - DayOfWeek.MONDAY.getValue());
+    long day = plus(monday + 7, -1);
+    return day >= monday ? LocalDate.ofEpochDay(day) : null;
+  }
+}
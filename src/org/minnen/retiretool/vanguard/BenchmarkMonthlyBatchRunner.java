@@ -0,0 +1,89 @@
+package org.minnen.retiretool.vanguard;
+
+import java.time.LocalDate;
+import java.time.Month;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.minnen.retiretool.data.DiscreteDistribution;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.util.TimeLib;
+
+/** Time the batched monthly simulation vs. running MonthlyRunner on each portfolio. */
+public class BenchmarkMonthlyBatchRunner
+{
+  public static void main(String[] args)
+  {
+    final int nFunds = 16;
+    final int nMonths = 300;
+    final int durStatsMonths = 120;
+    final int nPortfolios = 100000;
+    Random rng = new Random(1234);
+
+    List<Sequence> seqs = new ArrayList<>();
+    String[] names = new String[nFunds];
+    LocalDate start = LocalDate.of(1990, Month.JANUARY, 1);
+    for (int i = 0; i < nFunds; ++i) {
+      names[i] = String.format("F%d", i);
+      Sequence seq = new Sequence(names[i]);
+      for (int t = 0; t < nMonths; ++t) {
+        seq.addData(1.006 + 0.04 * rng.nextGaussian(), TimeLib.toMs(start.plusMonths(t)));
+      }
+      seqs.add(seq);
+    }
+
+    // Random portfolios with 3-6 funds.
+    List<DiscreteDistribution> portfolios = new ArrayList<>();
+    for (int i = 0; i < nPortfolios; ++i) {
+      DiscreteDistribution portfolio = new DiscreteDistribution(names);
+      int nAssets = 3 + rng.nextInt(4);
+      int k = rng.nextInt(nFunds);
+      for (int j = 0; j < nAssets; ++j) {
+        k = (k + 1 + rng.nextInt(2)) % nFunds;
+        portfolio.weights[k] += 1.0 / nAssets;
+      }
+      portfolios.add(portfolio);
+    }
+    System.out.printf("Portfolios=%d Months=%d Funds=%d\n", nPortfolios, nMonths, nFunds);
+
+    // MonthlyRunner on a subset.
+    final int nSlow = 10000;
+    MonthlyRunner runner = new MonthlyRunner(seqs, durStatsMonths);
+    long t0 = TimeLib.getTime();
+    for (int i = 0; i < nSlow; ++i) {
+      runner.run(portfolios.get(i));
+    }
+    long t1 = TimeLib.getTime();
+    System.out.printf(" MonthlyRunner:  %6.2fus / portfolio\n", 1000.0 * (t1 - t0) / nSlow);
+
+    MonthlyBatchRunner batchRunner = new MonthlyBatchRunner(seqs, durStatsMonths);
+    batchRunner.run(portfolios); // warm up
+    long t2 = TimeLib.getTime();
+    batchRunner.run(portfolios);
+    long t3 = TimeLib.getTime();
+    System.out.printf(" Batch (serial): %6dms (%.2fus / portfolio)\n", t3 - t2, 1000.0 * (t3 - t2) / nPortfolios);
+
+    // Same portfolios as a dense weight matrix (no name lookups).
+    double[][] weights = new double[nPortfolios][];
+    for (int i = 0; i < nPortfolios; ++i) {
+      weights[i] = portfolios.get(i).weights;
+    }
+    batchRunner.run(weights); // warm up
+    long t6 = TimeLib.getTime();
+    batchRunner.run(weights);
+    long t7 = TimeLib.getTime();
+    System.out.printf(" Batch (matrix): %6dms (%.2fus / portfolio)\n", t7 - t6, 1000.0 * (t7 - t6) / nPortfolios);
+
+    final int nMaxThreads = Runtime.getRuntime().availableProcessors();
+    for (int nThreads = 1; nThreads <= nMaxThreads; nThreads *= 2) {
+      ForkJoinPool pool = new ForkJoinPool(nThreads);
+      long t4 = TimeLib.getTime();
+      batchRunner.setPool(pool).run(portfolios);
+      long t5 = TimeLib.getTime();
+      pool.shutdown();
+      System.out.printf(" Batch (%2d threads): %6dms\n", nThreads, t5 - t4);
+    }
+  }
+}
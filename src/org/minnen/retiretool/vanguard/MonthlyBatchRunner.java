@@ -0,0 +1,300 @@
+package org.minnen.retiretool.vanguard;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.minnen.retiretool.data.DiscreteDistribution;
+import org.minnen.retiretool.data.FeatureVec;
+import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.util.TimeLib;
+
+/**
+ * Simulates many portfolios at once with the same rules as MonthlyRunner.
+ *
+ * Monthly returns for all funds are packed into a dense [month][fund] matrix and portfolios can be given as a dense
+ * [portfolio][fund] weight matrix (see run(double[][])). A block of portfolios is advanced one month at a time: each
+ * portfolio's position values are a row of a struct-of-arrays buffer, so a month touches one row of the returns matrix
+ * and the positions of the block, with no Position objects, name lookups, or Sequence appends. Each thread has one set
+ * of buffers (positions and balance paths) that is reused for every block it simulates, and the stats come from
+ * SummaryTools.calcStats() on each balance path. Blocks are independent and can run in parallel.
+ */
+public class MonthlyBatchRunner implements PortfolioRunner
+{
+  /** Number of portfolios simulated together. */
+  public static final int              BLOCK_SIZE      = 256;
+
+  /** Weights below this are ignored (same as MonthlyRunner). */
+  private static final double          MIN_WEIGHT      = 1e-5;
+
+  private final List<Sequence>         seqs;
+  private final String[]               fundNames;
+  private final double[][]             returns;
+  private final int                    nFunds;
+  private final int                    nMonths;
+  private final double                 nMonthsTotal;
+  private final int                    durStatsMonths;
+  private int                          rebalanceMonths = 6;
+  private double                       rebalanceBand   = 0.0;
+  private ForkJoinPool                 pool;
+
+  /** Buffers for the calling thread (created on first use and reused for every block). */
+  private final ThreadLocal<Workspace> workspace       = ThreadLocal.withInitial(Workspace::new);
+
+  /** Buffers for simulating one block of portfolios. */
+  private class Workspace
+  {
+    /** Name of each portfolio in the block (null = skip). */
+    public final String[]   names                = new String[BLOCK_SIZE];
+
+    /** Portfolio k holds funds assets[k][0..nAssets[k]) with target weights targets[k][...]. */
+    public final int[][]    assets               = new int[BLOCK_SIZE][nFunds];
+    public final int[]      nAssets              = new int[BLOCK_SIZE];
+    public final double[][] targets              = new double[BLOCK_SIZE][nFunds];
+
+    /** Current value of each position. */
+    public final double[][] values               = new double[BLOCK_SIZE][nFunds];
+    public final int[]      monthsSinceRebalance = new int[BLOCK_SIZE];
+
+    /** balances[k][0] is the starting balance and balances[k][t+1] is the balance after month t. */
+    public final double[][] balances             = new double[BLOCK_SIZE][nMonths + 1];
+  }
+
+  /** Fills row k of the workspace with portfolio i and returns its name (null if the portfolio can't be run). */
+  private interface Loader
+  {
+    public String load(int i, Workspace ws, int k);
+  }
+
+  public MonthlyBatchRunner(List<Sequence> seqs, int durStatsMonths)
+  {
+    this.seqs = seqs;
+    this.durStatsMonths = durStatsMonths;
+    nFunds = seqs.size();
+    nMonths = seqs.get(0).length();
+    fundNames = new String[nFunds];
+    returns = new double[nMonths][nFunds];
+    for (int i = 0; i < nFunds; ++i) {
+      Sequence seq = seqs.get(i);
+      assert seq.length() == nMonths;
+      fundNames[i] = seq.getName();
+      for (int t = 0; t < nMonths; ++t) {
+        returns[t][i] = seq.get(t, 0);
+      }
+    }
+
+    // Balance paths start one month before the first return (same as MonthlyRunner).
+    long startTime = TimeLib.toMs(TimeLib.ms2date(seqs.get(0).getStartMS()).minusMonths(1));
+    nMonthsTotal = TimeLib.monthsBetween(startTime, seqs.get(0).getEndMS());
+  }
+
+  /** Same as MonthlyRunner.setRebalance(). */
+  public MonthlyBatchRunner setRebalance(int rebalanceMonths, double rebalanceBand)
+  {
+    this.rebalanceMonths = rebalanceMonths;
+    this.rebalanceBand = rebalanceBand;
+    return this;
+  }
+
+  /** Set the pool used to simulate blocks in parallel (null = run in the calling thread). */
+  public MonthlyBatchRunner setPool(ForkJoinPool pool)
+  {
+    this.pool = pool;
+    return this;
+  }
+
+  /** @return number of months simulated (balance paths have one more value for the starting balance). */
+  public int getNumMonths()
+  {
+    return nMonths;
+  }
+
+  /** @return number of funds (columns of the weight matrix passed to run(double[][])). */
+  public int getNumFunds()
+  {
+    return nFunds;
+  }
+
+  /** @return column of the weight matrix for the given fund or -1 if it's unknown (same lookup as MonthlyRunner). */
+  public int getFundIndex(String name)
+  {
+    return Sequence.findByName(name, seqs);
+  }
+
+  @Override
+  public FeatureVec run(DiscreteDistribution portfolio)
+  {
+    List<DiscreteDistribution> portfolios = new ArrayList<>();
+    portfolios.add(portfolio);
+    return run(portfolios).get(0);
+  }
+
+  /**
+   * Simulate each portfolio and calculate its stats.
+   *
+   * @param portfolios portfolios to simulate
+   * @return stats for each portfolio (null if the portfolio uses an unknown fund)
+   */
+  public List<FeatureVec> run(List<DiscreteDistribution> portfolios)
+  {
+    // Look up funds once for each array of names (portfolios built from the same symbols share one array).
+    Map<String[], int[]> fundIndices = new IdentityHashMap<>();
+    for (DiscreteDistribution portfolio : portfolios) {
+      fundIndices.computeIfAbsent(portfolio.names, names -> {
+        int[] index = new int[names.length];
+        for (int j = 0; j < names.length; ++j) {
+          index[j] = getFundIndex(names[j]);
+        }
+        return index;
+      });
+    }
+
+    return run(portfolios.size(), (i, ws, k) -> {
+      DiscreteDistribution portfolio = portfolios.get(i);
+      int[] index = fundIndices.get(portfolio.names);
+      int n = 0;
+      for (int j = 0; j < portfolio.size(); ++j) {
+        if (portfolio.weights[j] < MIN_WEIGHT) continue;
+        if (index[j] < 0) {
+          System.err.printf("Failed to find asset: %s\n", portfolio.names[j]);
+          return null;
+        }
+        ws.assets[k][n] = index[j];
+        ws.targets[k][n] = portfolio.weights[j];
+        ++n;
+      }
+      ws.nAssets[k] = n;
+      return portfolio.toStringWithNames(0);
+    });
+  }
+
+  /**
+   * Simulate each portfolio in a dense weight matrix and calculate its stats.
+   *
+   * @param weights weights[i][j] is the fraction (0.3 = 30%) of portfolio i in fund j (same order as the sequences
+   *          given to the constructor; see getFundIndex()); null rows are skipped
+   * @return stats for each portfolio (null for null rows)
+   */
+  public List<FeatureVec> run(double[][] weights)
+  {
+    return run(weights.length, (i, ws, k) -> {
+      final double[] w = weights[i];
+      if (w == null) return null;
+      assert w.length == nFunds;
+      int n = 0;
+      for (int j = 0; j < nFunds; ++j) {
+        if (w[j] < MIN_WEIGHT) continue;
+        ws.assets[k][n] = j;
+        ws.targets[k][n] = w[j];
+        ++n;
+      }
+      ws.nAssets[k] = n;
+      return formatName(ws, k);
+    });
+  }
+
+  /** @return name of portfolio k in the workspace (same format as DiscreteDistribution.toStringWithNames(0)). */
+  private String formatName(Workspace ws, int k)
+  {
+    StringBuilder sb = new StringBuilder("[");
+    for (int j = 0; j < ws.nAssets[k]; ++j) {
+      final double w = ws.targets[k][j];
+      if (w < 1e-4) continue;
+      if (sb.length() > 1) sb.append(",");
+      sb.append(fundNames[ws.assets[k][j]]).append(":").append(Math.round(w * 100.0));
+    }
+    return sb.append("]").toString();
+  }
+
+  /** Simulate portfolios [0, n) one block at a time using the loader to fill each block. */
+  private List<FeatureVec> run(int n, Loader loader)
+  {
+    final FeatureVec[] stats = new FeatureVec[n];
+    List<Callable<Void>> tasks = new ArrayList<>();
+    for (int iFrom = 0; iFrom < n; iFrom += BLOCK_SIZE) {
+      final int from = iFrom;
+      final int to = Math.min(n, iFrom + BLOCK_SIZE);
+      tasks.add(() -> {
+        Workspace ws = workspace.get();
+        for (int i = from; i < to; ++i) {
+          ws.names[i - from] = loader.load(i, ws, i - from);
+        }
+        simulate(ws, to - from);
+        for (int i = from; i < to; ++i) {
+          String name = ws.names[i - from];
+          if (name == null) continue;
+          stats[i] = SummaryTools.calcStats(name, ws.balances[i - from], nMonthsTotal, durStatsMonths);
+        }
+        return null;
+      });
+    }
+
+    try {
+      if (pool == null) {
+        for (Callable<Void> task : tasks) {
+          task.call();
+        }
+      } else {
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+          future.get();
+        }
+      }
+    } catch (RuntimeException e) {
+      throw e;
+    } catch (Exception e) {
+      throw new RuntimeException(e.getMessage(), e);
+    }
+    return Arrays.asList(stats);
+  }
+
+  /** Simulate the first `count` portfolios in the workspace starting with a balance of 1.0. */
+  private void simulate(Workspace ws, int count)
+  {
+    for (int k = 0; k < count; ++k) {
+      if (ws.names[k] == null) continue;
+      System.arraycopy(ws.targets[k], 0, ws.values[k], 0, ws.nAssets[k]);
+      ws.monthsSinceRebalance[k] = 0;
+      ws.balances[k][0] = 1.0;
+    }
+
+    for (int t = 0; t < nMonths; ++t) {
+      final double[] r = returns[t];
+      for (int k = 0; k < count; ++k) {
+        if (ws.names[k] == null) continue;
+
+        // Update each position with this month's returns.
+        final int[] a = ws.assets[k];
+        final int n = ws.nAssets[k];
+        final double[] v = ws.values[k];
+        final double[] w = ws.targets[k];
+        double balance = 0.0;
+        for (int j = 0; j < n; ++j) {
+          v[j] *= r[a[j]];
+          balance += v[j];
+        }
+        ws.balances[k][t + 1] = balance;
+
+        if (++ws.monthsSinceRebalance[k] >= rebalanceMonths || isOutsideBand(v, w, n, balance)) {
+          for (int j = 0; j < n; ++j) {
+            v[j] = w[j] * balance;
+          }
+          ws.monthsSinceRebalance[k] = 0;
+        }
+      }
+    }
+  }
+
+  private boolean isOutsideBand(double[] values, double[] targets, int n, double balance)
+  {
+    if (rebalanceBand <= 0.0) return false;
+    for (int j = 0; j < n; ++j) {
+      if (Math.abs(values[j] / balance - targets[j]) > rebalanceBand) return true;
+    }
+    return false;
+  }
+}
@@ -11,6 +11,8 @@ public class MonthlyRunner implements PortfolioRunner
 {
   private List<Sequence> seqs;
   private int            durStatsMonths;
+  private int            rebalanceMonths = 6;
+  private double         rebalanceBand   = 0.0;
 
   private class Position
   {
@@ -34,6 +36,19 @@ public class MonthlyRunner implements PortfolioRunner
     this.durStatsMonths = durStatsMonths;
   }
 
+  /**
+   * Set the rebalancing schedule.
+   *
+   * @param rebalanceMonths rebalance after this many months
+   * @param rebalanceBand also rebalance when any position is further than this from its target (0.05 = 5%; 0 = off)
+   */
+  public MonthlyRunner setRebalance(int rebalanceMonths, double rebalanceBand)
+  {
+    this.rebalanceMonths = rebalanceMonths;
+    this.rebalanceBand = rebalanceBand;
+    return this;
+  }
+
   @Override
   public FeatureVec run(DiscreteDistribution portfolio)
   {
@@ -70,8 +85,8 @@ public class MonthlyRunner implements PortfolioRunner
       double balance = getBalance(positions);
       returnsMonthly.addData(new FeatureVec(1, balance).setTime(time));
 
-      // Rebalance every six months.
-      if (monthsSinceRebalance >= 6) {
+      // Rebalance every few months (six by default) or when a position leaves its band.
+      if (monthsSinceRebalance >= rebalanceMonths || isOutsideBand(positions, balance)) {
         for (Position pos : positions) {
           pos.value = pos.targetAllocation * balance;
         }
@@ -83,6 +98,15 @@ public class MonthlyRunner implements PortfolioRunner
     return SummaryTools.calcStats(returnsMonthly, durStatsMonths);
   }
 
+  private boolean isOutsideBand(Position[] positions, double balance)
+  {
+    if (rebalanceBand <= 0.0) return false;
+    for (Position pos : positions) {
+      if (Math.abs(pos.value / balance - pos.targetAllocation) > rebalanceBand) return true;
+    }
+    return false;
+  }
+
   private static double getBalance(Position[] positions)
   {
     double balance = 0.0;
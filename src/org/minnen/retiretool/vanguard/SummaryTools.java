@@ -7,15 +7,19 @@ import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.minnen.retiretool.data.AllocationSpace;
 import org.minnen.retiretool.data.DiscreteDistribution;
 import org.minnen.retiretool.data.FeatureVec;
 import org.minnen.retiretool.data.Sequence;
 import org.minnen.retiretool.stats.CumulativeStats;
 import org.minnen.retiretool.stats.DurationalStats;
+import org.minnen.retiretool.util.FinLib;
 import org.minnen.retiretool.util.Library;
 import org.minnen.retiretool.util.TimeLib;
 
@@ -101,20 +105,30 @@ public class SummaryTools
         weightStep, portfolios);
   }
 
+  /** @return space of all portfolios over `fundSymbols` allowed by the given config (same as scanDistributions()). */
+  public static AllocationSpace buildAllocationSpace(PortfolioSearchConfig config)
+  {
+    return new AllocationSpace(fundSymbols.length, config.minAssets, config.maxAssets, config.minWeight,
+        config.maxWeight, config.weightStep);
+  }
+
   public static List<FeatureVec> savePortfolioStats(PortfolioRunner runner, PortfolioSearchConfig config, File file)
       throws IOException
   {
-    List<DiscreteDistribution> portfolios = new ArrayList<>();
+    // Portfolios are decoded one at a time in rank order instead of building a list of all of them. Runners aren't
+    // thread-safe so the stream is sequential.
     long a = TimeLib.getTime();
-
-    scanDistributions(config, portfolios);
+    AllocationSpace space = buildAllocationSpace(config);
+    final long nPortfolios = space.size();
 
     long b = TimeLib.getTime();
-    System.out.printf("Portofolios: %d  (%s)\n", portfolios.size(), TimeLib.formatDuration(b - a));
+    System.out.printf("Portofolios: %d  (%s)\n", nPortfolios, TimeLib.formatDuration(b - a));
     List<FeatureVec> stats = new ArrayList<>();
     try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
       a = TimeLib.getTime();
-      for (DiscreteDistribution portfolio : portfolios) {
+      Iterator<int[]> it = space.stream(false).iterator();
+      while (it.hasNext()) {
+        DiscreteDistribution portfolio = buildDistribution(it.next());
         FeatureVec v = runner.run(portfolio);
         stats.add(v);
         // System.out.printf("%s = %s\n", v.getName(), v);
@@ -125,10 +139,65 @@ public class SummaryTools
         if (stats.size() % 10000 == 0) {
           double persec = stats.size() * 1000.0 / (b - a);
           System.out.printf("[%s] %.2f%% @ %.1f/s => %s left\n", TimeLib.formatTime(TimeLib.getTime()),
-              100.0 * stats.size() / portfolios.size(), persec,
-              TimeLib.formatDuration((long) (1000.0 * (portfolios.size() - stats.size()) / persec), 2));
+              100.0 * stats.size() / nPortfolios, persec,
+              TimeLib.formatDuration((long) (1000.0 * (nPortfolios - stats.size()) / persec), 2));
+        }
+
+      }
+      System.out.printf("Ran & Saved Portfolios (%s)\n", TimeLib.formatDuration(b - a));
+      return stats;
+    }
+  }
+
+  /**
+   * Same as savePortfolioStats(PortfolioRunner, ...) but simulates blocks of portfolios with a batch runner.
+   *
+   * Ranks are decoded straight into a dense weight matrix (one row per portfolio, columns in the runner's fund order)
+   * that is reused for each chunk, so there's no DiscreteDistribution or fund lookup per portfolio.
+   */
+  public static List<FeatureVec> savePortfolioStats(MonthlyBatchRunner runner, PortfolioSearchConfig config,
+      File file) throws IOException
+  {
+    long a = TimeLib.getTime();
+    AllocationSpace space = buildAllocationSpace(config);
+    final long nPortfolios = space.size();
+    long b = TimeLib.getTime();
+    System.out.printf("Portofolios: %d  (%s)\n", nPortfolios, TimeLib.formatDuration(b - a));
+
+    // Column of the weight matrix for each symbol.
+    int[] fundIndex = new int[fundSymbols.length];
+    for (int i = 0; i < fundSymbols.length; ++i) {
+      fundIndex[i] = runner.getFundIndex(fundSymbols[i]);
+      if (fundIndex[i] < 0) {
+        throw new IllegalArgumentException(String.format("Failed to find asset: %s", fundSymbols[i]));
+      }
+    }
+
+    final int chunkSize = 64 * MonthlyBatchRunner.BLOCK_SIZE;
+    double[][] weightMatrix = new double[(int) Math.min(chunkSize, nPortfolios)][runner.getNumFunds()];
+    int[] weights = new int[fundSymbols.length];
+    List<FeatureVec> stats = new ArrayList<>();
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(file))) {
+      a = TimeLib.getTime();
+      for (long from = 0; from < nPortfolios; from += chunkSize) {
+        final int n = (int) Math.min(chunkSize, nPortfolios - from);
+        for (int i = 0; i < n; ++i) {
+          space.unrank(from + i, weights);
+          Arrays.fill(weightMatrix[i], 0.0);
+          for (int j = 0; j < weights.length; ++j) {
+            weightMatrix[i][fundIndex[j]] += weights[j] / 100.0;
+          }
+        }
+        for (FeatureVec v : runner.run(n == weightMatrix.length ? weightMatrix : Arrays.copyOf(weightMatrix, n))) {
+          stats.add(v);
+          writer.write(String.format("%-80s %s\n", v.getName(), v));
         }
 
+        b = TimeLib.getTime();
+        double persec = stats.size() * 1000.0 / Math.max(b - a, 1);
+        System.out.printf("[%s] %.2f%% @ %.1f/s => %s left\n", TimeLib.formatTime(TimeLib.getTime()),
+            100.0 * stats.size() / nPortfolios, persec,
+            TimeLib.formatDuration((long) (1000.0 * (nPortfolios - stats.size()) / persec), 2));
       }
       System.out.printf("Ran & Saved Portfolios (%s)\n", TimeLib.formatDuration(b - a));
       return stats;
@@ -231,4 +300,52 @@ public class SummaryTools
     return new FeatureVec(cumulativeReturnsMonthly.getName(), 5, cstats.cagr, -cstats.drawdown, dstats.min,
         dstats.percentile10, dstats.median);
   }
+
+  /**
+   * Calculate the same stats as calcStats(Sequence, int) for monthly cumulative returns stored in an array.
+   *
+   * @param name name of the returned stats vector
+   * @param cumulativeReturnsMonthly cumulative returns, one per month (the first value is the starting balance)
+   * @param nMonths length of the returns in months (used for CAGR; normally the number of values minus one)
+   * @param durStatsMonths length of the periods used for the worst, 10th percentile, and median stats
+   * @return stats vector (CAGR, drawdown, worst period, 10th percentile, median)
+   */
+  public static FeatureVec calcStats(String name, double[] cumulativeReturnsMonthly, double nMonths,
+      int durStatsMonths)
+  {
+    final double[] r = cumulativeReturnsMonthly;
+    final int N = r.length;
+    double cagr = FinLib.getAnnualReturn(r[N - 1] / r[0], nMonths);
+
+    // Max drawdown relative to the first value (same as CumulativeStats).
+    double peakReturn = 1.0;
+    double drawdown = 0.0;
+    for (int i = 1; i < N; ++i) {
+      double value = r[i] / r[0];
+      if (value < peakReturn) {
+        double currentDrawdown = 100.0 * (peakReturn - value) / peakReturn;
+        if (currentDrawdown > drawdown) {
+          drawdown = currentDrawdown;
+        }
+      } else if (value > peakReturn) {
+        peakReturn = value;
+      }
+    }
+
+    // Returns for each period (same as FinLib.calcReturnsForMonths) and their distribution (same as ReturnStats).
+    double[] periods;
+    if (N < durStatsMonths) {
+      periods = new double[] { FinLib.mul2ret(r[N - 1] / r[0]) };
+    } else {
+      periods = new double[N - durStatsMonths + 1];
+      for (int i = 0; i < periods.length; ++i) {
+        double roi = r[i + durStatsMonths - 1] / r[i];
+        periods[i] = (durStatsMonths >= 12 ? FinLib.getAnnualReturn(roi, durStatsMonths) : FinLib.mul2ret(roi));
+      }
+    }
+    Arrays.sort(periods);
+    final int n = periods.length;
+    return new FeatureVec(name, 5, cagr, -drawdown, periods[0], periods[Math.min(Math.round(n * 0.1f), n - 1)],
+        periods[Math.min(Math.round(n * 0.5f), n - 1)]);
+  }
 }
@@ -6,6 +6,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import org.minnen.retiretool.data.DataIO;
 import org.minnen.retiretool.data.FeatureVec;
@@ -30,7 +31,7 @@ public class VanguardSummaryMonthly
   public static final int                       durStatsMonths = 5 * 12;
   public static final int                       momentumMonths = 10;
 
-  public static MonthlyRunner                   runner;
+  public static MonthlyBatchRunner              runner;
 
   static {
     SummaryTools.fundSymbols = fundSymbols;
@@ -127,7 +128,7 @@ public class VanguardSummaryMonthly
       }
     }
     System.out.printf("Duration Statistics: %s\n", TimeLib.formatDurationMonths(durStatsMonths));
-    runner = new MonthlyRunner(seqs, durStatsMonths);
+    runner = new MonthlyBatchRunner(seqs, durStatsMonths).setPool(ForkJoinPool.commonPool());
 
     List<FeatureVec> stats = genPortfolios(seqs);
 
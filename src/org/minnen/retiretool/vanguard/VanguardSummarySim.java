@@ -3,14 +3,15 @@ package org.minnen.retiretool.vanguard;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.minnen.retiretool.data.DataIO;
 import org.minnen.retiretool.data.FeatureVec;
 import org.minnen.retiretool.data.Sequence;
+import org.minnen.retiretool.data.SequenceSource;
 import org.minnen.retiretool.data.SequenceStore;
-import org.minnen.retiretool.data.Sequence.EndpointBehavior;
 import org.minnen.retiretool.data.yahoo.YahooIO;
 import org.minnen.retiretool.util.Slippage;
 import org.minnen.retiretool.util.TimeLib;
@@ -53,24 +54,23 @@ public class VanguardSummarySim
       YahooIO.updateDailyData(symbol, 8 * TimeLib.MS_IN_HOUR);
     }
 
-    // Load data and trim to same time period.
-    List<Sequence> seqs = new ArrayList<>();
+    // Load data in parallel and trim to same time period.
+    Map<String, SequenceSource> sources = new LinkedHashMap<>();
     for (String symbol : fundSymbols) {
-      File file = YahooIO.getFileEOD(symbol);
-      Sequence seq = YahooIO.loadData(file);
-      seqs.add(seq);
+      sources.put(symbol, SequenceSource.yahoo(YahooIO.getFileEOD(symbol)));
     }
+    long[] common = store.addAll(sources);
+    long commonStart = common[0];
+    long commonEnd = common[1];
+    // commonEnd = TimeLib.toMs(2012, Month.DECEMBER, 31); // TODO
+
+    List<Sequence> seqs = store.getSeqs(fundSymbols);
     seqs.sort(Sequence.getStartDateComparator());
     for (Sequence seq : seqs) {
       String symbol = seq.getName();
       System.out.printf("%5s [%s] -> [%s]  %s\n", symbol, TimeLib.formatDate2(seq.getStartMS()),
           TimeLib.formatDate2(seq.getEndMS()), funds.get(symbol).description);
     }
-
-    long commonStart = TimeLib.calcCommonStart(seqs);
-    long commonEnd = TimeLib.calcCommonEnd(seqs);
-    // commonEnd = TimeLib.toMs(2012, Month.DECEMBER, 31); // TODO
-    store.setCommonTimes(commonStart, commonEnd);
     System.out.printf("Common[%d]: [%s] -> [%s]\n", seqs.size(), TimeLib.formatDate(commonStart),
         TimeLib.formatDate(commonEnd));
 
@@ -84,13 +84,8 @@ public class VanguardSummarySim
     System.out.printf("Simulation: [%s] -> [%s] (%.1f months total)\n", TimeLib.formatDate(timeSimStart),
         TimeLib.formatDate(timeSimEnd), nSimMonths);
 
-    // Extract common subsequence from each data sequence and add to the sequence store.
-    for (int i = 0; i < seqs.size(); ++i) {
-      Sequence seq = seqs.get(i);
-      seq = seq.subseq(commonStart, commonEnd, EndpointBehavior.Closest);
-      seqs.set(i, seq);
-      store.add(seq);
-    }
+    // Extract common subsequence from each data sequence in the store.
+    store.setCommonTimes(commonStart, commonEnd);
 
     File file = new File(outputDir, "vanguard-portfolios-sim.txt");
 